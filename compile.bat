@@ -27,7 +27,7 @@ if %ERRORLEVEL% NEQ 0 (
 )
 
 echo [1/3] Compiling Manual Scanner...
-javac TokenType.java Token.java ErrorHandler.java SymbolTable.java ManualScanner.java
+javac TokenType.java Lexemes.java LiteralDecoder.java Token.java TokenSink.java TokenListener.java TokenSource.java TokenRingBuffer.java ScanOptions.java ErrorHandler.java SymbolTable.java ManualScanner.java SyntaxTree.java Parser.java PipelinedParser.java IndexSegment.java IdentifierIndex.java WorkspaceWatcher.java ScanSummary.java ShardCoordinator.java CompressedSource.java RecognizerProfile.java SemanticTokens.java LexicalScanner.java ScopedSymbolTable.java Bytecode.java BytecodeCompiler.java BytecodeVM.java OffHeapTokenStore.java SymbolSketch.java CloneDetector.java
 if %ERRORLEVEL% NEQ 0 (
     echo [ERROR] Manual Scanner compilation failed
     pause
@@ -47,7 +47,7 @@ echo [OK] JFlex Scanner generated
 echo.
 
 echo [3/3] Compiling JFlex Scanner...
-javac Yylex.java
+javac Yylex.java ScannerPool.java CheckpointIndex.java Minifier.java CompiledScanner.java ScannerCompiler.java AllocationBudget.java EngineSelector.java JvmCompiler.java TokenDiff.java PushScanner.java
 if %ERRORLEVEL% NEQ 0 (
     echo [ERROR] JFlex Scanner compilation failed
     pause
@@ -66,5 +66,6 @@ echo   2. Or test manually:
 echo      cd src
 echo      java ManualScanner ..\tests\test1.lang
 echo      java Yylex ..\tests\test1.lang
+echo      java PipelinedParser ..\tests\test1.lang
 echo.
 pause
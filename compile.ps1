@@ -32,10 +32,36 @@ Write-Host ""
 Write-Host "[1/3] Compiling Manual Scanner..." -ForegroundColor Yellow
 $manualFiles = @(
     "TokenType.java",
+    "Lexemes.java",
+    "LiteralDecoder.java",
     "Token.java",
+    "TokenSink.java",
+    "TokenListener.java",
+    "TokenSource.java",
+    "TokenRingBuffer.java",
+    "ScanOptions.java",
     "ErrorHandler.java",
     "SymbolTable.java",
-    "ManualScanner.java"
+    "ManualScanner.java",
+    "SyntaxTree.java",
+    "Parser.java",
+    "PipelinedParser.java",
+    "IndexSegment.java",
+    "IdentifierIndex.java",
+    "WorkspaceWatcher.java",
+    "ScanSummary.java",
+    "ShardCoordinator.java",
+    "CompressedSource.java",
+    "RecognizerProfile.java",
+    "SemanticTokens.java",
+    "LexicalScanner.java",
+    "ScopedSymbolTable.java",
+    "Bytecode.java",
+    "BytecodeCompiler.java",
+    "BytecodeVM.java",
+    "OffHeapTokenStore.java",
+    "SymbolSketch.java",
+    "CloneDetector.java"
 )
 
 try {
@@ -81,7 +107,7 @@ Write-Host ""
 # Step 3: Compile JFlex Scanner
 Write-Host "[3/3] Compiling JFlex Scanner..." -ForegroundColor Yellow
 try {
-    javac Yylex.java 2>&1 | Out-String | Write-Host
+    javac Yylex.java ScannerPool.java CheckpointIndex.java Minifier.java CompiledScanner.java ScannerCompiler.java AllocationBudget.java EngineSelector.java JvmCompiler.java TokenDiff.java PushScanner.java 2>&1 | Out-String | Write-Host
     if ($LASTEXITCODE -eq 0) {
         Write-Host "✓ JFlex Scanner compiled successfully" -ForegroundColor Green
     } else {
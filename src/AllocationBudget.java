@@ -0,0 +1,359 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Allocation regression check for the scanner hot paths.
+ *
+ * Every engine (ManualScanner, Yylex and the compiled scanner) scans each
+ * corpus in full and in validate-only mode, and the bytes the scanning
+ * thread allocates are read from ThreadMXBean.getThreadAllocatedBytes
+ * around each phase:
+ *
+ *   read   loading the input into a String (not done by Yylex, which
+ *          reads through a Reader during the scan)
+ *   setup  constructing the scanner
+ *   scan   scanning, including tokens, symbol table and error records
+ *
+ * Each case is run WARMUP_ROUNDS times before measuring, so class loading
+ * and interpreter-only allocations are not counted, and the smallest of
+ * MEASURED_ROUNDS measurements is kept. The default corpora are the test
+ * files together with one large input made by repeating them, where
+ * per-token figures are not skewed by fixed costs.
+ *
+ * A case fails when its scan phase allocates more than its Budget allows
+ * for the tokens and errors found, or the whole case more bytes per input
+ * character. Errors get their own allowance, as each allocates a message
+ * and lexeme; the error-heavy test files would otherwise hide a per-token
+ * regression behind a loose budget. The budgets leave headroom over the
+ * measured figures, so only real regressions (a substring or boxed value
+ * per token) trip them.
+ */
+public class AllocationBudget {
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 5;
+    private static final int LARGE_CORPUS_CHARS = 1 << 20;
+    private static final int MIN_BUDGET_CHARS = 64 * 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Limits for one engine and mode: scan-phase bytes per token and per
+     * error, and bytes per input character over all phases. The per
+     * character limit only applies to inputs of at least MIN_BUDGET_CHARS,
+     * below which fixed setup costs dominate.
+     */
+    public static class Budget {
+        private final int bytesPerToken;
+        private final int bytesPerError;
+        private final double bytesPerChar;
+
+        public Budget(int bytesPerToken, int bytesPerError, double bytesPerChar) {
+            this.bytesPerToken = bytesPerToken;
+            this.bytesPerError = bytesPerError;
+            this.bytesPerChar = bytesPerChar;
+        }
+
+        long scanBytes(int tokens, int errors) {
+            return (long) tokens * bytesPerToken + (long) errors * bytesPerError;
+        }
+    }
+
+    /**
+     * A scanner under test and its budgets.
+     */
+    public enum Engine {
+        MANUAL("Manual", new Budget(128, 200, 20), new Budget(8, 200, 10)) {
+            @Override
+            Object setup(String content, ScanOptions options) {
+                ManualScanner scanner = new ManualScanner(content, options);
+                scanner.getErrorHandler().setEcho(false);
+                return scanner;
+            }
+
+            @Override
+            int scan(Object scanner, String content) {
+                ManualScanner manual = (ManualScanner) scanner;
+                manual.scan();
+                return manual.getTotalTokenCount();
+            }
+
+            @Override
+            int errors(Object scanner) {
+                return ((ManualScanner) scanner).getErrorHandler().getErrorCount();
+            }
+        },
+        JFLEX("JFlex", new Budget(128, 200, 12), new Budget(8, 200, 2)) {
+            @Override
+            boolean readsInput() {
+                return false;
+            }
+
+            @Override
+            Object setup(String content, ScanOptions options) {
+                Yylex scanner = new Yylex(new StringReader(content), options);
+                scanner.getErrorHandler().setEcho(false);
+                return scanner;
+            }
+
+            @Override
+            int scan(Object scanner, String content) {
+                Yylex jflex = (Yylex) scanner;
+                try {
+                    jflex.scan();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return jflex.getTotalTokenCount();
+            }
+
+            @Override
+            int errors(Object scanner) {
+                return ((Yylex) scanner).getErrorHandler().getErrorCount();
+            }
+        },
+        COMPILED("Compiled", new Budget(128, 200, 20), new Budget(8, 200, 10)) {
+            @Override
+            Object setup(String content, ScanOptions options) {
+                CompiledScanner scanner = ScannerCompiler.create(options);
+                scanner.getErrorHandler().setEcho(false);
+                return scanner;
+            }
+
+            @Override
+            int scan(Object scanner, String content) {
+                CompiledScanner compiled = (CompiledScanner) scanner;
+                compiled.scan(content);
+                return compiled.getTotalTokenCount();
+            }
+
+            @Override
+            int errors(Object scanner) {
+                return ((CompiledScanner) scanner).getErrorHandler().getErrorCount();
+            }
+        };
+
+        private final String label;
+        private final Budget fullBudget;
+        private final Budget validateBudget;
+
+        Engine(String label, Budget fullBudget, Budget validateBudget) {
+            this.label = label;
+            this.fullBudget = fullBudget;
+            this.validateBudget = validateBudget;
+        }
+
+        // Whether the engine needs the whole input as a String
+        boolean readsInput() {
+            return true;
+        }
+
+        abstract Object setup(String content, ScanOptions options);
+
+        // Returns the number of tokens scanned
+        abstract int scan(Object scanner, String content);
+
+        abstract int errors(Object scanner);
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Budget getBudget(boolean validateOnly) {
+            return validateOnly ? validateBudget : fullBudget;
+        }
+    }
+
+    /**
+     * Bytes allocated in each phase of one engine, mode and corpus.
+     */
+    public static class Result {
+        private final Engine engine;
+        private final boolean validateOnly;
+        private final String corpus;
+        private final int chars;
+        private final int tokens;
+        private final int errors;
+        private final long readBytes;
+        private final long setupBytes;
+        private final long scanBytes;
+
+        Result(Engine engine, boolean validateOnly, String corpus, int chars, int tokens,
+               int errors, long readBytes, long setupBytes, long scanBytes) {
+            this.engine = engine;
+            this.validateOnly = validateOnly;
+            this.corpus = corpus;
+            this.chars = chars;
+            this.tokens = tokens;
+            this.errors = errors;
+            this.readBytes = readBytes;
+            this.setupBytes = setupBytes;
+            this.scanBytes = scanBytes;
+        }
+
+        public long getScanBudget() {
+            return engine.getBudget(validateOnly).scanBytes(tokens, errors);
+        }
+
+        public double getBytesPerChar() {
+            return chars == 0 ? 0 : (double) (readBytes + setupBytes + scanBytes) / chars;
+        }
+
+        // Description of the exceeded budget, or null when within budget
+        public String checkBudget() {
+            Budget budget = engine.getBudget(validateOnly);
+            if (scanBytes > getScanBudget()) {
+                return String.format("scan allocates %d bytes for %d tokens and %d errors, budget %d",
+                    scanBytes, tokens, errors, getScanBudget());
+            }
+            if (chars >= MIN_BUDGET_CHARS && getBytesPerChar() > budget.bytesPerChar) {
+                return String.format("allocates %.2f bytes/char, budget %.2f",
+                    getBytesPerChar(), budget.bytesPerChar);
+            }
+            return null;
+        }
+    }
+
+    // Measures one engine and mode on content
+    public static Result measure(Engine engine, boolean validateOnly, String corpus, String content) {
+        ScanOptions options = validateOnly ? ScanOptions.validateOnly() : ScanOptions.defaults();
+        long bestRead = Long.MAX_VALUE;
+        long bestSetup = Long.MAX_VALUE;
+        long bestScan = Long.MAX_VALUE;
+        int tokens = 0;
+        int errors = 0;
+        long overhead = measurementOverhead();
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = allocatedBytes();
+            String input = engine.readsInput() ? read(content) : content;
+            long afterRead = allocatedBytes();
+            Object scanner = engine.setup(input, options);
+            long afterSetup = allocatedBytes();
+            tokens = engine.scan(scanner, input);
+            long afterScan = allocatedBytes();
+            errors = engine.errors(scanner);
+            if (round >= WARMUP_ROUNDS) {
+                bestRead = Math.min(bestRead, engine.readsInput() ? afterRead - start - overhead : 0);
+                bestSetup = Math.min(bestSetup, afterSetup - afterRead - overhead);
+                bestScan = Math.min(bestScan, afterScan - afterSetup - overhead);
+            }
+        }
+        return new Result(engine, validateOnly, corpus, content.length(), tokens, errors,
+            Math.max(0, bestRead), Math.max(0, bestSetup), Math.max(0, bestScan));
+    }
+
+    // Loads content the way the scanners' file readers do
+    private static String read(String content) {
+        try {
+            return CompressedSource.read(new StringReader(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Bytes the counter itself reports between two back-to-back reads
+    private static long measurementOverhead() {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            long start = allocatedBytes();
+            least = Math.min(least, allocatedBytes() - start);
+        }
+        return least;
+    }
+
+    // The test files, and one input of at least LARGE_CORPUS_CHARS made by repeating them
+    static List<String[]> defaultCorpora(Path testDir) throws IOException {
+        List<String[]> corpora = new ArrayList<>();
+        StringBuilder all = new StringBuilder();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(testDir, "*.lang")) {
+            List<Path> sorted = new ArrayList<>();
+            files.forEach(sorted::add);
+            sorted.sort(null);
+            for (Path file : sorted) {
+                String content = CompressedSource.read(file);
+                corpora.add(new String[] {file.getFileName().toString(), content});
+                all.append(content);
+            }
+        }
+        if (all.length() > 0) {
+            String once = all.toString();
+            while (all.length() < LARGE_CORPUS_CHARS) {
+                all.append(once);
+            }
+            corpora.add(new String[] {"repeated (" + all.length() / 1024 + " KB)", all.toString()});
+        }
+        return corpora;
+    }
+
+    // Main method for testing: exits with status 1 when a budget is exceeded
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java AllocationBudget <test-directory> | <input-file>...");
+            return;
+        }
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.err.println("Thread allocation counters are not supported by this JVM");
+            System.exit(2);
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        List<String[]> corpora = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                Path path = Paths.get(arg);
+                if (Files.isDirectory(path)) {
+                    corpora.addAll(defaultCorpora(path));
+                } else {
+                    corpora.add(new String[] {path.getFileName().toString(), CompressedSource.read(path)});
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading input: " + e.getMessage());
+            System.exit(2);
+        }
+
+        List<String> failures = new ArrayList<>();
+        System.out.println("=== Allocation per Phase (bytes, best of " + MEASURED_ROUNDS + ") ===");
+        System.out.println(String.format("%-9s %-9s %-20s %8s %6s %10s %8s %11s %11s %7s",
+            "Engine", "Mode", "Corpus", "Tokens", "Errors", "Read", "Setup", "Scan", "Scan budget", "B/char"));
+        for (String[] corpus : corpora) {
+            for (Engine engine : Engine.values()) {
+                for (boolean validateOnly : new boolean[] {false, true}) {
+                    Result result = measure(engine, validateOnly, corpus[0], corpus[1]);
+                    String exceeded = result.checkBudget();
+                    System.out.println(String.format("%-9s %-9s %-20s %8d %6d %10d %8d %11d %11d %7.2f%s",
+                        engine.getLabel(), validateOnly ? "validate" : "full", corpus[0], result.tokens,
+                        result.errors, result.readBytes, result.setupBytes, result.scanBytes,
+                        result.getScanBudget(), result.getBytesPerChar(),
+                        exceeded == null ? "" : "  OVER BUDGET"));
+                    if (exceeded != null) {
+                        failures.add(engine.getLabel() + " " + (validateOnly ? "validate" : "full")
+                            + " on " + corpus[0] + ": " + exceeded);
+                    }
+                }
+            }
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("\nAll engines within allocation budget");
+            return;
+        }
+        System.out.println("\n=== Budget Exceeded ===");
+        for (String failure : failures) {
+            System.out.println("  " + failure);
+        }
+        System.exit(1);
+    }
+}
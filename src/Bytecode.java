@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Register bytecode for CustomLang programs, as written by
+ * BytecodeCompiler and run by BytecodeVM.
+ *
+ * Every instruction is four ints: opcode and operands A, B, C. Register
+ * operands are relative to the current frame; jump targets are absolute
+ * instruction indexes (multiples of INSTRUCTION_SIZE). Values are
+ * unboxed: a register is a tag plus a long (int, bool and char values), a
+ * double (floats) and a reference (strings and arrays).
+ */
+public final class Bytecode {
+    public static final int INSTRUCTION_SIZE = 4;
+
+    // Value tags
+    public static final byte NIL = 0;
+    public static final byte INT = 1;
+    public static final byte FLOAT = 2;
+    public static final byte BOOL = 3;
+    public static final byte CHAR = 4;
+    public static final byte STRING = 5;
+    public static final byte ARRAY = 6;
+
+    // Opcodes                        operands
+    public static final int MOVE = 0;     // A = B
+    public static final int LOADK = 1;    // A = constant B
+    public static final int GETG = 2;     // A = global B (main program register)
+    public static final int SETG = 3;     // global A = B
+    public static final int ADD = 4;      // A = B + C
+    public static final int SUB = 5;
+    public static final int MUL = 6;
+    public static final int DIV = 7;
+    public static final int MOD = 8;
+    public static final int POW = 9;
+    public static final int EQ = 10;      // A = B == C
+    public static final int NE = 11;
+    public static final int LT = 12;
+    public static final int GT = 13;
+    public static final int LE = 14;
+    public static final int GE = 15;
+    public static final int NOT = 16;     // A = !B
+    public static final int NEG = 17;     // A = -B
+    public static final int TOBOOL = 18;  // A = B as a bool
+    public static final int JMP = 19;     // jump to A
+    public static final int JMPF = 20;    // if B is false jump to A
+    public static final int JMPT = 21;    // if B is true jump to A
+    public static final int CALL = 22;    // A = function B, arguments from register C on
+    public static final int RET = 23;     // return A
+    public static final int RETNIL = 24;  // return nil
+    public static final int OUT = 25;     // output A and a newline
+    public static final int IN = 26;      // A = a line of input
+    public static final int NEWARR = 27;  // A = new array of B elements
+    public static final int GETE = 28;    // A = B[C]
+    public static final int SETE = 29;    // A[B] = C
+    public static final int HALT = 30;
+
+    private static final String[] NAMES = {
+        "MOVE", "LOADK", "GETG", "SETG", "ADD", "SUB", "MUL", "DIV", "MOD", "POW",
+        "EQ", "NE", "LT", "GT", "LE", "GE", "NOT", "NEG", "TOBOOL", "JMP", "JMPF", "JMPT",
+        "CALL", "RET", "RETNIL", "OUT", "IN", "NEWARR", "GETE", "SETE", "HALT"
+    };
+
+    private Bytecode() {
+    }
+
+    /**
+     * A function's entry point and frame layout. Parameters arrive in the
+     * first registers of the frame.
+     */
+    public static class Function {
+        final String name;
+        final int entry;
+        final int parameterCount;
+        final int frameSize;
+
+        Function(String name, int entry, int parameterCount, int frameSize) {
+            this.name = name;
+            this.entry = entry;
+            this.parameterCount = parameterCount;
+            this.frameSize = frameSize;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A compiled program: code, the source line of each instruction, the
+     * constant pool and the function table. Function 0 is the main program.
+     */
+    public static class Program {
+        final int[] code;
+        final int[] lines;
+        final byte[] constantTags;
+        final long[] constantLongs;
+        final double[] constantDoubles;
+        final Object[] constantRefs;
+        final Function[] functions;
+
+        Program(int[] code, int[] lines, byte[] constantTags, long[] constantLongs, double[] constantDoubles,
+                Object[] constantRefs, Function[] functions) {
+            this.code = code;
+            this.lines = lines;
+            this.constantTags = constantTags;
+            this.constantLongs = constantLongs;
+            this.constantDoubles = constantDoubles;
+            this.constantRefs = constantRefs;
+            this.functions = functions;
+        }
+
+        public int getInstructionCount() {
+            return code.length / INSTRUCTION_SIZE;
+        }
+
+        public int getConstantCount() {
+            return constantTags.length;
+        }
+
+        public List<Function> getFunctions() {
+            return List.of(functions);
+        }
+
+        // One line per instruction, for debugging the compiler
+        public List<String> disassemble() {
+            List<String> listing = new ArrayList<>();
+            for (Function function : functions) {
+                listing.add(String.format("%s: entry %d, %d parameters, %d registers", function.name,
+                    function.entry, function.parameterCount, function.frameSize));
+            }
+            for (int k = 0; k < constantTags.length; k++) {
+                listing.add(String.format("K%-4d %s", k, constantString(k)));
+            }
+            for (int pc = 0; pc < code.length; pc += INSTRUCTION_SIZE) {
+                int op = code[pc];
+                String operands = String.format("%d %d %d", code[pc + 1], code[pc + 2], code[pc + 3]);
+                if (op == LOADK) {
+                    operands = String.format("%d K%d (%s)", code[pc + 1], code[pc + 2], constantString(code[pc + 2]));
+                } else if (op == CALL) {
+                    operands = String.format("%d %s %d", code[pc + 1], functions[code[pc + 2]].name, code[pc + 3]);
+                }
+                listing.add(String.format("%5d  line %-4d %-7s %s", pc, lines[pc / INSTRUCTION_SIZE],
+                    NAMES[op], operands));
+            }
+            return listing;
+        }
+
+        private String constantString(int k) {
+            switch (constantTags[k]) {
+                case INT: return Long.toString(constantLongs[k]);
+                case FLOAT: return Double.toString(constantDoubles[k]);
+                case BOOL: return constantLongs[k] != 0 ? "true" : "false";
+                case CHAR: return "'" + (char) constantLongs[k] + "'";
+                case STRING: return "\"" + constantRefs[k] + "\"";
+                default: return "nil";
+            }
+        }
+    }
+}
@@ -0,0 +1,655 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a parsed CustomLang program to register bytecode for
+ * BytecodeVM.
+ *
+ * Variables live in registers of their function's frame, allocated as
+ * they are declared and released when their block ends; temporaries are
+ * allocated above them and released after each statement. Variables
+ * declared directly in the program block are globals: functions reach
+ * them with GETG/SETG, which address the main program's frame. Every
+ * function is compiled as a top-level function wherever it is defined, so
+ * it can be called before its definition.
+ *
+ * Literal tokens become entries of the constant pool, one per distinct
+ * value. Undeclared names, calls with the wrong number of arguments and
+ * similar mistakes are reported as semantic errors; nothing is compiled
+ * if there are any.
+ */
+public class BytecodeCompiler {
+    private static final String MAIN = "<main>";
+
+    private final SyntaxTree tree;
+    private final ErrorHandler errors;
+
+    private int[] code = new int[256];
+    private int[] lines = new int[64];
+    private int size;
+    private int line;
+
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private final List<Object> constants = new ArrayList<>();
+
+    private final Map<String, Integer> functionIds = new HashMap<>();
+    private final List<Integer> functionNodes = new ArrayList<>();
+    private final Map<String, Integer> globals = new HashMap<>();
+
+    // State of the function being compiled
+    private boolean inMain;
+    private final Deque<Map<String, Integer>> scopes = new ArrayDeque<>();
+    private int nextRegister;
+    private int maxRegister;
+    private final Deque<Loop> loops = new ArrayDeque<>();
+
+    private static class Loop {
+        final int top;
+        final List<Integer> breaks = new ArrayList<>();
+
+        Loop(int top) {
+            this.top = top;
+        }
+    }
+
+    private BytecodeCompiler(SyntaxTree tree, ErrorHandler errors) {
+        this.tree = tree;
+        this.errors = errors;
+    }
+
+    // Compiles a parsed program; returns null if errors were reported
+    public static Bytecode.Program compile(SyntaxTree tree, ErrorHandler errors) {
+        return new BytecodeCompiler(tree, errors).compileProgram();
+    }
+
+    // Scans, parses and compiles source; lexical, syntax and semantic
+    // errors all go to errors, and null is returned if there are any
+    public static Bytecode.Program compile(String source, ErrorHandler errors) {
+        SyntaxTree tree = parse(source, errors);
+        return tree == null ? null : compile(tree, errors);
+    }
+
+    // Scans and parses source, copying lexical and syntax errors to errors;
+    // null if there are any
+    static SyntaxTree parse(String source, ErrorHandler errors) {
+        ManualScanner scanner = new ManualScanner(source);
+        scanner.getErrorHandler().setEcho(false);
+        Parser parser = new Parser(scanner.scan());
+        parser.getErrorHandler().setEcho(false);
+        SyntaxTree tree = parser.parse();
+        for (ErrorHandler handler : new ErrorHandler[] {scanner.getErrorHandler(), parser.getErrorHandler()}) {
+            for (ErrorHandler.LexicalError error : handler.getErrors()) {
+                errors.reportError(error.type, error.line, error.column, error.lexeme, error.reason);
+            }
+        }
+        return errors.hasErrors() ? null : tree;
+    }
+
+    private Bytecode.Program compileProgram() {
+        int errorsBefore = errors.getErrorCount();
+        int program = tree.getRoot();
+        int block = program == SyntaxTree.NONE ? SyntaxTree.NONE : tree.getFirstChild(program);
+
+        collectFunctions(program);
+        if (block != SyntaxTree.NONE) {
+            for (int statement = tree.getFirstChild(block); statement != SyntaxTree.NONE;
+                 statement = tree.getNextSibling(statement)) {
+                SyntaxTree.NodeKind kind = tree.getKind(statement);
+                if ((kind == SyntaxTree.NodeKind.DECLARE || kind == SyntaxTree.NodeKind.DECLARE_ARRAY)
+                        && !globals.containsKey(name(statement))) {
+                    globals.put(name(statement), globals.size());
+                }
+            }
+        }
+
+        Bytecode.Function[] functions = new Bytecode.Function[functionNodes.size() + 1];
+        inMain = true;
+        beginFunction(globals.size());
+        if (block != SyntaxTree.NONE) {
+            compileBlock(block, true);
+        }
+        emit(Bytecode.HALT, 0, 0, 0);
+        functions[0] = new Bytecode.Function(MAIN, 0, 0, Math.max(1, maxRegister));
+
+        inMain = false;
+        for (int i = 0; i < functionNodes.size(); i++) {
+            functions[i + 1] = compileFunction(functionNodes.get(i));
+        }
+
+        if (errors.getErrorCount() > errorsBefore) {
+            return null;
+        }
+        return buildProgram(functions);
+    }
+
+    // Assigns ids to all functions, wherever they are defined
+    private void collectFunctions(int node) {
+        if (node == SyntaxTree.NONE) {
+            return;
+        }
+        if (tree.getKind(node) == SyntaxTree.NodeKind.FUNCTION) {
+            String name = name(node);
+            if (functionIds.containsKey(name)) {
+                error(node, "Function '" + name + "' is already defined");
+            } else {
+                functionIds.put(name, functionNodes.size() + 1);
+                functionNodes.add(node);
+            }
+        }
+        for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+            collectFunctions(child);
+        }
+    }
+
+    private Bytecode.Function compileFunction(int node) {
+        int entry = size;
+        int parameters = tree.getChild(node, 0);
+        int body = tree.getChild(node, 1);
+        beginFunction(0);
+        int count = 0;
+        for (int parameter = tree.getFirstChild(parameters); parameter != SyntaxTree.NONE;
+             parameter = tree.getNextSibling(parameter)) {
+            declare(parameter, nextRegister++);
+            count++;
+        }
+        maxRegister = Math.max(maxRegister, nextRegister);
+        if (body != SyntaxTree.NONE) {
+            compileBlock(body, false);
+        }
+        line = tree.getToken(node).getLine();
+        emit(Bytecode.RETNIL, 0, 0, 0);
+        return new Bytecode.Function(name(node), entry, count, Math.max(1, maxRegister));
+    }
+
+    private void beginFunction(int reserved) {
+        scopes.clear();
+        scopes.push(new HashMap<>());
+        loops.clear();
+        nextRegister = reserved;
+        maxRegister = reserved;
+    }
+
+    // Statements
+
+    private void compileBlock(int block, boolean programBlock) {
+        int mark = nextRegister;
+        if (!programBlock) {
+            scopes.push(new HashMap<>());
+        }
+        for (int statement = tree.getFirstChild(block); statement != SyntaxTree.NONE;
+             statement = tree.getNextSibling(statement)) {
+            compileStatement(statement, programBlock);
+        }
+        if (!programBlock) {
+            scopes.pop();
+            nextRegister = mark;
+        }
+    }
+
+    private void compileStatement(int node, boolean programBlock) {
+        Token token = tree.getToken(node);
+        if (token == null && tree.getFirstChild(node) != SyntaxTree.NONE) {
+            token = tree.getToken(tree.getFirstChild(node));
+        }
+        if (token != null) {
+            line = token.getLine();
+        }
+        int mark = nextRegister;
+        switch (tree.getKind(node)) {
+            case DECLARE:
+            case DECLARE_ARRAY: {
+                // Globals keep the register reserved for them; the name is
+                // only visible after its initializer
+                int register = programBlock && inMain ? globals.get(name(node)) : allocate();
+                mark = nextRegister;
+                if (tree.getKind(node) == SyntaxTree.NodeKind.DECLARE) {
+                    compileInto(tree.getFirstChild(node), register);
+                } else {
+                    int length = allocate();
+                    compileInto(tree.getFirstChild(node), length);
+                    emit(Bytecode.NEWARR, register, length, 0);
+                }
+                declare(node, register);
+                break;
+            }
+            case ASSIGN:
+                compileAssign(node);
+                break;
+            case INPUT: {
+                int target = tree.getFirstChild(node);
+                int value = allocate();
+                emit(Bytecode.IN, value, 0, 0);
+                store(target, value);
+                break;
+            }
+            case OUTPUT:
+                emit(Bytecode.OUT, compileValue(tree.getFirstChild(node)), 0, 0);
+                break;
+            case CONDITION:
+                compileCondition(node);
+                break;
+            case LOOP:
+                compileLoop(node);
+                break;
+            case FUNCTION:
+                break; // compiled on its own
+            case RETURN: {
+                int value = tree.getFirstChild(node);
+                if (inMain) {
+                    emit(Bytecode.HALT, 0, 0, 0);
+                } else if (value == SyntaxTree.NONE) {
+                    emit(Bytecode.RETNIL, 0, 0, 0);
+                } else {
+                    emit(Bytecode.RET, compileValue(value), 0, 0);
+                }
+                break;
+            }
+            case BREAK:
+            case CONTINUE:
+                if (loops.isEmpty()) {
+                    error(node, "'" + token.getLexeme() + "' outside a loop");
+                } else if (tree.getKind(node) == SyntaxTree.NodeKind.BREAK) {
+                    loops.peek().breaks.add(emit(Bytecode.JMP, 0, 0, 0));
+                } else {
+                    emit(Bytecode.JMP, loops.peek().top, 0, 0);
+                }
+                break;
+            case EXPRESSION_STATEMENT:
+                compileValue(tree.getFirstChild(node));
+                break;
+            default:
+                error(node, "Unexpected " + tree.getKind(node) + " statement");
+                break;
+        }
+        nextRegister = mark;
+    }
+
+    private void compileAssign(int node) {
+        String op = tree.getToken(node).getLexeme();
+        int target = tree.getChild(node, 0);
+        int value = tree.getChild(node, 1);
+        int local = tree.getKind(target) == SyntaxTree.NodeKind.IDENTIFIER ? localRegister(target) : -1;
+        if (op.equals("=") && local >= 0) {
+            compileInto(value, local);
+            return;
+        }
+        if (local >= 0) {
+            emit(arithmetic(op.substring(0, 1)), local, local, compileValue(value));
+            return;
+        }
+        int result;
+        if (op.equals("=")) {
+            result = compileValue(value);
+        } else {
+            int operand = compileValue(value);
+            result = allocate();
+            compileInto(target, result);
+            emit(arithmetic(op.substring(0, 1)), result, result, operand);
+        }
+        store(target, result);
+    }
+
+    private void compileCondition(int node) {
+        int test = compileValue(tree.getChild(node, 0));
+        int jumpToElse = emit(Bytecode.JMPF, 0, test, 0);
+        compileBlock(tree.getChild(node, 1), false);
+        int elseBlock = tree.getChild(node, 2);
+        if (elseBlock == SyntaxTree.NONE) {
+            patch(jumpToElse, size);
+            return;
+        }
+        int jumpToEnd = emit(Bytecode.JMP, 0, 0, 0);
+        patch(jumpToElse, size);
+        compileBlock(elseBlock, false);
+        patch(jumpToEnd, size);
+    }
+
+    private void compileLoop(int node) {
+        Loop loop = new Loop(size);
+        int mark = nextRegister;
+        int test = compileValue(tree.getChild(node, 0));
+        nextRegister = mark;
+        int exit = emit(Bytecode.JMPF, 0, test, 0);
+        loops.push(loop);
+        compileBlock(tree.getChild(node, 1), false);
+        loops.pop();
+        emit(Bytecode.JMP, loop.top, 0, 0);
+        patch(exit, size);
+        for (int jump : loop.breaks) {
+            patch(jump, size);
+        }
+    }
+
+    // Expressions
+
+    // Register holding the node's value: a local variable's own register,
+    // or a new temporary
+    private int compileValue(int node) {
+        if (tree.getKind(node) == SyntaxTree.NodeKind.IDENTIFIER) {
+            int local = localRegister(node);
+            if (local >= 0) {
+                return local;
+            }
+        }
+        int register = allocate();
+        compileInto(node, register);
+        return register;
+    }
+
+    private void compileInto(int node, int dest) {
+        Token token = tree.getToken(node);
+        switch (tree.getKind(node)) {
+            case LITERAL:
+                emit(Bytecode.LOADK, dest, constant(token), 0);
+                break;
+            case IDENTIFIER:
+                load(node, dest);
+                break;
+            case BINARY: {
+                String op = token.getLexeme();
+                if (op.equals("&&") || op.equals("||")) {
+                    // dest may be an operand, so build the result apart
+                    int result = allocate();
+                    compileInto(tree.getChild(node, 0), result);
+                    emit(Bytecode.TOBOOL, result, result, 0);
+                    int jump = emit(op.equals("&&") ? Bytecode.JMPF : Bytecode.JMPT, 0, result, 0);
+                    compileInto(tree.getChild(node, 1), result);
+                    emit(Bytecode.TOBOOL, result, result, 0);
+                    patch(jump, size);
+                    move(dest, result);
+                    break;
+                }
+                int left = compileValue(tree.getChild(node, 0));
+                int right = compileValue(tree.getChild(node, 1));
+                line = token.getLine();
+                emit(binary(op), dest, left, right);
+                break;
+            }
+            case UNARY: {
+                int operand = compileValue(tree.getFirstChild(node));
+                switch (token.getLexeme()) {
+                    case "!": emit(Bytecode.NOT, dest, operand, 0); break;
+                    case "-": emit(Bytecode.NEG, dest, operand, 0); break;
+                    default: move(dest, operand); break;
+                }
+                break;
+            }
+            case PREFIX:
+            case POSTFIX: {
+                int target = tree.getFirstChild(node);
+                int step = token.getType() == TokenType.INCREMENT_OP ? Bytecode.ADD : Bytecode.SUB;
+                int local = tree.getKind(target) == SyntaxTree.NodeKind.IDENTIFIER ? localRegister(target) : -1;
+                if (local >= 0 && local != dest) {
+                    // Update the variable's register in place
+                    int one = allocate();
+                    emit(Bytecode.LOADK, one, constant(1L), 0);
+                    boolean prefix = tree.getKind(node) == SyntaxTree.NodeKind.PREFIX;
+                    if (!prefix) {
+                        move(dest, local);
+                    }
+                    emit(step, local, local, one);
+                    if (prefix) {
+                        move(dest, local);
+                    }
+                    break;
+                }
+                int old = allocate();
+                compileInto(target, old);
+                int one = allocate();
+                emit(Bytecode.LOADK, one, constant(1L), 0);
+                int updated = allocate();
+                emit(step, updated, old, one);
+                store(target, updated);
+                move(dest, tree.getKind(node) == SyntaxTree.NodeKind.PREFIX ? updated : old);
+                break;
+            }
+            case SUBSCRIPT:
+                compileSubscript(node, dest);
+                break;
+            default:
+                error(node, "Expected an expression");
+                break;
+        }
+    }
+
+    // A call, or an element of an array
+    private void compileSubscript(int node, int dest) {
+        String name = name(node);
+        Integer function = resolvesToVariable(name) ? null : functionIds.get(name);
+        if (function != null) {
+            int base = nextRegister;
+            int count = 0;
+            for (int argument = tree.getFirstChild(node); argument != SyntaxTree.NONE;
+                 argument = tree.getNextSibling(argument)) {
+                count++;
+                nextRegister = base + count;
+                maxRegister = Math.max(maxRegister, nextRegister);
+                compileInto(argument, base + count - 1);
+            }
+            int expected = tree.getChildCount(tree.getChild(functionNodes.get(function - 1), 0));
+            if (count != expected) {
+                error(node, "'" + name + "' takes " + expected + " argument(s), not " + count);
+            }
+            line = tree.getToken(node).getLine();
+            emit(Bytecode.CALL, dest, function, base);
+            return;
+        }
+        if (tree.getChildCount(node) != 1) {
+            error(node, "Array '" + name + "' takes one index");
+            return;
+        }
+        int array = variableValue(node);
+        int index = compileValue(tree.getFirstChild(node));
+        emit(Bytecode.GETE, dest, array, index);
+    }
+
+    // Writes value to an IDENTIFIER or array element target
+    private void store(int target, int value) {
+        if (tree.getKind(target) == SyntaxTree.NodeKind.SUBSCRIPT) {
+            if (tree.getChildCount(target) != 1 || !resolvesToVariable(name(target))) {
+                error(target, "Cannot assign to '" + name(target) + "'");
+                return;
+            }
+            int array = variableValue(target);
+            int index = compileValue(tree.getFirstChild(target));
+            emit(Bytecode.SETE, array, index, value);
+            return;
+        }
+        int local = localRegister(target);
+        if (local >= 0) {
+            move(local, value);
+            return;
+        }
+        Integer global = inMain ? null : globals.get(name(target));
+        if (global == null) {
+            error(target, "Undeclared identifier");
+            return;
+        }
+        emit(Bytecode.SETG, global, value, 0);
+    }
+
+    private void load(int node, int dest) {
+        int local = localRegister(node);
+        if (local >= 0) {
+            move(dest, local);
+            return;
+        }
+        Integer global = inMain ? null : globals.get(name(node));
+        if (global == null) {
+            error(node, functionIds.containsKey(name(node))
+                ? "Function '" + name(node) + "' used as a value" : "Undeclared identifier");
+            return;
+        }
+        emit(Bytecode.GETG, dest, global, 0);
+    }
+
+    // Register with the value of the variable named by node's token
+    private int variableValue(int node) {
+        int local = localRegister(node);
+        if (local >= 0) {
+            return local;
+        }
+        int register = allocate();
+        load(node, register);
+        return register;
+    }
+
+    private boolean resolvesToVariable(String name) {
+        for (Map<String, Integer> scope : scopes) {
+            if (scope.containsKey(name)) {
+                return true;
+            }
+        }
+        return !inMain && globals.containsKey(name);
+    }
+
+    // Register of a variable declared in this function, or -1
+    private int localRegister(int node) {
+        String name = name(node);
+        for (Map<String, Integer> scope : scopes) {
+            Integer register = scope.get(name);
+            if (register != null) {
+                return register;
+            }
+        }
+        return -1;
+    }
+
+    private void declare(int node, int register) {
+        Map<String, Integer> scope = scopes.peek();
+        if (scope.containsKey(name(node))) {
+            error(node, "'" + name(node) + "' is already declared in this scope");
+        }
+        scope.put(name(node), register);
+    }
+
+    private int allocate() {
+        int register = nextRegister++;
+        maxRegister = Math.max(maxRegister, nextRegister);
+        return register;
+    }
+
+    private static int binary(String op) {
+        switch (op) {
+            case "==": return Bytecode.EQ;
+            case "!=": return Bytecode.NE;
+            case "<": return Bytecode.LT;
+            case ">": return Bytecode.GT;
+            case "<=": return Bytecode.LE;
+            case ">=": return Bytecode.GE;
+            default: return arithmetic(op);
+        }
+    }
+
+    private static int arithmetic(String op) {
+        switch (op) {
+            case "+": return Bytecode.ADD;
+            case "-": return Bytecode.SUB;
+            case "*": return Bytecode.MUL;
+            case "/": return Bytecode.DIV;
+            case "%": return Bytecode.MOD;
+            default: return Bytecode.POW;
+        }
+    }
+
+    // Constant pool
+
+    private int constant(Token token) {
+        switch (token.getType()) {
+            case INTEGER_LITERAL:
+                if (token.isValueOverflow()) {
+                    errors.reportSemanticError(token.getLine(), token.getColumn(), token.getLexeme(),
+                        "Integer literal out of range");
+                }
+                return constant(token.getIntValue());
+            case FLOAT_LITERAL: return constant(token.getFloatValue());
+            case STRING_LITERAL: return constant(token.getStringValue());
+            case CHAR_LITERAL: return constant(token.getCharValue());
+            default: return constant(token.getBooleanValue());
+        }
+    }
+
+    // Values are keyed by their boxed type, so 1 and 1.0 stay apart
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndex.put(value, index);
+        }
+        return index;
+    }
+
+    // Code
+
+    private int emit(int op, int a, int b, int c) {
+        if (size + Bytecode.INSTRUCTION_SIZE > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+            lines = Arrays.copyOf(lines, lines.length * 2);
+        }
+        int pc = size;
+        code[size++] = op;
+        code[size++] = a;
+        code[size++] = b;
+        code[size++] = c;
+        lines[pc / Bytecode.INSTRUCTION_SIZE] = line;
+        return pc;
+    }
+
+    private void move(int dest, int source) {
+        if (dest != source) {
+            emit(Bytecode.MOVE, dest, source, 0);
+        }
+    }
+
+    private void patch(int jump, int target) {
+        code[jump + 1] = target;
+    }
+
+    private String name(int node) {
+        return tree.getToken(node).getLexeme();
+    }
+
+    private void error(int node, String reason) {
+        Token token = tree.getToken(node);
+        if (token == null) {
+            errors.reportSemanticError(line, 0, "", reason);
+        } else {
+            errors.reportSemanticError(token.getLine(), token.getColumn(), token.getLexeme(), reason);
+        }
+    }
+
+    private Bytecode.Program buildProgram(Bytecode.Function[] functions) {
+        int count = constants.size();
+        byte[] tags = new byte[count];
+        long[] longs = new long[count];
+        double[] doubles = new double[count];
+        Object[] refs = new Object[count];
+        for (int k = 0; k < count; k++) {
+            Object value = constants.get(k);
+            if (value instanceof Long) {
+                tags[k] = Bytecode.INT;
+                longs[k] = (Long) value;
+            } else if (value instanceof Double) {
+                tags[k] = Bytecode.FLOAT;
+                doubles[k] = (Double) value;
+            } else if (value instanceof Boolean) {
+                tags[k] = Bytecode.BOOL;
+                longs[k] = (Boolean) value ? 1 : 0;
+            } else if (value instanceof Character) {
+                tags[k] = Bytecode.CHAR;
+                longs[k] = (Character) value;
+            } else {
+                tags[k] = Bytecode.STRING;
+                refs[k] = value;
+            }
+        }
+        return new Bytecode.Program(Arrays.copyOf(code, size), Arrays.copyOf(lines, size / Bytecode.INSTRUCTION_SIZE),
+            tags, longs, doubles, refs, functions);
+    }
+}
@@ -0,0 +1,724 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Interpreter for the register bytecode of BytecodeCompiler.
+ *
+ * The register file is four parallel arrays (tag, long, double and
+ * reference), shared by all frames: a call's frame starts right after its
+ * caller's. Integer arithmetic and comparisons have a fast path for two
+ * INT operands; everything else goes through the general helpers. Once
+ * the register file and call stack are large enough for the program's
+ * deepest call, running allocates nothing except arrays the program
+ * declares, input lines and string conversions of floats the JDK makes.
+ * Output is collected in a reused StringBuilder and written in chunks.
+ */
+public class BytecodeVM {
+    public static final int MAX_CALL_DEPTH = 100_000;
+
+    private static final int INITIAL_REGISTERS = 1024;
+    private static final int OUTPUT_CHUNK = 8192;
+
+    private final Bytecode.Program program;
+    private final Writer out;
+    private final BufferedReader in;
+
+    private byte[] tags = new byte[INITIAL_REGISTERS];
+    private long[] longs = new long[INITIAL_REGISTERS];
+    private double[] doubles = new double[INITIAL_REGISTERS];
+    private Object[] refs = new Object[INITIAL_REGISTERS];
+
+    // Per active call: return pc, caller base, caller frame size, result register
+    private int[] calls = new int[4 * 64];
+
+    private final StringBuilder output = new StringBuilder(OUTPUT_CHUNK * 2);
+    private char[] outputChars = new char[OUTPUT_CHUNK * 2];
+
+    /**
+     * An array value: parallel element arrays like the register file.
+     */
+    static final class Cells {
+        final byte[] tags;
+        final long[] longs;
+        final double[] doubles;
+        final Object[] refs;
+
+        Cells(int length) {
+            tags = new byte[length];
+            longs = new long[length];
+            doubles = new double[length];
+            refs = new Object[length];
+        }
+    }
+
+    /**
+     * An error while running a program, such as division by zero or an
+     * array index out of bounds.
+     */
+    public static class RuntimeError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int line;
+
+        RuntimeError(int line, String message) {
+            super("Runtime error at line " + line + ": " + message);
+            this.line = line;
+        }
+
+        public int getLine() {
+            return line;
+        }
+    }
+
+    // in may be null for programs that do not read input
+    public BytecodeVM(Bytecode.Program program, Writer out, Reader in) {
+        this.program = program;
+        this.out = out;
+        this.in = in == null ? null : new BufferedReader(in);
+    }
+
+    public void run() {
+        try {
+            execute();
+        } finally {
+            flushOutput();
+        }
+    }
+
+    private void execute() {
+        final int[] code = program.code;
+        final Bytecode.Function[] functions = program.functions;
+        int pc = functions[0].entry;
+        int base = 0;
+        int frameSize = functions[0].frameSize;
+        int depth = 0;
+        ensureRegisters(frameSize);
+
+        byte[] tags = this.tags;
+        long[] longs = this.longs;
+
+        while (true) {
+            int op = code[pc];
+            int a = code[pc + 1];
+            int b = code[pc + 2];
+            int c = code[pc + 3];
+            pc += Bytecode.INSTRUCTION_SIZE;
+            switch (op) {
+                case Bytecode.MOVE:
+                    copy(base + a, base + b);
+                    break;
+                case Bytecode.LOADK: {
+                    int d = base + a;
+                    tags[d] = program.constantTags[b];
+                    longs[d] = program.constantLongs[b];
+                    doubles[d] = program.constantDoubles[b];
+                    refs[d] = program.constantRefs[b];
+                    break;
+                }
+                case Bytecode.GETG:
+                    copy(base + a, b);
+                    break;
+                case Bytecode.SETG:
+                    copy(a, base + b);
+                    break;
+                case Bytecode.ADD: {
+                    int x = base + b;
+                    int y = base + c;
+                    if (tags[x] == Bytecode.INT && tags[y] == Bytecode.INT) {
+                        longs[base + a] = longs[x] + longs[y];
+                        tags[base + a] = Bytecode.INT;
+                    } else {
+                        arithmetic(op, base + a, x, y, pc);
+                    }
+                    break;
+                }
+                case Bytecode.SUB: {
+                    int x = base + b;
+                    int y = base + c;
+                    if (tags[x] == Bytecode.INT && tags[y] == Bytecode.INT) {
+                        longs[base + a] = longs[x] - longs[y];
+                        tags[base + a] = Bytecode.INT;
+                    } else {
+                        arithmetic(op, base + a, x, y, pc);
+                    }
+                    break;
+                }
+                case Bytecode.MUL: {
+                    int x = base + b;
+                    int y = base + c;
+                    if (tags[x] == Bytecode.INT && tags[y] == Bytecode.INT) {
+                        longs[base + a] = longs[x] * longs[y];
+                        tags[base + a] = Bytecode.INT;
+                    } else {
+                        arithmetic(op, base + a, x, y, pc);
+                    }
+                    break;
+                }
+                case Bytecode.MOD: {
+                    int x = base + b;
+                    int y = base + c;
+                    if (tags[x] == Bytecode.INT && tags[y] == Bytecode.INT && longs[y] != 0) {
+                        longs[base + a] = longs[x] % longs[y];
+                        tags[base + a] = Bytecode.INT;
+                    } else {
+                        arithmetic(op, base + a, x, y, pc);
+                    }
+                    break;
+                }
+                case Bytecode.DIV:
+                case Bytecode.POW:
+                    arithmetic(op, base + a, base + b, base + c, pc);
+                    break;
+                case Bytecode.LT: {
+                    int x = base + b;
+                    int y = base + c;
+                    if (tags[x] == Bytecode.INT && tags[y] == Bytecode.INT) {
+                        longs[base + a] = longs[x] < longs[y] ? 1 : 0;
+                        tags[base + a] = Bytecode.BOOL;
+                    } else {
+                        compare(op, base + a, x, y, pc);
+                    }
+                    break;
+                }
+                case Bytecode.EQ:
+                case Bytecode.NE:
+                case Bytecode.GT:
+                case Bytecode.LE:
+                case Bytecode.GE:
+                    compare(op, base + a, base + b, base + c, pc);
+                    break;
+                case Bytecode.NOT:
+                    setBool(base + a, !truthy(base + b));
+                    break;
+                case Bytecode.NEG:
+                    negate(base + a, base + b, pc);
+                    break;
+                case Bytecode.TOBOOL:
+                    setBool(base + a, truthy(base + b));
+                    break;
+                case Bytecode.JMP:
+                    pc = a;
+                    break;
+                case Bytecode.JMPF:
+                    if (tags[base + b] == Bytecode.BOOL ? longs[base + b] == 0 : !truthy(base + b)) {
+                        pc = a;
+                    }
+                    break;
+                case Bytecode.JMPT:
+                    if (truthy(base + b)) {
+                        pc = a;
+                    }
+                    break;
+                case Bytecode.CALL: {
+                    Bytecode.Function function = functions[b];
+                    if (depth == MAX_CALL_DEPTH) {
+                        throw error(pc, "Call stack overflow in '" + function.name + "'");
+                    }
+                    int calleeBase = base + frameSize;
+                    if (ensureRegisters(calleeBase + function.frameSize)) {
+                        tags = this.tags;
+                        longs = this.longs;
+                    }
+                    for (int i = 0; i < function.parameterCount; i++) {
+                        copy(calleeBase + i, base + c + i);
+                    }
+                    int slot = depth * 4;
+                    if (slot + 4 > calls.length) {
+                        calls = Arrays.copyOf(calls, calls.length * 2);
+                    }
+                    calls[slot] = pc;
+                    calls[slot + 1] = base;
+                    calls[slot + 2] = frameSize;
+                    calls[slot + 3] = base + a;
+                    depth++;
+                    base = calleeBase;
+                    frameSize = function.frameSize;
+                    pc = function.entry;
+                    break;
+                }
+                case Bytecode.RET:
+                case Bytecode.RETNIL: {
+                    depth--;
+                    int slot = depth * 4;
+                    int result = calls[slot + 3];
+                    if (op == Bytecode.RET) {
+                        copy(result, base + a);
+                    } else {
+                        setNil(result);
+                    }
+                    pc = calls[slot];
+                    base = calls[slot + 1];
+                    frameSize = calls[slot + 2];
+                    break;
+                }
+                case Bytecode.OUT:
+                    write(base + a);
+                    break;
+                case Bytecode.IN:
+                    read(base + a, pc);
+                    break;
+                case Bytecode.NEWARR:
+                    newArray(base + a, base + b, pc);
+                    break;
+                case Bytecode.GETE:
+                    getElement(base + a, base + b, base + c, pc);
+                    break;
+                case Bytecode.SETE:
+                    setElement(base + a, base + b, base + c, pc);
+                    break;
+                case Bytecode.HALT:
+                    return;
+                default:
+                    throw error(pc, "Bad opcode " + op);
+            }
+        }
+    }
+
+    // Grows the register file to at least count registers; returns true if it grew
+    private boolean ensureRegisters(int count) {
+        if (count <= tags.length) {
+            return false;
+        }
+        int capacity = Math.max(count, tags.length * 2);
+        tags = Arrays.copyOf(tags, capacity);
+        longs = Arrays.copyOf(longs, capacity);
+        doubles = Arrays.copyOf(doubles, capacity);
+        refs = Arrays.copyOf(refs, capacity);
+        return true;
+    }
+
+    private void copy(int dest, int source) {
+        tags[dest] = tags[source];
+        longs[dest] = longs[source];
+        doubles[dest] = doubles[source];
+        refs[dest] = refs[source];
+    }
+
+    private void setBool(int dest, boolean value) {
+        tags[dest] = Bytecode.BOOL;
+        longs[dest] = value ? 1 : 0;
+        refs[dest] = null;
+    }
+
+    private void setNil(int dest) {
+        tags[dest] = Bytecode.NIL;
+        refs[dest] = null;
+    }
+
+    private boolean truthy(int r) {
+        switch (tags[r]) {
+            case Bytecode.INT:
+            case Bytecode.BOOL:
+            case Bytecode.CHAR:
+                return longs[r] != 0;
+            case Bytecode.FLOAT:
+                return doubles[r] != 0;
+            case Bytecode.STRING:
+                return !((String) refs[r]).isEmpty();
+            case Bytecode.ARRAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isIntegral(byte tag) {
+        return tag == Bytecode.INT || tag == Bytecode.CHAR;
+    }
+
+    private static boolean isNumber(byte tag) {
+        return isIntegral(tag) || tag == Bytecode.FLOAT;
+    }
+
+    private double number(int r) {
+        return tags[r] == Bytecode.FLOAT ? doubles[r] : longs[r];
+    }
+
+    private void arithmetic(int op, int dest, int x, int y, int pc) {
+        byte tx = tags[x];
+        byte ty = tags[y];
+        if (!isNumber(tx) || !isNumber(ty)) {
+            throw error(pc, "Operands of " + operator(op) + " must be numbers");
+        }
+        if (isIntegral(tx) && isIntegral(ty)) {
+            long lx = longs[x];
+            long ly = longs[y];
+            long result;
+            switch (op) {
+                case Bytecode.ADD: result = lx + ly; break;
+                case Bytecode.SUB: result = lx - ly; break;
+                case Bytecode.MUL: result = lx * ly; break;
+                case Bytecode.DIV:
+                    if (ly == 0) {
+                        throw error(pc, "Division by zero");
+                    }
+                    result = lx / ly;
+                    break;
+                case Bytecode.MOD:
+                    if (ly == 0) {
+                        throw error(pc, "Division by zero");
+                    }
+                    result = lx % ly;
+                    break;
+                default:
+                    if (ly < 0) {
+                        setDouble(dest, Math.pow(lx, ly));
+                        return;
+                    }
+                    result = power(lx, ly);
+                    break;
+            }
+            tags[dest] = Bytecode.INT;
+            longs[dest] = result;
+            refs[dest] = null;
+            return;
+        }
+        double dx = number(x);
+        double dy = number(y);
+        double result;
+        switch (op) {
+            case Bytecode.ADD: result = dx + dy; break;
+            case Bytecode.SUB: result = dx - dy; break;
+            case Bytecode.MUL: result = dx * dy; break;
+            case Bytecode.DIV: result = dx / dy; break;
+            case Bytecode.MOD: result = dx % dy; break;
+            default: result = Math.pow(dx, dy); break;
+        }
+        setDouble(dest, result);
+    }
+
+    private static long power(long base, long exponent) {
+        long result = 1;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>= 1;
+        }
+        return result;
+    }
+
+    private void setDouble(int dest, double value) {
+        tags[dest] = Bytecode.FLOAT;
+        doubles[dest] = value;
+        refs[dest] = null;
+    }
+
+    private void compare(int op, int dest, int x, int y, int pc) {
+        byte tx = tags[x];
+        byte ty = tags[y];
+        int order;
+        if (isNumber(tx) && isNumber(ty)) {
+            order = isIntegral(tx) && isIntegral(ty) ? Long.compare(longs[x], longs[y])
+                : Double.compare(number(x), number(y));
+        } else if (tx == Bytecode.STRING && ty == Bytecode.STRING) {
+            order = ((String) refs[x]).compareTo((String) refs[y]);
+        } else if (op == Bytecode.EQ || op == Bytecode.NE) {
+            boolean equal = tx == ty && (tx == Bytecode.NIL || (tx == Bytecode.BOOL && longs[x] == longs[y])
+                || (tx == Bytecode.ARRAY && refs[x] == refs[y]));
+            setBool(dest, equal == (op == Bytecode.EQ));
+            return;
+        } else {
+            throw error(pc, "Operands of " + operator(op) + " cannot be compared");
+        }
+        boolean result;
+        switch (op) {
+            case Bytecode.EQ: result = order == 0; break;
+            case Bytecode.NE: result = order != 0; break;
+            case Bytecode.LT: result = order < 0; break;
+            case Bytecode.GT: result = order > 0; break;
+            case Bytecode.LE: result = order <= 0; break;
+            default: result = order >= 0; break;
+        }
+        setBool(dest, result);
+    }
+
+    private void negate(int dest, int source, int pc) {
+        switch (tags[source]) {
+            case Bytecode.INT:
+            case Bytecode.CHAR:
+                tags[dest] = Bytecode.INT;
+                longs[dest] = -longs[source];
+                refs[dest] = null;
+                break;
+            case Bytecode.FLOAT:
+                setDouble(dest, -doubles[source]);
+                break;
+            default:
+                throw error(pc, "Operand of unary - must be a number");
+        }
+    }
+
+    private void newArray(int dest, int length, int pc) {
+        if (!isIntegral(tags[length]) || longs[length] < 0 || longs[length] > Integer.MAX_VALUE - 8) {
+            throw error(pc, "Bad array size");
+        }
+        tags[dest] = Bytecode.ARRAY;
+        refs[dest] = new Cells((int) longs[length]);
+    }
+
+    private Cells cells(int array, int index, int pc) {
+        if (tags[array] != Bytecode.ARRAY) {
+            throw error(pc, "Not an array");
+        }
+        Cells cells = (Cells) refs[array];
+        if (!isIntegral(tags[index]) || longs[index] < 0 || longs[index] >= cells.tags.length) {
+            throw error(pc, "Array index out of bounds");
+        }
+        return cells;
+    }
+
+    private void getElement(int dest, int array, int index, int pc) {
+        Cells cells = cells(array, index, pc);
+        int i = (int) longs[index];
+        tags[dest] = cells.tags[i];
+        longs[dest] = cells.longs[i];
+        doubles[dest] = cells.doubles[i];
+        refs[dest] = cells.refs[i];
+    }
+
+    private void setElement(int array, int index, int value, int pc) {
+        Cells cells = cells(array, index, pc);
+        int i = (int) longs[index];
+        cells.tags[i] = tags[value];
+        cells.longs[i] = longs[value];
+        cells.doubles[i] = doubles[value];
+        cells.refs[i] = refs[value];
+    }
+
+    private void write(int r) {
+        switch (tags[r]) {
+            case Bytecode.INT: output.append(longs[r]); break;
+            case Bytecode.FLOAT: output.append(doubles[r]); break;
+            case Bytecode.BOOL: output.append(longs[r] != 0); break;
+            case Bytecode.CHAR: output.append((char) longs[r]); break;
+            case Bytecode.STRING: output.append((String) refs[r]); break;
+            case Bytecode.ARRAY: output.append("[array]"); break;
+            default: output.append("nil"); break;
+        }
+        output.append('\n');
+        if (output.length() >= OUTPUT_CHUNK) {
+            flushOutput();
+        }
+    }
+
+    private void flushOutput() {
+        int length = output.length();
+        if (length > outputChars.length) {
+            outputChars = new char[length];
+        }
+        output.getChars(0, length, outputChars, 0);
+        output.setLength(0);
+        try {
+            out.write(outputChars, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads a line as an int, float or bool if it is one, else as a string; nil at end of input
+    private void read(int dest, int pc) {
+        flushOutput();
+        String text;
+        try {
+            text = in == null ? null : in.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (text == null) {
+            setNil(dest);
+            return;
+        }
+        text = text.trim();
+        if (text.equals("true") || text.equals("false")) {
+            setBool(dest, text.equals("true"));
+            return;
+        }
+        try {
+            tags[dest] = Bytecode.INT;
+            longs[dest] = Long.parseLong(text);
+            refs[dest] = null;
+            return;
+        } catch (NumberFormatException e) {
+            // not an integer
+        }
+        try {
+            setDouble(dest, Double.parseDouble(text));
+        } catch (NumberFormatException e) {
+            tags[dest] = Bytecode.STRING;
+            refs[dest] = text;
+        }
+    }
+
+    private RuntimeError error(int pc, String message) {
+        // pc has already moved past the failing instruction
+        return new RuntimeError(program.lines[pc / Bytecode.INSTRUCTION_SIZE - 1], message);
+    }
+
+    private static String operator(int op) {
+        switch (op) {
+            case Bytecode.ADD: return "+";
+            case Bytecode.SUB: return "-";
+            case Bytecode.MUL: return "*";
+            case Bytecode.DIV: return "/";
+            case Bytecode.MOD: return "%";
+            case Bytecode.POW: return "**";
+            case Bytecode.EQ: return "==";
+            case Bytecode.NE: return "!=";
+            case Bytecode.LT: return "<";
+            case Bytecode.GT: return ">";
+            case Bytecode.LE: return "<=";
+            default: return ">=";
+        }
+    }
+
+    // Microbenchmarks: name, source
+    static final String[][] BENCHMARKS = {
+        {"loop", String.join("\n",
+            "start",
+            "    declare Total = 0",
+            "    declare I = 0",
+            "    loop I < 5000000",
+            "        Total += I % 7",
+            "        I++",
+            "    finish",
+            "    output Total",
+            "finish")},
+        {"recursion", String.join("\n",
+            "start",
+            "    function Fib[N]",
+            "        condition N < 2",
+            "            return N",
+            "        finish",
+            "        return Fib[N - 1] + Fib[N - 2]",
+            "    finish",
+            "    output Fib[27]",
+            "finish")},
+        {"output", String.join("\n",
+            "start",
+            "    declare I = 0",
+            "    loop I < 200000",
+            "        output \"Hello, World\"",
+            "        output I",
+            "        output I * 0.5",
+            "        I++",
+            "    finish",
+            "finish")},
+        {"array", String.join("\n",
+            "start",
+            "    declare Sieve[200000]",
+            "    declare Count = 0",
+            "    declare I = 2",
+            "    loop I < 200000",
+            "        condition !Sieve[I]",
+            "            Count++",
+            "            declare J = I * 2",
+            "            loop J < 200000",
+            "                Sieve[J] = true",
+            "                J += I",
+            "            finish",
+            "        finish",
+            "        I++",
+            "    finish",
+            "    output Count",
+            "finish")}
+    };
+
+    private static void benchmark() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        System.out.println(String.format("%-10s %10s %14s %s", "Benchmark", "Best ms", "Bytes/run", "Output"));
+        for (String[] benchmark : BENCHMARKS) {
+            ErrorHandler errors = new ErrorHandler();
+            errors.setEcho(false);
+            Bytecode.Program program = BytecodeCompiler.compile(benchmark[1], errors);
+            if (program == null) {
+                System.out.println(benchmark[0] + ": " + errors.getErrors());
+                continue;
+            }
+            // Output is discarded apart from the last line, which is kept to check the result
+            StringBuilder last = new StringBuilder();
+            Writer sink = new Writer() {
+                @Override
+                public void write(char[] buffer, int offset, int length) {
+                    int end = offset + length - 1;
+                    int start = end;
+                    while (start > offset && buffer[start - 1] != '\n') {
+                        start--;
+                    }
+                    last.setLength(0);
+                    last.append(buffer, start, end - start);
+                }
+
+                @Override
+                public void flush() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            BytecodeVM vm = new BytecodeVM(program, sink, null);
+            long best = Long.MAX_VALUE;
+            long bytes = Long.MAX_VALUE;
+            for (int round = 0; round < 15; round++) {
+                long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                vm.run();
+                best = Math.min(best, System.nanoTime() - start);
+                bytes = Math.min(bytes, threads.getThreadAllocatedBytes(thread) - allocatedBefore);
+            }
+            System.out.println(String.format("%-10s %10.2f %14d %s", benchmark[0], best / 1e6, bytes, last));
+        }
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("--bench")) {
+            benchmark();
+            return;
+        }
+        boolean dump = args.length == 2 && args[0].equals("--dump");
+        if (args.length == 0 || (args.length == 2 && !dump)) {
+            System.out.println("Usage: java BytecodeVM [--dump] <input-file>");
+            System.out.println("       java BytecodeVM --bench");
+            return;
+        }
+
+        try {
+            String content = CompressedSource.read(Paths.get(args[args.length - 1]));
+            ErrorHandler errors = new ErrorHandler();
+            errors.setEcho(false);
+            Bytecode.Program program = BytecodeCompiler.compile(content, errors);
+            if (program == null) {
+                for (ErrorHandler.LexicalError error : errors.getErrors()) {
+                    System.err.println(error);
+                }
+                System.exit(1);
+            }
+            if (dump) {
+                program.disassemble().forEach(System.out::println);
+                return;
+            }
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            new BytecodeVM(program, out, new InputStreamReader(System.in)).run();
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } catch (RuntimeError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
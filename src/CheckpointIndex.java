@@ -0,0 +1,335 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saved ManualScanner states at regular offsets of one source, so a line
+ * or offset window can be lexed without scanning everything before it.
+ *
+ * A checkpoint is taken at the first token boundary at or after every
+ * interval characters, or inside a multi-line comment when the comment
+ * spans the boundary. It records the offset, line and column there and,
+ * inside a comment, where the comment started. A ranged scan resumes
+ * from the nearest checkpoint before the window, so it lexes at most one
+ * interval of text it does not return.
+ *
+ * The index can be saved next to the source; load() rejects it when the
+ * source's length or content hash no longer match. Checking the hash
+ * reads the source once per load, not once per ranged scan.
+ */
+public class CheckpointIndex {
+    public static final int DEFAULT_INTERVAL = 4096;
+    public static final String FILE_SUFFIX = ".ckpt";
+
+    private static final int MAGIC = 0x434b5054; // "CKPT"
+    private static final int VERSION = 1;
+
+    private static final ScannerPool<ManualScanner> SCANNERS = ScannerPool.manualScanners(16);
+    private static final ScanOptions RANGE_OPTIONS = ScanOptions.defaults();
+
+    private final int interval;
+    private final int sourceLength;
+    private int[] offsets;
+    private int[] lines;
+    private int[] columns;
+    // Start of the enclosing multi-line comment, or 0 outside comments
+    private int[] commentLines;
+    private int[] commentColumns;
+    private int count;
+    private long fingerprint;
+
+    private CheckpointIndex(int interval, int sourceLength, int capacity) {
+        this.interval = interval;
+        this.sourceLength = sourceLength;
+        this.offsets = new int[capacity];
+        this.lines = new int[capacity];
+        this.columns = new int[capacity];
+        this.commentLines = new int[capacity];
+        this.commentColumns = new int[capacity];
+    }
+
+    /**
+     * A scanner position that scanning can resume from.
+     */
+    public static class Checkpoint {
+        private final int offset;
+        private final int line;
+        private final int column;
+        private final int commentLine;
+        private final int commentColumn;
+
+        Checkpoint(int offset, int line, int column, int commentLine, int commentColumn) {
+            this.offset = offset;
+            this.line = line;
+            this.column = column;
+            this.commentLine = commentLine;
+            this.commentColumn = commentColumn;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public boolean isInComment() {
+            return commentLine > 0;
+        }
+
+        // Where the enclosing multi-line comment started, for its unclosed-comment error
+        public int getCommentLine() {
+            return commentLine;
+        }
+
+        public int getCommentColumn() {
+            return commentColumn;
+        }
+    }
+
+    public static CheckpointIndex build(String source) {
+        return build(source, DEFAULT_INTERVAL);
+    }
+
+    public static CheckpointIndex build(String source, int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        CheckpointIndex index = new CheckpointIndex(interval, source.length(), source.length() / interval + 2);
+        ManualScanner scanner = new ManualScanner(source, ScanOptions.validateOnly());
+        scanner.getErrorHandler().setEcho(false);
+        scanner.recordCheckpoints(index);
+        scanner.scan();
+        if (index.count == 0) {
+            index.record(0, 1, 1, 0, 0); // empty source
+        }
+        index.trim();
+        index.fingerprint = fingerprint(source);
+        return index;
+    }
+
+    // Called by ManualScanner; returns the offset of the next checkpoint
+    int record(int offset, int line, int column, int commentLine, int commentColumn) {
+        if (count == offsets.length) {
+            int capacity = count * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            commentLines = Arrays.copyOf(commentLines, capacity);
+            commentColumns = Arrays.copyOf(commentColumns, capacity);
+        }
+        offsets[count] = offset;
+        lines[count] = line;
+        columns[count] = column;
+        commentLines[count] = commentLine;
+        commentColumns[count] = commentColumn;
+        count++;
+        return offset + interval;
+    }
+
+    private void trim() {
+        offsets = Arrays.copyOf(offsets, count);
+        lines = Arrays.copyOf(lines, count);
+        columns = Arrays.copyOf(columns, count);
+        commentLines = Arrays.copyOf(commentLines, count);
+        commentColumns = Arrays.copyOf(commentColumns, count);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getCheckpointCount() {
+        return count;
+    }
+
+    public Checkpoint getCheckpoint(int i) {
+        return new Checkpoint(offsets[i], lines[i], columns[i], commentLines[i], commentColumns[i]);
+    }
+
+    // Last checkpoint on a line before the given one; tokens never span lines,
+    // so every token of that line is scanned from there
+    public int findByLine(int line) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lines[mid] < line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Last checkpoint at or before the given offset
+    public int findByOffset(int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // Tokens that start on lines fromLine..toLine (1-based, inclusive)
+    public List<Token> scanLines(String source, int fromLine, int toLine) {
+        checkSource(source);
+        Checkpoint start = getCheckpoint(findByLine(fromLine));
+        return SCANNERS.with(scanner -> {
+            scanner.reset(source, RANGE_OPTIONS);
+            scanner.getErrorHandler().setEcho(false);
+            List<Token> result = new ArrayList<>();
+            for (Token token : scanner.scanFrom(start, toLine, Integer.MAX_VALUE)) {
+                if (token.getLine() >= fromLine) {
+                    result.add(token);
+                }
+            }
+            return result;
+        });
+    }
+
+    // Tokens that start at offsets fromOffset..toOffset - 1
+    public List<Token> scanOffsets(String source, int fromOffset, int toOffset) {
+        checkSource(source);
+        Checkpoint start = getCheckpoint(findByOffset(fromOffset));
+        return SCANNERS.with(scanner -> {
+            scanner.reset(source, RANGE_OPTIONS);
+            scanner.getErrorHandler().setEcho(false);
+            List<Token> result = new ArrayList<>();
+            for (Token token : scanner.scanFrom(start, Integer.MAX_VALUE, toOffset)) {
+                if (token.getOffset() >= fromOffset) {
+                    result.add(token);
+                }
+            }
+            return result;
+        });
+    }
+
+    public boolean matches(String source) {
+        return source.length() == sourceLength && fingerprint(source) == fingerprint;
+    }
+
+    private void checkSource(String source) {
+        if (source.length() != sourceLength) {
+            throw new IllegalArgumentException("Checkpoint index was built for a different source");
+        }
+    }
+
+    // 64-bit FNV-1a over the source's chars
+    private static long fingerprint(String source) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < source.length(); i++) {
+            hash = (hash ^ source.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Persistence
+
+    public static Path pathFor(Path source) {
+        return source.resolveSibling(source.getFileName() + FILE_SUFFIX);
+    }
+
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(interval);
+            out.writeInt(sourceLength);
+            out.writeLong(fingerprint);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeInt(offsets[i]);
+                out.writeInt(lines[i]);
+                out.writeInt(columns[i]);
+                out.writeInt(commentLines[i]);
+                out.writeInt(commentColumns[i]);
+            }
+        }
+    }
+
+    // Returns null if the saved index does not match the source
+    public static CheckpointIndex load(Path file, String source) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int interval = in.readInt();
+            int sourceLength = in.readInt();
+            long fingerprint = in.readLong();
+            int count = in.readInt();
+            if (sourceLength != source.length()) {
+                return null;
+            }
+            CheckpointIndex index = new CheckpointIndex(interval, sourceLength, count);
+            for (int i = 0; i < count; i++) {
+                index.record(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            }
+            index.fingerprint = fingerprint;
+            return index.matches(source) ? index : null;
+        }
+    }
+
+    // Loads the index saved next to the source file, rebuilding and saving it when stale
+    public static CheckpointIndex loadOrBuild(Path sourceFile, String source) throws IOException {
+        Path file = pathFor(sourceFile);
+        if (Files.exists(file)) {
+            CheckpointIndex index = load(file, source);
+            if (index != null) {
+                return index;
+            }
+        }
+        CheckpointIndex index = build(source);
+        index.save(file);
+        return index;
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java CheckpointIndex <input-file> <from-line> <to-line>");
+            return;
+        }
+
+        try {
+            Path sourceFile = Paths.get(args[0]);
+            String content = new String(Files.readAllBytes(sourceFile));
+            CheckpointIndex index = loadOrBuild(sourceFile, content);
+
+            long start = System.nanoTime();
+            List<Token> tokens = index.scanLines(content, Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            long elapsed = System.nanoTime() - start;
+
+            for (Token token : tokens) {
+                System.out.println(token);
+            }
+            System.out.println("\nCheckpoints: " + index.getCheckpointCount());
+            System.out.printf("Ranged scan: %d tokens in %.1f us%n", tokens.size(), elapsed / 1e3);
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
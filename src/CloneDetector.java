@@ -0,0 +1,450 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds duplicated code across many files by winnowing token k-grams.
+ *
+ * Each file is scanned by ManualScanner and reduced to a stream of token
+ * values in which every identifier is the same placeholder (and, with
+ * abstractLiterals, every literal of a type is the same value), so copies
+ * that differ in layout, comments or naming look identical. A rolling
+ * hash gives every run of k tokens a hash, and winnowing keeps the
+ * minimum hash of each window of w consecutive k-grams as a fingerprint.
+ * Any duplicate of at least k + w - 1 tokens then shares a fingerprint.
+ *
+ * Files are fingerprinted in parallel. The index is a single long array
+ * of fingerprints tagged with their posting number, sorted in parallel,
+ * so equal fingerprints end up adjacent. Each pair of postings in a run is
+ * a seed; seeds are extended over the token values to the maximal equal
+ * region, which also discards hash collisions. Fingerprints that occur
+ * more than maxOccurrences times are boilerplate and are skipped, which
+ * keeps the pairing from going quadratic.
+ */
+public class CloneDetector {
+    public static final int DEFAULT_K = 20;
+    public static final int DEFAULT_WINDOW = 10;
+    public static final int DEFAULT_MAX_OCCURRENCES = 64;
+
+    private static final long BASE = 0x100000001b3L;
+    private static final int IDENTIFIER_VALUE = 0x49440001;
+
+    private final int k;
+    private final int window;
+    private final int minTokens;
+    private final boolean abstractLiterals;
+    private int maxOccurrences = DEFAULT_MAX_OCCURRENCES;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public CloneDetector(int k, int window, boolean abstractLiterals) {
+        if (k < 1 || window < 1) {
+            throw new IllegalArgumentException("k and window must be at least 1");
+        }
+        this.k = k;
+        this.window = window;
+        this.minTokens = k + window - 1;
+        this.abstractLiterals = abstractLiterals;
+    }
+
+    public CloneDetector setMaxOccurrences(int maxOccurrences) {
+        this.maxOccurrences = Math.max(2, maxOccurrences);
+        return this;
+    }
+
+    public CloneDetector setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    // Matches shorter than this are not guaranteed to be found
+    public int getMinTokens() {
+        return minTokens;
+    }
+
+    /**
+     * A file reduced to normalized token values, the line of each token
+     * and its winnowed fingerprints.
+     */
+    static class Fingerprints {
+        final Path file;
+        final int[] values;
+        final int[] lines;
+        int[] hashes = new int[16];
+        int[] positions = new int[16];
+        int count;
+
+        Fingerprints(Path file, int[] values, int[] lines) {
+            this.file = file;
+            this.values = values;
+            this.lines = lines;
+        }
+
+        void add(int hash, int position) {
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            hashes[count] = hash;
+            positions[count] = position;
+            count++;
+        }
+    }
+
+    /**
+     * Two regions with the same normalized tokens. For a duplicate within
+     * one file, the first region comes first.
+     */
+    public static class Match {
+        private final Path firstFile;
+        private final int firstStartLine;
+        private final int firstEndLine;
+        private final Path secondFile;
+        private final int secondStartLine;
+        private final int secondEndLine;
+        private final int tokens;
+
+        Match(Path firstFile, int firstStartLine, int firstEndLine,
+              Path secondFile, int secondStartLine, int secondEndLine, int tokens) {
+            this.firstFile = firstFile;
+            this.firstStartLine = firstStartLine;
+            this.firstEndLine = firstEndLine;
+            this.secondFile = secondFile;
+            this.secondStartLine = secondStartLine;
+            this.secondEndLine = secondEndLine;
+            this.tokens = tokens;
+        }
+
+        public Path getFirstFile() {
+            return firstFile;
+        }
+
+        public int getFirstStartLine() {
+            return firstStartLine;
+        }
+
+        public int getFirstEndLine() {
+            return firstEndLine;
+        }
+
+        public Path getSecondFile() {
+            return secondFile;
+        }
+
+        public int getSecondStartLine() {
+            return secondStartLine;
+        }
+
+        public int getSecondEndLine() {
+            return secondEndLine;
+        }
+
+        public int getTokenCount() {
+            return tokens;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s:%d-%d  %s:%d-%d  (%d tokens)", firstFile, firstStartLine, firstEndLine,
+                secondFile, secondStartLine, secondEndLine, tokens);
+        }
+    }
+
+    // Normalization
+
+    // The value a token contributes to k-grams; comments and whitespace are
+    // not tokens, so they never do
+    int normalize(Token token) {
+        TokenType type = token.getType();
+        switch (type) {
+            case IDENTIFIER:
+                return IDENTIFIER_VALUE;
+            case INTEGER_LITERAL:
+            case FLOAT_LITERAL:
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+            case BOOLEAN_LITERAL:
+                if (abstractLiterals) {
+                    return (type.ordinal() + 1) * 0x9e3779b1;
+                }
+                break;
+            default:
+                break;
+        }
+        return (type.ordinal() + 1) * 0x9e3779b1 ^ token.getLexeme().hashCode() * 31;
+    }
+
+    Fingerprints fingerprint(Path file, ManualScanner scanner) {
+        List<Token> tokens = scanner.getTokens();
+        int[] values = new int[tokens.size()];
+        int[] lines = new int[tokens.size()];
+        int n = 0;
+        for (Token token : tokens) {
+            TokenType type = token.getType();
+            if (type == TokenType.ERROR || type == TokenType.EOF || type == TokenType.WHITESPACE) {
+                continue;
+            }
+            values[n] = normalize(token);
+            lines[n] = token.getLine();
+            n++;
+        }
+        Fingerprints result = new Fingerprints(file, Arrays.copyOf(values, n), Arrays.copyOf(lines, n));
+        winnow(result);
+        return result;
+    }
+
+    // Rolling k-gram hashes, winnowed: the rightmost minimum of each window
+    // of w hashes is kept, once per change of position
+    void winnow(Fingerprints result) {
+        int[] values = result.values;
+        int grams = values.length - k + 1;
+        if (grams <= 0) {
+            return;
+        }
+        long top = 1;
+        for (int i = 1; i < k; i++) {
+            top *= BASE;
+        }
+        int[] ring = new int[window];
+        long hash = 0;
+        for (int i = 0; i < k; i++) {
+            hash = hash * BASE + values[i];
+        }
+        int minAt = -1;
+        for (int gram = 0; gram < grams; gram++) {
+            if (gram > 0) {
+                hash = (hash - values[gram - 1] * top) * BASE + values[gram + k - 1];
+            }
+            ring[gram % window] = mix(hash);
+
+            int first = gram - window + 1;
+            if (gram == grams - 1 && first < 0) {
+                first = 0; // a file shorter than one window still gets one fingerprint
+            } else if (first < 0) {
+                continue;
+            }
+            if (minAt < first) {
+                // The minimum left the window: rescan it, rightmost minimum wins
+                minAt = first;
+                for (int i = first + 1; i <= gram; i++) {
+                    if (Integer.compareUnsigned(ring[i % window], ring[minAt % window]) <= 0) {
+                        minAt = i;
+                    }
+                }
+                result.add(ring[minAt % window], minAt);
+            } else if (Integer.compareUnsigned(ring[gram % window], ring[minAt % window]) <= 0) {
+                minAt = gram;
+                result.add(ring[minAt % window], minAt);
+            }
+        }
+    }
+
+    private static int mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) (hash >>> 32);
+    }
+
+    // Detection
+
+    public List<Match> detect(List<Path> files) throws IOException {
+        Fingerprints[] prints = fingerprintAll(files);
+
+        // Postings: fingerprint in the high half, posting number in the low
+        int total = 0;
+        for (Fingerprints print : prints) {
+            total = Math.addExact(total, print.count);
+        }
+        long[] index = new long[total];
+        int[] postingFile = new int[total];
+        int[] postingPosition = new int[total];
+        int posting = 0;
+        for (int f = 0; f < prints.length; f++) {
+            Fingerprints print = prints[f];
+            for (int i = 0; i < print.count; i++) {
+                index[posting] = (long) print.hashes[i] << 32 | posting;
+                postingFile[posting] = f;
+                postingPosition[posting] = print.positions[i];
+                posting++;
+            }
+        }
+        Arrays.parallelSort(index);
+
+        List<int[]> seeds = new ArrayList<>();
+        for (int start = 0; start < total; ) {
+            int end = start + 1;
+            while (end < total && (index[end] >>> 32) == (index[start] >>> 32)) {
+                end++;
+            }
+            if (end - start > 1 && end - start <= maxOccurrences) {
+                for (int i = start; i < end; i++) {
+                    for (int j = i + 1; j < end; j++) {
+                        int a = (int) index[i];
+                        int b = (int) index[j];
+                        // Postings are numbered in file and position order
+                        if (postingFile[a] != postingFile[b] || postingPosition[a] != postingPosition[b]) {
+                            seeds.add(new int[] {postingFile[a], postingPosition[a], postingFile[b], postingPosition[b]});
+                        }
+                    }
+                }
+            }
+            start = end;
+        }
+        return extend(prints, seeds);
+    }
+
+    // Grows each seed to the maximal equal region, skipping seeds that fall
+    // inside a region already found on the same diagonal
+    private List<Match> extend(Fingerprints[] prints, List<int[]> seeds) {
+        seeds.sort(Comparator.<int[]>comparingInt(s -> s[0]).thenComparingInt(s -> s[2])
+            .thenComparingInt(s -> s[3] - s[1]).thenComparingInt(s -> s[1]));
+        List<Match> matches = new ArrayList<>();
+        int[] last = null;
+        int coveredTo = -1;
+        for (int[] seed : seeds) {
+            if (last != null && last[0] == seed[0] && last[2] == seed[2] && last[3] - last[1] == seed[3] - seed[1]
+                    && seed[1] < coveredTo) {
+                continue;
+            }
+            Fingerprints first = prints[seed[0]];
+            Fingerprints second = prints[seed[2]];
+            int a = seed[1];
+            int b = seed[3];
+            while (a > 0 && b > 0 && first.values[a - 1] == second.values[b - 1]) {
+                a--;
+                b--;
+            }
+            int length = 0;
+            int limit = first == second ? b - a : Integer.MAX_VALUE; // a file's copies must not overlap
+            while (a + length < first.values.length && b + length < second.values.length && length < limit
+                    && first.values[a + length] == second.values[b + length]) {
+                length++;
+            }
+            last = seed;
+            coveredTo = a + length;
+            if (length >= minTokens) {
+                matches.add(new Match(first.file, first.lines[a], first.lines[a + length - 1],
+                    second.file, second.lines[b], second.lines[b + length - 1], length));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::getTokenCount).reversed()
+            .thenComparing(m -> m.getFirstFile().toString()).thenComparingInt(Match::getFirstStartLine));
+        return matches;
+    }
+
+    private Fingerprints[] fingerprintAll(List<Path> files) throws IOException {
+        Fingerprints[] prints = new Fingerprints[files.size()];
+        int workers = Math.min(threads, Math.max(1, files.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < workers; t++) {
+                int firstFile = t;
+                tasks.add(pool.submit(() -> {
+                    ManualScanner scanner = null;
+                    for (int i = firstFile; i < files.size(); i += workers) {
+                        String content = CompressedSource.read(files.get(i));
+                        if (scanner == null) {
+                            scanner = new ManualScanner(content);
+                            scanner.getErrorHandler().setEcho(false);
+                        } else {
+                            scanner.reset(content);
+                        }
+                        scanner.scan();
+                        prints[i] = fingerprint(files.get(i), scanner);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            return prints;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static int option(String arg, String name) {
+        return Integer.parseInt(arg.substring(name.length() + 1));
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        int k = DEFAULT_K;
+        int window = DEFAULT_WINDOW;
+        int maxOccurrences = DEFAULT_MAX_OCCURRENCES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean literals = false;
+        List<Path> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--k=")) {
+                k = option(arg, "--k");
+            } else if (arg.startsWith("--window=")) {
+                window = option(arg, "--window");
+            } else if (arg.startsWith("--max-occurrences=")) {
+                maxOccurrences = option(arg, "--max-occurrences");
+            } else if (arg.startsWith("--threads=")) {
+                threads = option(arg, "--threads");
+            } else if (arg.equals("--literals")) {
+                literals = true;
+            } else {
+                inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Usage: java CloneDetector [--k=N] [--window=N] [--literals] "
+                + "[--max-occurrences=N] [--threads=N] <file-or-directory>...");
+            return;
+        }
+
+        try {
+            List<Path> files = new ArrayList<>();
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    try (Stream<Path> walk = Files.walk(input)) {
+                        files.addAll(walk.filter(p -> p.toString().endsWith(".lang")).sorted()
+                            .collect(Collectors.toList()));
+                    }
+                } else {
+                    files.add(input);
+                }
+            }
+
+            CloneDetector detector = new CloneDetector(k, window, literals)
+                .setMaxOccurrences(maxOccurrences)
+                .setThreads(threads);
+            long start = System.nanoTime();
+            List<Match> matches = detector.detect(files);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println("\n=== Duplicate Regions ===");
+            for (Match match : matches) {
+                System.out.println("  " + match);
+            }
+            System.out.printf("%nFound %d duplicate regions of at least %d tokens in %d files in %.1f ms%n",
+                matches.size(), detector.getMinTokens(), files.size(), elapsed / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,394 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Base class of the scanner generated by ScannerCompiler.
+ *
+ * The generated subclass supplies run(): one switch over the first
+ * character of each token, with the operator, keyword and boolean rules
+ * of the Lexemes table compiled into nested switches and inline character
+ * comparisons. The rules that do not depend on that table (identifiers,
+ * numbers, strings, characters and comments) live here and follow
+ * ManualScanner's recognizers exactly, so both produce the same tokens
+ * and errors for any input.
+ */
+public abstract class CompiledScanner implements LexicalScanner {
+    String input;
+    int pos;
+    int line;
+    int column;
+    int tokenStartPos;
+    int tokenStartColumn;
+
+    final List<Token> tokens = new ArrayList<>();
+    final ErrorHandler errorHandler = new ErrorHandler();
+    final SymbolTable symbolTable = new SymbolTable();
+    final LiteralDecoder literals = new LiteralDecoder();
+    final int[] tokenCounts = new int[TokenType.values().length];
+    int commentCount;
+
+    ScanOptions options = ScanOptions.defaults();
+    boolean[] materialize = options.materializeMask();
+    TokenSink sink;
+    boolean stopAtFirstError;
+
+    public void setOptions(ScanOptions options) {
+        this.options = options;
+        this.materialize = options.materializeMask();
+        this.sink = options.getTokenSink();
+        this.stopAtFirstError = options.isStopAtFirstError();
+    }
+
+    // Scans input from the start; results of an earlier scan are cleared
+    public List<Token> scan(String input) {
+        this.input = input;
+        this.pos = 0;
+        this.line = 1;
+        this.column = 1;
+        tokens.clear();
+        errorHandler.clear();
+        symbolTable.clear();
+        Arrays.fill(tokenCounts, 0);
+        commentCount = 0;
+        run();
+        return tokens;
+    }
+
+    // Generated dispatch loop
+    abstract void run();
+
+    // Rules shared with ManualScanner
+
+    final void multiLineComment() {
+        int startLine = line;
+        int startCol = column;
+        advance(2);
+        String in = input;
+        while (pos < in.length()) {
+            if (in.charAt(pos) == '*' && pos + 1 < in.length() && in.charAt(pos + 1) == '#') {
+                advance(2);
+                commentCount++;
+                return;
+            }
+            consume();
+        }
+        errorHandler.reportUnclosedComment(startLine, startCol);
+    }
+
+    final void singleLineComment() {
+        String in = input;
+        int end = in.indexOf('\n', pos);
+        if (end < 0) {
+            end = in.length();
+        }
+        column += end - pos;
+        pos = end;
+        commentCount++;
+    }
+
+    final void whitespace() {
+        String in = input;
+        while (pos < in.length()) {
+            char ch = in.charAt(pos);
+            if (ch == '\n') {
+                line++;
+                column = 1;
+            } else if (ch == ' ' || ch == '\t' || ch == '\r') {
+                column++;
+            } else {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    final void identifier() {
+        String in = input;
+        int end = pos + 1;
+        while (end < in.length() && isIdentifierPart(in.charAt(end))) {
+            end++;
+        }
+        column += end - pos;
+        pos = end;
+
+        if (pos - tokenStartPos > 31) {
+            errorHandler.reportInvalidIdentifier(line, tokenStartColumn, in.substring(tokenStartPos, pos),
+                "Identifier exceeds maximum length of 31 characters");
+            return;
+        }
+        if (!materialize[TokenType.IDENTIFIER.ordinal()]) {
+            tokenCounts[TokenType.IDENTIFIER.ordinal()]++;
+            return;
+        }
+        String name = symbolTable.addIdentifier(in.substring(tokenStartPos, pos), line, tokenStartColumn);
+        addToken(TokenType.IDENTIFIER, name);
+    }
+
+    // At a digit, or at a sign followed by a digit
+    final void number() {
+        int startLine = line;
+        int startCol = column;
+        literals.beginNumber(peek() == '-');
+        if (peek() == '+' || peek() == '-') {
+            consume();
+        }
+        while (isDigit(peek())) {
+            literals.digit(consume());
+        }
+        if (peek() != '.') {
+            Token token = createToken(TokenType.INTEGER_LITERAL);
+            if (token != null) {
+                token.setIntValue(literals.longValue(), literals.overflowed());
+                emit(token);
+            }
+            return;
+        }
+
+        consume(); // '.'
+        int decimalDigits = 0;
+        while (isDigit(peek())) {
+            literals.fractionDigit(consume());
+            decimalDigits++;
+        }
+        if (decimalDigits == 0 || decimalDigits > 6) {
+            errorHandler.reportMalformedLiteral(startLine, startCol, input.substring(tokenStartPos, pos),
+                "Floating-point literal must have 1-6 digits after decimal point");
+            return;
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            consume();
+            literals.beginExponent(peek() == '-');
+            if (peek() == '+' || peek() == '-') {
+                consume();
+            }
+            if (!isDigit(peek())) {
+                errorHandler.reportMalformedLiteral(startLine, startCol, input.substring(tokenStartPos, pos),
+                    "Exponent must have at least one digit");
+                return;
+            }
+            while (isDigit(peek())) {
+                literals.exponentDigit(consume());
+            }
+        }
+        Token token = createToken(TokenType.FLOAT_LITERAL);
+        if (token != null) {
+            token.setFloatValue(literals.doubleValue(input, tokenStartPos, pos));
+            emit(token);
+        }
+    }
+
+    final void stringLiteral() {
+        int startLine = line;
+        int startCol = column;
+        String in = input;
+        consume(); // opening "
+        literals.beginString(pos);
+        while (pos < in.length() && peek() != '"' && peek() != '\n') {
+            if (peek() == '\\') {
+                consume();
+                if (pos < in.length()) {
+                    literals.escape(in, pos - 1, consume());
+                }
+            } else {
+                consume();
+            }
+        }
+        if (pos >= in.length() || peek() != '"') {
+            errorHandler.reportUnterminatedString(startLine, startCol, in.substring(tokenStartPos, pos));
+            return;
+        }
+        String value = literals.endString(in, pos);
+        consume(); // closing "
+        Token token = createToken(TokenType.STRING_LITERAL);
+        if (token != null) {
+            token.setStringValue(value);
+            emit(token);
+        }
+    }
+
+    final void charLiteral() {
+        int startLine = line;
+        int startCol = column;
+        String in = input;
+        consume(); // opening '
+        if (pos >= in.length()) {
+            errorHandler.reportUnterminatedChar(startLine, startCol, in.substring(tokenStartPos, pos));
+            return;
+        }
+        char value = 0;
+        if (peek() == '\\') {
+            consume();
+            if (pos < in.length()) {
+                value = LiteralDecoder.unescapeOrSelf(consume());
+            }
+        } else if (peek() != '\'' && peek() != '\n') {
+            value = consume();
+        }
+        if (pos >= in.length() || peek() != '\'') {
+            errorHandler.reportUnterminatedChar(startLine, startCol, in.substring(tokenStartPos, pos));
+            return;
+        }
+        consume(); // closing '
+        Token token = createToken(TokenType.CHAR_LITERAL);
+        if (token != null) {
+            token.setCharValue(value);
+            emit(token);
+        }
+    }
+
+    // Returns true when the scan should stop
+    final boolean invalidCharacter() {
+        errorHandler.reportInvalidCharacter(line, column, input.charAt(pos));
+        consume();
+        return stopAtFirstError;
+    }
+
+    // A fixed-spelling token of the given length with its canonical lexeme
+    final void fixedToken(TokenType type, String lexeme, int length) {
+        advance(length);
+        Token token = createToken(type, lexeme);
+        if (token != null) {
+            if (type == TokenType.BOOLEAN_LITERAL) {
+                token.setBooleanValue(lexeme.charAt(0) == 't');
+            }
+            emit(token);
+        }
+    }
+
+    final void addToken(TokenType type, String lexeme) {
+        Token token = createToken(type, lexeme);
+        if (token != null) {
+            emit(token);
+        }
+    }
+
+    // Tokens are counted and built here but published by emit(), once any
+    // decoded value is set; null when the type is not materialized
+    final Token createToken(TokenType type, String lexeme) {
+        tokenCounts[type.ordinal()]++;
+        if (!materialize[type.ordinal()]) {
+            return null;
+        }
+        return new Token(type, lexeme, tokenStartPos, line, tokenStartColumn);
+    }
+
+    final Token createToken(TokenType type) {
+        tokenCounts[type.ordinal()]++;
+        if (!materialize[type.ordinal()]) {
+            return null;
+        }
+        return new Token(type, input, tokenStartPos, pos - tokenStartPos, line, tokenStartColumn);
+    }
+
+    private void emit(Token token) {
+        if (sink != null) {
+            sink.accept(token);
+        } else {
+            tokens.add(token);
+        }
+    }
+
+    // Character at pos + offset, or 0 past the end
+    final char peek(int offset) {
+        int at = pos + offset;
+        return at < input.length() ? input.charAt(at) : '\0';
+    }
+
+    final char peek() {
+        return pos < input.length() ? input.charAt(pos) : '\0';
+    }
+
+    final char consume() {
+        char ch = input.charAt(pos++);
+        if (ch == '\n') {
+            line++;
+            column = 1;
+        } else {
+            column++;
+        }
+        return ch;
+    }
+
+    // Skips count characters known not to contain a newline
+    final void advance(int count) {
+        pos += count;
+        column += count;
+    }
+
+    // End of the run of lowercase letters starting at from
+    final int lowercaseEnd(int from) {
+        String in = input;
+        while (from < in.length() && in.charAt(from) >= 'a' && in.charAt(from) <= 'z') {
+            from++;
+        }
+        return from;
+    }
+
+    // Whether a word ending at end is followed by a letter, digit or underscore
+    final boolean continuesWord(int end) {
+        if (end >= input.length()) {
+            return false;
+        }
+        char ch = input.charAt(end);
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || isDigit(ch) || ch == '_';
+    }
+
+    static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    static boolean isIdentifierPart(char ch) {
+        return (ch >= 'a' && ch <= 'z') || isDigit(ch) || ch == '_';
+    }
+
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    public int getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public int getTotalTokenCount() {
+        int total = 0;
+        for (int count : tokenCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    public void printTokens() {
+        System.out.println("\n=== Tokens (Compiled) ===");
+        for (Token token : tokens) {
+            System.out.println(token);
+        }
+    }
+
+    public void printStatistics() {
+        System.out.println("\n=== Statistics (Compiled) ===");
+        System.out.println("Total tokens: " + getTotalTokenCount());
+        System.out.println("Lines processed: " + line);
+        System.out.println("Comments removed: " + commentCount);
+        System.out.println("\nToken counts by type:");
+
+        Arrays.stream(TokenType.values())
+            .filter(type -> tokenCounts[type.ordinal()] > 0)
+            .sorted(Comparator.comparingInt((TokenType type) -> tokenCounts[type.ordinal()]).reversed())
+            .forEach(type ->
+                System.out.println("  " + type + ": " + tokenCounts[type.ordinal()]));
+    }
+}
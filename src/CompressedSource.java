@@ -0,0 +1,285 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads .lang sources straight out of .gz files and .zip archives, so
+ * compressed corpora can be scanned without unpacking them to disk.
+ *
+ * A .gz file is inflated on its own thread into a small bounded queue of
+ * chunks, so inflating and lexing overlap and memory use does not depend
+ * on the file size. Zip entries are independent, so scanEntries() scans
+ * several of them in parallel instead, each worker inflating its own.
+ */
+public class CompressedSource {
+    private static final String SOURCE_SUFFIX = ".lang";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Inflated chunks that may wait for the scanner
+    private static final int QUEUE_CHUNKS = 8;
+
+    /**
+     * Work done on one archive entry by scanEntries().
+     */
+    public interface EntryScan<R> {
+        R scan(int ordinal, String name, Reader source) throws IOException;
+    }
+
+    // A reader for a plain or .gz file
+    public static Reader open(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            InputStream raw = Files.newInputStream(file);
+            try {
+                return new InputStreamReader(new InflatingStream(new GZIPInputStream(raw, CHUNK_SIZE)));
+            } catch (IOException | RuntimeException e) {
+                // The GZIP header is read here, so a bad file fails before anything owns raw
+                try {
+                    raw.close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+        }
+        return new FileReader(file.toFile());
+    }
+
+    // Whole content of a plain or .gz file, with line endings normalized
+    // the way ManualScanner reads its input
+    public static String read(Path file) throws IOException {
+        return read(open(file));
+    }
+
+    static String read(Reader source) throws IOException {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(source)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+        }
+        return content.toString();
+    }
+
+    // Runs scan on every .lang entry of a zip archive using the given number
+    // of threads; results are in entry order
+    public static <R> List<R> scanEntries(Path archive, int threads, EntryScan<R> scan) throws IOException {
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            List<ZipEntry> entries = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (!entry.isDirectory() && entry.getName().endsWith(SOURCE_SUFFIX)) {
+                    entries.add(entry);
+                }
+            }
+
+            ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                List<Future<R>> results = new ArrayList<>();
+                for (int i = 0; i < entries.size(); i++) {
+                    int ordinal = i;
+                    ZipEntry entry = entries.get(i);
+                    results.add(workers.submit(() -> {
+                        try (Reader source = new InputStreamReader(zip.getInputStream(entry))) {
+                            return scan.scan(ordinal, entry.getName(), source);
+                        }
+                    }));
+                }
+                List<R> scanned = new ArrayList<>();
+                for (Future<R> result : results) {
+                    scanned.add(await(result));
+                }
+                return scanned;
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    private static <R> R await(Future<R> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Archive scan interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to scan archive entry", e.getCause());
+        }
+    }
+
+    /*
+     * Input stream filled by a background thread that reads (and so
+     * inflates) the wrapped stream ahead of the consumer. The queue is
+     * bounded, so the inflater waits when the scanner falls behind.
+     */
+    private static class InflatingStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final InputStream in;
+        private final ArrayBlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUE_CHUNKS);
+        private final Thread inflater;
+        private volatile IOException failure;
+        private volatile boolean closed;
+
+        private byte[] chunk;
+        private int chunkPos;
+
+        InflatingStream(InputStream in) {
+            this.in = in;
+            this.inflater = new Thread(this::fill, "inflater");
+            inflater.setDaemon(true);
+            inflater.start();
+        }
+
+        private void fill() {
+            try {
+                while (!closed) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = in.readNBytes(buffer, 0, buffer.length);
+                    if (length == 0) {
+                        break;
+                    }
+                    put(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // Closed by the consumer
+            } finally {
+                try {
+                    put(END);
+                } catch (InterruptedException e) {
+                    // Closed by the consumer
+                }
+            }
+        }
+
+        // Gives up once the consumer has closed the stream
+        private void put(byte[] buffer) throws InterruptedException {
+            while (!closed) {
+                if (chunks.offer(buffer, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        }
+
+        // Next chunk with unread bytes, or false at the end of the stream
+        private boolean nextChunk() throws IOException {
+            while (chunk == null || chunkPos == chunk.length) {
+                if (chunk == END) {
+                    return false;
+                }
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while inflating");
+                }
+                chunkPos = 0;
+                if (chunk == END && failure != null) {
+                    throw failure;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            return chunk[chunkPos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length - chunkPos);
+            System.arraycopy(chunk, chunkPos, buffer, offset, count);
+            chunkPos += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            inflater.interrupt();
+            try {
+                inflater.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            in.close();
+        }
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java CompressedSource [--threads=N] <file.lang.gz | archive.zip>");
+            return;
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            }
+        }
+
+        try {
+            Path input = Paths.get(args[args.length - 1]);
+            long start = System.nanoTime();
+            ScanSummary total = new ScanSummary();
+            if (input.getFileName().toString().endsWith(".zip")) {
+                for (ScanSummary entry : scanEntries(input, threads, CompressedSource::summarize)) {
+                    total.merge(entry);
+                }
+            } else {
+                try (Reader source = open(input)) {
+                    total.merge(summarize(0, input.toString(), source));
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            total.print();
+            System.out.printf("%nElapsed: %.1f ms%n", elapsed / 1e6);
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+
+    private static ScanSummary summarize(int ordinal, String name, Reader source) throws IOException {
+        ManualScanner scanner = new ManualScanner(read(source), ScanOptions.projection(TokenType.IDENTIFIER));
+        scanner.getErrorHandler().setEcho(false);
+        scanner.scan();
+        return ScanSummary.of(ordinal, name, scanner);
+    }
+}
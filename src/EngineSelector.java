@@ -0,0 +1,436 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks ManualScanner or Yylex for each input from costs measured on the
+ * running JVM.
+ *
+ * calibrate() times both engines on a small and a large sample and fits
+ * a fixed cost plus a cost per character to each, and separately times
+ * reading a Reader into a String, which ManualScanner needs and Yylex
+ * does not. Per input, the selector then estimates:
+ *
+ *   in memory   ManualScanner: scan; Yylex: setup + scan through a StringReader
+ *   file        ManualScanner: read + scan; Yylex: setup + scan
+ *   stream      as a file when the size is known
+ *
+ * and picks the cheaper one. ManualScanner is only considered when the
+ * copy of the input it holds (about MANUAL_BYTES_PER_CHAR per character
+ * while it is read) fits in the memory budget, and when the size of the
+ * input is known at all; compressed files and streams without a size hint
+ * always go to Yylex.
+ *
+ * Every decision is counted by engine and reason, together with the
+ * characters sent to each engine; see printMetrics().
+ *
+ * The two engines agree on well-formed input but not on malformed input:
+ * they recover from lexical errors differently, so tokens and errors can
+ * differ (tests/test4.lang gives 98 tokens and 28 errors from
+ * ManualScanner, 100 tokens and 49 errors from Yylex). Since the choice
+ * depends on input size, memory budget and the timings taken by
+ * calibrate(), the results for an input with lexical errors are not
+ * reproducible across runs or machines. Use one engine directly when
+ * exact tokens and errors matter.
+ */
+public class EngineSelector {
+    // Peak bytes per character while ManualScanner reads an input: the
+    // StringBuilder as it grows plus the final String
+    static final int MANUAL_BYTES_PER_CHAR = 4;
+
+    private static final int SMALL_SAMPLE_CHARS = 2 * 1024;
+    private static final int LARGE_SAMPLE_CHARS = 256 * 1024;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int CALIBRATION_ROUNDS = 15;
+
+    // One of each kind of token, repeated to build the calibration samples
+    private static final String SAMPLE_UNIT =
+        "## calibration sample\n"
+        + "function Compute(Count) start\n"
+        + "    declare Total = 0\n"
+        + "    declare Ratio = 1.25e-3\n"
+        + "    loop (Total < Count) start\n"
+        + "        condition (Total % 2 == 0 && Flag != false) start\n"
+        + "            output \"even value\\n\"\n"
+        + "        finish\n"
+        + "        Total = Total + 1\n"
+        + "        Letter = 'x'\n"
+        + "    finish\n"
+        + "    #* block comment\n"
+        + "       over two lines *#\n"
+        + "    return Total\n"
+        + "finish\n";
+
+    /**
+     * The scanners the selector chooses between.
+     */
+    public enum Engine {
+        MANUAL, JFLEX
+    }
+
+    /**
+     * Why an engine was chosen.
+     */
+    public enum Reason {
+        FASTER,        // estimated to be cheaper for this input
+        MEMORY_BUDGET, // ManualScanner's copy of the input would not fit
+        UNKNOWN_SIZE   // input size unknown, so only streaming is safe
+    }
+
+    /**
+     * Where an input comes from.
+     */
+    public enum SourceKind {
+        IN_MEMORY, FILE, STREAM
+    }
+
+    /**
+     * Fixed and per-character cost of one operation, in nanoseconds.
+     */
+    public static class Cost {
+        private final double fixedNanos;
+        private final double nanosPerChar;
+
+        Cost(double fixedNanos, double nanosPerChar) {
+            this.fixedNanos = fixedNanos;
+            this.nanosPerChar = nanosPerChar;
+        }
+
+        double estimate(long chars) {
+            return fixedNanos + nanosPerChar * chars;
+        }
+
+        public double getFixedNanos() {
+            return fixedNanos;
+        }
+
+        public double getNanosPerChar() {
+            return nanosPerChar;
+        }
+    }
+
+    // The three fitted costs from one calibrate() run
+    private static final class Calibration {
+        final Cost manualScan;
+        final Cost manualRead;
+        final Cost jflexScan;
+
+        Calibration(Cost manualScan, Cost manualRead, Cost jflexScan) {
+            this.manualScan = manualScan;
+            this.manualRead = manualRead;
+            this.jflexScan = jflexScan;
+        }
+    }
+
+    /**
+     * The engine picked for one input, with the estimates behind it.
+     * Estimates are -1 when an engine was not considered.
+     */
+    public static class Decision {
+        private final Engine engine;
+        private final Reason reason;
+        private final SourceKind kind;
+        private final long chars;
+        private final double manualNanos;
+        private final double jflexNanos;
+
+        Decision(Engine engine, Reason reason, SourceKind kind, long chars, double manualNanos, double jflexNanos) {
+            this.engine = engine;
+            this.reason = reason;
+            this.kind = kind;
+            this.chars = chars;
+            this.manualNanos = manualNanos;
+            this.jflexNanos = jflexNanos;
+        }
+
+        public Engine getEngine() {
+            return engine;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public SourceKind getKind() {
+            return kind;
+        }
+
+        @Override
+        public String toString() {
+            String size = chars < 0 ? "unknown size" : chars + " chars";
+            String estimates = manualNanos < 0 ? ""
+                : String.format(", estimated Manual %.1f us, JFlex %.1f us", manualNanos / 1e3, jflexNanos / 1e3);
+            return engine + " (" + reason + ") for " + kind + " input of " + size + estimates;
+        }
+    }
+
+    private final ScanOptions options;
+    private final long memoryBudget;
+
+    // Published whole, so a thread never sees some costs without the others
+    private volatile Calibration calibration;
+
+    private final LongAdder[][] decisions = new LongAdder[Engine.values().length][Reason.values().length];
+    private final LongAdder[] charsScanned = new LongAdder[Engine.values().length];
+
+    public EngineSelector() {
+        this(ScanOptions.defaults(), Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    // memoryBudget is the most memory ManualScanner's copy of one input may take
+    public EngineSelector(ScanOptions options, long memoryBudget) {
+        this.options = options;
+        this.memoryBudget = memoryBudget;
+        for (LongAdder[] counts : decisions) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+        for (int i = 0; i < charsScanned.length; i++) {
+            charsScanned[i] = new LongAdder();
+        }
+    }
+
+    // Measures both engines on this JVM; takes a few hundred milliseconds.
+    // Called on first use if not called before
+    public synchronized EngineSelector calibrate() {
+        String small = sample(SMALL_SAMPLE_CHARS);
+        String large = sample(LARGE_SAMPLE_CHARS);
+        ScanOptions quiet = ScanOptions.validateOnly();
+
+        Cost manualScan = fit(small, large, content -> {
+            ManualScanner scanner = new ManualScanner(content, quiet);
+            scanner.getErrorHandler().setEcho(false);
+            scanner.scan();
+        });
+        Cost manualRead = fit(small, large, content -> CompressedSource.read(new StringReader(content)));
+        Cost jflexScan = fit(small, large, content -> {
+            Yylex scanner = new Yylex(new StringReader(content), quiet);
+            scanner.getErrorHandler().setEcho(false);
+            scanner.scan();
+        });
+        calibration = new Calibration(manualScan, manualRead, jflexScan);
+        return this;
+    }
+
+    // Calibrates once on first use, however many threads get here together
+    private Calibration calibration() {
+        Calibration costs = calibration;
+        if (costs == null) {
+            synchronized (this) {
+                if (calibration == null) {
+                    calibrate();
+                }
+                costs = calibration;
+            }
+        }
+        return costs;
+    }
+
+    private interface Operation {
+        void run(String content) throws IOException;
+    }
+
+    // Best-of timings on both samples, as a line through the two points;
+    // both are run first so the measured code is JIT-compiled
+    private static Cost fit(String small, String large, Operation operation) {
+        time(small, operation, WARMUP_ROUNDS);
+        time(large, operation, WARMUP_ROUNDS);
+        double smallNanos = time(small, operation, CALIBRATION_ROUNDS);
+        double largeNanos = time(large, operation, CALIBRATION_ROUNDS);
+        double perChar = Math.max(0, (largeNanos - smallNanos) / (large.length() - small.length()));
+        return new Cost(Math.max(0, smallNanos - perChar * small.length()), perChar);
+    }
+
+    private static long time(String content, Operation operation, int rounds) {
+        long best = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                operation.run(content);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Calibration on an in-memory sample failed", e);
+        }
+        return best;
+    }
+
+    static String sample(int chars) {
+        StringBuilder sample = new StringBuilder(chars + SAMPLE_UNIT.length());
+        while (sample.length() < chars) {
+            sample.append(SAMPLE_UNIT);
+        }
+        return sample.toString();
+    }
+
+    // Picks an engine for an input of chars characters, -1 when unknown
+    public Decision choose(SourceKind kind, long chars) {
+        Calibration costs = calibration();
+        if (chars < 0) {
+            return new Decision(Engine.JFLEX, Reason.UNKNOWN_SIZE, kind, chars, -1, -1);
+        }
+        double manual = costs.manualScan.estimate(chars)
+            + (kind == SourceKind.IN_MEMORY ? 0 : costs.manualRead.estimate(chars));
+        double jflex = costs.jflexScan.estimate(chars);
+        // An in-memory input is already held, so only other sources need room for a copy
+        if (kind != SourceKind.IN_MEMORY && chars * MANUAL_BYTES_PER_CHAR > memoryBudget) {
+            return new Decision(Engine.JFLEX, Reason.MEMORY_BUDGET, kind, chars, manual, jflex);
+        }
+        Engine engine = manual <= jflex ? Engine.MANUAL : Engine.JFLEX;
+        return new Decision(engine, Reason.FASTER, kind, chars, manual, jflex);
+    }
+
+    // Scanners are returned with error echo off; errors are in their ErrorHandler
+
+    // Scans an input that is already in memory
+    public LexicalScanner scan(String content) throws IOException {
+        Decision decision = choose(SourceKind.IN_MEMORY, content.length());
+        return run(decision, content.length(), () -> new StringReader(content), content);
+    }
+
+    // Scans a plain or .gz file; the size of a compressed file is treated as unknown
+    public LexicalScanner scanFile(Path file) throws IOException {
+        boolean compressed = file.getFileName().toString().endsWith(".gz");
+        long chars = compressed ? -1 : Files.size(file);
+        return run(choose(SourceKind.FILE, chars), chars, () -> CompressedSource.open(file), null);
+    }
+
+    // Scans a stream of sizeHint characters (-1 if unknown); the stream is
+    // read to the end and closed
+    public LexicalScanner scanStream(Reader in, long sizeHint) throws IOException {
+        return run(choose(SourceKind.STREAM, sizeHint), sizeHint, () -> in, null);
+    }
+
+    private interface ReaderSupplier {
+        Reader open() throws IOException;
+    }
+
+    private LexicalScanner run(Decision decision, long chars, ReaderSupplier source, String content)
+            throws IOException {
+        record(decision, chars);
+        if (decision.getEngine() == Engine.MANUAL) {
+            // CompressedSource.read closes the reader
+            String input = content != null ? content : CompressedSource.read(source.open());
+            ManualScanner scanner = new ManualScanner(input, options);
+            scanner.getErrorHandler().setEcho(false);
+            scanner.scan();
+            return scanner;
+        }
+
+        try (Reader in = source.open()) {
+            Yylex scanner = new Yylex(in, options);
+            scanner.getErrorHandler().setEcho(false);
+            scanner.scan();
+            return scanner;
+        }
+    }
+
+    private void record(Decision decision, long chars) {
+        decisions[decision.getEngine().ordinal()][decision.getReason().ordinal()].increment();
+        if (chars > 0) {
+            charsScanned[decision.getEngine().ordinal()].add(chars);
+        }
+    }
+
+    public long getDecisionCount(Engine engine, Reason reason) {
+        return decisions[engine.ordinal()][reason.ordinal()].sum();
+    }
+
+    public long getDecisionCount(Engine engine) {
+        long total = 0;
+        for (LongAdder count : decisions[engine.ordinal()]) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    // Characters of inputs of known size sent to engine
+    public long getCharsScanned(Engine engine) {
+        return charsScanned[engine.ordinal()].sum();
+    }
+
+    // Costs are null until calibrated
+
+    public Cost getManualScanCost() {
+        Calibration costs = calibration;
+        return costs == null ? null : costs.manualScan;
+    }
+
+    public Cost getManualReadCost() {
+        Calibration costs = calibration;
+        return costs == null ? null : costs.manualRead;
+    }
+
+    public Cost getJFlexScanCost() {
+        Calibration costs = calibration;
+        return costs == null ? null : costs.jflexScan;
+    }
+
+    public void printMetrics() {
+        System.out.println("\n=== Engine Selection ===");
+        Calibration costs = calibration;
+        if (costs != null) {
+            System.out.println(String.format("Manual scan:  %8.1f us + %6.2f ns/char", costs.manualScan.fixedNanos / 1e3,
+                costs.manualScan.nanosPerChar));
+            System.out.println(String.format("Manual read:  %8.1f us + %6.2f ns/char", costs.manualRead.fixedNanos / 1e3,
+                costs.manualRead.nanosPerChar));
+            System.out.println(String.format("JFlex scan:   %8.1f us + %6.2f ns/char", costs.jflexScan.fixedNanos / 1e3,
+                costs.jflexScan.nanosPerChar));
+        }
+        System.out.println("Memory budget: " + memoryBudget / (1024 * 1024) + " MB");
+        for (Engine engine : Engine.values()) {
+            StringBuilder reasons = new StringBuilder();
+            for (Reason reason : Reason.values()) {
+                long count = getDecisionCount(engine, reason);
+                if (count > 0) {
+                    reasons.append(reasons.length() == 0 ? " (" : ", ").append(reason).append(": ").append(count);
+                }
+            }
+            if (reasons.length() > 0) {
+                reasons.append(")");
+            }
+            System.out.println("  " + engine + ": " + getDecisionCount(engine) + " inputs" + reasons
+                + ", " + getCharsScanned(engine) + " chars");
+        }
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+        int files = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--memory-budget=")) {
+                memoryBudget = Long.parseLong(arg.substring("--memory-budget=".length()));
+            } else {
+                files++;
+            }
+        }
+        if (files == 0) {
+            System.out.println("Usage: java EngineSelector [--memory-budget=BYTES] <input-file>...");
+            return;
+        }
+
+        EngineSelector selector = new EngineSelector(ScanOptions.validateOnly(), memoryBudget).calibrate();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    continue;
+                }
+                Path file = Paths.get(arg);
+                boolean compressed = file.getFileName().toString().endsWith(".gz");
+                Decision decision = selector.choose(SourceKind.FILE, compressed ? -1 : Files.size(file));
+                LexicalScanner scanner = selector.scanFile(file);
+                System.out.println(file + ": " + decision + " -> " + scanner.getTotalTokenCount() + " tokens, "
+                    + scanner.getErrorHandler().getErrorCount() + " errors");
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+        selector.printMetrics();
+    }
+}
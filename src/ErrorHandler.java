@@ -4,17 +4,26 @@ import java.util.List;
 public class ErrorHandler {
     private List<LexicalError> errors;
     private int errorCount;
+    private boolean echo;
 
     public ErrorHandler() {
         this.errors = new ArrayList<>();
         this.errorCount = 0;
+        this.echo = true;
+    }
+
+    // Whether errors are printed to System.err as they are reported
+    public void setEcho(boolean echo) {
+        this.echo = echo;
     }
 
     public void reportError(ErrorType type, int line, int column, String lexeme, String reason) {
         LexicalError error = new LexicalError(type, line, column, lexeme, reason);
         errors.add(error);
         errorCount++;
-        System.err.println(error);
+        if (echo) {
+            System.err.println(error);
+        }
     }
 
     public void reportInvalidCharacter(int line, int column, char ch) {
@@ -46,6 +55,14 @@ public class ErrorHandler {
                    lexeme, "Character literal not terminated");
     }
 
+    public void reportSyntaxError(int line, int column, String lexeme, String reason) {
+        reportError(ErrorType.SYNTAX_ERROR, line, column, lexeme, reason);
+    }
+
+    public void reportSemanticError(int line, int column, String lexeme, String reason) {
+        reportError(ErrorType.SEMANTIC_ERROR, line, column, lexeme, reason);
+    }
+
     public boolean hasErrors() {
         return errorCount > 0;
     }
@@ -74,6 +91,8 @@ public class ErrorHandler {
         long unclosedComms = errors.stream().filter(e -> e.type == ErrorType.UNCLOSED_COMMENT).count();
         long untermStrs = errors.stream().filter(e -> e.type == ErrorType.UNTERMINATED_STRING).count();
         long untermChars = errors.stream().filter(e -> e.type == ErrorType.UNTERMINATED_CHAR).count();
+        long syntaxErrors = errors.stream().filter(e -> e.type == ErrorType.SYNTAX_ERROR).count();
+        long semanticErrors = errors.stream().filter(e -> e.type == ErrorType.SEMANTIC_ERROR).count();
         
         if (invalidChars > 0) System.out.println("  Invalid characters: " + invalidChars);
         if (malformedLits > 0) System.out.println("  Malformed literals: " + malformedLits);
@@ -81,6 +100,8 @@ public class ErrorHandler {
         if (unclosedComms > 0) System.out.println("  Unclosed comments: " + unclosedComms);
         if (untermStrs > 0) System.out.println("  Unterminated strings: " + untermStrs);
         if (untermChars > 0) System.out.println("  Unterminated chars: " + untermChars);
+        if (syntaxErrors > 0) System.out.println("  Syntax errors: " + syntaxErrors);
+        if (semanticErrors > 0) System.out.println("  Semantic errors: " + semanticErrors);
     }
 
     public void clear() {
@@ -106,7 +127,9 @@ public class ErrorHandler {
 
         @Override
         public String toString() {
-            return String.format("Lexical Error [%s] at Line: %d, Col: %d - Lexeme: \"%s\" - Reason: %s",
+            return String.format("%s [%s] at Line: %d, Col: %d - Lexeme: \"%s\" - Reason: %s",
+                               type == ErrorType.SYNTAX_ERROR ? "Syntax Error"
+                                   : type == ErrorType.SEMANTIC_ERROR ? "Semantic Error" : "Lexical Error",
                                type, line, column, lexeme, reason);
         }
     }
@@ -118,6 +141,8 @@ public class ErrorHandler {
         INVALID_IDENTIFIER,
         UNCLOSED_COMMENT,
         UNTERMINATED_STRING,
-        UNTERMINATED_CHAR
+        UNTERMINATED_CHAR,
+        SYNTAX_ERROR,
+        SEMANTIC_ERROR
     }
 }
@@ -0,0 +1,555 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Workspace-wide inverted index from identifier to the files and positions
+ * that use it, persisted under <root>/.langindex.
+ *
+ * The index is a list of immutable IndexSegments named by a manifest file.
+ * Files are scanned in parallel and written out in batches of segments;
+ * an incremental update writes one more segment holding the new versions
+ * of changed files and deletion markers for removed ones. A newer entry
+ * for a path hides every older one, so queries never see stale positions.
+ * Once incremental segments pile up they are merged into one.
+ */
+public class IdentifierIndex {
+    public static final String INDEX_DIRECTORY = ".langindex";
+    private static final String MANIFEST = "segments";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String SOURCE_SUFFIX = ".lang";
+
+    private static final int SEGMENT_FILE_LIMIT = 4096;
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Path root;
+    private final Path indexDir;
+    private final int threads;
+    private int nextSegmentId;
+
+    // Replaced as a whole on every update, so queries need no locking
+    private volatile Snapshot snapshot;
+
+    private IdentifierIndex(Path root, int threads) {
+        this.root = root.toAbsolutePath().normalize();
+        this.indexDir = this.root.resolve(INDEX_DIRECTORY);
+        this.threads = threads;
+        this.snapshot = new Snapshot(Collections.emptyList());
+    }
+
+    // Opens the index under root, creating an empty one if there is none
+    public static IdentifierIndex open(Path root) throws IOException {
+        return open(root, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static IdentifierIndex open(Path root, int threads) throws IOException {
+        IdentifierIndex index = new IdentifierIndex(root, threads);
+        index.load();
+        return index;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int getFileCount() {
+        return snapshot.files.size();
+    }
+
+    public int getSegmentCount() {
+        return snapshot.segments.size();
+    }
+
+    // Queries
+
+    public static class Occurrence implements Comparable<Occurrence> {
+        private final String file;
+        private final int line;
+        private final int column;
+
+        Occurrence(String file, int line, int column) {
+            this.file = file;
+            this.line = line;
+            this.column = column;
+        }
+
+        // Path relative to the index root, with '/' separators
+        public String getFile() {
+            return file;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public int compareTo(Occurrence other) {
+            int cmp = file.compareTo(other.file);
+            if (cmp == 0) cmp = Integer.compare(line, other.line);
+            if (cmp == 0) cmp = Integer.compare(column, other.column);
+            return cmp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s Line: %d, Col: %d", file, line, column);
+        }
+    }
+
+    // Every use of the identifier across the workspace, ordered by file and position
+    public List<Occurrence> findReferences(String identifier) {
+        Snapshot current = snapshot;
+        List<Occurrence> result = new ArrayList<>();
+        for (int s = 0; s < current.segments.size(); s++) {
+            IndexSegment segment = current.segments.get(s);
+            if (!segment.mightContain(identifier)) {
+                continue;
+            }
+            int term = segment.findTerm(identifier);
+            if (term < 0) {
+                continue;
+            }
+            boolean[] live = current.live.get(s);
+            int count = segment.getPostingCount(term);
+            for (int i = 0; i < count; i++) {
+                int file = segment.getPostingFile(term, i);
+                if (live[file]) {
+                    result.add(new Occurrence(segment.getFilePath(file),
+                        segment.getPostingLine(term, i), segment.getPostingColumn(term, i)));
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    // Files that use the identifier, for impact analysis
+    public Set<String> findFiles(String identifier) {
+        Set<String> files = new TreeSet<>();
+        for (Occurrence occurrence : findReferences(identifier)) {
+            files.add(occurrence.getFile());
+        }
+        return files;
+    }
+
+    // Bloom filter check: false means the file certainly does not use the identifier
+    public boolean mightUse(Path file, String identifier) {
+        Snapshot current = snapshot;
+        int[] location = current.files.get(relativize(file));
+        if (location == null) {
+            return false;
+        }
+        return current.segments.get(location[0]).fileMightContain(location[1], identifier);
+    }
+
+    // Updating
+
+    // Rescans every source file under root and replaces the whole index
+    public synchronized void rebuild() throws IOException {
+        List<Path> sources = listSources();
+        List<String> obsolete = segmentNames(snapshot.segments);
+        List<IndexSegment> segments = writeSegments(sources, Collections.emptyList());
+        install(segments, obsolete);
+    }
+
+    // Brings the index up to date with the files on disk, rescanning only
+    // files whose size or modification time changed
+    public synchronized void refresh() throws IOException {
+        Snapshot current = snapshot;
+        List<Path> changed = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        for (Path source : listSources()) {
+            String name = relativize(source);
+            seen.add(name);
+            int[] location = current.files.get(name);
+            if (location == null) {
+                changed.add(source);
+                continue;
+            }
+            IndexSegment segment = current.segments.get(location[0]);
+            if (segment.getFileModified(location[1]) != Files.getLastModifiedTime(source).toMillis() ||
+                segment.getFileSize(location[1]) != Files.size(source)) {
+                changed.add(source);
+            }
+        }
+        for (String name : current.files.keySet()) {
+            if (!seen.contains(name)) {
+                changed.add(root.resolve(name));
+            }
+        }
+        update(changed);
+    }
+
+    /**
+     * Reindexes the given files. A path that no longer exists is removed
+     * from the index; this is what a file watcher calls with its batch of
+     * changed paths.
+     */
+    public synchronized void update(Collection<Path> files) throws IOException {
+        List<Path> existing = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Path file : files) {
+            if (Files.isRegularFile(file)) {
+                existing.add(file);
+            } else if (snapshot.files.containsKey(relativize(file))) {
+                deleted.add(relativize(file));
+            }
+        }
+        if (existing.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        List<IndexSegment> segments = new ArrayList<>(snapshot.segments);
+        segments.addAll(writeSegments(existing, deleted));
+        install(segments, Collections.emptyList());
+
+        if (snapshot.segments.size() > MAX_SEGMENTS) {
+            compact();
+        }
+    }
+
+    /*
+     * Merges the small segments left by incremental updates into one.
+     * Full segments from a rebuild are kept; the merged segment goes last,
+     * which is safe because it only holds entries that are currently live.
+     */
+    private void compact() throws IOException {
+        Snapshot current = snapshot;
+        List<IndexSegment> kept = new ArrayList<>();
+        List<Integer> merged = new ArrayList<>();
+        for (int s = 0; s < current.segments.size(); s++) {
+            IndexSegment segment = current.segments.get(s);
+            if (segment.getFileCount() < SEGMENT_FILE_LIMIT) {
+                merged.add(s);
+            } else if (isStillNeeded(current, s)) {
+                kept.add(segment);
+            }
+        }
+        if (merged.size() < 2) {
+            return;
+        }
+
+        Map<String, IndexSegment.FileEntry> entries = new HashMap<>();
+        List<IndexSegment.FileEntry> files = new ArrayList<>();
+        Set<String> keptPaths = new LinkedHashSet<>();
+        for (IndexSegment segment : kept) {
+            for (int file = 0; file < segment.getFileCount(); file++) {
+                keptPaths.add(segment.getFilePath(file));
+            }
+        }
+        for (int s : merged) {
+            IndexSegment segment = current.segments.get(s);
+            boolean[] live = current.live.get(s);
+            for (int file = 0; file < segment.getFileCount(); file++) {
+                String path = segment.getFilePath(file);
+                if (live[file]) {
+                    IndexSegment.FileEntry entry = new IndexSegment.FileEntry(path,
+                        segment.getFileModified(file), segment.getFileSize(file));
+                    entries.put(path, entry);
+                    files.add(entry);
+                } else if (segment.isFileDeleted(file) && !current.files.containsKey(path) &&
+                           keptPaths.contains(path) && !entries.containsKey(path)) {
+                    // Still needed to hide the path in a kept segment
+                    IndexSegment.FileEntry entry = IndexSegment.FileEntry.deleted(path);
+                    entries.put(path, entry);
+                    files.add(entry);
+                }
+            }
+            for (int term = 0; term < segment.getTermCount(); term++) {
+                String name = null;
+                int count = segment.getPostingCount(term);
+                for (int i = 0; i < count; i++) {
+                    int file = segment.getPostingFile(term, i);
+                    if (live[file]) {
+                        if (name == null) {
+                            name = segment.getTerm(term);
+                        }
+                        entries.get(segment.getFilePath(file)).addPosition(name,
+                            segment.getPostingLine(term, i), segment.getPostingColumn(term, i));
+                    }
+                }
+            }
+        }
+
+        List<IndexSegment> segments = new ArrayList<>(kept);
+        if (!files.isEmpty()) {
+            segments.add(writeSegment(files));
+        }
+        List<String> obsolete = new ArrayList<>();
+        for (IndexSegment segment : current.segments) {
+            if (!segments.contains(segment)) {
+                obsolete.add(segment.getPath().getFileName().toString());
+            }
+        }
+        install(segments, obsolete);
+    }
+
+    // A segment can go once it has no live files and no deletion markers
+    private static boolean isStillNeeded(Snapshot snapshot, int s) {
+        IndexSegment segment = snapshot.segments.get(s);
+        boolean[] live = snapshot.live.get(s);
+        for (int file = 0; file < live.length; file++) {
+            if (live[file] || segment.isFileDeleted(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Scans the files in parallel and writes them, SEGMENT_FILE_LIMIT at a time
+    private List<IndexSegment> writeSegments(List<Path> sources, List<String> deleted) throws IOException {
+        Files.createDirectories(indexDir);
+        List<IndexSegment> segments = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<IndexSegment.FileEntry> batch = new ArrayList<>();
+            for (String name : deleted) {
+                batch.add(IndexSegment.FileEntry.deleted(name));
+            }
+            for (int start = 0; start < sources.size(); start += SEGMENT_FILE_LIMIT) {
+                List<Future<IndexSegment.FileEntry>> scans = new ArrayList<>();
+                for (Path source : sources.subList(start, Math.min(sources.size(), start + SEGMENT_FILE_LIMIT))) {
+                    scans.add(pool.submit(() -> scanFile(source)));
+                }
+                for (Future<IndexSegment.FileEntry> scan : scans) {
+                    IndexSegment.FileEntry entry = await(scan);
+                    if (entry != null) {
+                        batch.add(entry);
+                    }
+                }
+                segments.add(writeSegment(batch));
+                batch = new ArrayList<>();
+            }
+            if (!batch.isEmpty()) {
+                segments.add(writeSegment(batch));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return segments;
+    }
+
+    private IndexSegment.FileEntry scanFile(Path source) throws IOException {
+        long modified = Files.getLastModifiedTime(source).toMillis();
+        long size = Files.size(source);
+        String content = new String(Files.readAllBytes(source));
+
+        ManualScanner scanner = new ManualScanner(content, ScanOptions.projection(TokenType.IDENTIFIER));
+        scanner.getErrorHandler().setEcho(false);
+        scanner.scan();
+
+        IndexSegment.FileEntry entry = new IndexSegment.FileEntry(relativize(source), modified, size);
+        for (Token token : scanner.getTokens()) {
+            entry.addPosition(token.getLexeme(), token.getLine(), token.getColumn());
+        }
+        return entry;
+    }
+
+    private static IndexSegment.FileEntry await(Future<IndexSegment.FileEntry> scan) throws IOException {
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing interrupted", e);
+        } catch (ExecutionException e) {
+            // A file deleted between listing and scanning is simply skipped
+            if (e.getCause() instanceof java.nio.file.NoSuchFileException) {
+                return null;
+            }
+            throw new IOException("Failed to index file", e.getCause());
+        }
+    }
+
+    private IndexSegment writeSegment(List<IndexSegment.FileEntry> files) throws IOException {
+        Path target = indexDir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+        Path temp = indexDir.resolve(target.getFileName() + ".tmp");
+        IndexSegment.write(temp, files);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        return IndexSegment.open(target);
+    }
+
+    // Commits a new segment list: the manifest is replaced atomically, then
+    // segments no longer listed are deleted
+    private void install(List<IndexSegment> segments, List<String> obsolete) throws IOException {
+        Path manifest = indexDir.resolve(MANIFEST);
+        Path temp = indexDir.resolve(MANIFEST + ".tmp");
+        Files.write(temp, segmentNames(segments), StandardCharsets.UTF_8);
+        try {
+            Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING);
+        }
+        snapshot = new Snapshot(segments);
+        for (String name : obsolete) {
+            deleteQuietly(indexDir.resolve(name));
+        }
+    }
+
+    private void load() throws IOException {
+        Path manifest = indexDir.resolve(MANIFEST);
+        List<IndexSegment> segments = new ArrayList<>();
+        Set<String> listed = new LinkedHashSet<>();
+        if (Files.exists(manifest)) {
+            for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (!name.isEmpty()) {
+                    listed.add(name);
+                    segments.add(IndexSegment.open(indexDir.resolve(name)));
+                }
+            }
+        }
+        snapshot = new Snapshot(segments);
+
+        // Pick up after the highest segment on disk and drop any left over
+        // from an interrupted update or an undeletable mapping
+        if (Files.isDirectory(indexDir)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(indexDir, SEGMENT_PREFIX + "*")) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    int end = name.indexOf('.');
+                    try {
+                        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), end < 0 ? name.length() : end));
+                        nextSegmentId = Math.max(nextSegmentId, id + 1);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if (!listed.contains(name)) {
+                        deleteQuietly(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private List<Path> listSources() throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk
+                .filter(p -> !p.startsWith(indexDir))
+                .filter(p -> p.getFileName().toString().endsWith(SOURCE_SUFFIX))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private String relativize(Path file) {
+        Path relative = root.relativize(file.toAbsolutePath().normalize());
+        return relative.toString().replace('\\', '/');
+    }
+
+    private static List<String> segmentNames(List<IndexSegment> segments) {
+        List<String> names = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            names.add(segment.getPath().getFileName().toString());
+        }
+        return names;
+    }
+
+    // On some platforms a mapped file cannot be deleted yet; load() retries later
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Left for the next load()
+        }
+    }
+
+    /*
+     * Which file entries are live. Segments are visited oldest first, so a
+     * later entry for the same path (new version or deletion) hides the
+     * earlier one.
+     */
+    private static class Snapshot {
+        final List<IndexSegment> segments;
+        final List<boolean[]> live;
+        // Relative path -> {segment, file} of the live entry
+        final Map<String, int[]> files;
+
+        Snapshot(List<IndexSegment> segments) {
+            this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+            this.live = new ArrayList<>();
+            this.files = new HashMap<>();
+            for (int s = 0; s < segments.size(); s++) {
+                IndexSegment segment = segments.get(s);
+                boolean[] flags = new boolean[segment.getFileCount()];
+                live.add(flags);
+                for (int file = 0; file < flags.length; file++) {
+                    int[] previous = files.remove(segment.getFilePath(file));
+                    if (previous != null) {
+                        live.get(previous[0])[previous[1]] = false;
+                    }
+                    if (!segment.isFileDeleted(file)) {
+                        flags[file] = true;
+                        files.put(segment.getFilePath(file), new int[] {s, file});
+                    }
+                }
+            }
+        }
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java IdentifierIndex <root> build|refresh");
+            System.out.println("       java IdentifierIndex <root> find|files <identifier>");
+            return;
+        }
+
+        try {
+            IdentifierIndex index = IdentifierIndex.open(Paths.get(args[0]));
+            String command = args[1];
+            long start = System.nanoTime();
+
+            if (command.equals("build") || command.equals("refresh")) {
+                if (command.equals("build")) {
+                    index.rebuild();
+                } else {
+                    index.refresh();
+                }
+                System.out.println("Indexed files: " + index.getFileCount());
+                System.out.println("Segments: " + index.getSegmentCount());
+            } else if ((command.equals("find") || command.equals("files")) && args.length > 2) {
+                if (command.equals("find")) {
+                    for (Occurrence occurrence : index.findReferences(args[2])) {
+                        System.out.println(occurrence);
+                    }
+                } else {
+                    for (String file : index.findFiles(args[2])) {
+                        System.out.println(file);
+                    }
+                }
+            } else {
+                System.out.println("Unknown command: " + command);
+                return;
+            }
+            System.out.printf("Time: %.3f ms%n", (System.nanoTime() - start) / 1e6);
+
+        } catch (IOException e) {
+            System.err.println("Index error: " + e.getMessage());
+        }
+    }
+}
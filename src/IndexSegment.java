@@ -0,0 +1,399 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One immutable, memory-mapped piece of an IdentifierIndex.
+ *
+ * File layout (big-endian):
+ *   header    magic, version, file count, term count, segment bloom size,
+ *             offsets of the term table, term bytes and postings,
+ *             then the segment bloom filter over all terms
+ *   files     per file: path, modified time, size, deleted flag, bloom filter
+ *   terms     fixed-width entries (term start, term length, postings start)
+ *             sorted by term, so a lookup is a binary search over the mapping
+ *   postings  per term: count, then (file, line, column) triples by file
+ *
+ * A file entry with the deleted flag set has no postings; it records that
+ * the file was removed after an older segment indexed it.
+ */
+public class IndexSegment {
+    private static final int MAGIC = 0x434c4958; // "CLIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int TERM_ENTRY_SIZE = 12;
+    private static final int POSTING_SIZE = 12;
+
+    private static final int BLOOM_BITS_PER_TERM = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int termCount;
+    private final int termTableOffset;
+    private final int termBytesOffset;
+    private final int postingsOffset;
+    private final long[] segmentBloom;
+
+    private final String[] filePaths;
+    private final long[] fileModified;
+    private final long[] fileSizes;
+    private final boolean[] fileDeleted;
+    private final long[][] fileBlooms;
+
+    private IndexSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an index segment: " + path);
+        }
+        int fileCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        int segmentBloomWords = buffer.getInt(16);
+        this.termTableOffset = buffer.getInt(20);
+        this.termBytesOffset = buffer.getInt(24);
+        this.postingsOffset = buffer.getInt(28);
+
+        ByteBuffer in = buffer.duplicate();
+        in.position(HEADER_SIZE);
+        this.segmentBloom = readLongs(in, segmentBloomWords);
+
+        // The file table is small next to the postings, so it lives on the heap
+        this.filePaths = new String[fileCount];
+        this.fileModified = new long[fileCount];
+        this.fileSizes = new long[fileCount];
+        this.fileDeleted = new boolean[fileCount];
+        this.fileBlooms = new long[fileCount][];
+        for (int i = 0; i < fileCount; i++) {
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            filePaths[i] = new String(name, StandardCharsets.UTF_8);
+            fileModified[i] = in.getLong();
+            fileSizes[i] = in.getLong();
+            fileDeleted[i] = in.get() != 0;
+            fileBlooms[i] = readLongs(in, in.getInt());
+        }
+    }
+
+    public static IndexSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return new IndexSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getFileCount() {
+        return filePaths.length;
+    }
+
+    public String getFilePath(int file) {
+        return filePaths[file];
+    }
+
+    public long getFileModified(int file) {
+        return fileModified[file];
+    }
+
+    public long getFileSize(int file) {
+        return fileSizes[file];
+    }
+
+    public boolean isFileDeleted(int file) {
+        return fileDeleted[file];
+    }
+
+    // False means the term occurs nowhere in this segment
+    public boolean mightContain(String term) {
+        return bloomMightContain(segmentBloom, term);
+    }
+
+    // False means the file does not use the term
+    public boolean fileMightContain(int file, String term) {
+        return !fileDeleted[file] && bloomMightContain(fileBlooms[file], term);
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    // Returns the term's ordinal, or -1 if it is not in this segment
+    public int findTerm(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTerm(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String getTerm(int term) {
+        int entry = termTableOffset + term * TERM_ENTRY_SIZE;
+        byte[] bytes = new byte[buffer.getInt(entry + 4)];
+        ByteBuffer in = buffer.duplicate();
+        in.position(termBytesOffset + buffer.getInt(entry));
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getPostingCount(int term) {
+        return buffer.getInt(postingsStart(term));
+    }
+
+    public int getPostingFile(int term, int posting) {
+        return buffer.getInt(postingsStart(term) + 4 + posting * POSTING_SIZE);
+    }
+
+    public int getPostingLine(int term, int posting) {
+        return buffer.getInt(postingsStart(term) + 8 + posting * POSTING_SIZE);
+    }
+
+    public int getPostingColumn(int term, int posting) {
+        return buffer.getInt(postingsStart(term) + 12 + posting * POSTING_SIZE);
+    }
+
+    private int postingsStart(int term) {
+        return postingsOffset + buffer.getInt(termTableOffset + term * TERM_ENTRY_SIZE + 8);
+    }
+
+    // Unsigned byte comparison, which for UTF-8 matches String.compareTo on identifiers
+    private int compareTerm(int term, byte[] key) {
+        int entry = termTableOffset + term * TERM_ENTRY_SIZE;
+        int start = termBytesOffset + buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static long[] readLongs(ByteBuffer in, int count) {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.getLong();
+        }
+        return values;
+    }
+
+    // Writing
+
+    /**
+     * Identifier positions of one file, as collected by the indexer before
+     * they are written into a segment.
+     */
+    public static class FileEntry {
+        private final String path;
+        private final long modified;
+        private final long size;
+        private final boolean deleted;
+        private final Map<String, Positions> positions = new HashMap<>();
+
+        public FileEntry(String path, long modified, long size) {
+            this(path, modified, size, false);
+        }
+
+        private FileEntry(String path, long modified, long size, boolean deleted) {
+            this.path = path;
+            this.modified = modified;
+            this.size = size;
+            this.deleted = deleted;
+        }
+
+        // Marker for a file removed since an older segment was written
+        public static FileEntry deleted(String path) {
+            return new FileEntry(path, 0, 0, true);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        public void addPosition(String term, int line, int column) {
+            positions.computeIfAbsent(term, k -> new Positions()).add(line, column);
+        }
+    }
+
+    // Growable (line, column) pairs
+    private static class Positions {
+        int[] pairs = new int[4];
+        int count;
+
+        void add(int line, int column) {
+            if (count * 2 == pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            }
+            pairs[count * 2] = line;
+            pairs[count * 2 + 1] = column;
+            count++;
+        }
+    }
+
+    public static void write(Path target, List<FileEntry> files) throws IOException {
+        // Group positions by term; files are visited in order, so each
+        // term's postings come out sorted by file
+        Map<String, List<int[]>> postings = new HashMap<>();
+        long[][] fileBlooms = new long[files.size()][];
+        int filesSize = 0;
+        for (int file = 0; file < files.size(); file++) {
+            FileEntry entry = files.get(file);
+            long[] bloom = new long[bloomWords(entry.positions.size())];
+            for (Map.Entry<String, Positions> term : entry.positions.entrySet()) {
+                Positions positions = term.getValue();
+                List<int[]> list = postings.computeIfAbsent(term.getKey(), k -> new ArrayList<>());
+                for (int i = 0; i < positions.count; i++) {
+                    list.add(new int[] {file, positions.pairs[i * 2], positions.pairs[i * 2 + 1]});
+                }
+                bloomAdd(bloom, term.getKey());
+            }
+            fileBlooms[file] = bloom;
+            filesSize += 4 + entry.path.getBytes(StandardCharsets.UTF_8).length + 8 + 8 + 1 + 4 + bloom.length * 8;
+        }
+
+        String[] terms = postings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        byte[][] termBytes = new byte[terms.length][];
+        long[] segmentBloom = new long[bloomWords(terms.length)];
+        long termBytesSize = 0;
+        for (int i = 0; i < terms.length; i++) {
+            termBytes[i] = terms[i].getBytes(StandardCharsets.UTF_8);
+            termBytesSize += termBytes[i].length;
+            bloomAdd(segmentBloom, terms[i]);
+        }
+
+        long termTableOffset = HEADER_SIZE + segmentBloom.length * 8L + filesSize;
+        long termBytesOffset = termTableOffset + (long) terms.length * TERM_ENTRY_SIZE;
+        long postingsOffset = termBytesOffset + termBytesSize;
+        long totalSize = postingsOffset;
+        for (String term : terms) {
+            totalSize += 4 + (long) postings.get(term).size() * POSTING_SIZE;
+        }
+        if (totalSize > Integer.MAX_VALUE) {
+            throw new IOException("Segment too large, write fewer files per segment: " + target);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(files.size());
+            out.writeInt(terms.length);
+            out.writeInt(segmentBloom.length);
+            out.writeInt((int) termTableOffset);
+            out.writeInt((int) termBytesOffset);
+            out.writeInt((int) postingsOffset);
+            writeLongs(out, segmentBloom);
+
+            for (int file = 0; file < files.size(); file++) {
+                FileEntry entry = files.get(file);
+                byte[] name = entry.path.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.size);
+                out.writeByte(entry.deleted ? 1 : 0);
+                out.writeInt(fileBlooms[file].length);
+                writeLongs(out, fileBlooms[file]);
+            }
+
+            int termStart = 0;
+            int postingsStart = 0;
+            for (int i = 0; i < terms.length; i++) {
+                out.writeInt(termStart);
+                out.writeInt(termBytes[i].length);
+                out.writeInt(postingsStart);
+                termStart += termBytes[i].length;
+                postingsStart += 4 + postings.get(terms[i]).size() * POSTING_SIZE;
+            }
+            for (byte[] bytes : termBytes) {
+                out.write(bytes);
+            }
+            for (String term : terms) {
+                List<int[]> list = postings.get(term);
+                out.writeInt(list.size());
+                for (int[] posting : list) {
+                    out.writeInt(posting[0]);
+                    out.writeInt(posting[1]);
+                    out.writeInt(posting[2]);
+                }
+            }
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    // Bloom filters use double hashing over a mixed String.hashCode
+
+    private static int bloomWords(int terms) {
+        return Math.max(1, (terms * BLOOM_BITS_PER_TERM + 63) / 64);
+    }
+
+    private static void bloomAdd(long[] bloom, String term) {
+        long bits = bloom.length * 64L;
+        int h1 = mix(term.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean bloomMightContain(long[] bloom, String term) {
+        long bits = bloom.length * 64L;
+        int h1 = mix(term.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bits;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Murmur3 finalizer
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,1465 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a CustomLang program ahead of time to a JVM class, so its loops
+ * run as HotSpot-compiled code instead of being interpreted.
+ *
+ * The program is scanned by ManualScanner, parsed, and checked by
+ * BytecodeCompiler, which reports the same semantic errors as for the VM.
+ * It is then translated to Java source and compiled in memory with the
+ * system Java compiler, as ScannerCompiler does. Every function becomes a
+ * static method and every declared variable a local, except globals used
+ * by functions, which become static fields.
+ *
+ * Variables, parameters and return values are typed by inference: each
+ * gets the join of the types of all values stored in it, repeated until
+ * nothing changes. One type throughout means a primitive long, double,
+ * boolean or char (or a String or array); mixed types fall back to Object
+ * and the Support helpers, which follow BytecodeVM's rules, so programs
+ * behave the same either way. Array elements are always Objects, null
+ * being nil as in the VM.
+ *
+ * The class can be written to a .class file, runnable with this class and
+ * BytecodeVM on the class path, or loaded in-process as a hidden class.
+ */
+public class JvmCompiler {
+    private static final String SUPPORT = "JvmCompiler.Support";
+
+    // Class names the generated code uses, which a variable must not hide
+    private static final Set<String> RESERVED = Set.of("Math", "Double", "Long", "Boolean", "Character",
+        "String", "Object", "JvmCompiler", "BytecodeVM");
+
+    /**
+     * Static type of a variable or expression. UNKNOWN is the start of
+     * inference; DYN is any value, held as an Object.
+     */
+    enum Type {
+        UNKNOWN("Object"), LONG("long"), DOUBLE("double"), BOOL("boolean"), CHAR("char"),
+        STRING("String"), ARRAY("Object[]"), DYN("Object");
+
+        final String javaType;
+
+        Type(String javaType) {
+            this.javaType = javaType;
+        }
+
+        Type join(Type other) {
+            if (this == other || other == UNKNOWN) {
+                return this;
+            }
+            return this == UNKNOWN ? other : DYN;
+        }
+
+        boolean isIntegral() {
+            return this == LONG || this == CHAR;
+        }
+
+        boolean isNumber() {
+            return isIntegral() || this == DOUBLE;
+        }
+    }
+
+    // A Java expression and its static type
+    private static final class Value {
+        final String code;
+        final Type type;
+
+        Value(String code, Type type) {
+            this.code = code;
+            this.type = type;
+        }
+    }
+
+    private final SyntaxTree tree;
+    private final String className;
+
+    // Name resolution: each use of a variable maps to its declaring node (a
+    // DECLARE, DECLARE_ARRAY or parameter IDENTIFIER), each call to its
+    // FUNCTION node
+    private final Map<String, Integer> functions = new HashMap<>();
+    private final List<Integer> functionNodes = new ArrayList<>();
+    private final Map<String, Integer> globals = new HashMap<>();
+    private final Map<Integer, Integer> declarations = new HashMap<>();
+    private final Map<Integer, Integer> calls = new HashMap<>();
+    private final Set<Integer> fields = new HashSet<>();
+
+    // Inferred types by declaring node; a FUNCTION node's is its return type
+    private final Map<Integer, Type> types = new HashMap<>();
+    private boolean changed;
+    private int function = SyntaxTree.NONE; // being inferred or generated
+
+    private final Map<Integer, String> javaNames = new HashMap<>();
+    private final Map<String, Integer> nameCounts = new HashMap<>();
+    private final StringBuilder src = new StringBuilder();
+    private int indent;
+
+    private JvmCompiler(SyntaxTree tree, String className) {
+        this.tree = tree;
+        this.className = className;
+    }
+
+    // Java source of the program as class className; null if errors were
+    // reported
+    public static String generateSource(String source, String className, ErrorHandler errors) {
+        SyntaxTree tree = BytecodeCompiler.parse(source, errors);
+        if (tree == null || BytecodeCompiler.compile(tree, errors) == null) {
+            return null;
+        }
+        return new JvmCompiler(tree, className).generate();
+    }
+
+    // Class file bytes; null if errors were reported
+    public static byte[] compile(String source, String className, ErrorHandler errors) {
+        String java = generateSource(source, className, errors);
+        return java == null ? null : ScannerCompiler.compile(className, java);
+    }
+
+    // Defines the class as a hidden class and returns its
+    // run(Writer, Reader) method
+    public static MethodHandle define(byte[] classFile) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return lookup.findStatic(lookup.lookupClass(), "run",
+                MethodType.methodType(void.class, Writer.class, Reader.class));
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Cannot define compiled program", e);
+        }
+    }
+
+    // Runs a method returned by define; RuntimeErrors pass through
+    public static void run(MethodHandle program, Writer out, Reader in) {
+        try {
+            program.invokeExact(out, in);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String generate() {
+        int program = tree.getRoot();
+        int block = program == SyntaxTree.NONE ? SyntaxTree.NONE : tree.getFirstChild(program);
+        collectFunctions(program);
+        if (block != SyntaxTree.NONE) {
+            for (int statement : children(block)) {
+                SyntaxTree.NodeKind kind = tree.getKind(statement);
+                if ((kind == SyntaxTree.NodeKind.DECLARE || kind == SyntaxTree.NodeKind.DECLARE_ARRAY)
+                        && !globals.containsKey(name(statement))) {
+                    globals.put(name(statement), statement);
+                }
+            }
+        }
+
+        Deque<Map<String, Integer>> scopes = new ArrayDeque<>();
+        if (block != SyntaxTree.NONE) {
+            resolveBlock(block, scopes, false);
+        }
+        for (int node : functionNodes) {
+            scopes.push(new HashMap<>());
+            for (int parameter : children(tree.getChild(node, 0))) {
+                scopes.peek().put(name(parameter), parameter);
+            }
+            resolveBlock(tree.getChild(node, 1), scopes, true);
+            scopes.pop();
+        }
+
+        inferTypes(block);
+
+        src.append("// Generated by JvmCompiler\n");
+        src.append("public final class ").append(className).append(" {\n");
+        src.append("    private static JvmCompiler.Console io;\n");
+        for (int node : fields) {
+            src.append("    private static ").append(type(node).javaType).append(' ').append(javaName(node))
+                .append(";\n");
+        }
+        src.append("\n");
+        src.append("    public static void main(String[] args) {\n");
+        src.append("        JvmCompiler.Support.main(").append(className).append("::run);\n");
+        src.append("    }\n\n");
+        src.append("    public static void run(java.io.Writer out, java.io.Reader in) {\n");
+        src.append("        io = new JvmCompiler.Console(out, in);\n");
+        src.append("        try {\n");
+        src.append("            main$();\n");
+        src.append("        } catch (StackOverflowError e) {\n");
+        src.append("            throw ").append(SUPPORT).append(".error(0, \"Call stack overflow\");\n");
+        src.append("        } finally {\n");
+        src.append("            io.flush();\n");
+        src.append("        }\n");
+        src.append("    }\n\n");
+
+        function = SyntaxTree.NONE;
+        src.append("    private static void main$() {\n");
+        indent = 2;
+        if (block != SyntaxTree.NONE) {
+            generateBlock(block, true);
+        }
+        src.append("    }\n");
+
+        for (int node : functionNodes) {
+            function = node;
+            src.append("\n    private static ").append(type(node).javaType).append(' ').append(methodName(node))
+                .append('(');
+            String separator = "";
+            for (int parameter : children(tree.getChild(node, 0))) {
+                src.append(separator).append(type(parameter).javaType).append(' ').append(javaName(parameter));
+                separator = ", ";
+            }
+            src.append(") {\n");
+            indent = 2;
+            if (generateBlock(tree.getChild(node, 1), false)) {
+                line("return null;");
+            }
+            src.append("    }\n");
+        }
+        src.append("}\n");
+        return src.toString();
+    }
+
+    private void collectFunctions(int node) {
+        if (node == SyntaxTree.NONE) {
+            return;
+        }
+        if (tree.getKind(node) == SyntaxTree.NodeKind.FUNCTION && !functions.containsKey(name(node))) {
+            functions.put(name(node), node);
+            functionNodes.add(node);
+        }
+        for (int child : children(node)) {
+            collectFunctions(child);
+        }
+    }
+
+    // Name resolution, by the same scope rules as BytecodeCompiler
+
+    private void resolveBlock(int block, Deque<Map<String, Integer>> scopes, boolean inFunction) {
+        scopes.push(new HashMap<>());
+        for (int statement : children(block)) {
+            SyntaxTree.NodeKind kind = tree.getKind(statement);
+            if (kind == SyntaxTree.NodeKind.FUNCTION) {
+                continue; // resolved on its own
+            }
+            for (int child : children(statement)) {
+                if (tree.getKind(child) == SyntaxTree.NodeKind.BLOCK) {
+                    resolveBlock(child, scopes, inFunction);
+                } else {
+                    resolveExpression(child, scopes, inFunction);
+                }
+            }
+            if (kind == SyntaxTree.NodeKind.DECLARE || kind == SyntaxTree.NodeKind.DECLARE_ARRAY) {
+                scopes.peek().put(name(statement), statement);
+            }
+        }
+        scopes.pop();
+    }
+
+    private void resolveExpression(int node, Deque<Map<String, Integer>> scopes, boolean inFunction) {
+        SyntaxTree.NodeKind kind = tree.getKind(node);
+        if (kind == SyntaxTree.NodeKind.IDENTIFIER || kind == SyntaxTree.NodeKind.SUBSCRIPT) {
+            Integer declaration = lookup(name(node), scopes, inFunction);
+            if (declaration != null) {
+                declarations.put(node, declaration);
+            } else if (kind == SyntaxTree.NodeKind.SUBSCRIPT && functions.containsKey(name(node))) {
+                calls.put(node, functions.get(name(node)));
+            }
+        }
+        for (int child : children(node)) {
+            resolveExpression(child, scopes, inFunction);
+        }
+    }
+
+    private Integer lookup(String name, Deque<Map<String, Integer>> scopes, boolean inFunction) {
+        for (Map<String, Integer> scope : scopes) {
+            Integer declaration = scope.get(name);
+            if (declaration != null) {
+                return declaration;
+            }
+        }
+        Integer global = inFunction ? globals.get(name) : null;
+        if (global != null) {
+            fields.add(global);
+        }
+        return global;
+    }
+
+    // Type inference
+
+    private void inferTypes(int block) {
+        boolean unknown;
+        do {
+            do {
+                changed = false;
+                function = SyntaxTree.NONE;
+                if (block != SyntaxTree.NONE) {
+                    inferBlock(block);
+                }
+                for (int node : functionNodes) {
+                    function = node;
+                    inferBlock(tree.getChild(node, 1));
+                    if (completes(tree.getChild(node, 1))) {
+                        join(node, Type.DYN); // falls off the end, returning nil
+                    }
+                }
+            } while (changed);
+
+            // Whatever is still unknown never receives a typed value, such as
+            // the parameters of a function that is never called
+            unknown = false;
+            for (Map.Entry<Integer, Type> entry : types.entrySet()) {
+                if (entry.getValue() == Type.UNKNOWN) {
+                    entry.setValue(Type.DYN);
+                    unknown = true;
+                }
+            }
+        } while (unknown);
+    }
+
+    private void inferBlock(int block) {
+        for (int statement : children(block)) {
+            inferStatement(statement);
+        }
+    }
+
+    private void inferStatement(int node) {
+        switch (tree.getKind(node)) {
+            case DECLARE:
+                join(node, typeOf(tree.getFirstChild(node)));
+                break;
+            case DECLARE_ARRAY:
+                typeOf(tree.getFirstChild(node));
+                join(node, Type.ARRAY);
+                break;
+            case ASSIGN: {
+                String op = tree.getToken(node).getLexeme();
+                int target = tree.getChild(node, 0);
+                int value = tree.getChild(node, 1);
+                Type valueType = typeOf(value);
+                if (tree.getKind(target) == SyntaxTree.NodeKind.IDENTIFIER) {
+                    int declaration = declarations.get(target);
+                    join(declaration, op.equals("=") ? valueType
+                        : arithmeticType(arithmetic(op.substring(0, 1)), type(declaration), valueType, value));
+                } else {
+                    typeOf(tree.getFirstChild(target));
+                }
+                break;
+            }
+            case INPUT: {
+                int target = tree.getFirstChild(node);
+                if (tree.getKind(target) == SyntaxTree.NodeKind.IDENTIFIER) {
+                    join(declarations.get(target), Type.DYN);
+                } else {
+                    typeOf(tree.getFirstChild(target));
+                }
+                break;
+            }
+            case OUTPUT:
+            case EXPRESSION_STATEMENT:
+                typeOf(tree.getFirstChild(node));
+                break;
+            case CONDITION:
+                typeOf(tree.getChild(node, 0));
+                inferBlock(tree.getChild(node, 1));
+                if (tree.getChild(node, 2) != SyntaxTree.NONE) {
+                    inferBlock(tree.getChild(node, 2));
+                }
+                break;
+            case LOOP:
+                typeOf(tree.getChild(node, 0));
+                inferBlock(tree.getChild(node, 1));
+                break;
+            case RETURN:
+                if (function != SyntaxTree.NONE) {
+                    int value = tree.getFirstChild(node);
+                    join(function, value == SyntaxTree.NONE ? Type.DYN : typeOf(value));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Type of an expression under the current types, joining the types of
+    // the variables and parameters it stores into
+    private Type typeOf(int node) {
+        Token token = tree.getToken(node);
+        switch (tree.getKind(node)) {
+            case LITERAL:
+                switch (token.getType()) {
+                    case INTEGER_LITERAL: return Type.LONG;
+                    case FLOAT_LITERAL: return Type.DOUBLE;
+                    case CHAR_LITERAL: return Type.CHAR;
+                    case STRING_LITERAL: return Type.STRING;
+                    default: return Type.BOOL;
+                }
+            case IDENTIFIER:
+                return type(declarations.get(node));
+            case BINARY: {
+                int left = tree.getChild(node, 0);
+                int right = tree.getChild(node, 1);
+                Type leftType = typeOf(left);
+                Type rightType = typeOf(right);
+                String op = token.getLexeme();
+                if (isLogical(op) || isComparison(op)) {
+                    return Type.BOOL;
+                }
+                return arithmeticType(arithmetic(op), leftType, rightType, right);
+            }
+            case UNARY: {
+                Type operand = typeOf(tree.getFirstChild(node));
+                switch (token.getLexeme()) {
+                    case "!": return Type.BOOL;
+                    case "-": return negatedType(operand);
+                    default: return operand;
+                }
+            }
+            case PREFIX:
+            case POSTFIX: {
+                int target = tree.getFirstChild(node);
+                if (tree.getKind(target) != SyntaxTree.NodeKind.IDENTIFIER) {
+                    typeOf(tree.getFirstChild(target));
+                    return Type.DYN;
+                }
+                int declaration = declarations.get(target);
+                Type old = type(declaration);
+                Type updated = arithmeticType(Bytecode.ADD, old, Type.LONG, SyntaxTree.NONE);
+                join(declaration, updated);
+                return tree.getKind(node) == SyntaxTree.NodeKind.PREFIX ? updated : old;
+            }
+            case SUBSCRIPT: {
+                Integer callee = calls.get(node);
+                List<Integer> arguments = children(node);
+                if (callee == null) {
+                    typeOf(arguments.get(0));
+                    return Type.DYN;
+                }
+                List<Integer> parameters = children(tree.getChild(callee, 0));
+                for (int i = 0; i < arguments.size(); i++) {
+                    join(parameters.get(i), typeOf(arguments.get(i)));
+                }
+                return type(callee);
+            }
+            default:
+                return Type.DYN;
+        }
+    }
+
+    private Type arithmeticType(int op, Type left, Type right, int rightNode) {
+        if (left == Type.UNKNOWN || right == Type.UNKNOWN) {
+            return Type.UNKNOWN;
+        }
+        if (left.isIntegral() && right.isIntegral()) {
+            // A negative exponent makes a float, so only a literal exponent
+            // keeps the result a long
+            return op != Bytecode.POW || isNonNegativeInteger(rightNode) ? Type.LONG : Type.DYN;
+        }
+        return left.isNumber() && right.isNumber() ? Type.DOUBLE : Type.DYN;
+    }
+
+    private static Type negatedType(Type operand) {
+        if (operand == Type.UNKNOWN || operand == Type.DOUBLE) {
+            return operand;
+        }
+        return operand.isIntegral() ? Type.LONG : Type.DYN;
+    }
+
+    private boolean isNonNegativeInteger(int node) {
+        if (node == SyntaxTree.NONE || tree.getKind(node) != SyntaxTree.NodeKind.LITERAL) {
+            return false;
+        }
+        Token token = tree.getToken(node);
+        return token.getType() == TokenType.INTEGER_LITERAL && token.getIntValue() >= 0;
+    }
+
+    private Type type(int node) {
+        return types.getOrDefault(node, Type.UNKNOWN);
+    }
+
+    private void join(int node, Type type) {
+        Type old = type(node);
+        Type joined = old.join(type);
+        if (joined != old || !types.containsKey(node)) {
+            types.put(node, joined);
+            changed |= joined != old;
+        }
+    }
+
+    // Whether control can reach the end of a block, as javac decides it:
+    // return, break and continue end a block, and so does a condition
+    // whose branches both end
+    private boolean completes(int block) {
+        for (int statement : children(block)) {
+            if (!completesStatement(statement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean completesStatement(int node) {
+        switch (tree.getKind(node)) {
+            case RETURN:
+            case BREAK:
+            case CONTINUE:
+                return false;
+            case CONDITION:
+                return tree.getChild(node, 2) == SyntaxTree.NONE
+                    || completes(tree.getChild(node, 1)) || completes(tree.getChild(node, 2));
+            default:
+                return true;
+        }
+    }
+
+    // Statements
+
+    // Generates a block up to its first statement that does not complete,
+    // as javac rejects unreachable code; returns whether the block completes
+    private boolean generateBlock(int block, boolean programBlock) {
+        for (int statement : children(block)) {
+            if (!generateStatement(statement, programBlock)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean generateStatement(int node, boolean programBlock) {
+        int line = lineOf(node);
+        switch (tree.getKind(node)) {
+            case DECLARE:
+            case DECLARE_ARRAY: {
+                Value value;
+                if (tree.getKind(node) == SyntaxTree.NodeKind.DECLARE) {
+                    value = expression(tree.getFirstChild(node));
+                } else {
+                    Value length = expression(tree.getFirstChild(node));
+                    value = new Value(SUPPORT + ".newArray(" + length.code + ", " + line + ")", Type.ARRAY);
+                }
+                if (fields.contains(node)) {
+                    line(javaName(node) + " = " + value.code + ";");
+                } else {
+                    line(type(node).javaType + " " + javaName(node) + " = " + value.code + ";");
+                }
+                return true;
+            }
+            case ASSIGN:
+                generateAssign(node, line);
+                return true;
+            case INPUT: {
+                int target = tree.getFirstChild(node);
+                if (tree.getKind(target) == SyntaxTree.NodeKind.IDENTIFIER) {
+                    line(variable(target) + " = io.in();");
+                } else {
+                    line(SUPPORT + ".set(" + array(target, line) + ", " + expression(tree.getFirstChild(target)).code
+                        + ", io.in(), " + line + ");");
+                }
+                return true;
+            }
+            case OUTPUT:
+                line("io.out(" + expression(tree.getFirstChild(node)).code + ");");
+                return true;
+            case CONDITION: {
+                line("if (" + test(tree.getChild(node, 0)) + ") {");
+                indent++;
+                boolean completes = generateBlock(tree.getChild(node, 1), false);
+                indent--;
+                int elseBlock = tree.getChild(node, 2);
+                if (elseBlock == SyntaxTree.NONE) {
+                    line("}");
+                    return true;
+                }
+                line("} else {");
+                indent++;
+                completes |= generateBlock(elseBlock, false);
+                indent--;
+                line("}");
+                return completes;
+            }
+            case LOOP: {
+                int condition = tree.getChild(node, 0);
+                String test = test(condition);
+                if (isConstant(condition)) {
+                    // javac would treat the body or the code after the loop
+                    // as unreachable
+                    test = SUPPORT + ".test(" + test + ")";
+                }
+                line("while (" + test + ") {");
+                indent++;
+                generateBlock(tree.getChild(node, 1), false);
+                indent--;
+                line("}");
+                return true;
+            }
+            case FUNCTION:
+                return true; // generated on its own
+            case RETURN: {
+                int value = tree.getFirstChild(node);
+                if (function == SyntaxTree.NONE) {
+                    line("return;");
+                } else if (value == SyntaxTree.NONE) {
+                    line("return null;");
+                } else {
+                    line("return " + expression(value).code + ";");
+                }
+                return false;
+            }
+            case BREAK:
+                line("break;");
+                return false;
+            case CONTINUE:
+                line("continue;");
+                return false;
+            case EXPRESSION_STATEMENT: {
+                int expression = tree.getFirstChild(node);
+                SyntaxTree.NodeKind kind = tree.getKind(expression);
+                if (kind == SyntaxTree.NodeKind.PREFIX || kind == SyntaxTree.NodeKind.POSTFIX) {
+                    line(step(expression, true) + ";");
+                } else if (kind == SyntaxTree.NodeKind.SUBSCRIPT && calls.containsKey(expression)) {
+                    line(expression(expression).code + ";");
+                } else {
+                    line(SUPPORT + ".discard(" + expression(expression).code + ");");
+                }
+                return true;
+            }
+            default:
+                return true;
+        }
+    }
+
+    private void generateAssign(int node, int line) {
+        String op = tree.getToken(node).getLexeme();
+        int target = tree.getChild(node, 0);
+        Value value = expression(tree.getChild(node, 1));
+        if (tree.getKind(target) == SyntaxTree.NodeKind.IDENTIFIER) {
+            String variable = variable(target);
+            if (!op.equals("=")) {
+                Value old = new Value(variable, type(declarations.get(target)));
+                value = arithmetic(arithmetic(op.substring(0, 1)), old, value, tree.getChild(node, 1), line);
+            }
+            line(variable + " = " + value.code + ";");
+            return;
+        }
+        String array = array(target, line);
+        String index = expression(tree.getFirstChild(target)).code;
+        if (op.equals("=")) {
+            line(SUPPORT + ".set(" + array + ", " + index + ", " + box(value) + ", " + line + ");");
+        } else {
+            line(SUPPORT + ".update(" + array + ", " + index + ", " + arithmetic(op.substring(0, 1)) + ", "
+                + value.code + ", " + line + ");");
+        }
+    }
+
+    // Expressions
+
+    private Value expression(int node) {
+        Token token = tree.getToken(node);
+        int line = lineOf(node);
+        switch (tree.getKind(node)) {
+            case LITERAL:
+                return literal(token);
+            case IDENTIFIER:
+                return new Value(variable(node), type(declarations.get(node)));
+            case BINARY: {
+                String op = token.getLexeme();
+                if (isLogical(op)) {
+                    return new Value("(" + test(tree.getChild(node, 0)) + " " + op + " "
+                        + test(tree.getChild(node, 1)) + ")", Type.BOOL);
+                }
+                Value left = expression(tree.getChild(node, 0));
+                Value right = expression(tree.getChild(node, 1));
+                if (isComparison(op)) {
+                    return comparison(op, left, right, line);
+                }
+                return arithmetic(arithmetic(op), left, right, tree.getChild(node, 1), line);
+            }
+            case UNARY: {
+                Value operand = expression(tree.getFirstChild(node));
+                switch (token.getLexeme()) {
+                    case "!":
+                        return new Value("(!" + truth(operand) + ")", Type.BOOL);
+                    case "-": {
+                        Type type = negatedType(operand.type);
+                        if (type == Type.DYN) {
+                            return new Value(SUPPORT + ".negate(" + operand.code + ", " + line + ")", type);
+                        }
+                        return new Value("(-" + (operand.type == Type.CHAR ? "(long) " : "") + operand.code + ")", type);
+                    }
+                    default:
+                        return operand;
+                }
+            }
+            case PREFIX:
+            case POSTFIX: {
+                int target = tree.getFirstChild(node);
+                Type type = tree.getKind(target) != SyntaxTree.NodeKind.IDENTIFIER ? Type.DYN
+                    : type(declarations.get(target));
+                return new Value("(" + step(node, false) + ")", type);
+            }
+            case SUBSCRIPT: {
+                Integer callee = calls.get(node);
+                if (callee == null) {
+                    return new Value(SUPPORT + ".get(" + array(node, line) + ", "
+                        + expression(tree.getFirstChild(node)).code + ", " + line + ")", Type.DYN);
+                }
+                StringBuilder call = new StringBuilder(methodName(callee)).append('(');
+                String separator = "";
+                for (int argument : children(node)) {
+                    call.append(separator).append(expression(argument).code);
+                    separator = ", ";
+                }
+                return new Value(call.append(')').toString(), type(callee));
+            }
+            default:
+                return new Value("null", Type.DYN);
+        }
+    }
+
+    private Value literal(Token token) {
+        switch (token.getType()) {
+            case INTEGER_LITERAL:
+                return new Value(token.getIntValue() + "L", Type.LONG);
+            case FLOAT_LITERAL: {
+                double value = token.getFloatValue();
+                String code = Double.isFinite(value) ? Double.toString(value)
+                    : "Double.longBitsToDouble(" + Double.doubleToRawLongBits(value) + "L)";
+                return new Value(code, Type.DOUBLE);
+            }
+            case CHAR_LITERAL:
+                return new Value("((char) " + (int) token.getCharValue() + ")", Type.CHAR);
+            case STRING_LITERAL:
+                return new Value(stringLiteral(token.getStringValue()), Type.STRING);
+            default:
+                return new Value(Boolean.toString(token.getBooleanValue()), Type.BOOL);
+        }
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': literal.append("\\\""); break;
+                case '\\': literal.append("\\\\"); break;
+                case '\n': literal.append("\\n"); break;
+                case '\r': literal.append("\\r"); break;
+                case '\t': literal.append("\\t"); break;
+                default:
+                    if (ch < 0x20 || ch == 0x7f) {
+                        // Octal, as a \\u escape would be translated before lexing
+                        literal.append(String.format("\\%03o", (int) ch));
+                    } else {
+                        literal.append(ch);
+                    }
+                    break;
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private Value arithmetic(int op, Value left, Value right, int rightNode, int line) {
+        Type type = arithmeticType(op, left.type, right.type, rightNode);
+        String a = left.type == Type.CHAR ? "(long) " + left.code : left.code;
+        String b = right.type == Type.CHAR ? "(long) " + right.code : right.code;
+        if (type == Type.LONG) {
+            switch (op) {
+                case Bytecode.DIV: return new Value(SUPPORT + ".div(" + a + ", " + b + ", " + line + ")", type);
+                case Bytecode.MOD: return new Value(SUPPORT + ".mod(" + a + ", " + b + ", " + line + ")", type);
+                case Bytecode.POW: return new Value(SUPPORT + ".power(" + a + ", " + b + ")", type);
+                default: return new Value("(" + a + " " + operator(op) + " " + b + ")", type);
+            }
+        }
+        if (type == Type.DOUBLE) {
+            if (op == Bytecode.POW) {
+                return new Value("Math.pow(" + a + ", " + b + ")", type);
+            }
+            return new Value("(" + a + " " + operator(op) + " " + b + ")", type);
+        }
+        return new Value(SUPPORT + ".arithmetic(" + op + ", " + left.code + ", " + right.code + ", " + line + ")",
+            Type.DYN);
+    }
+
+    private Value comparison(String op, Value left, Value right, int line) {
+        Type a = left.type;
+        Type b = right.type;
+        String code;
+        if (a.isIntegral() && b.isIntegral()) {
+            code = "(" + left.code + " " + op + " " + right.code + ")";
+        } else if (a.isNumber() && b.isNumber()) {
+            code = "(Double.compare(" + left.code + ", " + right.code + ") " + op + " 0)";
+        } else if (a == Type.STRING && b == Type.STRING) {
+            code = "(" + left.code + ".compareTo(" + right.code + ") " + op + " 0)";
+        } else if (a == Type.BOOL && b == Type.BOOL && (op.equals("==") || op.equals("!="))) {
+            code = "(" + left.code + " " + op + " " + right.code + ")";
+        } else {
+            code = SUPPORT + ".compare(" + comparisonOp(op) + ", " + left.code + ", " + right.code + ", " + line
+                + ")";
+        }
+        return new Value(code, Type.BOOL);
+    }
+
+    // Boxes a primitive explicitly, where autoboxing would make an
+    // overloaded call ambiguous
+    private static String box(Value value) {
+        switch (value.type) {
+            case LONG: return "Long.valueOf(" + value.code + ")";
+            case DOUBLE: return "Double.valueOf(" + value.code + ")";
+            case BOOL: return "Boolean.valueOf(" + value.code + ")";
+            case CHAR: return "Character.valueOf(" + value.code + ")";
+            default: return value.code;
+        }
+    }
+
+    // ++ or -- on a variable or array element; as a statement the value
+    // is not needed
+    private String step(int node, boolean statement) {
+        int target = tree.getFirstChild(node);
+        boolean prefix = tree.getKind(node) == SyntaxTree.NodeKind.PREFIX;
+        String op = tree.getToken(node).getType() == TokenType.INCREMENT_OP ? "++" : "--";
+        int delta = op.equals("++") ? 1 : -1;
+        int line = lineOf(node);
+        if (tree.getKind(target) != SyntaxTree.NodeKind.IDENTIFIER) {
+            return SUPPORT + ".stepElement(" + array(target, line) + ", " + expression(tree.getFirstChild(target)).code
+                + ", " + delta + ", " + prefix + ", " + line + ")";
+        }
+        String variable = variable(target);
+        if (type(declarations.get(target)) != Type.DYN) {
+            return prefix ? op + variable : variable + op;
+        }
+        String update = variable + " = " + SUPPORT + ".step(" + variable + ", " + delta + ", " + line + ")";
+        if (statement || prefix) {
+            return update;
+        }
+        return SUPPORT + ".first(" + variable + ", " + update + ")";
+    }
+
+    // A boolean Java expression for CustomLang truthiness
+    private String test(int node) {
+        return truth(expression(node));
+    }
+
+    private static String truth(Value value) {
+        switch (value.type) {
+            case BOOL: return value.code;
+            case LONG:
+            case CHAR:
+            case DOUBLE: return "(" + value.code + " != 0)";
+            case STRING: return "!" + value.code + ".isEmpty()";
+            default: return SUPPORT + ".truth(" + value.code + ")";
+        }
+    }
+
+    // The array held by a SUBSCRIPT's variable
+    private String array(int node, int line) {
+        String variable = variable(node);
+        return type(declarations.get(node)) == Type.ARRAY ? variable
+            : SUPPORT + ".array(" + variable + ", " + line + ")";
+    }
+
+    private String variable(int node) {
+        return javaName(declarations.get(node));
+    }
+
+    private boolean isConstant(int node) {
+        switch (tree.getKind(node)) {
+            case LITERAL:
+                return true;
+            case BINARY:
+            case UNARY:
+                for (int child : children(node)) {
+                    if (!isConstant(child)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Names
+
+    // Java name of a declaration: the CustomLang name, numbered when the
+    // name is declared again, since Java locals cannot shadow each other
+    private String javaName(int declaration) {
+        String javaName = javaNames.get(declaration);
+        if (javaName == null) {
+            String name = name(declaration);
+            int count = nameCounts.merge(name, 1, Integer::sum);
+            javaName = count == 1 && !RESERVED.contains(name) && !name.equals(className) ? name : name + "$" + count;
+            javaNames.put(declaration, javaName);
+        }
+        return javaName;
+    }
+
+    private String methodName(int function) {
+        return "f$" + name(function);
+    }
+
+    private void line(String code) {
+        src.append("    ".repeat(indent)).append(code).append('\n');
+    }
+
+    private int lineOf(int node) {
+        Token token = tree.getToken(node);
+        while (token == null && tree.getFirstChild(node) != SyntaxTree.NONE) {
+            node = tree.getFirstChild(node);
+            token = tree.getToken(node);
+        }
+        return token == null ? 0 : token.getLine();
+    }
+
+    private List<Integer> children(int node) {
+        List<Integer> children = new ArrayList<>();
+        for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+            children.add(child);
+        }
+        return children;
+    }
+
+    private String name(int node) {
+        return tree.getToken(node).getLexeme();
+    }
+
+    private static boolean isLogical(String op) {
+        return op.equals("&&") || op.equals("||");
+    }
+
+    private static boolean isComparison(String op) {
+        switch (op) {
+            case "==": case "!=": case "<": case ">": case "<=": case ">=":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int comparisonOp(String op) {
+        switch (op) {
+            case "==": return Bytecode.EQ;
+            case "!=": return Bytecode.NE;
+            case "<": return Bytecode.LT;
+            case ">": return Bytecode.GT;
+            case "<=": return Bytecode.LE;
+            default: return Bytecode.GE;
+        }
+    }
+
+    private static int arithmetic(String op) {
+        switch (op) {
+            case "+": return Bytecode.ADD;
+            case "-": return Bytecode.SUB;
+            case "*": return Bytecode.MUL;
+            case "/": return Bytecode.DIV;
+            case "%": return Bytecode.MOD;
+            default: return Bytecode.POW;
+        }
+    }
+
+    private static String operator(int op) {
+        switch (op) {
+            case Bytecode.ADD: return "+";
+            case Bytecode.SUB: return "-";
+            case Bytecode.MUL: return "*";
+            case Bytecode.DIV: return "/";
+            default: return "%";
+        }
+    }
+
+    /**
+     * Operations on untyped values and arrays for compiled programs, with
+     * the same results and runtime errors as BytecodeVM. Values are Long,
+     * Double, Boolean, Character, String, Object[] or null for nil.
+     */
+    public static final class Support {
+        private Support() {
+        }
+
+        public static BytecodeVM.RuntimeError error(int line, String message) {
+            return new BytecodeVM.RuntimeError(line, message);
+        }
+
+        public static boolean truth(Object value) {
+            if (value instanceof Long) {
+                return (Long) value != 0;
+            }
+            if (value instanceof Double) {
+                return (Double) value != 0;
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            if (value instanceof Character) {
+                return (Character) value != 0;
+            }
+            if (value instanceof String) {
+                return !((String) value).isEmpty();
+            }
+            return value != null;
+        }
+
+        private static boolean isIntegral(Object value) {
+            return value instanceof Long || value instanceof Character;
+        }
+
+        private static boolean isNumber(Object value) {
+            return isIntegral(value) || value instanceof Double;
+        }
+
+        private static long integral(Object value) {
+            return value instanceof Character ? (Character) value : (Long) value;
+        }
+
+        private static double number(Object value) {
+            return value instanceof Double ? (Double) value : integral(value);
+        }
+
+        public static Object arithmetic(int op, Object left, Object right, int line) {
+            if (!isNumber(left) || !isNumber(right)) {
+                throw error(line, "Operands of " + symbol(op) + " must be numbers");
+            }
+            if (isIntegral(left) && isIntegral(right)) {
+                long a = integral(left);
+                long b = integral(right);
+                switch (op) {
+                    case Bytecode.ADD: return a + b;
+                    case Bytecode.SUB: return a - b;
+                    case Bytecode.MUL: return a * b;
+                    case Bytecode.DIV: return div(a, b, line);
+                    case Bytecode.MOD: return mod(a, b, line);
+                    default: return b < 0 ? (Object) Math.pow(a, b) : (Object) power(a, b);
+                }
+            }
+            double a = number(left);
+            double b = number(right);
+            switch (op) {
+                case Bytecode.ADD: return a + b;
+                case Bytecode.SUB: return a - b;
+                case Bytecode.MUL: return a * b;
+                case Bytecode.DIV: return a / b;
+                case Bytecode.MOD: return a % b;
+                default: return Math.pow(a, b);
+            }
+        }
+
+        public static long div(long a, long b, int line) {
+            if (b == 0) {
+                throw error(line, "Division by zero");
+            }
+            return a / b;
+        }
+
+        public static long mod(long a, long b, int line) {
+            if (b == 0) {
+                throw error(line, "Division by zero");
+            }
+            return a % b;
+        }
+
+        public static long power(long base, long exponent) {
+            long result = 1;
+            while (exponent > 0) {
+                if ((exponent & 1) != 0) {
+                    result *= base;
+                }
+                base *= base;
+                exponent >>= 1;
+            }
+            return result;
+        }
+
+        public static Object negate(Object value, int line) {
+            if (isIntegral(value)) {
+                return -integral(value);
+            }
+            if (value instanceof Double) {
+                return -(Double) value;
+            }
+            throw error(line, "Operand of unary - must be a number");
+        }
+
+        public static Object step(Object value, int delta, int line) {
+            return arithmetic(Bytecode.ADD, value, (long) delta, line);
+        }
+
+        public static boolean compare(int op, Object left, Object right, int line) {
+            int order;
+            if (isNumber(left) && isNumber(right)) {
+                order = isIntegral(left) && isIntegral(right) ? Long.compare(integral(left), integral(right))
+                    : Double.compare(number(left), number(right));
+            } else if (left instanceof String && right instanceof String) {
+                order = ((String) left).compareTo((String) right);
+            } else if (op == Bytecode.EQ || op == Bytecode.NE) {
+                boolean equal = left == null ? right == null
+                    : (left instanceof Boolean && left.equals(right)) || (left instanceof Object[] && left == right);
+                return equal == (op == Bytecode.EQ);
+            } else {
+                throw error(line, "Operands of " + symbol(op) + " cannot be compared");
+            }
+            switch (op) {
+                case Bytecode.EQ: return order == 0;
+                case Bytecode.NE: return order != 0;
+                case Bytecode.LT: return order < 0;
+                case Bytecode.GT: return order > 0;
+                case Bytecode.LE: return order <= 0;
+                default: return order >= 0;
+            }
+        }
+
+        public static Object[] newArray(Object length, int line) {
+            if (!isIntegral(length) || integral(length) < 0 || integral(length) > Integer.MAX_VALUE - 8) {
+                throw error(line, "Bad array size");
+            }
+            return new Object[(int) integral(length)];
+        }
+
+        public static Object[] array(Object value, int line) {
+            if (!(value instanceof Object[])) {
+                throw error(line, "Not an array");
+            }
+            return (Object[]) value;
+        }
+
+        private static int index(Object[] array, long index, int line) {
+            if (index < 0 || index >= array.length) {
+                throw error(line, "Array index out of bounds");
+            }
+            return (int) index;
+        }
+
+        private static int index(Object[] array, Object index, int line) {
+            if (!isIntegral(index)) {
+                throw error(line, "Array index out of bounds");
+            }
+            return index(array, integral(index), line);
+        }
+
+        public static Object get(Object[] array, long index, int line) {
+            return array[index(array, index, line)];
+        }
+
+        public static Object get(Object[] array, Object index, int line) {
+            return array[index(array, index, line)];
+        }
+
+        public static void set(Object[] array, long index, Object value, int line) {
+            array[index(array, index, line)] = value;
+        }
+
+        public static void set(Object[] array, Object index, Object value, int line) {
+            array[index(array, index, line)] = value;
+        }
+
+        public static void update(Object[] array, Object index, int op, Object value, int line) {
+            int i = index(array, index, line);
+            array[i] = arithmetic(op, array[i], value, line);
+        }
+
+        public static Object stepElement(Object[] array, Object index, int delta, boolean prefix, int line) {
+            int i = index(array, index, line);
+            Object old = array[i];
+            array[i] = step(old, delta, line);
+            return prefix ? array[i] : old;
+        }
+
+        // For postfix steps: evaluates both, returns the first
+        public static Object first(Object value, Object ignored) {
+            return value;
+        }
+
+        // Hides a constant loop condition from javac's reachability rules
+        public static boolean test(boolean value) {
+            return value;
+        }
+
+        public static void discard(Object value) {
+        }
+
+        static String string(Object value) {
+            if (value == null) {
+                return "nil";
+            }
+            return value instanceof Object[] ? "[array]" : value.toString();
+        }
+
+        private static String symbol(int op) {
+            switch (op) {
+                case Bytecode.ADD: return "+";
+                case Bytecode.SUB: return "-";
+                case Bytecode.MUL: return "*";
+                case Bytecode.DIV: return "/";
+                case Bytecode.MOD: return "%";
+                case Bytecode.POW: return "**";
+                case Bytecode.EQ: return "==";
+                case Bytecode.NE: return "!=";
+                case Bytecode.LT: return "<";
+                case Bytecode.GT: return ">";
+                case Bytecode.LE: return "<=";
+                default: return ">=";
+            }
+        }
+
+        // main() of a class written to a .class file
+        public static void main(java.util.function.BiConsumer<Writer, Reader> program) {
+            try {
+                program.accept(new OutputStreamWriter(System.out), new InputStreamReader(System.in));
+            } catch (BytecodeVM.RuntimeError e) {
+                System.err.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Output and input of a compiled program, buffered like BytecodeVM's.
+     */
+    public static final class Console {
+        private static final int OUTPUT_CHUNK = 8192;
+
+        private final Writer out;
+        private final BufferedReader in;
+        private final StringBuilder output = new StringBuilder(OUTPUT_CHUNK * 2);
+        private char[] outputChars = new char[OUTPUT_CHUNK * 2];
+
+        public Console(Writer out, Reader in) {
+            this.out = out;
+            this.in = in == null ? null : new BufferedReader(in);
+        }
+
+        public void out(long value) {
+            output.append(value);
+            endLine();
+        }
+
+        public void out(double value) {
+            output.append(value);
+            endLine();
+        }
+
+        public void out(boolean value) {
+            output.append(value);
+            endLine();
+        }
+
+        public void out(char value) {
+            output.append(value);
+            endLine();
+        }
+
+        public void out(String value) {
+            output.append(value);
+            endLine();
+        }
+
+        public void out(Object value) {
+            output.append(Support.string(value));
+            endLine();
+        }
+
+        private void endLine() {
+            output.append('\n');
+            if (output.length() >= OUTPUT_CHUNK) {
+                flush();
+            }
+        }
+
+        public void flush() {
+            int length = output.length();
+            if (length > outputChars.length) {
+                outputChars = new char[length];
+            }
+            output.getChars(0, length, outputChars, 0);
+            output.setLength(0);
+            try {
+                out.write(outputChars, 0, length);
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // A line of input as an int, float or bool if it is one, else a
+        // string; nil at end of input
+        public Object in() {
+            flush();
+            String text;
+            try {
+                text = in == null ? null : in.readLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (text == null) {
+                return null;
+            }
+            text = text.trim();
+            if (text.equals("true") || text.equals("false")) {
+                return text.equals("true");
+            }
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // not an integer
+            }
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return text;
+            }
+        }
+    }
+
+    // Class name for a source file: its name without extension, as a Java
+    // identifier
+    static String classNameFor(Path file) {
+        String name = file.getFileName().toString().replaceFirst("\\.[^.]*$", "").replaceFirst("\\.lang$", "");
+        StringBuilder className = new StringBuilder();
+        for (char ch : name.toCharArray()) {
+            if (Character.isLetterOrDigit(ch) || ch == '_') {
+                className.append(className.length() == 0 ? Character.toUpperCase(ch) : ch);
+            }
+        }
+        if (className.length() == 0 || !Character.isJavaIdentifierStart(className.charAt(0))) {
+            className.insert(0, "Program");
+        }
+        return className.toString();
+    }
+
+    private static void benchmark() {
+        System.out.println(String.format("%-10s %10s %10s %10s %s", "Benchmark", "VM ms", "JVM ms", "Compile ms",
+            "Output"));
+        for (String[] benchmark : BytecodeVM.BENCHMARKS) {
+            ErrorHandler errors = new ErrorHandler();
+            errors.setEcho(false);
+            Bytecode.Program bytecode = BytecodeCompiler.compile(benchmark[1], errors);
+            long start = System.nanoTime();
+            byte[] classFile = compile(benchmark[1], "Bench", errors);
+            if (bytecode == null || classFile == null) {
+                System.out.println(benchmark[0] + ": " + errors.getErrors());
+                continue;
+            }
+            MethodHandle program = define(classFile);
+            long compileTime = System.nanoTime() - start;
+
+            StringBuilderWriter vmOut = new StringBuilderWriter();
+            StringBuilderWriter jvmOut = new StringBuilderWriter();
+            BytecodeVM vm = new BytecodeVM(bytecode, vmOut, null);
+            long vmBest = Long.MAX_VALUE;
+            long jvmBest = Long.MAX_VALUE;
+            for (int round = 0; round < 15; round++) {
+                vmOut.last.setLength(0);
+                start = System.nanoTime();
+                vm.run();
+                vmBest = Math.min(vmBest, System.nanoTime() - start);
+
+                jvmOut.last.setLength(0);
+                start = System.nanoTime();
+                run(program, jvmOut, null);
+                jvmBest = Math.min(jvmBest, System.nanoTime() - start);
+            }
+            String output = jvmOut.last.toString().equals(vmOut.last.toString()) ? jvmOut.last.toString()
+                : "MISMATCH: VM " + vmOut.last + ", JVM " + jvmOut.last;
+            System.out.println(String.format("%-10s %10.2f %10.2f %10.1f %s", benchmark[0], vmBest / 1e6,
+                jvmBest / 1e6, compileTime / 1e6, output));
+        }
+    }
+
+    // Keeps only the last line written, to compare results without
+    // holding all output
+    private static final class StringBuilderWriter extends Writer {
+        final StringBuilder last = new StringBuilder();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            if (length == 0) {
+                return;
+            }
+            int end = offset + length - 1;
+            int start = end;
+            while (start > offset && buffer[start - 1] != '\n') {
+                start--;
+            }
+            last.setLength(0);
+            last.append(buffer, start, end - start);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("--bench")) {
+            benchmark();
+            return;
+        }
+        boolean source = args.length == 2 && args[0].equals("--source");
+        boolean write = args.length == 3 && args[0].equals("--out");
+        if (args.length == 0 || (args.length > 1 && !source && !write)) {
+            System.out.println("Usage: java JvmCompiler [--source | --out <dir>] <input-file>");
+            System.out.println("       java JvmCompiler --bench");
+            return;
+        }
+
+        try {
+            Path file = Paths.get(args[args.length - 1]);
+            String content = CompressedSource.read(file);
+            String className = classNameFor(file);
+            ErrorHandler errors = new ErrorHandler();
+            errors.setEcho(false);
+            if (source) {
+                String java = generateSource(content, className, errors);
+                if (java != null) {
+                    System.out.print(java);
+                }
+            } else {
+                long start = System.nanoTime();
+                byte[] classFile = compile(content, className, errors);
+                if (classFile != null && write) {
+                    Path out = Paths.get(args[1]).resolve(className + ".class");
+                    Files.createDirectories(out.getParent());
+                    Files.write(out, classFile);
+                    System.out.printf("Wrote %s (%d bytes) in %.1f ms%n", out, classFile.length,
+                        (System.nanoTime() - start) / 1e6);
+                    System.out.println("Run with: java -cp " + args[1] + File.pathSeparator + "<classes> " + className);
+                } else if (classFile != null) {
+                    Writer out = new OutputStreamWriter(System.out);
+                    run(define(classFile), out, new InputStreamReader(System.in));
+                }
+            }
+            if (errors.hasErrors()) {
+                for (ErrorHandler.LexicalError error : errors.getErrors()) {
+                    System.err.println(error);
+                }
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } catch (BytecodeVM.RuntimeError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+}
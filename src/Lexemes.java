@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+/**
+ * Canonical lexeme table. Every fixed-spelling token (keyword, boolean,
+ * operator, punctuator) is backed by exactly one shared String instance,
+ * so scanners never rebuild "=" or "start" per occurrence.
+ */
+public final class Lexemes {
+    private static final String[] SPELLINGS = {
+        // Keywords
+        "start", "finish", "loop", "condition", "declare", "output",
+        "input", "function", "return", "break", "continue", "else",
+        // Boolean literals
+        "true", "false",
+        // Operators
+        "**", "+", "-", "*", "/", "%",
+        "==", "!=", "<", ">", "<=", ">=",
+        "&&", "||", "!",
+        "=", "+=", "-=", "*=", "/=",
+        "++", "--",
+        // Punctuators
+        "(", ")", "{", "}", "[", "]", ",", ";", ":"
+    };
+
+    private static final TokenType[] TYPES = new TokenType[SPELLINGS.length];
+
+    // Open-addressing table of slot indexes keyed by String.hashCode()
+    private static final int TABLE_SIZE = 128;
+    private static final int[] TABLE = new int[TABLE_SIZE];
+
+    // Direct lookup for single-character lexemes
+    private static final int[] SINGLE = new int[128];
+
+    static {
+        Arrays.fill(TABLE, -1);
+        Arrays.fill(SINGLE, -1);
+        for (int i = 0; i < SPELLINGS.length; i++) {
+            String s = SPELLINGS[i];
+            TYPES[i] = classify(s);
+            int h = s.hashCode() & (TABLE_SIZE - 1);
+            while (TABLE[h] >= 0) {
+                h = (h + 1) & (TABLE_SIZE - 1);
+            }
+            TABLE[h] = i;
+            if (s.length() == 1) {
+                SINGLE[s.charAt(0)] = i;
+            }
+        }
+    }
+
+    private Lexemes() {
+    }
+
+    private static TokenType classify(String s) {
+        switch (s) {
+            case "true": case "false":
+                return TokenType.BOOLEAN_LITERAL;
+            case "**": case "+": case "-": case "*": case "/": case "%":
+                return TokenType.ARITHMETIC_OP;
+            case "==": case "!=": case "<": case ">": case "<=": case ">=":
+                return TokenType.RELATIONAL_OP;
+            case "&&": case "||": case "!":
+                return TokenType.LOGICAL_OP;
+            case "=": case "+=": case "-=": case "*=": case "/=":
+                return TokenType.ASSIGNMENT_OP;
+            case "++":
+                return TokenType.INCREMENT_OP;
+            case "--":
+                return TokenType.DECREMENT_OP;
+            default:
+                return Character.isLetter(s.charAt(0)) ? TokenType.KEYWORD : TokenType.PUNCTUATOR;
+        }
+    }
+
+    /** Returns the slot of text[start, end), or -1 if it is not a fixed lexeme. */
+    public static int find(CharSequence text, int start, int end) {
+        int len = end - start;
+        if (len == 1) {
+            return find(text.charAt(start));
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        for (int h = hash & (TABLE_SIZE - 1); TABLE[h] >= 0; h = (h + 1) & (TABLE_SIZE - 1)) {
+            String s = SPELLINGS[TABLE[h]];
+            if (s.length() == len && regionEquals(s, text, start)) {
+                return TABLE[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the slot of buffer[start, end), or -1 if it is not a fixed lexeme. */
+    public static int find(char[] buffer, int start, int end) {
+        int len = end - start;
+        if (len == 1) {
+            return find(buffer[start]);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        for (int h = hash & (TABLE_SIZE - 1); TABLE[h] >= 0; h = (h + 1) & (TABLE_SIZE - 1)) {
+            String s = SPELLINGS[TABLE[h]];
+            if (s.length() == len && regionEquals(s, buffer, start)) {
+                return TABLE[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the slot of a single-character lexeme, or -1. */
+    public static int find(char ch) {
+        return ch < SINGLE.length ? SINGLE[ch] : -1;
+    }
+
+    public static String spelling(int slot) {
+        return SPELLINGS[slot];
+    }
+
+    public static TokenType type(int slot) {
+        return TYPES[slot];
+    }
+
+    public static int slotCount() {
+        return SPELLINGS.length;
+    }
+
+    /** Returns the canonical instance for a fixed lexeme, or null. */
+    public static String canonical(CharSequence text, int start, int end) {
+        int slot = find(text, start, end);
+        return slot >= 0 ? SPELLINGS[slot] : null;
+    }
+
+    /** Returns the canonical instance for a single-character lexeme, or null. */
+    public static String canonical(char ch) {
+        int slot = find(ch);
+        return slot >= 0 ? SPELLINGS[slot] : null;
+    }
+
+    private static boolean regionEquals(String s, CharSequence text, int start) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(String s, char[] buffer, int start) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
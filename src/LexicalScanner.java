@@ -0,0 +1,25 @@
+import java.util.List;
+
+/**
+ * Results of a scan, common to ManualScanner, Yylex and the compiled
+ * scanner. How a scan is started differs between the engines (a String,
+ * a Reader), so it is not part of this interface; EngineSelector starts
+ * whichever engine it picks and hands back its results through it.
+ */
+public interface LexicalScanner {
+    List<Token> getTokens();
+
+    int getTokenCount(TokenType type);
+
+    int getTotalTokenCount();
+
+    int getCommentCount();
+
+    ErrorHandler getErrorHandler();
+
+    SymbolTable getSymbolTable();
+
+    void printTokens();
+
+    void printStatistics();
+}
@@ -0,0 +1,263 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Accumulates the value of a literal while a scanner walks over it, so
+ * literal tokens carry their decoded value and consumers never have to
+ * re-parse the lexeme.
+ *
+ * ManualScanner feeds characters one at a time from its recognizers;
+ * Yylex hands over the matched buffer range through the decode* methods.
+ * One instance is reused for every literal of a scan.
+ */
+public class LiteralDecoder {
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+    private static final int MAX_SIGNIFICAND_DIGITS = 18;
+    // Exponents beyond this overflow or underflow any double
+    private static final int EXPONENT_CLAMP = 100000;
+
+    // Integer state (negative accumulator, as in Long.parseLong)
+    private boolean negative;
+    private long accumulator;
+    private long limit;
+    private boolean overflow;
+
+    // Float state
+    private long significand;
+    private int significandDigits;
+    private boolean significandTruncated;
+    private int scale;
+    private boolean exponentNegative;
+    private int exponent;
+
+    // String state
+    private final StringBuilder text = new StringBuilder();
+    private boolean escaped;
+    private int segmentStart;
+
+    public void beginNumber(boolean negative) {
+        this.negative = negative;
+        this.accumulator = 0;
+        this.limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        this.overflow = false;
+        this.significand = 0;
+        this.significandDigits = 0;
+        this.significandTruncated = false;
+        this.scale = 0;
+        this.exponentNegative = false;
+        this.exponent = 0;
+    }
+
+    public void digit(char ch) {
+        int d = ch - '0';
+        if (!overflow) {
+            if (accumulator < limit / 10) {
+                overflow = true;
+            } else {
+                accumulator *= 10;
+                if (accumulator < limit + d) {
+                    overflow = true;
+                } else {
+                    accumulator -= d;
+                }
+            }
+        }
+        addSignificandDigit(d);
+    }
+
+    public void fractionDigit(char ch) {
+        addSignificandDigit(ch - '0');
+        if (!significandTruncated) {
+            scale++;
+        }
+    }
+
+    public void beginExponent(boolean negative) {
+        exponentNegative = negative;
+    }
+
+    public void exponentDigit(char ch) {
+        if (exponent < EXPONENT_CLAMP) {
+            exponent = exponent * 10 + (ch - '0');
+        }
+    }
+
+    private void addSignificandDigit(int d) {
+        if (significandTruncated) {
+            return;
+        }
+        if (significandDigits == 0 && d == 0) {
+            return; // leading zeros do not count towards precision
+        }
+        if (significandDigits == MAX_SIGNIFICAND_DIGITS) {
+            significandTruncated = true;
+            return;
+        }
+        significand = significand * 10 + d;
+        significandDigits++;
+    }
+
+    public boolean overflowed() {
+        return overflow;
+    }
+
+    public long longValue() {
+        return negative ? accumulator : -accumulator;
+    }
+
+    // raw is only consulted when the significand has more digits than a long holds
+    public double doubleValue(CharSequence raw, int start, int end) {
+        if (significandTruncated) {
+            char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = raw.charAt(start + i);
+            }
+            return new BigDecimal(chars).doubleValue();
+        }
+        return significandValue();
+    }
+
+    private double significandValue() {
+        double value;
+        int exp10 = (exponentNegative ? -exponent : exponent) - scale;
+        if (significand == 0) {
+            value = 0.0;
+        } else if (significand < MAX_EXACT_SIGNIFICAND && exp10 >= -22 && exp10 <= 22) {
+            // Both operands are exact, so one IEEE operation rounds correctly
+            value = exp10 >= 0 ? significand * POW10[exp10] : significand / POW10[-exp10];
+        } else if (exp10 > 400) {
+            value = Double.POSITIVE_INFINITY;
+        } else if (exp10 < -400) {
+            value = 0.0;
+        } else {
+            value = new BigDecimal(BigInteger.valueOf(significand), -exp10).doubleValue();
+        }
+        return negative ? -value : value;
+    }
+
+    // Strings: text is copied only once an escape sequence shows up
+    public void beginString(int contentStart) {
+        text.setLength(0);
+        escaped = false;
+        segmentStart = contentStart;
+    }
+
+    public void escape(CharSequence raw, int backslashPos, char code) {
+        text.append(raw, segmentStart, backslashPos);
+        appendEscape(code);
+        escaped = true;
+        segmentStart = backslashPos + 2;
+    }
+
+    // Returns the unescaped content, or null if it equals the raw content
+    public String endString(CharSequence raw, int contentEnd) {
+        if (!escaped) {
+            return null;
+        }
+        text.append(raw, segmentStart, contentEnd);
+        return text.toString();
+    }
+
+    private void appendEscape(char code) {
+        char decoded = unescape(code);
+        if (decoded == 0) {
+            // Unknown escapes are kept as written
+            text.append('\\').append(code);
+        } else {
+            text.append(decoded);
+        }
+    }
+
+    // Returns the character an escape stands for, or 0 if it is not a valid escape
+    public static char unescape(char code) {
+        switch (code) {
+            case 'n': return '\n';
+            case 't': return '\t';
+            case 'r': return '\r';
+            case '"': return '"';
+            case '\'': return '\'';
+            case '\\': return '\\';
+            default: return 0;
+        }
+    }
+
+    public static char unescapeOrSelf(char code) {
+        char decoded = unescape(code);
+        return decoded == 0 ? code : decoded;
+    }
+
+    // Drivers for scanners that only see the finished match
+
+    public void decodeInteger(Token token, char[] buffer, int start, int end) {
+        int i = start;
+        beginNumber(buffer[i] == '-');
+        if (buffer[i] == '+' || buffer[i] == '-') {
+            i++;
+        }
+        for (; i < end; i++) {
+            digit(buffer[i]);
+        }
+        token.setIntValue(longValue(), overflow);
+    }
+
+    public void decodeFloat(Token token, char[] buffer, int start, int end) {
+        int i = start;
+        beginNumber(buffer[i] == '-');
+        if (buffer[i] == '+' || buffer[i] == '-') {
+            i++;
+        }
+        while (buffer[i] != '.') {
+            digit(buffer[i++]);
+        }
+        i++;
+        while (i < end && buffer[i] != 'e' && buffer[i] != 'E') {
+            fractionDigit(buffer[i++]);
+        }
+        if (i < end) {
+            i++;
+            beginExponent(buffer[i] == '-');
+            if (buffer[i] == '+' || buffer[i] == '-') {
+                i++;
+            }
+            for (; i < end; i++) {
+                exponentDigit(buffer[i]);
+            }
+        }
+        token.setFloatValue(significandTruncated
+            ? new BigDecimal(buffer, start, end - start).doubleValue()
+            : significandValue());
+    }
+
+    public void decodeString(Token token, char[] buffer, int start, int end) {
+        // buffer[start] and buffer[end - 1] are the quotes
+        int i = start + 1;
+        while (i < end - 1 && buffer[i] != '\\') {
+            i++;
+        }
+        if (i == end - 1) {
+            return; // no escapes: the value is the lexeme without its quotes
+        }
+        text.setLength(0);
+        text.append(buffer, start + 1, i - start - 1);
+        while (i < end - 1) {
+            char ch = buffer[i++];
+            if (ch == '\\') {
+                appendEscape(buffer[i++]);
+            } else {
+                text.append(ch);
+            }
+        }
+        token.setStringValue(text.toString());
+    }
+
+    public void decodeChar(Token token, char[] buffer, int start, int end) {
+        char ch = buffer[start + 1];
+        token.setCharValue(ch == '\\' ? unescapeOrSelf(buffer[start + 2]) : ch);
+    }
+}
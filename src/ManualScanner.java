@@ -1,27 +1,46 @@
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
 
-public class ManualScanner {
+public class ManualScanner implements LexicalScanner {
+    private static final RecognizerProfile.Recognizer[] RECOGNIZERS = RecognizerProfile.Recognizer.values();
+
     private String input;
     private int pos;
     private int line;
     private int column;
     private int tokenStartColumn;
+    private int tokenStartPos;
     private List<Token> tokens;
     private ErrorHandler errorHandler;
     private SymbolTable symbolTable;
+    private LiteralDecoder literals;
+    private ScanOptions options;
+    private boolean[] materialize;
+    private TokenSink sink;
+    private RecognizerProfile profile;
+    private TokenListener[] listeners;
     
-    // Statistics
-    private Map<TokenType, Integer> tokenCounts;
+    // Statistics, indexed by TokenType ordinal
+    private int[] tokenCounts;
     private int commentCount;
-    
-    // Keywords set for quick lookup
-    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
-        "start", "finish", "loop", "condition", "declare", "output", 
-        "input", "function", "return", "break", "continue", "else"
-    ));
+
+    // Ranged scans and checkpoint recording (see CheckpointIndex)
+    private CheckpointIndex checkpoints;
+    private int nextCheckpoint = Integer.MAX_VALUE;
+    private int stopLine = Integer.MAX_VALUE;
+    private int stopOffset = Integer.MAX_VALUE;
+
+    // Profiling: end of the input looked at and characters given back by
+    // the current recognizer attempt
+    private int examinedEnd;
+    private int backtracked;
 
     public ManualScanner(String input) {
+        this(input, ScanOptions.defaults());
+    }
+
+    public ManualScanner(String input, ScanOptions options) {
         this.input = input;
         this.pos = 0;
         this.line = 1;
@@ -29,63 +48,203 @@ public class ManualScanner {
         this.tokens = new ArrayList<>();
         this.errorHandler = new ErrorHandler();
         this.symbolTable = new SymbolTable();
-        this.tokenCounts = new HashMap<>();
+        this.literals = new LiteralDecoder();
+        this.options = options;
+        this.materialize = options.materializeMask();
+        this.sink = options.getTokenSink();
+        this.profile = options.getProfile();
+        this.listeners = options.getTokenListeners().toArray(new TokenListener[0]);
+        this.tokenCounts = new int[TokenType.values().length];
+        this.commentCount = 0;
+    }
+
+    /**
+     * Prepares this scanner for another input, keeping its token list,
+     * symbol table and error list (and their capacity) for reuse. Results
+     * of the previous scan are cleared, so copy out anything still needed.
+     */
+    public void reset(String input) {
+        reset(input, options);
+    }
+
+    public void reset(String input, ScanOptions options) {
+        this.input = input;
+        this.pos = 0;
+        this.line = 1;
+        this.column = 1;
+        this.tokens.clear();
+        this.errorHandler.clear();
+        this.symbolTable.clear();
+        if (options != this.options) {
+            this.options = options;
+            this.materialize = options.materializeMask();
+            this.sink = options.getTokenSink();
+            this.profile = options.getProfile();
+            this.listeners = options.getTokenListeners().toArray(new TokenListener[0]);
+        }
+        Arrays.fill(tokenCounts, 0);
         this.commentCount = 0;
+        this.checkpoints = null;
+        this.nextCheckpoint = Integer.MAX_VALUE;
+        this.stopLine = Integer.MAX_VALUE;
+        this.stopOffset = Integer.MAX_VALUE;
+    }
+
+    // Makes the next scan() record its checkpoints into index
+    void recordCheckpoints(CheckpointIndex index) {
+        this.checkpoints = index;
+        this.nextCheckpoint = 0;
+    }
+
+    /**
+     * Scans from a checkpoint instead of from the start of the input, and
+     * stops before the first token that starts after stopLine or at or
+     * after stopOffset.
+     */
+    public List<Token> scanFrom(CheckpointIndex.Checkpoint start, int stopLine, int stopOffset) {
+        this.pos = start.getOffset();
+        this.line = start.getLine();
+        this.column = start.getColumn();
+        this.stopLine = stopLine;
+        this.stopOffset = stopOffset;
+        if (start.isInComment()) {
+            int startPos = pos;
+            skipCommentBody(start.getCommentLine(), start.getCommentColumn());
+            notifyComment(startPos, start.getLine(), start.getColumn());
+        }
+        return scan();
     }
 
     public List<Token> scan() {
         while (pos < input.length()) {
             tokenStartColumn = column;
+            tokenStartPos = pos;
+            
+            if (line > stopLine || pos >= stopOffset) break;
+            if (pos >= nextCheckpoint) {
+                nextCheckpoint = checkpoints.record(pos, line, column, 0, 0);
+            }
             
             // Priority order for pattern matching
-            if (tryMultiLineComment()) continue;
-            if (trySingleLineComment()) continue;
-            if (tryMultiCharOperator()) continue;
-            if (tryKeyword()) continue;
-            if (tryBooleanLiteral()) continue;
-            if (tryIdentifier()) continue;
-            if (tryFloatLiteral()) continue;
-            if (tryIntegerLiteral()) continue;
-            if (tryStringLiteral()) continue;
-            if (tryCharLiteral()) continue;
-            if (trySingleCharOperator()) continue;
-            if (tryPunctuator()) continue;
-            if (tryWhitespace()) continue;
+            if (options.isStopAtFirstError() && errorHandler.hasErrors()) break;
+            
+            if (profile != null) {
+                if (dispatchProfiled()) continue;
+            } else {
+                if (tryMultiLineComment()) continue;
+                if (trySingleLineComment()) continue;
+                if (tryMultiCharOperator()) continue;
+                if (tryKeyword()) continue;
+                if (tryBooleanLiteral()) continue;
+                if (tryIdentifier()) continue;
+                if (tryFloatLiteral()) continue;
+                if (tryIntegerLiteral()) continue;
+                if (tryStringLiteral()) continue;
+                if (tryCharLiteral()) continue;
+                if (trySingleCharOperator()) continue;
+                if (tryPunctuator()) continue;
+                if (tryWhitespace()) continue;
+            }
             
             // If nothing matched, it's an error
             char ch = peek();
             errorHandler.reportInvalidCharacter(line, column, ch);
             consume();
+            if (options.isStopAtFirstError()) break;
         }
         
         return tokens;
     }
 
+    // Same order as the chain in scan(), recording every attempt
+    private boolean dispatchProfiled() {
+        for (RecognizerProfile.Recognizer recognizer : RECOGNIZERS) {
+            int start = pos;
+            examinedEnd = pos;
+            backtracked = 0;
+            boolean timed = profile.shouldSample(recognizer);
+            long startNanos = timed ? System.nanoTime() : 0;
+            boolean matched = attempt(recognizer);
+            long nanos = timed ? System.nanoTime() - startNanos : -1;
+            examined(fixedLookaheadEnd(recognizer, start));
+            int examinedChars = Math.max(examinedEnd, Math.min(pos + 1, input.length())) - start;
+            profile.record(recognizer, matched, examinedChars, backtracked, nanos);
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Recognizers that read ahead without peek(): the operator table
+    // compares two characters and fixed words look at a whole lowercase run
+    private int fixedLookaheadEnd(RecognizerProfile.Recognizer recognizer, int start) {
+        switch (recognizer) {
+            case MULTI_CHAR_OPERATOR:
+                return Math.min(start + 2, input.length());
+            case KEYWORD:
+            case BOOLEAN_LITERAL:
+                int end = start;
+                while (end < input.length() && isLowerLetter(input.charAt(end))) {
+                    end++;
+                }
+                return Math.min(end + 1, input.length());
+            default:
+                return start;
+        }
+    }
+
+    private boolean attempt(RecognizerProfile.Recognizer recognizer) {
+        switch (recognizer) {
+            case MULTI_LINE_COMMENT: return tryMultiLineComment();
+            case SINGLE_LINE_COMMENT: return trySingleLineComment();
+            case MULTI_CHAR_OPERATOR: return tryMultiCharOperator();
+            case KEYWORD: return tryKeyword();
+            case BOOLEAN_LITERAL: return tryBooleanLiteral();
+            case IDENTIFIER: return tryIdentifier();
+            case FLOAT_LITERAL: return tryFloatLiteral();
+            case INTEGER_LITERAL: return tryIntegerLiteral();
+            case STRING_LITERAL: return tryStringLiteral();
+            case CHAR_LITERAL: return tryCharLiteral();
+            case SINGLE_CHAR_OPERATOR: return trySingleCharOperator();
+            case PUNCTUATOR: return tryPunctuator();
+            case WHITESPACE: return tryWhitespace();
+            default: return false;
+        }
+    }
+
     private boolean tryMultiLineComment() {
         if (peek() == '#' && peekAhead(1) == '*') {
             int startLine = line;
             int startCol = column;
-            StringBuilder comment = new StringBuilder();
-            comment.append(consume()); // #
-            comment.append(consume()); // *
-            
-            while (pos < input.length()) {
-                if (peek() == '*' && peekAhead(1) == '#') {
-                    comment.append(consume()); // *
-                    comment.append(consume()); // #
-                    commentCount++;
-                    return true;
-                }
-                comment.append(consume());
-            }
-            
-            // Unclosed comment
-            errorHandler.reportUnclosedComment(startLine, startCol);
+            consume(); // #
+            consume(); // *
+            skipCommentBody(startLine, startCol);
+            notifyComment(tokenStartPos, startLine, startCol);
             return true;
         }
         return false;
     }
 
+    // Comment text is discarded, so it is never copied
+    private void skipCommentBody(int startLine, int startCol) {
+        while (pos < input.length()) {
+            if (pos >= nextCheckpoint) {
+                nextCheckpoint = checkpoints.record(pos, line, column, startLine, startCol);
+            }
+            if (peek() == '*' && peekAhead(1) == '#') {
+                consume(); // *
+                consume(); // #
+                commentCount++;
+                return;
+            }
+            consume();
+        }
+        
+        // Unclosed comment
+        errorHandler.reportUnclosedComment(startLine, startCol);
+    }
+
     private boolean trySingleLineComment() {
         if (peek() == '#' && peekAhead(1) == '#') {
             consume(); // #
@@ -95,24 +254,23 @@ public class ManualScanner {
                 consume();
             }
             commentCount++;
+            notifyToken(TokenType.SINGLE_LINE_COMMENT, null);
             return true;
         }
         return false;
     }
 
     private boolean tryMultiCharOperator() {
-        String twoChar = peekString(2);
-        
-        // Check two-character operators
-        if (twoChar.equals("**") || twoChar.equals("==") || twoChar.equals("!=") ||
-            twoChar.equals("<=") || twoChar.equals(">=") || twoChar.equals("&&") ||
-            twoChar.equals("||") || twoChar.equals("++") || twoChar.equals("--") ||
-            twoChar.equals("+=") || twoChar.equals("-=") || twoChar.equals("*=") ||
-            twoChar.equals("/=")) {
-            
-            String lexeme = consume() + "" + consume();
-            TokenType type = getOperatorType(lexeme);
-            addToken(type, lexeme);
+        // All two-character lexemes in the canonical table are operators
+        if (pos + 2 > input.length()) {
+            return false;
+        }
+        
+        int slot = Lexemes.find(input, pos, pos + 2);
+        if (slot >= 0) {
+            consume();
+            consume();
+            addToken(Lexemes.type(slot), Lexemes.spelling(slot));
             return true;
         }
         
@@ -120,42 +278,36 @@ public class ManualScanner {
     }
 
     private boolean tryKeyword() {
-        // Check if current position starts a keyword
-        for (String keyword : KEYWORDS) {
-            if (matchesKeyword(keyword)) {
-                String lexeme = "";
-                for (int i = 0; i < keyword.length(); i++) {
-                    lexeme += consume();
-                }
-                addToken(TokenType.KEYWORD, lexeme);
-                return true;
-            }
-        }
-        return false;
+        return tryFixedWord(TokenType.KEYWORD);
     }
     
-    private boolean matchesKeyword(String keyword) {
-        // Check if we have enough characters
-        if (pos + keyword.length() > input.length()) {
+    // Matches a keyword or boolean spelled by the lowercase run at pos.
+    // The word must not be part of a longer identifier (keyword must be
+    // followed by non-alphanumeric character).
+    private boolean tryFixedWord(TokenType expected) {
+        int end = pos;
+        while (end < input.length() && isLowerLetter(input.charAt(end))) {
+            end++;
+        }
+        if (end == pos || (end < input.length() && isAlphaNumeric(input.charAt(end)))) {
             return false;
         }
         
-        // Check if the keyword matches
-        for (int i = 0; i < keyword.length(); i++) {
-            if (input.charAt(pos + i) != keyword.charAt(i)) {
-                return false;
-            }
+        int slot = Lexemes.find(input, pos, end);
+        if (slot < 0 || Lexemes.type(slot) != expected) {
+            return false;
         }
         
-        // Make sure it's not part of a longer identifier
-        // (keyword must be followed by non-alphanumeric character)
-        if (pos + keyword.length() < input.length()) {
-            char nextChar = input.charAt(pos + keyword.length());
-            if (isAlphaNumeric(nextChar)) {
-                return false;
+        while (pos < end) {
+            consume();
+        }
+        Token token = createToken(expected, Lexemes.spelling(slot));
+        if (token != null) {
+            if (expected == TokenType.BOOLEAN_LITERAL) {
+                token.setBooleanValue(input.charAt(tokenStartPos) == 't');
             }
+            emit(token);
         }
-        
         return true;
     }
 
@@ -164,52 +316,35 @@ public class ManualScanner {
             return false;
         }
         
-        StringBuilder sb = new StringBuilder();
         int startLine = line;
         int startCol = column;
         
         // First character must be uppercase letter
-        sb.append(consume());
+        consume();
         
         // Followed by lowercase letters, digits, or underscores
         while (pos < input.length() && (isLowerLetter(peek()) || isDigit(peek()) || peek() == '_')) {
-            sb.append(consume());
+            consume();
         }
         
-        String lexeme = sb.toString();
-        
         // Check if it's too long
-        if (lexeme.length() > 31) {
-            errorHandler.reportInvalidIdentifier(startLine, startCol, lexeme, 
+        if (pos - tokenStartPos > 31) {
+            errorHandler.reportInvalidIdentifier(startLine, startCol, input.substring(tokenStartPos, pos), 
                 "Identifier exceeds maximum length of 31 characters");
             return true;
         }
         
-        addToken(TokenType.IDENTIFIER, lexeme);
-        symbolTable.addIdentifier(lexeme, startLine, startCol);
+        // Identifier tokens share the symbol table's instance of the name
+        String name = materialize[TokenType.IDENTIFIER.ordinal()]
+            ? symbolTable.addIdentifier(input.substring(tokenStartPos, pos), startLine, startCol)
+            : null;
+        addToken(TokenType.IDENTIFIER, name);
         
         return true;
     }
 
     private boolean tryBooleanLiteral() {
-        String four = peekString(4);
-        String five = peekString(5);
-        
-        if (five.equals("false") && !isAlphaNumeric(peekAhead(5))) {
-            String lexeme = "";
-            for (int i = 0; i < 5; i++) lexeme += consume();
-            addToken(TokenType.BOOLEAN_LITERAL, lexeme);
-            return true;
-        }
-        
-        if (four.equals("true") && !isAlphaNumeric(peekAhead(4))) {
-            String lexeme = "";
-            for (int i = 0; i < 4; i++) lexeme += consume();
-            addToken(TokenType.BOOLEAN_LITERAL, lexeme);
-            return true;
-        }
-        
-        return false;
+        return tryFixedWord(TokenType.BOOLEAN_LITERAL);
     }
 
     private boolean tryFloatLiteral() {
@@ -217,78 +352,70 @@ public class ManualScanner {
         int saveLine = line;
         int saveCol = column;
         
-        StringBuilder sb = new StringBuilder();
-        
         // Optional sign
+        literals.beginNumber(peek() == '-');
         if (peek() == '+' || peek() == '-') {
-            sb.append(consume());
+            consume();
         }
         
         // Must have at least one digit before decimal point
         if (!isDigit(peek())) {
-            pos = savePos;
-            line = saveLine;
-            column = saveCol;
+            rewind(savePos, saveLine, saveCol);
             return false;
         }
         
         while (isDigit(peek())) {
-            sb.append(consume());
+            literals.digit(consume());
         }
         
         // Must have decimal point
         if (peek() != '.') {
-            pos = savePos;
-            line = saveLine;
-            column = saveCol;
+            rewind(savePos, saveLine, saveCol);
             return false;
         }
         
-        sb.append(consume()); // consume '.'
+        consume(); // consume '.'
         
         // Must have 1-6 digits after decimal point
         int decimalDigits = 0;
-        int decStartPos = pos;
         while (isDigit(peek())) {
-            sb.append(consume());
+            literals.fractionDigit(consume());
             decimalDigits++;
         }
         
         if (decimalDigits == 0 || decimalDigits > 6) {
-            String lexeme = sb.toString();
-            if (decimalDigits > 6) {
-                // Consume extra digits
-                while (isDigit(peek())) {
-                    lexeme += consume();
-                }
-            }
-            errorHandler.reportMalformedLiteral(saveLine, saveCol, lexeme, 
+            errorHandler.reportMalformedLiteral(saveLine, saveCol, input.substring(savePos, pos), 
                 "Floating-point literal must have 1-6 digits after decimal point");
             return true;
         }
         
         // Optional exponent
         if (peek() == 'e' || peek() == 'E') {
-            sb.append(consume());
+            consume();
             
             // Optional sign in exponent
+            literals.beginExponent(peek() == '-');
             if (peek() == '+' || peek() == '-') {
-                sb.append(consume());
+                consume();
             }
             
             // Must have at least one digit in exponent
             if (!isDigit(peek())) {
-                errorHandler.reportMalformedLiteral(saveLine, saveCol, sb.toString(), 
+                errorHandler.reportMalformedLiteral(saveLine, saveCol, input.substring(savePos, pos), 
                     "Exponent must have at least one digit");
                 return true;
             }
             
             while (isDigit(peek())) {
-                sb.append(consume());
+                literals.exponentDigit(consume());
             }
         }
         
-        addToken(TokenType.FLOAT_LITERAL, sb.toString());
+        Token token = createToken(TokenType.FLOAT_LITERAL);
+        if (token != null) {
+            token.setFloatValue(literals.doubleValue(input, savePos, pos));
+            emit(token);
+        }
         return true;
     }
 
@@ -298,34 +425,33 @@ public class ManualScanner {
         int saveLine = line;
         int saveCol = column;
         
-        StringBuilder sb = new StringBuilder();
-        
         // Optional sign
+        literals.beginNumber(peek() == '-');
         if (peek() == '+' || peek() == '-') {
-            sb.append(consume());
+            consume();
         }
         
         // Must have at least one digit
         if (!isDigit(peek())) {
-            pos = savePos;
-            line = saveLine;
-            column = saveCol;
+            rewind(savePos, saveLine, saveCol);
             return false;
         }
         
         while (isDigit(peek())) {
-            sb.append(consume());
+            literals.digit(consume());
         }
         
         // Check if it's actually a float (has decimal point)
         if (peek() == '.') {
-            pos = savePos;
-            line = saveLine;
-            column = saveCol;
+            rewind(savePos, saveLine, saveCol);
             return false;
         }
         
-        addToken(TokenType.INTEGER_LITERAL, sb.toString());
+        Token token = createToken(TokenType.INTEGER_LITERAL);
+        if (token != null) {
+            token.setIntValue(literals.longValue(), literals.overflowed());
+            emit(token);
+        }
         return true;
     }
 
@@ -336,34 +462,34 @@ public class ManualScanner {
         
         int startLine = line;
         int startCol = column;
-        StringBuilder sb = new StringBuilder();
-        sb.append(consume()); // opening "
+        consume(); // opening "
+        literals.beginString(pos);
         
         while (pos < input.length() && peek() != '"' && peek() != '\n') {
             if (peek() == '\\') {
-                sb.append(consume()); // backslash
+                consume(); // backslash
                 if (pos < input.length()) {
-                    char next = peek();
-                    if (next == '"' || next == '\\' || next == 'n' || 
-                        next == 't' || next == 'r') {
-                        sb.append(consume());
-                    } else {
-                        // Invalid escape sequence
-                        sb.append(consume());
-                    }
+                    // Valid escapes are \", \\, \n, \t and \r; anything else
+                    // is taken as-is
+                    literals.escape(input, pos - 1, consume());
                 }
             } else {
-                sb.append(consume());
+                consume();
             }
         }
         
         if (pos >= input.length() || peek() != '"') {
-            errorHandler.reportUnterminatedString(startLine, startCol, sb.toString());
+            errorHandler.reportUnterminatedString(startLine, startCol, input.substring(tokenStartPos, pos));
             return true;
         }
         
-        sb.append(consume()); // closing "
-        addToken(TokenType.STRING_LITERAL, sb.toString());
+        String value = literals.endString(input, pos);
+        consume(); // closing "
+        Token token = createToken(TokenType.STRING_LITERAL);
+        if (token != null) {
+            token.setStringValue(value);
+            emit(token);
+        }
         return true;
     }
 
@@ -374,36 +500,36 @@ public class ManualScanner {
         
         int startLine = line;
         int startCol = column;
-        StringBuilder sb = new StringBuilder();
-        sb.append(consume()); // opening '
+        consume(); // opening '
         
         if (pos >= input.length()) {
-            errorHandler.reportUnterminatedChar(startLine, startCol, sb.toString());
+            errorHandler.reportUnterminatedChar(startLine, startCol, input.substring(tokenStartPos, pos));
             return true;
         }
         
+        char value = 0;
         if (peek() == '\\') {
-            sb.append(consume()); // backslash
+            consume(); // backslash
             if (pos < input.length()) {
-                char next = peek();
-                if (next == '\'' || next == '\\' || next == 'n' || 
-                    next == 't' || next == 'r') {
-                    sb.append(consume());
-                } else {
-                    sb.append(consume());
-                }
+                // Valid escapes are \', \\, \n, \t and \r; anything else
+                // is taken as-is
+                value = LiteralDecoder.unescapeOrSelf(consume());
             }
         } else if (peek() != '\'' && peek() != '\n') {
-            sb.append(consume());
+            value = consume();
         }
         
         if (pos >= input.length() || peek() != '\'') {
-            errorHandler.reportUnterminatedChar(startLine, startCol, sb.toString());
+            errorHandler.reportUnterminatedChar(startLine, startCol, input.substring(tokenStartPos, pos));
             return true;
         }
         
-        sb.append(consume()); // closing '
-        addToken(TokenType.CHAR_LITERAL, sb.toString());
+        consume(); // closing '
+        Token token = createToken(TokenType.CHAR_LITERAL);
+        if (token != null) {
+            token.setCharValue(value);
+            emit(token);
+        }
         return true;
     }
 
@@ -411,9 +537,8 @@ public class ManualScanner {
         char ch = peek();
         if (ch == '+' || ch == '-' || ch == '*' || ch == '/' || 
             ch == '%' || ch == '=' || ch == '<' || ch == '>' || ch == '!') {
-            String lexeme = String.valueOf(consume());
-            TokenType type = getOperatorType(lexeme);
-            addToken(type, lexeme);
+            int slot = Lexemes.find(consume());
+            addToken(Lexemes.type(slot), Lexemes.spelling(slot));
             return true;
         }
         return false;
@@ -423,8 +548,7 @@ public class ManualScanner {
         char ch = peek();
         if (ch == '(' || ch == ')' || ch == '{' || ch == '}' ||
             ch == '[' || ch == ']' || ch == ',' || ch == ';' || ch == ':') {
-            String lexeme = String.valueOf(consume());
-            addToken(TokenType.PUNCTUATOR, lexeme);
+            addToken(TokenType.PUNCTUATOR, Lexemes.canonical(consume()));
             return true;
         }
         return false;
@@ -440,30 +564,54 @@ public class ManualScanner {
         return false;
     }
 
-    private TokenType getOperatorType(String op) {
-        if (op.equals("+") || op.equals("-") || op.equals("*") || 
-            op.equals("/") || op.equals("%") || op.equals("**")) {
-            return TokenType.ARITHMETIC_OP;
-        } else if (op.equals("==") || op.equals("!=") || op.equals("<") || 
-                   op.equals(">") || op.equals("<=") || op.equals(">=")) {
-            return TokenType.RELATIONAL_OP;
-        } else if (op.equals("&&") || op.equals("||") || op.equals("!")) {
-            return TokenType.LOGICAL_OP;
-        } else if (op.equals("=") || op.equals("+=") || op.equals("-=") || 
-                   op.equals("*=") || op.equals("/=")) {
-            return TokenType.ASSIGNMENT_OP;
-        } else if (op.equals("++")) {
-            return TokenType.INCREMENT_OP;
-        } else if (op.equals("--")) {
-            return TokenType.DECREMENT_OP;
+    // Fixed lexemes and identifiers arrive as shared String instances
+    private void addToken(TokenType type, String lexeme) {
+        Token token = createToken(type, lexeme);
+        if (token != null) {
+            emit(token);
         }
-        return TokenType.ERROR;
     }
 
-    private void addToken(TokenType type, String lexeme) {
-        Token token = new Token(type, lexeme, line, tokenStartColumn);
-        tokens.add(token);
-        tokenCounts.put(type, tokenCounts.getOrDefault(type, 0) + 1);
+    // Counts the token just recognized and returns it unpublished, so a
+    // decoded value can be set before emit() hands it to another thread.
+    // Returns null when the token type is outside the options' projection.
+    private Token createToken(TokenType type, String lexeme) {
+        tokenCounts[type.ordinal()]++;
+        notifyToken(type, lexeme);
+        if (!materialize[type.ordinal()]) {
+            return null;
+        }
+        if (lexeme != null) {
+            return new Token(type, lexeme, tokenStartPos, line, tokenStartColumn);
+        }
+        // Literals stay views over the input until someone asks for the String
+        return new Token(type, input, tokenStartPos, pos - tokenStartPos, line, tokenStartColumn);
+    }
+
+    private Token createToken(TokenType type) {
+        return createToken(type, null);
+    }
+
+    // The token from tokenStartPos to pos, for the options' listeners
+    private void notifyToken(TokenType type, String lexeme) {
+        for (TokenListener listener : listeners) {
+            listener.token(type, lexeme, input, tokenStartPos, pos - tokenStartPos, line, tokenStartColumn);
+        }
+    }
+
+    // A multi-line comment from start to pos
+    private void notifyComment(int start, int startLine, int startColumn) {
+        for (TokenListener listener : listeners) {
+            listener.comment(input, start, pos, startLine, startColumn);
+        }
+    }
+
+    private void emit(Token token) {
+        if (sink != null) {
+            sink.accept(token);
+        } else {
+            tokens.add(token);
+        }
     }
 
     private char peek() {
@@ -476,9 +624,22 @@ public class ManualScanner {
         return input.charAt(pos + offset);
     }
 
-    private String peekString(int length) {
-        int end = Math.min(pos + length, input.length());
-        return input.substring(pos, end);
+    // Input before end has been looked at by the current recognizer. To keep
+    // peek() cheap it does not call this; dispatchProfiled() counts one
+    // character of lookahead past where the recognizer stopped instead.
+    private void examined(int end) {
+        if (end > examinedEnd) {
+            examinedEnd = end;
+        }
+    }
+
+    // Gives back what a recognizer consumed before it failed
+    private void rewind(int savePos, int saveLine, int saveCol) {
+        examined(Math.min(pos + 1, input.length()));
+        backtracked += pos - savePos;
+        pos = savePos;
+        line = saveLine;
+        column = saveCol;
     }
 
     private char consume() {
@@ -525,21 +686,50 @@ public class ManualScanner {
 
     public void printStatistics() {
         System.out.println("\n=== Statistics ===");
-        System.out.println("Total tokens: " + tokens.size());
+        System.out.println("Total tokens: " + getTotalTokenCount());
         System.out.println("Lines processed: " + line);
         System.out.println("Comments removed: " + commentCount);
         System.out.println("\nToken counts by type:");
         
-        tokenCounts.entrySet().stream()
-            .sorted(Map.Entry.<TokenType, Integer>comparingByValue().reversed())
-            .forEach(entry -> 
-                System.out.println("  " + entry.getKey() + ": " + entry.getValue()));
+        Arrays.stream(TokenType.values())
+            .filter(type -> tokenCounts[type.ordinal()] > 0)
+            .sorted(Comparator.comparingInt((TokenType type) -> tokenCounts[type.ordinal()]).reversed())
+            .forEach(type -> 
+                System.out.println("  " + type + ": " + tokenCounts[type.ordinal()]));
     }
 
+    // Only token types selected by the scan options are returned here,
+    // and nothing when the tokens went to a TokenSink
     public List<Token> getTokens() {
         return tokens;
     }
 
+    // Counts cover every recognized token, whether materialized or not
+    public int getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public int getTotalTokenCount() {
+        int total = 0;
+        for (int count : tokenCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
+    // Current position; after scan() this is where the input ended
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
     public ErrorHandler getErrorHandler() {
         return errorHandler;
     }
@@ -551,37 +741,46 @@ public class ManualScanner {
     // Main method for testing
     public static void main(String[] args) {
         if (args.length == 0) {
-            System.out.println("Usage: java ManualScanner <input-file>");
+            System.out.println("Usage: java ManualScanner [--validate] [--fail-fast] [--only=TYPE,...] [--profile] <input-file>");
             return;
         }
 
         try {
+            ScanOptions options = ScanOptions.fromArgs(args);
+            
             // Read input file
-            String content = readFile(args[0]);
+            String content = readFile(args[args.length - 1]);
             
             // Create scanner and scan
-            ManualScanner scanner = new ManualScanner(content);
+            ManualScanner scanner = new ManualScanner(content, options);
             scanner.scan();
+            if (options.getProfile() != null) {
+                options.getProfile().print(args[args.length - 1]);
+            }
             
             // Print results
+            if (options.isValidateOnly()) {
+                scanner.printStatistics();
+                scanner.getErrorHandler().printErrorSummary();
+                if (scanner.getErrorHandler().hasErrors()) {
+                    System.exit(1);
+                }
+                return;
+            }
             scanner.printTokens();
             scanner.printStatistics();
             scanner.getSymbolTable().print();
             scanner.getErrorHandler().printErrorSummary();
             
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
         } catch (IOException e) {
             System.err.println("Error reading file: " + e.getMessage());
         }
     }
 
+    // Plain or gzip-compressed (.gz) input
     private static String readFile(String filename) throws IOException {
-        StringBuilder content = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                content.append(line).append('\n');
-            }
-        }
-        return content.toString();
+        return CompressedSource.read(Paths.get(filename));
     }
 }
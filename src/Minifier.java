@@ -0,0 +1,248 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes a source back out without comments and with as little whitespace
+ * as keeps it scanning to the same tokens.
+ *
+ * Tokens stream from Yylex through a TokenSink straight to the output, so
+ * memory use does not grow with the input (apart from the symbol table,
+ * which grows with the number of distinct identifiers). With keepLines,
+ * every token stays on its original line, so line numbers in later error
+ * messages still match the original source.
+ *
+ * The optional offset map records, for each token, its offset in the
+ * output and its line and column in the input, as unsigned varint deltas.
+ * lookup() maps an output offset back to the original position.
+ */
+public class Minifier implements TokenSink {
+    private static final int MAP_MAGIC = 0x434d4150; // "CMAP"
+    private static final int MAP_VERSION = 1;
+
+    private final Writer out;
+    private final boolean keepLines;
+    private final DataOutputStream map;
+
+    private long outputOffset;
+    private int outputLine = 1;
+    private char lastChar; // last character written, 0 at the start of a line
+
+    private long mapOffset;
+    private int mapLine = 1;
+    private int mapColumn = 1;
+
+    public Minifier(Writer out) {
+        this(out, false, null);
+    }
+
+    // map may be null when no offset map is wanted
+    public Minifier(Writer out, boolean keepLines, OutputStream map) {
+        this.out = out;
+        this.keepLines = keepLines;
+        this.map = map == null ? null : new DataOutputStream(map);
+    }
+
+    // Minifies the whole input; the returned errors are tokens that could not
+    // be scanned and so are missing from the output
+    public ErrorHandler minify(Reader in) throws IOException {
+        if (map != null) {
+            map.writeInt(MAP_MAGIC);
+            map.writeInt(MAP_VERSION);
+        }
+        Yylex scanner = new Yylex(in, ScanOptions.defaults().setTokenSink(this));
+        scanner.getErrorHandler().setEcho(false);
+        try {
+            scanner.scan();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (outputOffset > 0) {
+            write("\n");
+        }
+        out.flush();
+        if (map != null) {
+            map.flush();
+        }
+        return scanner.getErrorHandler();
+    }
+
+    @Override
+    public void accept(Token token) {
+        try {
+            String lexeme = token.getLexeme();
+            if (keepLines && token.getLine() > outputLine) {
+                while (outputLine < token.getLine()) {
+                    write("\n");
+                    outputLine++;
+                }
+                lastChar = 0;
+            } else if (lastChar != 0 && needsSeparator(lastChar, lexeme.charAt(0))) {
+                write(" ");
+            }
+            if (map != null) {
+                writeMapEntry(token.getLine(), token.getColumn());
+            }
+            write(lexeme);
+            lastChar = lexeme.charAt(lexeme.length() - 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * Whether two tokens written next to each other would scan differently:
+     * words and numbers would merge, operator characters could form a
+     * two-character operator, and a sign followed by a digit would become
+     * part of a signed literal.
+     */
+    static boolean needsSeparator(char last, char next) {
+        if (isWordChar(last) && isWordChar(next)) {
+            return true;
+        }
+        if (isOperatorChar(last) && isOperatorChar(next)) {
+            return true;
+        }
+        return (last == '+' || last == '-') && next >= '0' && next <= '9';
+    }
+
+    private static boolean isWordChar(char ch) {
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9')
+            || ch == '_' || ch == '.';
+    }
+
+    private static boolean isOperatorChar(char ch) {
+        return "+-*/%=<>!&|".indexOf(ch) >= 0;
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text);
+        outputOffset += text.length();
+    }
+
+    private void writeMapEntry(int line, int column) throws IOException {
+        writeVarLong(map, outputOffset - mapOffset);
+        writeVarLong(map, line - mapLine);
+        writeVarLong(map, line == mapLine ? column - mapColumn : column);
+        mapOffset = outputOffset;
+        mapLine = line;
+        mapColumn = column;
+    }
+
+    // Original {line, column} of the character at offset in the minified output,
+    // or null if the offset lies before the first token
+    public static int[] lookup(Path mapFile, long offset) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(mapFile)))) {
+            if (in.readInt() != MAP_MAGIC || in.readInt() != MAP_VERSION) {
+                throw new IOException("Not a minifier offset map");
+            }
+            int[] found = null;
+            long entryOffset = 0;
+            int line = 1;
+            int column = 1;
+            while (true) {
+                long deltaOffset;
+                try {
+                    deltaOffset = readVarLong(in);
+                } catch (EOFException e) {
+                    break;
+                }
+                entryOffset += deltaOffset;
+                if (entryOffset > offset) {
+                    break;
+                }
+                long deltaLine = readVarLong(in);
+                long columnValue = readVarLong(in);
+                column = deltaLine == 0 ? column + (int) columnValue : (int) columnValue;
+                line += (int) deltaLine;
+                // Within a token, columns advance with the offset
+                found = new int[] {line, column + (int) (offset - entryOffset)};
+            }
+            return found;
+        }
+    }
+
+    // Unsigned LEB128, as in ScanSummary
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("lookup")) {
+            try {
+                int[] position = lookup(Paths.get(args[1]), Long.parseLong(args[2]));
+                System.out.println(position == null ? "Before the first token"
+                    : "Line: " + position[0] + ", Col: " + position[1]);
+            } catch (IOException e) {
+                System.err.println("Error reading map: " + e.getMessage());
+            }
+            return;
+        }
+
+        boolean keepLines = false;
+        Path mapFile = null;
+        Path input = null;
+        Path output = null;
+        for (String arg : args) {
+            if (arg.equals("--keep-lines")) {
+                keepLines = true;
+            } else if (arg.startsWith("--map=")) {
+                mapFile = Paths.get(arg.substring("--map=".length()));
+            } else if (input == null) {
+                input = Paths.get(arg);
+            } else {
+                output = Paths.get(arg);
+            }
+        }
+        if (input == null) {
+            System.out.println("Usage: java Minifier [--keep-lines] [--map=FILE] <input-file> [output-file]");
+            System.out.println("       java Minifier lookup <map-file> <output-offset>");
+            return;
+        }
+
+        try (Reader in = CompressedSource.open(input);
+             Writer out = new BufferedWriter(output == null
+                 ? new OutputStreamWriter(System.out) : Files.newBufferedWriter(output));
+             OutputStream map = mapFile == null ? null
+                 : new BufferedOutputStream(Files.newOutputStream(mapFile))) {
+            ErrorHandler errors = new Minifier(out, keepLines, map).minify(in);
+            if (errors.hasErrors()) {
+                out.flush();
+                errors.printErrorSummary();
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,401 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Token table kept outside the Java heap, written by ManualScanner as it
+ * scans, so even the largest inputs leave only the scanner's own state on
+ * the heap.
+ *
+ * Each token is a fixed-width record of RECORD_SIZE bytes: offset (long),
+ * length, line, column and type ordinal (ints). Records live in chunks of
+ * direct memory allocated as the table grows, so growing never copies.
+ * A store can instead be backed by a file, each chunk a mapped region of
+ * it after a small header holding the record count, so the table survives
+ * the process and open() can read it back.
+ *
+ * close() releases the chunks at once, rather than when the collector
+ * finds the buffers unreachable; cursors throw IllegalStateException
+ * when used after it.
+ * Cursors read the records in place, and text() gives a token's text as
+ * a view of the source, so iterating copies nothing.
+ */
+public class OffHeapTokenStore implements TokenListener, AutoCloseable {
+    public static final int RECORD_SIZE = 24;
+    public static final int DEFAULT_CHUNK_RECORDS = 1 << 18; // 6 MB chunks
+
+    private static final int OFFSET = 0;
+    private static final int LENGTH = 8;
+    private static final int LINE = 12;
+    private static final int COLUMN = 16;
+    private static final int TYPE = 20;
+
+    // File header: magic, record size, chunk records, record count
+    private static final int MAGIC = 0x544f4b53; // "TOKS"
+    private static final int HEADER_SIZE = 32;
+    private static final int HEADER_COUNT = 16;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final FileChannel file;
+    private final MappedByteBuffer header;
+    private final boolean readOnly;
+    private ByteBuffer current;
+    private long size;
+    private boolean closed;
+
+    /**
+     * Reads records in order without copying them out of the store.
+     */
+    public class Cursor {
+        private long index = -1;
+        private ByteBuffer chunk;
+        private int base;
+
+        // Moves to the next record; false after the last
+        public boolean next() {
+            return seek(index + 1);
+        }
+
+        // Moves to record index; false if there is no such record
+        public boolean seek(long index) {
+            checkOpen();
+            if (index < 0 || index >= size) {
+                this.index = index < 0 ? -1 : size;
+                return false;
+            }
+            this.index = index;
+            chunk = chunks.get((int) (index >>> chunkShift));
+            base = (int) (index & chunkMask) * RECORD_SIZE;
+            return true;
+        }
+
+        public long index() {
+            return index;
+        }
+
+        public TokenType type() {
+            return TYPES[record().getInt(base + TYPE)];
+        }
+
+        public long offset() {
+            return record().getLong(base + OFFSET);
+        }
+
+        public int length() {
+            return record().getInt(base + LENGTH);
+        }
+
+        public int line() {
+            return record().getInt(base + LINE);
+        }
+
+        public int column() {
+            return record().getInt(base + COLUMN);
+        }
+
+        // The chunk holding the current record; its memory is gone once the
+        // store is closed, so reading it then could crash the JVM
+        private ByteBuffer record() {
+            checkOpen();
+            return chunk;
+        }
+
+        // The token's text as a view of the source it was scanned from
+        public CharSequence text(CharSequence source) {
+            int start = (int) offset();
+            return CharBuffer.wrap(source, start, start + length());
+        }
+    }
+
+    // A store in direct memory
+    public OffHeapTokenStore() {
+        this(DEFAULT_CHUNK_RECORDS);
+    }
+
+    public OffHeapTokenStore(int chunkRecords) {
+        this(chunkRecords, null, null, false);
+    }
+
+    private OffHeapTokenStore(int chunkRecords, FileChannel file, MappedByteBuffer header, boolean readOnly) {
+        if (chunkRecords < 1 || Integer.bitCount(chunkRecords) != 1
+                || (long) chunkRecords * RECORD_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chunk records must be a power of two: " + chunkRecords);
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkRecords);
+        this.chunkMask = chunkRecords - 1;
+        this.file = file;
+        this.header = header;
+        this.readOnly = readOnly;
+    }
+
+    // A new store backed by path, replacing any file there
+    public static OffHeapTokenStore create(Path path) throws IOException {
+        return create(path, DEFAULT_CHUNK_RECORDS);
+    }
+
+    public static OffHeapTokenStore create(Path path, int chunkRecords) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(4, RECORD_SIZE);
+        header.putInt(8, chunkRecords);
+        header.putLong(HEADER_COUNT, 0);
+        return new OffHeapTokenStore(chunkRecords, file, header, false);
+    }
+
+    // Opens a store written by an earlier create(), read-only
+    public static OffHeapTokenStore open(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (file.size() < HEADER_SIZE) {
+                throw new IOException("Not a token store: " + path);
+            }
+            MappedByteBuffer header = file.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != RECORD_SIZE) {
+                throw new IOException("Not a token store: " + path);
+            }
+            OffHeapTokenStore store = new OffHeapTokenStore(header.getInt(8), file, header, true);
+            long count = header.getLong(HEADER_COUNT);
+            long chunkBytes = (long) RECORD_SIZE << store.chunkShift;
+            if (file.size() < HEADER_SIZE + count * RECORD_SIZE) {
+                throw new IOException("Token store is truncated: " + path);
+            }
+            // The last chunk may have been cut to the records it holds
+            while ((long) store.chunks.size() << store.chunkShift < count) {
+                long position = HEADER_SIZE + store.chunks.size() * chunkBytes;
+                ByteBuffer chunk = file.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(chunkBytes, file.size() - position));
+                store.chunks.add(chunk.order(ByteOrder.LITTLE_ENDIAN));
+            }
+            store.size = count;
+            return store;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public void add(TokenType type, long offset, int length, int line, int column) {
+        int base = (int) (size & chunkMask) * RECORD_SIZE;
+        if (base == 0) {
+            current = addChunk();
+        }
+        ByteBuffer chunk = current;
+        chunk.putLong(base + OFFSET, offset);
+        chunk.putInt(base + LENGTH, length);
+        chunk.putInt(base + LINE, line);
+        chunk.putInt(base + COLUMN, column);
+        chunk.putInt(base + TYPE, type.ordinal());
+        size++;
+    }
+
+    // Every recognized token except comments gets a record
+    @Override
+    public void token(TokenType type, String lexeme, String input, int offset, int length, int line, int column) {
+        if (type != TokenType.SINGLE_LINE_COMMENT) {
+            add(type, offset, length, line, column);
+        }
+    }
+
+    private ByteBuffer addChunk() {
+        if (closed || readOnly) {
+            throw new IllegalStateException(closed ? "Token store is closed" : "Token store is read-only");
+        }
+        int chunkBytes = RECORD_SIZE << chunkShift;
+        ByteBuffer chunk;
+        if (file == null) {
+            chunk = ByteBuffer.allocateDirect(chunkBytes);
+        } else {
+            try {
+                chunk = file.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (long) chunks.size() * chunkBytes,
+                    chunkBytes);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot grow token store", e);
+            }
+        }
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    public Cursor cursor() {
+        checkOpen();
+        return new Cursor();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Token store is closed");
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    // Off-heap bytes held by the chunks
+    public long getCapacityBytes() {
+        return (long) chunks.size() * (RECORD_SIZE << chunkShift);
+    }
+
+    public boolean isFileBacked() {
+        return file != null;
+    }
+
+    // Writes the record count and flushes a file-backed store's chunks
+    public void force() {
+        if (file == null || readOnly || closed) {
+            return;
+        }
+        for (ByteBuffer chunk : chunks) {
+            ((MappedByteBuffer) chunk).force();
+        }
+        header.putLong(HEADER_COUNT, size);
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        force();
+        closed = true;
+        long length = HEADER_SIZE + getCapacityBytes();
+        for (ByteBuffer chunk : chunks) {
+            release(chunk);
+        }
+        chunks.clear();
+        current = null;
+        if (file != null) {
+            release(header);
+            if (!readOnly && CLEANER != null) {
+                // Once unmapped, the unused end of the last chunk can go
+                file.truncate(Math.min(length, HEADER_SIZE + size * RECORD_SIZE));
+            }
+            file.close();
+        }
+    }
+
+    // Frees a direct or mapped buffer now instead of at garbage collection.
+    // Uses sun.misc.Unsafe.invokeCleaner, in the jdk.unsupported module;
+    // without it the buffer is left to the collector.
+    private static void release(ByteBuffer buffer) {
+        if (CLEANER != null && buffer.isDirect()) {
+            try {
+                CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                // left to the collector
+            }
+        }
+    }
+
+    private static final Object UNSAFE;
+    private static final Method CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            cleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            cleaner = null;
+        }
+        UNSAFE = unsafe;
+        CLEANER = cleaner;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        boolean map = args.length == 3 && args[0].equals("--map");
+        boolean open = args.length == 2 && args[0].equals("--open");
+        if (args.length == 0 || (args.length > 1 && !map && !open)) {
+            System.out.println("Usage: java OffHeapTokenStore [--map <store-file>] <input-file>");
+            System.out.println("       java OffHeapTokenStore --open <store-file>");
+            return;
+        }
+
+        try {
+            if (open) {
+                try (OffHeapTokenStore store = open(Paths.get(args[1]))) {
+                    printSummary(store, null);
+                }
+                return;
+            }
+
+            String content = CompressedSource.read(Paths.get(args[args.length - 1]));
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            try (OffHeapTokenStore store = map ? create(Paths.get(args[1])) : new OffHeapTokenStore()) {
+                ManualScanner scanner = new ManualScanner(content, ScanOptions.validateOnly().addTokenListener(store));
+                scanner.getErrorHandler().setEcho(false);
+                scanner.scan();
+                long elapsed = System.nanoTime() - start;
+                long heapAfter = usedHeap();
+
+                System.out.printf("Scanned %,d tokens into %d chunks (%,d bytes %s) in %.1f ms%n", store.size(),
+                    store.getChunkCount(), store.getCapacityBytes(), map ? "mapped from " + args[1] : "off-heap",
+                    elapsed / 1e6);
+                System.out.printf("Heap in use: %,d bytes before, %,d bytes after (input: %,d chars)%n",
+                    heapBefore, heapAfter, content.length());
+                printSummary(store, content);
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Counts by type through a cursor, and the first tokens
+    private static void printSummary(OffHeapTokenStore store, CharSequence source) {
+        long[] counts = new long[TYPES.length];
+        Cursor cursor = store.cursor();
+        while (cursor.next()) {
+            counts[cursor.type().ordinal()]++;
+        }
+        System.out.println("\n=== Token Store: " + store.size() + " records ===");
+        for (TokenType type : TYPES) {
+            if (counts[type.ordinal()] > 0) {
+                System.out.println(String.format("%-25s %,d", type, counts[type.ordinal()]));
+            }
+        }
+        System.out.println("\nFirst tokens:");
+        cursor.seek(-1);
+        for (int i = 0; i < 10 && cursor.next(); i++) {
+            String text = source == null ? "" : "  " + cursor.text(source);
+            System.out.println(String.format("%-25s Line: %-4d Col: %-4d Offset: %-8d Length: %d%s", cursor.type(),
+                cursor.line(), cursor.column(), cursor.offset(), cursor.length(), text));
+        }
+    }
+}
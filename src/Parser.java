@@ -0,0 +1,465 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-descent parser for the syntax rules in docs/LanguageGrammar.txt.
+ *
+ * Tokens are pulled one at a time from a TokenSource, so the parser can
+ * run against a TokenRingBuffer filled by a scanner on another thread
+ * (see PipelinedParser). The result is a flat SyntaxTree. Syntax errors
+ * are reported to the parser's ErrorHandler and parsing resumes at the
+ * next statement.
+ */
+public class Parser {
+    // Binary operator precedence levels, loosest first
+    private static final String[][] BINARY_LEVELS = {
+        {"||"},
+        {"&&"},
+        {"==", "!="},
+        {"<", ">", "<=", ">="},
+        {"+", "-"},
+        {"*", "/", "%"},
+        {"**"}
+    };
+    private static final int ADDITIVE_LEVEL = 4;
+
+    private TokenSource source;
+    private SyntaxTree tree;
+    private ErrorHandler errorHandler;
+
+    private Token current;
+    private int currentIndex;
+    private int previousLine;
+
+    public Parser(TokenSource source) {
+        this.source = source;
+        this.tree = new SyntaxTree();
+        this.errorHandler = new ErrorHandler();
+        this.previousLine = 1;
+        fetch();
+    }
+
+    // Parses tokens that are already in memory
+    public Parser(List<Token> tokens) {
+        this(listSource(tokens));
+    }
+
+    public SyntaxTree parse() {
+        int program = tree.addNode(SyntaxTree.NodeKind.PROGRAM, currentIndex);
+        tree.setRoot(program);
+
+        if (!expectKeyword("start")) {
+            synchronize();
+        }
+        tree.appendChild(program, parseBlock());
+        expectKeyword("finish");
+
+        if (current.getType() != TokenType.EOF) {
+            error("Unexpected tokens after end of program");
+        }
+        tree.trim();
+        return tree;
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    // Statements
+
+    private int parseBlock() {
+        int block = tree.addNode(SyntaxTree.NodeKind.BLOCK, SyntaxTree.NONE);
+        while (current.getType() != TokenType.EOF && !isKeyword("finish") && !isKeyword("else")) {
+            int errorsBefore = errorHandler.getErrorCount();
+            int statement = parseStatement();
+            tree.appendChild(block, statement);
+            // A statement may end with an optional ';'
+            if (isPunctuator(";")) {
+                advance();
+            }
+            if (errorHandler.getErrorCount() > errorsBefore) {
+                synchronize();
+            }
+        }
+        return block;
+    }
+
+    private int parseStatement() {
+        if (current.getType() == TokenType.KEYWORD) {
+            switch (current.getLexeme()) {
+                case "declare": return parseDeclaration();
+                case "input": return parseUnaryStatement(SyntaxTree.NodeKind.INPUT, true);
+                case "output": return parseUnaryStatement(SyntaxTree.NodeKind.OUTPUT, false);
+                case "condition": return parseCondition();
+                case "loop": return parseLoop();
+                case "function": return parseFunction();
+                case "return": return parseReturn();
+                case "break": return tree.addNode(SyntaxTree.NodeKind.BREAK, advance());
+                case "continue": return tree.addNode(SyntaxTree.NodeKind.CONTINUE, advance());
+                default:
+                    break;
+            }
+        } else if (current.getType() == TokenType.IDENTIFIER) {
+            return parseIdentifierStatement();
+        } else if (isIncrementOrDecrement()) {
+            int op = advance();
+            int prefix = tree.addNode(SyntaxTree.NodeKind.PREFIX, op);
+            tree.appendChild(prefix, parseTarget());
+            return statement(prefix);
+        }
+        error("Expected a statement");
+        advance();
+        return SyntaxTree.NONE;
+    }
+
+    private int parseDeclaration() {
+        advance(); // declare
+        if (current.getType() != TokenType.IDENTIFIER) {
+            error("Expected identifier after 'declare'");
+            return SyntaxTree.NONE;
+        }
+        int name = advance();
+        if (isPunctuator("[")) {
+            advance();
+            int declaration = tree.addNode(SyntaxTree.NodeKind.DECLARE_ARRAY, name);
+            if (current.getType() != TokenType.INTEGER_LITERAL) {
+                error("Expected array size");
+                return declaration;
+            }
+            tree.appendChild(declaration, tree.addNode(SyntaxTree.NodeKind.LITERAL, advance()));
+            expectPunctuator("]");
+            return declaration;
+        }
+        int declaration = tree.addNode(SyntaxTree.NodeKind.DECLARE, name);
+        if (isOperator(TokenType.ASSIGNMENT_OP, "=")) {
+            advance();
+            tree.appendChild(declaration, parseExpression());
+        } else {
+            error("Expected '=' or '[' in declaration");
+        }
+        return declaration;
+    }
+
+    private int parseUnaryStatement(SyntaxTree.NodeKind kind, boolean targetOnly) {
+        int statement = tree.addNode(kind, advance());
+        tree.appendChild(statement, targetOnly ? parseTarget() : parseExpression());
+        return statement;
+    }
+
+    private int parseCondition() {
+        int condition = tree.addNode(SyntaxTree.NodeKind.CONDITION, advance());
+        tree.appendChild(condition, parseExpression());
+        tree.appendChild(condition, parseBlock());
+        if (isKeyword("else")) {
+            advance();
+            tree.appendChild(condition, parseBlock());
+        }
+        expectKeyword("finish");
+        return condition;
+    }
+
+    private int parseLoop() {
+        int loop = tree.addNode(SyntaxTree.NodeKind.LOOP, advance());
+        tree.appendChild(loop, parseExpression());
+        tree.appendChild(loop, parseBlock());
+        expectKeyword("finish");
+        return loop;
+    }
+
+    private int parseFunction() {
+        advance(); // function
+        if (current.getType() != TokenType.IDENTIFIER) {
+            error("Expected function name");
+            return SyntaxTree.NONE;
+        }
+        int function = tree.addNode(SyntaxTree.NodeKind.FUNCTION, advance());
+        int parameters = tree.addNode(SyntaxTree.NodeKind.PARAMETERS, SyntaxTree.NONE);
+        tree.appendChild(function, parameters);
+        if (!expectPunctuator("[")) {
+            return function;
+        }
+        while (current.getType() == TokenType.IDENTIFIER) {
+            tree.appendChild(parameters, tree.addNode(SyntaxTree.NodeKind.IDENTIFIER, advance()));
+            if (!isPunctuator(",")) {
+                break;
+            }
+            advance();
+        }
+        if (!expectPunctuator("]")) {
+            return function;
+        }
+        tree.appendChild(function, parseBlock());
+        expectKeyword("finish");
+        return function;
+    }
+
+    private int parseReturn() {
+        int line = current.getLine();
+        int statement = tree.addNode(SyntaxTree.NodeKind.RETURN, advance());
+        // A bare return ends its line
+        if (current.getLine() == line && current.getType() != TokenType.EOF && !isKeyword("finish")
+                && !isPunctuator(";")) {
+            tree.appendChild(statement, parseExpression());
+        }
+        return statement;
+    }
+
+    private int parseIdentifierStatement() {
+        int target = parseTarget();
+        if (current.getType() == TokenType.ASSIGNMENT_OP) {
+            int assign = tree.addNode(SyntaxTree.NodeKind.ASSIGN, advance());
+            tree.appendChild(assign, target);
+            tree.appendChild(assign, parseExpression());
+            return assign;
+        }
+        if (isIncrementOrDecrement() && current.getLine() == previousLine) {
+            int postfix = tree.addNode(SyntaxTree.NodeKind.POSTFIX, advance());
+            tree.appendChild(postfix, target);
+            return statement(postfix);
+        }
+        if (tree.getKind(target) == SyntaxTree.NodeKind.SUBSCRIPT) {
+            return statement(target); // function call
+        }
+        error("Expected assignment, '++', '--' or call");
+        return target;
+    }
+
+    private int statement(int expression) {
+        int statement = tree.addNode(SyntaxTree.NodeKind.EXPRESSION_STATEMENT, SyntaxTree.NONE);
+        tree.appendChild(statement, expression);
+        return statement;
+    }
+
+    // IDENTIFIER or IDENTIFIER '[' arguments ']'
+    private int parseTarget() {
+        if (current.getType() != TokenType.IDENTIFIER) {
+            error("Expected identifier");
+            return tree.addNode(SyntaxTree.NodeKind.ERROR, currentIndex);
+        }
+        int name = advance();
+        if (!isPunctuator("[")) {
+            return tree.addNode(SyntaxTree.NodeKind.IDENTIFIER, name);
+        }
+        advance();
+        int subscript = tree.addNode(SyntaxTree.NodeKind.SUBSCRIPT, name);
+        if (!isPunctuator("]")) {
+            tree.appendChild(subscript, parseExpression());
+            while (isPunctuator(",")) {
+                advance();
+                tree.appendChild(subscript, parseExpression());
+            }
+        }
+        expectPunctuator("]");
+        return subscript;
+    }
+
+    // Expressions
+
+    private int parseExpression() {
+        return parseBinary(0);
+    }
+
+    private int parseBinary(int level) {
+        if (level == BINARY_LEVELS.length) {
+            return parseUnary();
+        }
+        int left = parseBinary(level + 1);
+        while (binaryLevel() == level) {
+            int binary = tree.addNode(SyntaxTree.NodeKind.BINARY, advanceOperator());
+            tree.appendChild(binary, left);
+            tree.appendChild(binary, parseBinary(level + 1));
+            left = binary;
+        }
+        return left;
+    }
+
+    private int binaryLevel() {
+        if (isSignedLiteralAfterOperand()) {
+            return ADDITIVE_LEVEL;
+        }
+        TokenType type = current.getType();
+        if (type != TokenType.ARITHMETIC_OP && type != TokenType.RELATIONAL_OP &&
+            type != TokenType.LOGICAL_OP) {
+            return -1;
+        }
+        String op = current.getLexeme();
+        for (int level = 0; level < BINARY_LEVELS.length; level++) {
+            for (String candidate : BINARY_LEVELS[level]) {
+                if (candidate.equals(op)) {
+                    return level;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int parseUnary() {
+        if (isOperator(TokenType.LOGICAL_OP, "!") || isOperator(TokenType.ARITHMETIC_OP, "-") ||
+            isOperator(TokenType.ARITHMETIC_OP, "+")) {
+            int unary = tree.addNode(SyntaxTree.NodeKind.UNARY, advance());
+            tree.appendChild(unary, parseUnary());
+            return unary;
+        }
+        return parsePostfix();
+    }
+
+    private int parsePostfix() {
+        int operand = parsePrimary();
+        // Statements are line based, so '++' on the next line starts a new statement
+        while (isIncrementOrDecrement() && current.getLine() == previousLine) {
+            int postfix = tree.addNode(SyntaxTree.NodeKind.POSTFIX, advance());
+            tree.appendChild(postfix, operand);
+            operand = postfix;
+        }
+        return operand;
+    }
+
+    private int parsePrimary() {
+        switch (current.getType()) {
+            case IDENTIFIER:
+                return parseTarget();
+            case INTEGER_LITERAL:
+            case FLOAT_LITERAL:
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+            case BOOLEAN_LITERAL:
+                return tree.addNode(SyntaxTree.NodeKind.LITERAL, advance());
+            case PUNCTUATOR:
+                if (isPunctuator("(")) {
+                    advance();
+                    int expression = parseExpression();
+                    expectPunctuator(")");
+                    return expression;
+                }
+                break;
+            default:
+                break;
+        }
+        error("Expected an expression");
+        return tree.addNode(SyntaxTree.NodeKind.ERROR, currentIndex);
+    }
+
+    // Token handling
+
+    private void fetch() {
+        current = source.next();
+        currentIndex = tree.addToken(current);
+    }
+
+    // Consumes the current token and returns its index
+    private int advance() {
+        int index = currentIndex;
+        if (current.getType() != TokenType.EOF) {
+            previousLine = current.getLine();
+            fetch();
+        }
+        return index;
+    }
+
+    /*
+     * The scanner folds a sign into the numeric literal that follows it, so
+     * "N-1" arrives as N and -1. When such a literal directly follows an
+     * operand on the same line it is really a binary '+' or '-'.
+     */
+    private boolean isSignedLiteralAfterOperand() {
+        TokenType type = current.getType();
+        if ((type != TokenType.INTEGER_LITERAL && type != TokenType.FLOAT_LITERAL) ||
+            current.getLine() != previousLine) {
+            return false;
+        }
+        char sign = current.getLexemeView().charAt(0);
+        return sign == '+' || sign == '-';
+    }
+
+    // Consumes a binary operator, splitting a signed literal into sign and literal
+    private int advanceOperator() {
+        if (!isSignedLiteralAfterOperand()) {
+            return advance();
+        }
+        Token literal = current;
+        String lexeme = literal.getLexeme();
+        int offset = literal.getOffset() < 0 ? -1 : literal.getOffset() + 1;
+
+        Token op = new Token(TokenType.ARITHMETIC_OP, Lexemes.canonical(lexeme.charAt(0)),
+            literal.getOffset(), literal.getLine(), literal.getColumn());
+        Token rest = new Token(literal.getType(), lexeme.substring(1), offset,
+            literal.getLine(), literal.getColumn() + 1);
+        if (literal.getType() == TokenType.INTEGER_LITERAL) {
+            rest.setIntValue(Math.abs(literal.getIntValue()), literal.isValueOverflow());
+        } else {
+            rest.setFloatValue(Math.abs(literal.getFloatValue()));
+        }
+
+        int index = tree.addToken(op);
+        current = rest;
+        currentIndex = tree.addToken(rest);
+        return index;
+    }
+
+    private boolean isKeyword(String keyword) {
+        return current.getType() == TokenType.KEYWORD && current.getLexeme().equals(keyword);
+    }
+
+    private boolean isPunctuator(String punctuator) {
+        return current.getType() == TokenType.PUNCTUATOR && current.getLexeme().equals(punctuator);
+    }
+
+    private boolean isOperator(TokenType type, String op) {
+        return current.getType() == type && current.getLexeme().equals(op);
+    }
+
+    private boolean isIncrementOrDecrement() {
+        return current.getType() == TokenType.INCREMENT_OP || current.getType() == TokenType.DECREMENT_OP;
+    }
+
+    private boolean expectKeyword(String keyword) {
+        if (isKeyword(keyword)) {
+            advance();
+            return true;
+        }
+        error("Expected '" + keyword + "'");
+        return false;
+    }
+
+    private boolean expectPunctuator(String punctuator) {
+        if (isPunctuator(punctuator)) {
+            advance();
+            return true;
+        }
+        error("Expected '" + punctuator + "'");
+        return false;
+    }
+
+    private void error(String reason) {
+        errorHandler.reportSyntaxError(current.getLine(), current.getColumn(), current.getLexeme(), reason);
+    }
+
+    // Skips to the next token that can start a statement on a new line, or a block end
+    private void synchronize() {
+        while (current.getType() != TokenType.EOF) {
+            if (current.getType() == TokenType.KEYWORD) {
+                return;
+            }
+            if (current.getType() == TokenType.IDENTIFIER && current.getLine() != previousLine) {
+                return;
+            }
+            advance();
+        }
+    }
+
+    private static TokenSource listSource(List<Token> tokens) {
+        List<Token> copy = new ArrayList<>(tokens);
+        return new TokenSource() {
+            private int index = 0;
+
+            @Override
+            public Token next() {
+                if (index < copy.size()) {
+                    return copy.get(index++);
+                }
+                Token last = copy.isEmpty() ? null : copy.get(copy.size() - 1);
+                return new Token(TokenType.EOF, "", last == null ? 1 : last.getLine(), 0);
+            }
+        };
+    }
+}
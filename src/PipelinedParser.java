@@ -0,0 +1,146 @@
+import java.io.*;
+
+/**
+ * Runs ManualScanner and Parser on separate threads connected by a
+ * TokenRingBuffer, so lexing and parsing of a large source overlap.
+ *
+ * The scanner thread hands every token to the ring as soon as it is
+ * recognized and finishes with an EOF token; the calling thread parses
+ * from the other end of the ring.
+ */
+public class PipelinedParser {
+    private String input;
+    private int ringCapacity;
+    private ManualScanner scanner;
+    private Parser parser;
+
+    public PipelinedParser(String input) {
+        this(input, TokenRingBuffer.DEFAULT_CAPACITY);
+    }
+
+    public PipelinedParser(String input, int ringCapacity) {
+        this.input = input;
+        this.ringCapacity = ringCapacity;
+    }
+
+    public SyntaxTree parse() throws InterruptedException {
+        TokenRingBuffer ring = new TokenRingBuffer(ringCapacity);
+        scanner = new ManualScanner(input, ScanOptions.defaults().setTokenSink(ring));
+        Throwable[] scannerFailure = new Throwable[1];
+
+        Thread lexer = new Thread(() -> {
+            try {
+                scanner.scan();
+            } catch (Throwable t) {
+                scannerFailure[0] = t;
+            } finally {
+                // Always unblock the parser, even if scanning failed
+                ring.close(scanner.getLine(), scanner.getColumn());
+            }
+        }, "lexer");
+        lexer.setDaemon(true);
+        lexer.start();
+
+        parser = new Parser(ring);
+        SyntaxTree tree = parser.parse();
+        // The parser may stop at a top-level finish or else with tokens
+        // still to come; read the ring to EOF so the scanner never waits on
+        // a full ring, and its errors and symbol table cover the whole input
+        while (ring.next().getType() != TokenType.EOF) {
+            // discard
+        }
+        lexer.join();
+
+        if (scannerFailure[0] != null) {
+            throw new IllegalStateException("Scanner failed", scannerFailure[0]);
+        }
+        return tree;
+    }
+
+    public ErrorHandler getLexicalErrors() {
+        return scanner.getErrorHandler();
+    }
+
+    public ErrorHandler getSyntaxErrors() {
+        return parser.getErrorHandler();
+    }
+
+    public SymbolTable getSymbolTable() {
+        return scanner.getSymbolTable();
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java PipelinedParser <input-file> | --self-check");
+            return;
+        }
+        if (args[0].equals("--self-check")) {
+            selfCheck();
+            return;
+        }
+
+        try {
+            String content = new String(java.nio.file.Files.readAllBytes(new File(args[0]).toPath()));
+            PipelinedParser pipeline = new PipelinedParser(content);
+            SyntaxTree tree = pipeline.parse();
+
+            tree.print();
+            pipeline.getLexicalErrors().printErrorSummary();
+            int syntaxErrors = pipeline.getSyntaxErrors().getErrorCount();
+            System.out.println(syntaxErrors == 0
+                ? "✓ No syntax errors found."
+                : "Total syntax errors: " + syntaxErrors);
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Parses a program with ';'-terminated statements that ends early at a
+    // top-level finish and is followed by more tokens than the ring holds,
+    // and checks that parse() returns with only the trailing tokens reported
+    private static void selfCheck() {
+        int trailing = TokenRingBuffer.DEFAULT_CAPACITY * 2;
+        StringBuilder source = new StringBuilder("start\n    declare X = 1;\n    output X;\nfinish\n");
+        for (int i = 0; i < trailing; i++) {
+            source.append(i % 16 == 15 ? "X;\n" : "X; ");
+        }
+
+        PipelinedParser pipeline = new PipelinedParser(source.toString());
+        boolean[] done = new boolean[1];
+        Thread worker = new Thread(() -> {
+            try {
+                pipeline.parse();
+                done[0] = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "self-check");
+        worker.setDaemon(true);
+        worker.start();
+        try {
+            worker.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (!done[0]) {
+            System.out.println("FAIL: parse() did not return within 10 s");
+            return;
+        }
+        // Every trailing statement is an identifier and a semicolon
+        int expected = 10 + trailing * 2;
+        int scanned = pipeline.scanner.getTotalTokenCount();
+        int syntaxErrors = pipeline.getSyntaxErrors().getErrorCount();
+        if (scanned != expected || syntaxErrors != 1) {
+            System.out.printf("FAIL: %d tokens scanned (expected %d), %d syntax errors (expected 1)%n",
+                scanned, expected, syntaxErrors);
+        } else {
+            System.out.printf("OK: early finish followed by %d tokens; all %d tokens scanned%n",
+                trailing * 2, scanned);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A scanner that is pushed input in chunks instead of pulling it, so one
+ * thread can lex many streams as their bytes arrive.
+ *
+ * feed() decodes a chunk as UTF-8 (a character split between chunks waits
+ * for the rest of its bytes) and appends it to the pending text, which
+ * starts where the last emitted token ended. The pending text is scanned
+ * with a ManualScanner from the pool, resumed at the right line and
+ * column. A token is complete once the input holds at least LOOKAHEAD
+ * characters past its end, since no recognizer looks further than that;
+ * complete tokens go to the sink and are dropped from the pending text,
+ * along with the errors before them. The rest, a partial identifier,
+ * number, string or comment, stays pending for the next chunk.
+ *
+ * The pending text is only rescanned once new input at least as long as
+ * it has arrived, so a long comment or string fed in small chunks costs
+ * linear time overall. endOfInput() scans what is left as the end of the
+ * input. Neither call blocks, and no state lives outside this object, so a
+ * stream needs no thread of its own.
+ */
+public class PushScanner {
+    private static final int LOOKAHEAD = 2;
+    private static final ScanOptions OPTIONS = ScanOptions.defaults();
+    private static final ScannerPool<ManualScanner> SCANNERS = ScannerPool.manualScanners(16);
+
+    // Inputs for the driver's --self-check, with tokens that are easy to
+    // resume after wrongly: an escaped newline in a string, comments, a
+    // UTF-8 character and unterminated literals
+    private static final String[] SELF_CHECK_INPUTS = {
+        "start\n    declare Msg = \"a\\\nb\";\n    declare X = 1;\nfinish\n",
+        "start\noutput \"a\\\nb\"\ndeclare X = 1;\nfinish\n",
+        "#* multi\nline *# declare Y = 2.5e+3; ## caf\u00e9\noutput Y;\n",
+        "declare C = '\\n'; declare S = \"open\ndeclare Z = -3;\n#* unclosed",
+    };
+
+    private final TokenSink sink;
+    private final ScannerPool<ManualScanner> scanners;
+    private final ErrorHandler errorHandler = new ErrorHandler();
+    private final int[] tokenCounts = new int[TokenType.values().length];
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Leading bytes of a character split between chunks
+    private final ByteBuffer carry = ByteBuffer.allocate(8);
+    private final CharBuffer chars = CharBuffer.allocate(4096);
+
+    // Text after the last emitted token, and where it starts
+    private final StringBuilder pending = new StringBuilder();
+    private int offset;
+    private int line = 1;
+    private int column = 1;
+    // Length of the pending text after the last scan
+    private int held;
+    private boolean ended;
+
+    public PushScanner(TokenSink sink) {
+        this(sink, SCANNERS);
+    }
+
+    public PushScanner(TokenSink sink, ScannerPool<ManualScanner> scanners) {
+        this.sink = sink;
+        this.scanners = scanners;
+        errorHandler.setEcho(false);
+    }
+
+    // Consumes all of chunk; complete tokens reach the sink before this returns
+    public void feed(ByteBuffer chunk) {
+        if (ended) {
+            throw new IllegalStateException("Input already ended");
+        }
+        while (carry.position() > 0 && chunk.hasRemaining()) {
+            carry.put(chunk.get());
+            carry.flip();
+            decode(carry, false);
+            carry.compact();
+        }
+        decode(chunk, false);
+        carry.put(chunk);
+        if (pending.length() >= 2 * held) {
+            scan(false);
+        }
+    }
+
+    // Emits everything still pending, reporting unclosed strings and comments
+    public void endOfInput() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        carry.flip();
+        decode(carry, true);
+        carry.clear();
+        decoder.flush(chars);
+        pending.append(chars.array(), 0, chars.position());
+        chars.clear();
+        scan(true);
+    }
+
+    private void decode(ByteBuffer in, boolean last) {
+        while (true) {
+            boolean overflow = decoder.decode(in, chars, last).isOverflow();
+            pending.append(chars.array(), 0, chars.position());
+            chars.clear();
+            if (!overflow) {
+                return;
+            }
+        }
+    }
+
+    private void scan(boolean end) {
+        String text = pending.toString();
+        ManualScanner scanner = scanners.acquire();
+        try {
+            scanner.getErrorHandler().setEcho(false);
+            scanner.reset(text, OPTIONS);
+            List<Token> tokens = scanner.scanFrom(new CheckpointIndex.Checkpoint(0, line, column, 0, 0),
+                Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+            int complete = tokens.size();
+            if (!end) {
+                int limit = text.length() - LOOKAHEAD;
+                complete = 0;
+                while (complete < tokens.size()
+                        && tokens.get(complete).getOffset() + tokens.get(complete).getLength() <= limit) {
+                    complete++;
+                }
+                if (complete == 0) {
+                    held = text.length();
+                    return;
+                }
+            }
+
+            // The resume point: just after the last complete token
+            int cut = text.length();
+            int cutLine = Integer.MAX_VALUE;
+            int cutColumn = 0;
+            if (!end) {
+                Token last = tokens.get(complete - 1);
+                cut = last.getOffset() + last.getLength();
+                cutLine = last.getLine();
+                cutColumn = last.getColumn() + last.getLength();
+                String lexeme = last.getLexeme();
+                int newline = lexeme.lastIndexOf('\n');
+                if (newline >= 0) {
+                    // An escaped newline inside a string; ManualScanner
+                    // already gives such a token the line its lexeme ends on
+                    cutColumn = lexeme.length() - newline;
+                }
+            }
+
+            for (ErrorHandler.LexicalError error : scanner.getErrorHandler().getErrors()) {
+                if (error.line < cutLine || (error.line == cutLine && error.column < cutColumn)) {
+                    errorHandler.reportError(error.type, error.line, error.column, error.lexeme, error.reason);
+                }
+            }
+            for (int i = 0; i < complete; i++) {
+                Token token = tokens.get(i);
+                token.relocate(offset);
+                tokenCounts[token.getType().ordinal()]++;
+                sink.accept(token);
+            }
+
+            pending.delete(0, cut);
+            offset += cut;
+            line = cutLine;
+            column = cutColumn;
+            held = pending.length();
+        } finally {
+            scanners.release(scanner);
+        }
+    }
+
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    public int getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public int getTotalTokenCount() {
+        int total = 0;
+        for (int count : tokenCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    // Characters waiting for more input
+    public int getPendingLength() {
+        return pending.length();
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    // Main method for testing: feeds every file in small chunks, taking
+    // turns between them on one thread, and checks each stream's tokens
+    // against a scan of the whole file
+    public static void main(String[] args) {
+        int chunkSize = 7;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--self-check")) {
+                selfCheck();
+                return;
+            } else if (arg.startsWith("--chunk=")) {
+                chunkSize = Math.max(1, Integer.parseInt(arg.substring("--chunk=".length())));
+            } else {
+                files.add(Paths.get(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: java PushScanner [--chunk=N] <input-file>... | --self-check");
+            return;
+        }
+
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            List<List<Token>> streams = new ArrayList<>();
+            List<PushScanner> scanners = new ArrayList<>();
+            for (Path file : files) {
+                channels.add(FileChannel.open(file, StandardOpenOption.READ));
+                List<Token> tokens = new ArrayList<>();
+                streams.add(tokens);
+                scanners.add(new PushScanner(tokens::add));
+            }
+
+            long start = System.nanoTime();
+            ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+            int open = files.size();
+            while (open > 0) {
+                for (int i = 0; i < files.size(); i++) {
+                    PushScanner scanner = scanners.get(i);
+                    if (scanner.isEnded()) {
+                        continue;
+                    }
+                    chunk.clear();
+                    if (channels.get(i).read(chunk) < 0) {
+                        scanner.endOfInput();
+                        open--;
+                    } else {
+                        chunk.flip();
+                        scanner.feed(chunk);
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            boolean allMatch = true;
+            for (int i = 0; i < files.size(); i++) {
+                ManualScanner whole = new ManualScanner(
+                    new String(Files.readAllBytes(files.get(i)), StandardCharsets.UTF_8));
+                whole.getErrorHandler().setEcho(false);
+                List<Token> expected = whole.scan();
+                List<Token> actual = streams.get(i);
+                String mismatch = compare(expected, actual);
+                if (mismatch == null && whole.getErrorHandler().getErrorCount()
+                        != scanners.get(i).getErrorHandler().getErrorCount()) {
+                    mismatch = "error counts differ";
+                }
+                allMatch &= mismatch == null;
+                System.out.printf("%s: %d tokens, %d errors%s%n", files.get(i), actual.size(),
+                    scanners.get(i).getErrorHandler().getErrorCount(),
+                    mismatch == null ? "" : " - MISMATCH: " + mismatch);
+            }
+            System.out.printf("%nFed %d streams in %d-byte chunks in %.1f ms; %s%n", files.size(), chunkSize,
+                elapsed / 1e6, allMatch ? "all match the whole-file scans" : "some streams differ");
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        } finally {
+            for (FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing left to read from it
+                }
+            }
+        }
+    }
+
+    // Feeds each built-in input in chunks of 1 to 8 bytes and checks it
+    // against a scan of the whole input
+    private static void selfCheck() {
+        boolean allMatch = true;
+        for (int i = 0; i < SELF_CHECK_INPUTS.length; i++) {
+            String input = SELF_CHECK_INPUTS[i];
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            ManualScanner whole = new ManualScanner(input);
+            whole.getErrorHandler().setEcho(false);
+            List<Token> expected = whole.scan();
+
+            for (int chunkSize = 1; chunkSize <= 8; chunkSize++) {
+                List<Token> actual = new ArrayList<>();
+                PushScanner scanner = new PushScanner(actual::add);
+                for (int start = 0; start < bytes.length; start += chunkSize) {
+                    scanner.feed(ByteBuffer.wrap(bytes, start, Math.min(chunkSize, bytes.length - start)));
+                }
+                scanner.endOfInput();
+                String mismatch = compare(expected, actual);
+                if (mismatch == null && whole.getErrorHandler().getErrorCount()
+                        != scanner.getErrorHandler().getErrorCount()) {
+                    mismatch = "error counts differ";
+                }
+                if (mismatch != null) {
+                    allMatch = false;
+                    System.out.printf("Input %d, %d-byte chunks: MISMATCH: %s%n", i + 1, chunkSize, mismatch);
+                }
+            }
+        }
+        System.out.println(allMatch ? "All self-check inputs match their whole-input scans"
+            : "Some self-check inputs differ");
+    }
+
+    private static String compare(List<Token> expected, List<Token> actual) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            Token e = expected.get(i);
+            Token a = actual.get(i);
+            if (e.getType() != a.getType() || !e.getLexeme().equals(a.getLexeme()) || e.getLine() != a.getLine()
+                    || e.getColumn() != a.getColumn() || e.getOffset() != a.getOffset()) {
+                return "token " + i + " is " + a + ", expected " + e;
+            }
+        }
+        return expected.size() == actual.size() ? null
+            : actual.size() + " tokens, expected " + expected.size();
+    }
+}
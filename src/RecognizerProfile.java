@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-recognizer statistics for ManualScanner's dispatch chain: how often
+ * each try* method is attempted, how often it matches, how many input
+ * characters it looks at and how many it consumes and then gives back.
+ * Characters looked at are what the recognizer consumed plus one character
+ * of lookahead, or the whole lowercase run for keywords and booleans.
+ *
+ * Time is sampled: every sampleInterval-th attempt of a recognizer is
+ * timed with System.nanoTime() and the total is extrapolated from those
+ * samples. Timings include the clock overhead, so they are best compared
+ * between recognizers rather than read as absolute costs.
+ *
+ * A profile is updated by one scanner at a time; use one per thread and
+ * merge() them for a combined report.
+ */
+public class RecognizerProfile {
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    /**
+     * ManualScanner's recognizers, in dispatch order.
+     */
+    public enum Recognizer {
+        MULTI_LINE_COMMENT("tryMultiLineComment"),
+        SINGLE_LINE_COMMENT("trySingleLineComment"),
+        MULTI_CHAR_OPERATOR("tryMultiCharOperator"),
+        KEYWORD("tryKeyword"),
+        BOOLEAN_LITERAL("tryBooleanLiteral"),
+        IDENTIFIER("tryIdentifier"),
+        FLOAT_LITERAL("tryFloatLiteral"),
+        INTEGER_LITERAL("tryIntegerLiteral"),
+        STRING_LITERAL("tryStringLiteral"),
+        CHAR_LITERAL("tryCharLiteral"),
+        SINGLE_CHAR_OPERATOR("trySingleCharOperator"),
+        PUNCTUATOR("tryPunctuator"),
+        WHITESPACE("tryWhitespace");
+
+        private final String methodName;
+
+        Recognizer(String methodName) {
+            this.methodName = methodName;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+    }
+
+    private static final int COUNT = Recognizer.values().length;
+
+    private final int sampleInterval;
+    private final long[] attempts = new long[COUNT];
+    private final long[] successes = new long[COUNT];
+    private final long[] examined = new long[COUNT];
+    private final long[] backtracked = new long[COUNT];
+    private final long[] sampledNanos = new long[COUNT];
+    private final long[] samples = new long[COUNT];
+
+    public RecognizerProfile() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    public RecognizerProfile(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be positive: " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    // Whether the next attempt of recognizer should be timed
+    boolean shouldSample(Recognizer recognizer) {
+        return attempts[recognizer.ordinal()] % sampleInterval == 0;
+    }
+
+    // Called by ManualScanner after each attempt; nanos is -1 when not timed
+    void record(Recognizer recognizer, boolean matched, int examinedChars, int backtrackedChars, long nanos) {
+        int i = recognizer.ordinal();
+        attempts[i]++;
+        if (matched) {
+            successes[i]++;
+        }
+        examined[i] += examinedChars;
+        backtracked[i] += backtrackedChars;
+        if (nanos >= 0) {
+            sampledNanos[i] += nanos;
+            samples[i]++;
+        }
+    }
+
+    public RecognizerProfile merge(RecognizerProfile other) {
+        for (int i = 0; i < COUNT; i++) {
+            attempts[i] += other.attempts[i];
+            successes[i] += other.successes[i];
+            examined[i] += other.examined[i];
+            backtracked[i] += other.backtracked[i];
+            sampledNanos[i] += other.sampledNanos[i];
+            samples[i] += other.samples[i];
+        }
+        return this;
+    }
+
+    public void clear() {
+        for (long[] counts : new long[][] {attempts, successes, examined, backtracked, sampledNanos, samples}) {
+            Arrays.fill(counts, 0);
+        }
+    }
+
+    public long getAttempts(Recognizer recognizer) {
+        return attempts[recognizer.ordinal()];
+    }
+
+    public long getSuccesses(Recognizer recognizer) {
+        return successes[recognizer.ordinal()];
+    }
+
+    public long getFailures(Recognizer recognizer) {
+        return attempts[recognizer.ordinal()] - successes[recognizer.ordinal()];
+    }
+
+    public long getExaminedChars(Recognizer recognizer) {
+        return examined[recognizer.ordinal()];
+    }
+
+    public long getBacktrackedChars(Recognizer recognizer) {
+        return backtracked[recognizer.ordinal()];
+    }
+
+    // Extrapolated from the sampled attempts
+    public long getEstimatedNanos(Recognizer recognizer) {
+        int i = recognizer.ordinal();
+        if (samples[i] == 0) {
+            return 0;
+        }
+        return sampledNanos[i] * attempts[i] / samples[i];
+    }
+
+    public void print(String title) {
+        System.out.println("\n=== Recognizer Profile: " + title + " ===");
+        System.out.println(String.format("%-22s %10s %10s %10s %10s %10s %10s %8s",
+            "Recognizer", "Attempts", "Matched", "Failed", "Examined", "Backtrack", "Est. us", "ns/try"));
+        long totalNanos = 0;
+        for (Recognizer recognizer : Recognizer.values()) {
+            int i = recognizer.ordinal();
+            long nanos = getEstimatedNanos(recognizer);
+            totalNanos += nanos;
+            System.out.println(String.format("%-22s %10d %10d %10d %10d %10d %10.1f %8.1f",
+                recognizer.getMethodName(), attempts[i], successes[i], attempts[i] - successes[i],
+                examined[i], backtracked[i], nanos / 1e3,
+                samples[i] == 0 ? 0.0 : (double) sampledNanos[i] / samples[i]));
+        }
+        System.out.println(String.format("Estimated recognizer time: %.1f us", totalNanos / 1e3));
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        int sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--sample=")) {
+                sampleInterval = Integer.parseInt(arg.substring("--sample=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: java RecognizerProfile [--sample=N] <input-file>...");
+            return;
+        }
+
+        RecognizerProfile run = new RecognizerProfile(sampleInterval);
+        try {
+            for (String file : files) {
+                RecognizerProfile profile = new RecognizerProfile(sampleInterval);
+                ManualScanner scanner = new ManualScanner(CompressedSource.read(Paths.get(file)),
+                    ScanOptions.validateOnly().setProfile(profile));
+                scanner.getErrorHandler().setEcho(false);
+                scanner.scan();
+                profile.print(file);
+                run.merge(profile);
+            }
+            if (files.size() > 1) {
+                run.print("all " + files.size() + " inputs");
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Controls how much a scan materializes.
+ *
+ * Every token is still recognized and counted, but only types in the
+ * projection become Token objects. In validate-only mode nothing is
+ * materialized at all and a scan yields just counts and errors.
+ *
+ * When a TokenSink is set, materialized tokens are handed to it as they
+ * are recognized instead of being collected in the scanner's token list.
+ *
+ * Yylex reads its input through a buffer that must hold a whole token.
+ * The maximum token length caps that buffer; longer tokens are reported
+ * as errors and skipped.
+ *
+ * A RecognizerProfile, when set, makes ManualScanner record statistics
+ * for each of its recognizers, and TokenListeners are told about every
+ * token it recognizes (see SemanticTokens, OffHeapTokenStore and
+ * SymbolSketch); Yylex ignores both.
+ */
+public class ScanOptions {
+    public static final int DEFAULT_MAX_TOKEN_LENGTH = 1 << 20;
+    private static final int MIN_MAX_TOKEN_LENGTH = 256;
+
+    private EnumSet<TokenType> projection = EnumSet.allOf(TokenType.class);
+    private boolean validateOnly;
+    private boolean stopAtFirstError;
+    private TokenSink tokenSink;
+    private RecognizerProfile profile;
+    private final List<TokenListener> tokenListeners = new ArrayList<>();
+    private int maxTokenLength = DEFAULT_MAX_TOKEN_LENGTH;
+
+    public static ScanOptions defaults() {
+        return new ScanOptions();
+    }
+
+    public static ScanOptions projection(TokenType first, TokenType... rest) {
+        return new ScanOptions().setProjection(EnumSet.of(first, rest));
+    }
+
+    public static ScanOptions validateOnly() {
+        return new ScanOptions().setValidateOnly(true);
+    }
+
+    public ScanOptions setProjection(EnumSet<TokenType> projection) {
+        this.projection = EnumSet.copyOf(projection);
+        return this;
+    }
+
+    public ScanOptions setValidateOnly(boolean validateOnly) {
+        this.validateOnly = validateOnly;
+        return this;
+    }
+
+    public ScanOptions setStopAtFirstError(boolean stopAtFirstError) {
+        this.stopAtFirstError = stopAtFirstError;
+        return this;
+    }
+
+    public ScanOptions setTokenSink(TokenSink tokenSink) {
+        this.tokenSink = tokenSink;
+        return this;
+    }
+
+    public ScanOptions setProfile(RecognizerProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    public ScanOptions addTokenListener(TokenListener listener) {
+        tokenListeners.add(listener);
+        return this;
+    }
+
+    public ScanOptions setMaxTokenLength(int maxTokenLength) {
+        if (maxTokenLength < MIN_MAX_TOKEN_LENGTH) {
+            throw new IllegalArgumentException("Maximum token length must be at least "
+                + MIN_MAX_TOKEN_LENGTH + ": " + maxTokenLength);
+        }
+        this.maxTokenLength = maxTokenLength;
+        return this;
+    }
+
+    public EnumSet<TokenType> getProjection() {
+        return EnumSet.copyOf(projection);
+    }
+
+    public boolean isValidateOnly() {
+        return validateOnly;
+    }
+
+    public boolean isStopAtFirstError() {
+        return stopAtFirstError;
+    }
+
+    public TokenSink getTokenSink() {
+        return tokenSink;
+    }
+
+    public RecognizerProfile getProfile() {
+        return profile;
+    }
+
+    public List<TokenListener> getTokenListeners() {
+        return Collections.unmodifiableList(tokenListeners);
+    }
+
+    public int getMaxTokenLength() {
+        return maxTokenLength;
+    }
+
+    public boolean materializes(TokenType type) {
+        return !validateOnly && projection.contains(type);
+    }
+
+    // Flattened form of materializes() for the scanners' hot paths, indexed by ordinal
+    public boolean[] materializeMask() {
+        TokenType[] types = TokenType.values();
+        boolean[] mask = new boolean[types.length];
+        for (TokenType type : types) {
+            mask[type.ordinal()] = materializes(type);
+        }
+        return mask;
+    }
+
+    /**
+     * Builds options from command line flags preceding the input file:
+     * --validate, --fail-fast, --only=TYPE[,TYPE...], --max-token=N and
+     * --profile.
+     */
+    public static ScanOptions fromArgs(String[] args) {
+        ScanOptions options = new ScanOptions();
+        for (int i = 0; i < args.length - 1; i++) {
+            String arg = args[i];
+            if (arg.equals("--validate")) {
+                options.setValidateOnly(true);
+            } else if (arg.equals("--fail-fast")) {
+                options.setStopAtFirstError(true);
+            } else if (arg.startsWith("--only=")) {
+                EnumSet<TokenType> types = EnumSet.noneOf(TokenType.class);
+                for (String name : arg.substring("--only=".length()).split(",")) {
+                    types.add(TokenType.valueOf(name.trim()));
+                }
+                options.setProjection(types);
+            } else if (arg.equals("--profile")) {
+                options.setProfile(new RecognizerProfile());
+            } else if (arg.startsWith("--max-token=")) {
+                options.setMaxTokenLength(Integer.parseInt(arg.substring("--max-token=".length())));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,422 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mergeable summary of scanning a set of files: token and comment counts,
+ * error counts with the earliest errors, and every identifier with its
+ * total frequency and first occurrence.
+ *
+ * Files are identified by their ordinal in the overall job, so "earliest"
+ * means lowest (file ordinal, line, column) no matter which shard saw it.
+ * merge() sums counts, keeps the earliest first occurrences and the
+ * earliest MAX_ERRORS errors; it is associative and commutative, so shard
+ * summaries can be combined in any order and grouping.
+ */
+public class ScanSummary {
+    public static final int MAX_ERRORS = 100;
+
+    private static final int MAGIC = 0x434c5353; // "CLSS"
+    private static final int VERSION = 2;
+
+    private static final Comparator<ErrorRecord> ERROR_ORDER = Comparator
+        .comparingInt((ErrorRecord e) -> e.file)
+        .thenComparingInt(e -> e.line)
+        .thenComparingInt(e -> e.column);
+
+    private long fileCount;
+    private long commentCount;
+    private final long[] tokenCounts = new long[TokenType.values().length];
+    private final long[] errorCounts = new long[ErrorHandler.ErrorType.values().length];
+    private final List<ErrorRecord> errors = new ArrayList<>();
+    private final Map<String, SymbolRecord> symbols = new HashMap<>();
+    // Paths of the files referenced by first occurrences and errors
+    private final Map<Integer, String> files = new HashMap<>();
+
+    /**
+     * An identifier's total frequency and where it was first seen.
+     */
+    public static class SymbolRecord {
+        private final String name;
+        private long frequency;
+        private int firstFile;
+        private int firstLine;
+        private int firstColumn;
+
+        SymbolRecord(String name, long frequency, int firstFile, int firstLine, int firstColumn) {
+            this.name = name;
+            this.frequency = frequency;
+            this.firstFile = firstFile;
+            this.firstLine = firstLine;
+            this.firstColumn = firstColumn;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getFrequency() {
+            return frequency;
+        }
+
+        public int getFirstFile() {
+            return firstFile;
+        }
+
+        public int getFirstLine() {
+            return firstLine;
+        }
+
+        public int getFirstColumn() {
+            return firstColumn;
+        }
+
+        boolean isBefore(int file, int line, int column) {
+            if (firstFile != file) return firstFile < file;
+            if (firstLine != line) return firstLine < line;
+            return firstColumn < column;
+        }
+    }
+
+    /**
+     * A lexical error together with the file it occurred in.
+     */
+    public static class ErrorRecord {
+        private final int file;
+        private final ErrorHandler.ErrorType type;
+        private final int line;
+        private final int column;
+        private final String lexeme;
+        private final String reason;
+
+        ErrorRecord(int file, ErrorHandler.ErrorType type, int line, int column, String lexeme, String reason) {
+            this.file = file;
+            this.type = type;
+            this.line = line;
+            this.column = column;
+            this.lexeme = lexeme;
+            this.reason = reason;
+        }
+
+        public int getFile() {
+            return file;
+        }
+
+        public ErrorHandler.LexicalError toLexicalError() {
+            return new ErrorHandler.LexicalError(type, line, column, lexeme, reason);
+        }
+    }
+
+    public ScanSummary() {
+    }
+
+    // Summary of one file after scanner.scan(); file is its ordinal in the job
+    public static ScanSummary of(int file, String path, ManualScanner scanner) {
+        ScanSummary summary = new ScanSummary();
+        summary.fileCount = 1;
+        summary.commentCount = scanner.getCommentCount();
+        for (TokenType type : TokenType.values()) {
+            summary.tokenCounts[type.ordinal()] = scanner.getTokenCount(type);
+        }
+        for (SymbolTable.SymbolEntry entry : scanner.getSymbolTable().getEntries()) {
+            summary.symbols.put(entry.getName(), new SymbolRecord(entry.getName(), entry.getFrequency(),
+                file, entry.getFirstLine(), entry.getFirstColumn()));
+        }
+        for (ErrorHandler.LexicalError error : scanner.getErrorHandler().getErrors()) {
+            summary.errorCounts[error.type.ordinal()]++;
+            if (summary.errors.size() < MAX_ERRORS) {
+                summary.errors.add(new ErrorRecord(file, error.type, error.line, error.column,
+                    error.lexeme, error.reason));
+            }
+        }
+        summary.files.put(file, path);
+        summary.errors.sort(ERROR_ORDER);
+        return summary;
+    }
+
+    // Folds other into this summary and returns this
+    public ScanSummary merge(ScanSummary other) {
+        fileCount += other.fileCount;
+        commentCount += other.commentCount;
+        for (int i = 0; i < tokenCounts.length; i++) {
+            tokenCounts[i] += other.tokenCounts[i];
+        }
+        for (int i = 0; i < errorCounts.length; i++) {
+            errorCounts[i] += other.errorCounts[i];
+        }
+
+        for (SymbolRecord theirs : other.symbols.values()) {
+            SymbolRecord ours = symbols.get(theirs.name);
+            if (ours == null) {
+                symbols.put(theirs.name, new SymbolRecord(theirs.name, theirs.frequency,
+                    theirs.firstFile, theirs.firstLine, theirs.firstColumn));
+                continue;
+            }
+            ours.frequency += theirs.frequency;
+            if (!ours.isBefore(theirs.firstFile, theirs.firstLine, theirs.firstColumn)) {
+                ours.firstFile = theirs.firstFile;
+                ours.firstLine = theirs.firstLine;
+                ours.firstColumn = theirs.firstColumn;
+            }
+        }
+
+        errors.addAll(other.errors);
+        errors.sort(ERROR_ORDER);
+        if (errors.size() > MAX_ERRORS) {
+            errors.subList(MAX_ERRORS, errors.size()).clear();
+        }
+
+        files.putAll(other.files);
+        retainReferencedFiles();
+        return this;
+    }
+
+    // Only paths still needed by a first occurrence or error are kept
+    private void retainReferencedFiles() {
+        if (files.size() <= symbols.size() + errors.size()) {
+            return;
+        }
+        Map<Integer, String> referenced = new HashMap<>();
+        for (SymbolRecord symbol : symbols.values()) {
+            referenced.put(symbol.firstFile, files.get(symbol.firstFile));
+        }
+        for (ErrorRecord error : errors) {
+            referenced.put(error.file, files.get(error.file));
+        }
+        files.clear();
+        files.putAll(referenced);
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getCommentCount() {
+        return commentCount;
+    }
+
+    public long getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public long getTotalTokenCount() {
+        return Arrays.stream(tokenCounts).sum();
+    }
+
+    public long getErrorCount(ErrorHandler.ErrorType type) {
+        return errorCounts[type.ordinal()];
+    }
+
+    public long getTotalErrorCount() {
+        return Arrays.stream(errorCounts).sum();
+    }
+
+    // The earliest errors, at most MAX_ERRORS of them
+    public List<ErrorRecord> getErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    public SymbolRecord getSymbol(String name) {
+        return symbols.get(name);
+    }
+
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    public String getFilePath(int file) {
+        return files.get(file);
+    }
+
+    // Binary format: counts as varints, strings as length-prefixed UTF-8, symbols sorted by name
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeVarLong(out, fileCount);
+        writeVarLong(out, commentCount);
+        writeCounts(out, tokenCounts);
+        writeCounts(out, errorCounts);
+
+        Map<Integer, String> sortedFiles = new TreeMap<>(files);
+        writeVarLong(out, sortedFiles.size());
+        for (Map.Entry<Integer, String> file : sortedFiles.entrySet()) {
+            writeVarLong(out, file.getKey());
+            writeString(out, file.getValue());
+        }
+
+        writeVarLong(out, errors.size());
+        for (ErrorRecord error : errors) {
+            writeVarLong(out, error.file);
+            writeVarLong(out, error.type.ordinal());
+            writeVarLong(out, error.line);
+            writeVarLong(out, error.column);
+            writeString(out, error.lexeme);
+            writeString(out, error.reason);
+        }
+
+        List<SymbolRecord> sorted = new ArrayList<>(symbols.values());
+        sorted.sort(Comparator.comparing(SymbolRecord::getName));
+        writeVarLong(out, sorted.size());
+        for (SymbolRecord symbol : sorted) {
+            writeString(out, symbol.name);
+            writeVarLong(out, symbol.frequency);
+            writeVarLong(out, symbol.firstFile);
+            writeVarLong(out, symbol.firstLine);
+            writeVarLong(out, symbol.firstColumn);
+        }
+        out.flush();
+    }
+
+    public static ScanSummary read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a scan summary");
+        }
+        ScanSummary summary = new ScanSummary();
+        summary.fileCount = readVarLong(in);
+        summary.commentCount = readVarLong(in);
+        readCounts(in, summary.tokenCounts);
+        readCounts(in, summary.errorCounts);
+
+        long fileEntries = readVarLong(in);
+        for (long i = 0; i < fileEntries; i++) {
+            summary.files.put((int) readVarLong(in), readString(in));
+        }
+
+        ErrorHandler.ErrorType[] types = ErrorHandler.ErrorType.values();
+        long errorEntries = readVarLong(in);
+        for (long i = 0; i < errorEntries; i++) {
+            summary.errors.add(new ErrorRecord((int) readVarLong(in), types[(int) readVarLong(in)],
+                (int) readVarLong(in), (int) readVarLong(in), readString(in), readString(in)));
+        }
+
+        long symbolEntries = readVarLong(in);
+        for (long i = 0; i < symbolEntries; i++) {
+            String name = readString(in);
+            summary.symbols.put(name, new SymbolRecord(name, readVarLong(in),
+                (int) readVarLong(in), (int) readVarLong(in), (int) readVarLong(in)));
+        }
+        return summary;
+    }
+
+    // Written to a temporary file first, so a crash never leaves a partial summary
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            write(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static ScanSummary load(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    private static void writeCounts(DataOutputStream out, long[] counts) throws IOException {
+        writeVarLong(out, counts.length);
+        for (long count : counts) {
+            writeVarLong(out, count);
+        }
+    }
+
+    // Counts from a version with more enum constants than this one are rejected
+    private static void readCounts(DataInputStream in, long[] counts) throws IOException {
+        long length = readVarLong(in);
+        if (length > counts.length) {
+            throw new IOException("Scan summary has unknown token or error types");
+        }
+        for (int i = 0; i < length; i++) {
+            counts[i] = readVarLong(in);
+        }
+    }
+
+    // Unlike writeUTF(), not limited to 65535 bytes, so a pathological
+    // lexeme cannot fail the whole summary
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed string length: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Unsigned LEB128
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public void print() {
+        System.out.println("\n=== Scan Summary ===");
+        System.out.println("Files scanned: " + fileCount);
+        System.out.println("Total tokens: " + getTotalTokenCount());
+        System.out.println("Comments removed: " + commentCount);
+        System.out.println("\nToken counts by type:");
+        Arrays.stream(TokenType.values())
+            .filter(type -> tokenCounts[type.ordinal()] > 0)
+            .sorted(Comparator.comparingLong((TokenType type) -> tokenCounts[type.ordinal()]).reversed())
+            .forEach(type ->
+                System.out.println("  " + type + ": " + tokenCounts[type.ordinal()]));
+
+        System.out.println("\nUnique identifiers: " + symbols.size());
+        List<SymbolRecord> top = new ArrayList<>(symbols.values());
+        top.sort(Comparator.comparingLong(SymbolRecord::getFrequency).reversed()
+            .thenComparing(SymbolRecord::getName));
+        for (SymbolRecord symbol : top.subList(0, Math.min(10, top.size()))) {
+            System.out.println(String.format("  %-30s %8d  first: %s Line: %d Col: %d", symbol.name,
+                symbol.frequency, files.get(symbol.firstFile), symbol.firstLine, symbol.firstColumn));
+        }
+
+        System.out.println("\nTotal errors: " + getTotalErrorCount());
+        for (ErrorHandler.ErrorType type : ErrorHandler.ErrorType.values()) {
+            if (errorCounts[type.ordinal()] > 0) {
+                System.out.println("  " + type + ": " + errorCounts[type.ordinal()]);
+            }
+        }
+        for (ErrorRecord error : errors.subList(0, Math.min(10, errors.size()))) {
+            System.out.println("  " + files.get(error.file) + ": " + error.toLexicalError());
+        }
+    }
+}
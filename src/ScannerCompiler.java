@@ -0,0 +1,341 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates a scanner specialized to the Lexemes table and loads it as a
+ * hidden class.
+ *
+ * The generated run() dispatches on the first character of each token
+ * with a single switch. Two-character operators become a nested switch on
+ * the second character, and every keyword and boolean becomes a length
+ * check plus inline character comparisons, so no table is consulted
+ * while scanning. The rules shared with ManualScanner are inherited from
+ * CompiledScanner.
+ *
+ * The source is compiled in memory with the system Java compiler, so this
+ * needs a JDK at runtime. The class is compiled once per JVM and defined
+ * with Lookup.defineHiddenClass, so it can be unloaded with its loader.
+ */
+public class ScannerCompiler {
+    private static final String CLASS_NAME = "GeneratedScanner";
+
+    private static volatile MethodHandle constructor;
+
+    private ScannerCompiler() {
+    }
+
+    public static CompiledScanner create() {
+        return create(ScanOptions.defaults());
+    }
+
+    public static CompiledScanner create(ScanOptions options) {
+        try {
+            CompiledScanner scanner = (CompiledScanner) constructor().invoke();
+            scanner.setOptions(options);
+            return scanner;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot instantiate generated scanner", e);
+        }
+    }
+
+    private static MethodHandle constructor() {
+        MethodHandle handle = constructor;
+        if (handle == null) {
+            synchronized (ScannerCompiler.class) {
+                handle = constructor;
+                if (handle == null) {
+                    handle = defineScanner();
+                    constructor = handle;
+                }
+            }
+        }
+        return handle;
+    }
+
+    private static MethodHandle defineScanner() {
+        byte[] bytes = compile(CLASS_NAME, generateSource());
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                .asType(MethodType.methodType(CompiledScanner.class));
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("Cannot define generated scanner", e);
+        }
+    }
+
+    // Source generation
+
+    public static String generateSource() {
+        // Fixed lexemes grouped by first character
+        Map<Character, List<Integer>> operators = new TreeMap<>();
+        Map<Character, List<Integer>> words = new TreeMap<>();
+        for (int slot = 0; slot < Lexemes.slotCount(); slot++) {
+            String spelling = Lexemes.spelling(slot);
+            Map<Character, List<Integer>> group = Character.isLetter(spelling.charAt(0)) ? words : operators;
+            group.computeIfAbsent(spelling.charAt(0), c -> new ArrayList<>()).add(slot);
+        }
+
+        StringBuilder src = new StringBuilder();
+        src.append("// Generated by ScannerCompiler from the Lexemes table\n");
+        src.append("final class ").append(CLASS_NAME).append(" extends CompiledScanner {\n");
+        src.append("    void run() {\n");
+        src.append("        final String in = input;\n");
+        src.append("        final int n = in.length();\n");
+        src.append("        while (pos < n) {\n");
+        src.append("            if (stopAtFirstError && errorHandler.hasErrors()) return;\n");
+        src.append("            tokenStartPos = pos;\n");
+        src.append("            tokenStartColumn = column;\n");
+        src.append("            switch (in.charAt(pos)) {\n");
+        src.append("                case ' ': case '\\t': case '\\r': case '\\n':\n");
+        src.append("                    whitespace();\n");
+        src.append("                    continue;\n");
+        src.append("                case '#':\n");
+        src.append("                    if (peek(1) == '*') { multiLineComment(); continue; }\n");
+        src.append("                    if (peek(1) == '#') { singleLineComment(); continue; }\n");
+        src.append("                    break;\n");
+        for (Map.Entry<Character, List<Integer>> entry : operators.entrySet()) {
+            generateOperator(src, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Character, List<Integer>> entry : words.entrySet()) {
+            generateWords(src, entry.getKey(), entry.getValue());
+        }
+        src.append("                case '0': case '1': case '2': case '3': case '4':\n");
+        src.append("                case '5': case '6': case '7': case '8': case '9':\n");
+        src.append("                    number();\n");
+        src.append("                    continue;\n");
+        src.append("                case '\"':\n");
+        src.append("                    stringLiteral();\n");
+        src.append("                    continue;\n");
+        src.append("                case '\\'':\n");
+        src.append("                    charLiteral();\n");
+        src.append("                    continue;\n");
+        src.append("                default:\n");
+        src.append("                    if (in.charAt(pos) >= 'A' && in.charAt(pos) <= 'Z') { identifier(); continue; }\n");
+        src.append("                    break;\n");
+        src.append("            }\n");
+        src.append("            if (invalidCharacter()) return;\n");
+        src.append("        }\n");
+        src.append("    }\n");
+        src.append("}\n");
+        return src.toString();
+    }
+
+    // Two-character operators first, then a signed number, then the
+    // one-character operator or punctuator
+    private static void generateOperator(StringBuilder src, char first, List<Integer> slots) {
+        src.append("                case ").append(literal(first)).append(":\n");
+        List<Integer> pairs = new ArrayList<>();
+        int single = -1;
+        for (int slot : slots) {
+            if (Lexemes.spelling(slot).length() == 2) {
+                pairs.add(slot);
+            } else {
+                single = slot;
+            }
+        }
+        if (!pairs.isEmpty()) {
+            src.append("                    switch (peek(1)) {\n");
+            for (int slot : pairs) {
+                src.append("                        case ").append(literal(Lexemes.spelling(slot).charAt(1)))
+                    .append(": fixedToken(").append(tokenType(slot)).append(", \"")
+                    .append(Lexemes.spelling(slot)).append("\", 2); continue;\n");
+            }
+            src.append("                        default: break;\n");
+            src.append("                    }\n");
+        }
+        if (first == '+' || first == '-') {
+            src.append("                    if (isDigit(peek(1))) { number(); continue; }\n");
+        }
+        if (single >= 0) {
+            src.append("                    fixedToken(").append(tokenType(single)).append(", \"")
+                .append(Lexemes.spelling(single)).append("\", 1);\n");
+            src.append("                    continue;\n");
+        } else {
+            src.append("                    break;\n");
+        }
+    }
+
+    // Keywords and booleans starting with first: the whole lowercase run has
+    // to equal one of them and must not be followed by another word character
+    private static void generateWords(StringBuilder src, char first, List<Integer> slots) {
+        src.append("                case ").append(literal(first)).append(": {\n");
+        src.append("                    int end = lowercaseEnd(pos + 1);\n");
+        src.append("                    if (continuesWord(end)) break;\n");
+        src.append("                    switch (end - pos) {\n");
+        Map<Integer, List<Integer>> byLength = new TreeMap<>();
+        for (int slot : slots) {
+            byLength.computeIfAbsent(Lexemes.spelling(slot).length(), l -> new ArrayList<>()).add(slot);
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : byLength.entrySet()) {
+            src.append("                        case ").append(entry.getKey()).append(":\n");
+            for (int slot : entry.getValue()) {
+                String spelling = Lexemes.spelling(slot);
+                src.append("                            if (");
+                for (int i = 1; i < spelling.length(); i++) {
+                    if (i > 1) {
+                        src.append(" && ");
+                    }
+                    src.append("in.charAt(pos + ").append(i).append(") == ").append(literal(spelling.charAt(i)));
+                }
+                if (spelling.length() == 1) {
+                    src.append("true");
+                }
+                src.append(") { fixedToken(").append(tokenType(slot)).append(", \"").append(spelling)
+                    .append("\", ").append(spelling.length()).append("); continue; }\n");
+            }
+            src.append("                            break;\n");
+        }
+        src.append("                        default:\n");
+        src.append("                            break;\n");
+        src.append("                    }\n");
+        src.append("                    break;\n");
+        src.append("                }\n");
+    }
+
+    private static String tokenType(int slot) {
+        return "TokenType." + Lexemes.type(slot).name();
+    }
+
+    private static String literal(char ch) {
+        switch (ch) {
+            case '\'': return "'\\''";
+            case '\\': return "'\\\\'";
+            default: return "'" + ch + "'";
+        }
+    }
+
+    // In-memory compilation
+
+    // Compiles one class from source; also used by JvmCompiler
+    static byte[] compile(String className, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Compiling generated code needs a JDK; no system Java compiler found");
+        }
+        String classPath = System.getProperty("java.class.path");
+        try {
+            String own = Paths.get(CompiledScanner.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .toString();
+            classPath = own + File.pathSeparator + classPath;
+        } catch (Exception e) {
+            // Fall back to the class path alone
+        }
+
+        JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, null);
+        // Closing the forwarding manager closes the standard one and its open archives
+        try (ForwardingJavaFileManager<StandardJavaFileManager> files = new ForwardingJavaFileManager<>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                    JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + className + ".class"), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return bytes;
+                    }
+                };
+            }
+        }) {
+            StringWriter diagnostics = new StringWriter();
+            boolean ok = compiler.getTask(diagnostics, files, null,
+                Arrays.asList("-classpath", classPath, "-proc:none"), null, List.of(unit)).call();
+            if (!ok) {
+                throw new IllegalStateException("Generated " + className + " does not compile:\n" + diagnostics);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the compiler's file manager", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Main method for testing: runs all three engines on the same input
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java ScannerCompiler [--source] <input-file>");
+            return;
+        }
+        if (args[0].equals("--source")) {
+            System.out.print(generateSource());
+            return;
+        }
+
+        try {
+            String content = CompressedSource.read(Paths.get(args[args.length - 1]));
+            ScanOptions options = ScanOptions.validateOnly();
+
+            long start = System.nanoTime();
+            CompiledScanner compiled = create(options);
+            System.out.printf("Generated and loaded scanner in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+            compiled.getErrorHandler().setEcho(false);
+
+            int rounds = 20;
+            long compiledBest = Long.MAX_VALUE;
+            long manualBest = Long.MAX_VALUE;
+            long jflexBest = Long.MAX_VALUE;
+            int compiledTokens = 0;
+            int manualTokens = 0;
+            int jflexTokens = 0;
+            for (int i = 0; i < rounds; i++) {
+                start = System.nanoTime();
+                compiled.scan(content);
+                compiledBest = Math.min(compiledBest, System.nanoTime() - start);
+                compiledTokens = compiled.getTotalTokenCount();
+
+                start = System.nanoTime();
+                ManualScanner manual = new ManualScanner(content, options);
+                manual.getErrorHandler().setEcho(false);
+                manual.scan();
+                manualBest = Math.min(manualBest, System.nanoTime() - start);
+                manualTokens = manual.getTotalTokenCount();
+
+                start = System.nanoTime();
+                Yylex jflex = new Yylex(new StringReader(content), options);
+                jflex.getErrorHandler().setEcho(false);
+                jflex.scan();
+                jflexBest = Math.min(jflexBest, System.nanoTime() - start);
+                jflexTokens = jflex.getTotalTokenCount();
+            }
+
+            compiled.printStatistics();
+            compiled.getErrorHandler().printErrorSummary();
+            System.out.println("\n=== Engine Comparison (best of " + rounds + ") ===");
+            System.out.printf("  Compiled: %8.2f ms, %d tokens%n", compiledBest / 1e6, compiledTokens);
+            System.out.printf("  Manual:   %8.2f ms, %d tokens%n", manualBest / 1e6, manualTokens);
+            System.out.printf("  JFlex:    %8.2f ms, %d tokens%n", jflexBest / 1e6, jflexTokens);
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
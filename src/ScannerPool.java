@@ -0,0 +1,98 @@
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of reusable scanners, so a service scanning many small
+ * inputs keeps its warmed-up instances instead of allocating a scanner,
+ * its collections and (for Yylex) its match buffer per input.
+ *
+ * Each thread first gets back the instance it released last, without
+ * touching the shared queue; other instances wait in a bounded queue and
+ * anything beyond its capacity is left to the garbage collector.
+ *
+ * Acquired scanners are reset by the caller (reset(input)); released ones
+ * are reset to an empty input with default options and error echo on, so
+ * the next caller does not inherit the last one's sink, listeners or
+ * profile, and the pool does not keep old inputs and tokens reachable.
+ */
+public class ScannerPool<S> {
+    private final Supplier<S> factory;
+    private final Consumer<S> cleaner;
+    private final ArrayBlockingQueue<S> idle;
+    private final ThreadLocal<S> threadCache = new ThreadLocal<>();
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    public ScannerPool(int capacity, Supplier<S> factory, Consumer<S> cleaner) {
+        this.factory = factory;
+        this.cleaner = cleaner;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    public static ScannerPool<ManualScanner> manualScanners(int capacity) {
+        return new ScannerPool<>(capacity, () -> new ManualScanner(""), scanner -> {
+            scanner.reset("", ScanOptions.defaults());
+            scanner.getErrorHandler().setEcho(true);
+        });
+    }
+
+    public static ScannerPool<Yylex> jflexScanners(int capacity) {
+        return new ScannerPool<>(capacity, () -> new Yylex(Reader.nullReader()),
+            scanner -> {
+                scanner.reset(Reader.nullReader(), ScanOptions.defaults());
+                scanner.getErrorHandler().setEcho(true);
+            });
+    }
+
+    public S acquire() {
+        S scanner = threadCache.get();
+        if (scanner != null) {
+            threadCache.set(null);
+        } else {
+            scanner = idle.poll();
+        }
+        if (scanner != null) {
+            reused.increment();
+            return scanner;
+        }
+        created.increment();
+        return factory.get();
+    }
+
+    public void release(S scanner) {
+        cleaner.accept(scanner);
+        if (threadCache.get() == null) {
+            threadCache.set(scanner);
+        } else {
+            idle.offer(scanner);
+        }
+    }
+
+    // Runs work with a pooled scanner and releases it afterwards; the
+    // result must not refer to the scanner's own token list or tables
+    public <R> R with(Function<S, R> work) {
+        S scanner = acquire();
+        try {
+            return work.apply(scanner);
+        } finally {
+            release(scanner);
+        }
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getReusedCount() {
+        return reused.sum();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+}
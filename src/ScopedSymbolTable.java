@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Block-scoped symbol table built from a token stream, recording every
+ * declaration and resolving every other identifier to the declaration in
+ * scope, or reporting it as undeclared.
+ *
+ * Scopes follow the block keywords: start, condition, loop and function
+ * open one, else closes the then-branch and opens the else-branch, and
+ * finish closes the innermost. declare X declares a variable (an array if
+ * followed by '['), a function's name is declared in the enclosing scope
+ * (so it can call itself) and its parameters in its own.
+ *
+ * Each name has a shadow stack, kept as links between declarations: top
+ * holds the innermost visible declaration of each name and every
+ * declaration remembers the one it shadows. Resolving a use is one map
+ * lookup for the name's id plus one array read, at any nesting depth.
+ * Closing a scope pops only the declarations made in it, restoring the
+ * names they shadowed, so nothing is copied and a whole program is
+ * processed in linear time.
+ *
+ * The table is a TokenSink, so it can be filled while scanning without
+ * keeping the token list.
+ */
+public class ScopedSymbolTable implements TokenSink {
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * What a declaration declares.
+     */
+    public enum Kind {
+        VARIABLE, ARRAY, FUNCTION, PARAMETER
+    }
+
+    // What the next token means, given the tokens before it
+    private enum Expect {
+        ANY, DECLARED_NAME, FUNCTION_NAME, PARAMETER_LIST, PARAMETER, ARRAY_BRACKET
+    }
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] top = new int[INITIAL_CAPACITY]; // by name id
+
+    // Declarations, in order
+    private int[] declName = new int[INITIAL_CAPACITY];
+    private Kind[] declKind = new Kind[INITIAL_CAPACITY];
+    private int[] declLine = new int[INITIAL_CAPACITY];
+    private int[] declColumn = new int[INITIAL_CAPACITY];
+    private int[] declScope = new int[INITIAL_CAPACITY];
+    private int[] declDepth = new int[INITIAL_CAPACITY];
+    private int[] declShadows = new int[INITIAL_CAPACITY];
+    private int[] declUses = new int[INITIAL_CAPACITY];
+    private int declCount;
+
+    // Declarations currently in scope, innermost last, and where each open
+    // scope's declarations start in it
+    private int[] live = new int[INITIAL_CAPACITY];
+    private int liveCount;
+    private int[] scopeMark = new int[INITIAL_CAPACITY];
+    private int[] scopeId = new int[INITIAL_CAPACITY];
+    private int depth; // open scopes, including the outermost
+    private int scopeCount;
+    private int maxDepth;
+
+    private final ErrorHandler errorHandler = new ErrorHandler();
+    private long useCount;
+    private long undeclaredCount;
+
+    private Expect expect = Expect.ANY;
+    private boolean functionScopePending;
+
+    public ScopedSymbolTable() {
+        // The outermost scope, for names declared outside start ... finish
+        scopeMark[0] = 0;
+        scopeId[0] = scopeCount++;
+        depth = 1;
+        maxDepth = 1;
+        Arrays.fill(top, NONE);
+    }
+
+    // Builds the table for a complete token list
+    public static ScopedSymbolTable resolve(List<Token> tokens) {
+        ScopedSymbolTable table = new ScopedSymbolTable();
+        for (Token token : tokens) {
+            table.accept(token);
+        }
+        return table;
+    }
+
+    @Override
+    public void accept(Token token) {
+        TokenType type = token.getType();
+        if (type == TokenType.IDENTIFIER) {
+            identifier(token);
+            return;
+        }
+
+        Expect previous = expect;
+        expect = Expect.ANY;
+        if (previous == Expect.ARRAY_BRACKET && isPunctuator(token, "[")) {
+            declKind[declCount - 1] = Kind.ARRAY;
+            return;
+        }
+        if (previous == Expect.PARAMETER_LIST && isPunctuator(token, "[")) {
+            expect = Expect.PARAMETER;
+            return;
+        }
+        if (previous == Expect.PARAMETER && isPunctuator(token, ",")) {
+            expect = Expect.PARAMETER;
+            return;
+        }
+        if (functionScopePending) {
+            // The body starts after the name and parameter list
+            functionScopePending = false;
+            openScope();
+        }
+        if (type != TokenType.KEYWORD) {
+            return;
+        }
+        switch (token.getLexeme()) {
+            case "start":
+            case "condition":
+            case "loop":
+                openScope();
+                break;
+            case "else":
+                closeScope();
+                openScope();
+                break;
+            case "finish":
+                closeScope();
+                break;
+            case "declare":
+                expect = Expect.DECLARED_NAME;
+                break;
+            case "function":
+                expect = Expect.FUNCTION_NAME;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void identifier(Token token) {
+        Expect previous = expect;
+        expect = Expect.ANY;
+        switch (previous) {
+            case DECLARED_NAME:
+                declare(token, Kind.VARIABLE);
+                expect = Expect.ARRAY_BRACKET;
+                return;
+            case FUNCTION_NAME:
+                declare(token, Kind.FUNCTION);
+                functionScopePending = true;
+                expect = Expect.PARAMETER_LIST;
+                return;
+            case PARAMETER:
+                if (functionScopePending) {
+                    functionScopePending = false;
+                    openScope();
+                }
+                declare(token, Kind.PARAMETER);
+                expect = Expect.PARAMETER;
+                return;
+            default:
+                break;
+        }
+        if (functionScopePending) {
+            functionScopePending = false;
+            openScope();
+        }
+        use(token);
+    }
+
+    private void declare(Token token, Kind kind) {
+        int name = nameId(token.getLexeme());
+        int current = scopeId[depth - 1];
+        int shadowed = top[name];
+        if (shadowed != NONE && declScope[shadowed] == current) {
+            errorHandler.reportSemanticError(token.getLine(), token.getColumn(), token.getLexeme(),
+                "'" + token.getLexeme() + "' is already declared in this scope at line " + declLine[shadowed]);
+        }
+        if (declCount == declName.length) {
+            growDeclarations();
+        }
+        int decl = declCount++;
+        declName[decl] = name;
+        declKind[decl] = kind;
+        declLine[decl] = token.getLine();
+        declColumn[decl] = token.getColumn();
+        declScope[decl] = current;
+        declDepth[decl] = depth;
+        declShadows[decl] = shadowed;
+        declUses[decl] = 0;
+        top[name] = decl;
+
+        if (liveCount == live.length) {
+            live = Arrays.copyOf(live, liveCount * 2);
+        }
+        live[liveCount++] = decl;
+    }
+
+    private void use(Token token) {
+        useCount++;
+        Integer name = nameIds.get(token.getLexeme());
+        int decl = name == null ? NONE : top[name];
+        if (decl == NONE) {
+            undeclaredCount++;
+            errorHandler.reportSemanticError(token.getLine(), token.getColumn(), token.getLexeme(),
+                "Undeclared identifier");
+            return;
+        }
+        declUses[decl]++;
+    }
+
+    private void openScope() {
+        if (depth == scopeMark.length) {
+            scopeMark = Arrays.copyOf(scopeMark, depth * 2);
+            scopeId = Arrays.copyOf(scopeId, depth * 2);
+        }
+        scopeMark[depth] = liveCount;
+        scopeId[depth] = scopeCount++;
+        depth++;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    // Pops the innermost scope's declarations; an unmatched finish leaves
+    // the outermost scope open
+    private void closeScope() {
+        if (depth == 1) {
+            return;
+        }
+        depth--;
+        int mark = scopeMark[depth];
+        while (liveCount > mark) {
+            int decl = live[--liveCount];
+            top[declName[decl]] = declShadows[decl];
+        }
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        int next = names.size();
+        nameIds.put(name, next);
+        names.add(name);
+        if (next == top.length) {
+            top = Arrays.copyOf(top, next * 2);
+            Arrays.fill(top, next, top.length, NONE);
+        }
+        return next;
+    }
+
+    private void growDeclarations() {
+        int capacity = declName.length * 2;
+        declName = Arrays.copyOf(declName, capacity);
+        declKind = Arrays.copyOf(declKind, capacity);
+        declLine = Arrays.copyOf(declLine, capacity);
+        declColumn = Arrays.copyOf(declColumn, capacity);
+        declScope = Arrays.copyOf(declScope, capacity);
+        declDepth = Arrays.copyOf(declDepth, capacity);
+        declShadows = Arrays.copyOf(declShadows, capacity);
+        declUses = Arrays.copyOf(declUses, capacity);
+    }
+
+    private static boolean isPunctuator(Token token, String punctuator) {
+        return token.getType() == TokenType.PUNCTUATOR && token.getLexeme().equals(punctuator);
+    }
+
+    // Sets the type of each name in a flat symbol table to the kind of its
+    // first declaration, so SymbolTable.print() shows it
+    public void applyTo(SymbolTable symbols) {
+        for (int decl = declCount - 1; decl >= 0; decl--) {
+            SymbolTable.SymbolEntry entry = symbols.getEntry(names.get(declName[decl]));
+            if (entry != null) {
+                entry.setType(declKind[decl].toString());
+            }
+        }
+    }
+
+    public int getDeclarationCount() {
+        return declCount;
+    }
+
+    public String getName(int decl) {
+        return names.get(declName[decl]);
+    }
+
+    public Kind getKind(int decl) {
+        return declKind[decl];
+    }
+
+    public int getLine(int decl) {
+        return declLine[decl];
+    }
+
+    public int getColumn(int decl) {
+        return declColumn[decl];
+    }
+
+    // Nesting depth of the declaring scope; 1 is outside start ... finish
+    public int getDepth(int decl) {
+        return declDepth[decl];
+    }
+
+    // The declaration this one shadows, or -1
+    public int getShadowed(int decl) {
+        return declShadows[decl];
+    }
+
+    public int getUseCount(int decl) {
+        return declUses[decl];
+    }
+
+    public long getUseCount() {
+        return useCount;
+    }
+
+    public long getUndeclaredCount() {
+        return undeclaredCount;
+    }
+
+    public int getScopeCount() {
+        return scopeCount;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // Duplicate declarations and undeclared uses
+    public ErrorHandler getErrorHandler() {
+        return errorHandler;
+    }
+
+    public void print() {
+        System.out.println("\n=== Scoped Symbol Table ===");
+        System.out.println(String.format("%-30s %-10s %-15s %-6s %-6s %s",
+            "Identifier", "Kind", "Declared", "Depth", "Uses", "Shadows"));
+        System.out.println("=".repeat(80));
+        for (int decl = 0; decl < declCount; decl++) {
+            int shadowed = declShadows[decl];
+            System.out.println(String.format("%-30s %-10s Line: %-4d Col: %-4d %-6d %-6d %s",
+                getName(decl), declKind[decl], declLine[decl], declColumn[decl], declDepth[decl], declUses[decl],
+                shadowed == NONE ? "" : "line " + declLine[shadowed]));
+        }
+        System.out.println("=".repeat(80));
+        System.out.println("Declarations: " + declCount + ", scopes: " + scopeCount + ", max depth: " + maxDepth);
+        System.out.println("Uses: " + useCount + ", undeclared: " + undeclaredCount);
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java ScopedSymbolTable <input-file>");
+            return;
+        }
+
+        try {
+            String content = CompressedSource.read(Paths.get(args[0]));
+            ScopedSymbolTable table = new ScopedSymbolTable();
+            ManualScanner scanner = new ManualScanner(content, ScanOptions.defaults().setTokenSink(table));
+            scanner.getErrorHandler().setEcho(false);
+            table.getErrorHandler().setEcho(false);
+
+            long start = System.nanoTime();
+            scanner.scan();
+            long elapsed = System.nanoTime() - start;
+
+            table.print();
+            table.applyTo(scanner.getSymbolTable());
+            scanner.getSymbolTable().print();
+            for (ErrorHandler.LexicalError error : table.getErrorHandler().getErrors()) {
+                System.out.println(error);
+            }
+            System.out.printf("%nScanned and resolved in %.1f ms%n", elapsed / 1e6);
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Language Server Protocol semantic tokens, written by ManualScanner as it
+ * scans instead of being converted from a token list.
+ *
+ * Each token takes five ints: line delta, start delta (relative to the
+ * previous token when on the same line), length, token type and modifier
+ * bits, with lines and starts 0-based as the protocol expects. The scan
+ * runs in validate-only mode, so the int array is the only per-token
+ * allocation. Multi-line comments are split into one token per line.
+ *
+ * Which TokenTypes are reported, and under which legend entry, is set by a
+ * Legend; punctuators are left out by the standard one.
+ */
+public class SemanticTokens implements TokenListener {
+    private static final int INTS_PER_TOKEN = 5;
+
+    private final Legend legend;
+    private final int fromLine;
+    private final int toLine;
+
+    private int[] data;
+    private int size;
+    private int lastLine; // 0-based, as encoded
+    private int lastStart;
+    private boolean declarationNext;
+
+    /**
+     * Maps TokenTypes to the token type names announced to the client.
+     */
+    public static class Legend {
+        public static final int DECLARATION = 1; // modifier bit
+
+        private final List<String> tokenTypes = new ArrayList<>();
+        private final int[] typeIndex = new int[TokenType.values().length];
+
+        public Legend() {
+            Arrays.fill(typeIndex, -1);
+        }
+
+        public static Legend standard() {
+            return new Legend()
+                .map(TokenType.KEYWORD, "keyword")
+                .map(TokenType.BOOLEAN_LITERAL, "keyword")
+                .map(TokenType.IDENTIFIER, "variable")
+                .map(TokenType.INTEGER_LITERAL, "number")
+                .map(TokenType.FLOAT_LITERAL, "number")
+                .map(TokenType.STRING_LITERAL, "string")
+                .map(TokenType.CHAR_LITERAL, "string")
+                .map(TokenType.ARITHMETIC_OP, "operator")
+                .map(TokenType.RELATIONAL_OP, "operator")
+                .map(TokenType.LOGICAL_OP, "operator")
+                .map(TokenType.ASSIGNMENT_OP, "operator")
+                .map(TokenType.INCREMENT_OP, "operator")
+                .map(TokenType.DECREMENT_OP, "operator")
+                .map(TokenType.SINGLE_LINE_COMMENT, "comment")
+                .map(TokenType.MULTI_LINE_COMMENT, "comment");
+        }
+
+        // Reports type under name; types never mapped are not reported
+        public Legend map(TokenType type, String name) {
+            int index = tokenTypes.indexOf(name);
+            if (index < 0) {
+                index = tokenTypes.size();
+                tokenTypes.add(name);
+            }
+            typeIndex[type.ordinal()] = index;
+            return this;
+        }
+
+        public List<String> getTokenTypes() {
+            return Collections.unmodifiableList(tokenTypes);
+        }
+
+        public List<String> getTokenModifiers() {
+            return Collections.singletonList("declaration");
+        }
+
+        int indexOf(TokenType type) {
+            return typeIndex[type.ordinal()];
+        }
+    }
+
+    /**
+     * Change between two encodings of the same document, as sent for a
+     * semantic tokens delta request: replace deleteCount ints at start
+     * with data.
+     */
+    public static class Edit {
+        private final int start;
+        private final int deleteCount;
+        private final int[] data;
+
+        Edit(int start, int deleteCount, int[] data) {
+            this.start = start;
+            this.deleteCount = deleteCount;
+            this.data = data;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getDeleteCount() {
+            return deleteCount;
+        }
+
+        public int[] getData() {
+            return data;
+        }
+    }
+
+    public SemanticTokens(Legend legend) {
+        this(legend, 1, Integer.MAX_VALUE, 64);
+    }
+
+    // Only tokens on lines fromLine..toLine (1-based) are kept
+    SemanticTokens(Legend legend, int fromLine, int toLine, int expectedTokens) {
+        this.legend = legend;
+        this.fromLine = fromLine;
+        this.toLine = toLine;
+        this.data = new int[Math.max(1, expectedTokens) * INTS_PER_TOKEN];
+    }
+
+    public static int[] encode(String source, Legend legend) {
+        // Roughly one token per six characters in typical sources
+        SemanticTokens tokens = new SemanticTokens(legend, 1, Integer.MAX_VALUE, source.length() / 6);
+        ManualScanner scanner = new ManualScanner(source, ScanOptions.validateOnly().addTokenListener(tokens));
+        scanner.getErrorHandler().setEcho(false);
+        scanner.scan();
+        return tokens.toArray();
+    }
+
+    // Tokens on lines fromLine..toLine, for a range request; deltas start
+    // from the beginning of the document as the protocol requires
+    public static int[] encodeRange(String source, CheckpointIndex index, int fromLine, int toLine, Legend legend) {
+        SemanticTokens tokens = new SemanticTokens(legend, fromLine, toLine, (toLine - fromLine + 1) * 8);
+        ManualScanner scanner = new ManualScanner(source, ScanOptions.validateOnly().addTokenListener(tokens));
+        scanner.getErrorHandler().setEcho(false);
+        scanner.scanFrom(index.getCheckpoint(index.findByLine(fromLine)), toLine, Integer.MAX_VALUE);
+        return tokens.toArray();
+    }
+
+    // Smallest single edit turning previous into current, on whole tokens;
+    // null when they are equal
+    public static Edit diff(int[] previous, int[] current) {
+        int prefix = 0;
+        int common = Math.min(previous.length, current.length);
+        while (prefix < common && previous[prefix] == current[prefix]) {
+            prefix++;
+        }
+        if (prefix == previous.length && prefix == current.length) {
+            return null;
+        }
+        prefix -= prefix % INTS_PER_TOKEN;
+
+        int suffix = 0;
+        while (suffix < common - prefix
+                && previous[previous.length - 1 - suffix] == current[current.length - 1 - suffix]) {
+            suffix++;
+        }
+        suffix -= suffix % INTS_PER_TOKEN;
+
+        int[] inserted = Arrays.copyOfRange(current, prefix, current.length - suffix);
+        return new Edit(prefix, previous.length - suffix - prefix, inserted);
+    }
+
+    // Applies an edit from diff(previous, current) to previous, giving current
+    public static int[] apply(int[] previous, Edit edit) {
+        if (edit == null) {
+            return previous;
+        }
+        int[] result = new int[previous.length - edit.deleteCount + edit.data.length];
+        System.arraycopy(previous, 0, result, 0, edit.start);
+        System.arraycopy(edit.data, 0, result, edit.start, edit.data.length);
+        int tail = edit.start + edit.deleteCount;
+        System.arraycopy(previous, tail, result, edit.start + edit.data.length, previous.length - tail);
+        return result;
+    }
+
+    // Called by ManualScanner for every recognized token; lexeme is set for
+    // keywords, which is all the declaration modifier needs
+    @Override
+    public void token(TokenType type, String lexeme, String input, int offset, int length, int line, int column) {
+        int modifiers = 0;
+        if (type == TokenType.IDENTIFIER && declarationNext) {
+            modifiers = Legend.DECLARATION;
+        }
+        if (type != TokenType.SINGLE_LINE_COMMENT) {
+            declarationNext = type == TokenType.KEYWORD && ("declare".equals(lexeme) || "function".equals(lexeme));
+        }
+        add(legend.indexOf(type), modifiers, line, column, length);
+    }
+
+    // A comment may span lines: one entry per line
+    @Override
+    public void comment(String input, int start, int end, int line, int column) {
+        int index = legend.indexOf(TokenType.MULTI_LINE_COMMENT);
+        int lineStart = start;
+        for (int i = start; i < end; i++) {
+            if (input.charAt(i) == '\n') {
+                add(index, 0, line, column, i - lineStart);
+                line++;
+                column = 1;
+                lineStart = i + 1;
+            }
+        }
+        add(index, 0, line, column, end - lineStart);
+    }
+
+    private void add(int type, int modifiers, int line, int column, int length) {
+        if (type < 0 || length == 0 || line < fromLine || line > toLine) {
+            return;
+        }
+        if (size + INTS_PER_TOKEN > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        int encodedLine = line - 1;
+        int encodedStart = column - 1;
+        data[size++] = encodedLine - lastLine;
+        data[size++] = encodedLine == lastLine ? encodedStart - lastStart : encodedStart;
+        data[size++] = length;
+        data[size++] = type;
+        data[size++] = modifiers;
+        lastLine = encodedLine;
+        lastStart = encodedStart;
+    }
+
+    public int getTokenCount() {
+        return size / INTS_PER_TOKEN;
+    }
+
+    public int[] toArray() {
+        return data.length == size ? data : Arrays.copyOf(data, size);
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java SemanticTokens <input-file> [from-line to-line]");
+            return;
+        }
+
+        try {
+            String content = CompressedSource.read(Paths.get(args[0]));
+            Legend legend = Legend.standard();
+            int[] data;
+            if (args.length >= 3) {
+                CheckpointIndex index = CheckpointIndex.build(content);
+                data = encodeRange(content, index, Integer.parseInt(args[1]), Integer.parseInt(args[2]), legend);
+            } else {
+                data = encode(content, legend);
+            }
+
+            System.out.println("Legend: " + legend.getTokenTypes() + " modifiers: " + legend.getTokenModifiers());
+            int line = 0;
+            int start = 0;
+            for (int i = 0; i < data.length; i += INTS_PER_TOKEN) {
+                start = data[i] == 0 ? start + data[i + 1] : data[i + 1];
+                line += data[i];
+                System.out.println(String.format("%5d %5d %5d %5d %d   -> Line: %d, Col: %d %s%s",
+                    data[i], data[i + 1], data[i + 2], data[i + 3], data[i + 4], line + 1, start + 1,
+                    legend.getTokenTypes().get(data[i + 3]), data[i + 4] != 0 ? " (declaration)" : ""));
+            }
+            System.out.println("\nSemantic tokens: " + data.length / INTS_PER_TOKEN);
+
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
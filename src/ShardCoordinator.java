@@ -0,0 +1,246 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Scans a large file list with several worker processes and reduces their
+ * ScanSummary outputs into one.
+ *
+ * The list is cut into fixed-size shards. Each shard gets a list file and,
+ * once its worker succeeds, a summary file in the work directory. A rerun
+ * with the same files skips every shard whose list is unchanged and whose
+ * summary exists, so a crashed or killed run resumes where it stopped.
+ * Since ScanSummary.merge() is order-independent, the result does not
+ * depend on which shards were resumed or how workers were scheduled.
+ */
+public class ShardCoordinator {
+    public static final String DEFAULT_WORK_DIRECTORY = ".langshards";
+    public static final int DEFAULT_SHARD_SIZE = 256;
+
+    private static final String SOURCE_SUFFIX = ".lang";
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final Path workDir;
+    private final int workers;
+    private final int shardSize;
+
+    private int resumedShards;
+    private int failedShards;
+
+    public ShardCoordinator(Path workDir, int workers, int shardSize) {
+        this.workDir = workDir;
+        this.workers = Math.max(1, workers);
+        this.shardSize = Math.max(1, shardSize);
+    }
+
+    // Scans files (in this order, which decides "first occurrence") and returns
+    // the merged summary, or null if some shard failed even after a retry
+    public ScanSummary run(List<Path> files) throws IOException {
+        Files.createDirectories(workDir);
+        resumedShards = 0;
+        failedShards = 0;
+
+        List<Path> pending = new ArrayList<>();
+        List<Path> outputs = new ArrayList<>();
+        for (int start = 0, shard = 0; start < files.size(); start += shardSize, shard++) {
+            String list = shardList(files, start, Math.min(files.size(), start + shardSize));
+            Path listFile = workDir.resolve(String.format("shard-%05d.list", shard));
+            Path output = workDir.resolve(String.format("shard-%05d.sum", shard));
+            outputs.add(output);
+
+            if (Files.exists(output) && Files.exists(listFile)
+                    && new String(Files.readAllBytes(listFile), StandardCharsets.UTF_8).equals(list)) {
+                resumedShards++;
+                continue;
+            }
+            Files.deleteIfExists(output);
+            Files.write(listFile, list.getBytes(StandardCharsets.UTF_8));
+            pending.add(listFile);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (Path listFile : pending) {
+                results.add(pool.submit(() -> runWorker(listFile, outputFor(listFile))));
+            }
+            for (Future<Boolean> result : results) {
+                if (!await(result)) {
+                    failedShards++;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (failedShards > 0) {
+            return null;
+        }
+
+        ScanSummary total = new ScanSummary();
+        for (Path output : outputs) {
+            total.merge(ScanSummary.load(output));
+        }
+        return total;
+    }
+
+    public int getResumedShardCount() {
+        return resumedShards;
+    }
+
+    public int getFailedShardCount() {
+        return failedShards;
+    }
+
+    // One "ordinal<TAB>path" line per file
+    private static String shardList(List<Path> files, int from, int to) {
+        StringBuilder list = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            list.append(i).append('\t').append(files.get(i).toAbsolutePath().normalize()).append('\n');
+        }
+        return list.toString();
+    }
+
+    private static Path outputFor(Path listFile) {
+        String name = listFile.getFileName().toString();
+        return listFile.resolveSibling(name.substring(0, name.length() - ".list".length()) + ".sum");
+    }
+
+    // Runs one shard in a fresh JVM with this process's class path
+    private boolean runWorker(Path listFile, Path output) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    ShardCoordinator.class.getName(), "--worker", listFile.toString(), output.toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            if (process.waitFor() == 0 && Files.exists(output)) {
+                return true;
+            }
+            System.err.println("Worker for " + listFile.getFileName() + " failed (attempt " + attempt + ")");
+        }
+        return false;
+    }
+
+    private static boolean await(Future<Boolean> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for workers", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to start worker", e.getCause());
+        }
+    }
+
+    // Worker side: scans the files of one shard list and saves their summary
+    static void scanShard(Path listFile, Path output) throws IOException {
+        ScanSummary summary = new ScanSummary();
+        for (String line : Files.readAllLines(listFile, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                continue;
+            }
+            int ordinal = Integer.parseInt(line.substring(0, tab));
+            String path = line.substring(tab + 1);
+            String content;
+            try {
+                content = new String(Files.readAllBytes(Paths.get(path)));
+            } catch (NoSuchFileException e) {
+                continue; // Deleted since the list was made
+            }
+            // Only identifiers become tokens; everything else is just counted
+            ManualScanner scanner = new ManualScanner(content, ScanOptions.projection(TokenType.IDENTIFIER));
+            scanner.getErrorHandler().setEcho(false);
+            scanner.scan();
+            summary.merge(ScanSummary.of(ordinal, path, scanner));
+        }
+        summary.save(output);
+    }
+
+    // A list file with one path per line, or every source file under a directory
+    private static List<Path> listFiles(Path input) throws IOException {
+        if (Files.isDirectory(input)) {
+            try (Stream<Path> walk = Files.walk(input)) {
+                return walk
+                    .filter(p -> p.getFileName().toString().endsWith(SOURCE_SUFFIX))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+            }
+        }
+        return Files.readAllLines(input, StandardCharsets.UTF_8).stream()
+            .map(String::trim)
+            .filter(line -> !line.isEmpty())
+            .map(Paths::get)
+            .collect(Collectors.toList());
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        if (args.length >= 3 && args[0].equals("--worker")) {
+            try {
+                scanShard(Paths.get(args[1]), Paths.get(args[2]));
+            } catch (IOException e) {
+                System.err.println("Worker failed: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        int workers = Runtime.getRuntime().availableProcessors();
+        int shardSize = DEFAULT_SHARD_SIZE;
+        Path workDir = Paths.get(DEFAULT_WORK_DIRECTORY);
+        String input = null;
+        for (String arg : args) {
+            if (arg.startsWith("--workers=")) {
+                workers = Integer.parseInt(arg.substring("--workers=".length()));
+            } else if (arg.startsWith("--shard-size=")) {
+                shardSize = Integer.parseInt(arg.substring("--shard-size=".length()));
+            } else if (arg.startsWith("--work-dir=")) {
+                workDir = Paths.get(arg.substring("--work-dir=".length()));
+            } else {
+                input = arg;
+            }
+        }
+        if (input == null) {
+            System.out.println("Usage: java ShardCoordinator [--workers=N] [--shard-size=N] [--work-dir=DIR] "
+                + "<directory | file-list>");
+            return;
+        }
+
+        try {
+            List<Path> files = listFiles(Paths.get(input));
+            ShardCoordinator coordinator = new ShardCoordinator(workDir, workers, shardSize);
+
+            long start = System.nanoTime();
+            ScanSummary total = coordinator.run(files);
+            long elapsed = System.nanoTime() - start;
+
+            if (total == null) {
+                System.err.println(coordinator.getFailedShardCount() + " shard(s) failed; "
+                    + "rerun to resume from " + workDir + File.separator);
+                System.exit(1);
+            }
+            total.print();
+            System.out.printf("%nShards resumed: %d, elapsed: %.1f ms%n",
+                coordinator.getResumedShardCount(), elapsed / 1e6);
+
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+}
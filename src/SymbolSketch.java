@@ -0,0 +1,622 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Approximate identifier statistics in fixed memory, the bounded
+ * counterpart of ScanSummary's exact symbol map.
+ *
+ * ManualScanner hands it each identifier as a range of the input, so
+ * nothing is allocated per identifier. A HyperLogLog estimates the number
+ * of distinct identifiers, a Count-Min sketch estimates each identifier's
+ * frequency, and a min-heap of the K identifiers with the highest
+ * estimates tracks the most frequent ones. Token counts by type are added
+ * per file, so the statistics can be reported after any file.
+ *
+ * The error bounds set the sizes: the HyperLogLog has 2^p registers for a
+ * relative standard error of about 1.04 / sqrt(2^p), and a Count-Min
+ * estimate exceeds the true count by at most epsilon times the total
+ * identifier count, except with probability delta. Sketches with the same
+ * bounds merge exactly (registers by maximum, counters by sum), so shards
+ * can be scanned separately; the merged top K is re-ranked from the
+ * merged counters over both candidate lists.
+ */
+public class SymbolSketch implements TokenListener {
+    public static final double DEFAULT_CARDINALITY_ERROR = 0.01;
+    public static final double DEFAULT_EPSILON = 1e-4;
+    public static final double DEFAULT_DELTA = 0.01;
+    public static final int DEFAULT_TOP = 20;
+
+    private static final int MAGIC = 0x434c534b; // "CLSK"
+    private static final int VERSION = 1;
+    private static final int MIN_PRECISION = 4;
+    private static final int MAX_PRECISION = 18;
+
+    // HyperLogLog
+    private final int precision;
+    private final byte[] registers;
+
+    // Count-Min: depth rows of width counters
+    private final int width;
+    private final int depth;
+    private final long[] counters;
+
+    // Heavy hitters: a min-heap by estimate, in parallel arrays
+    private final int top;
+    private final long[] heapHashes;
+    private final String[] heapNames;
+    private final long[] heapCounts;
+    private int heapSize;
+
+    private long identifierCount;
+    private long fileCount;
+    private long commentCount;
+    private final long[] tokenCounts = new long[TokenType.values().length];
+
+    public SymbolSketch() {
+        this(DEFAULT_CARDINALITY_ERROR, DEFAULT_EPSILON, DEFAULT_DELTA, DEFAULT_TOP);
+    }
+
+    // cardinalityError: relative standard error of the distinct count;
+    // epsilon and delta: Count-Min error bound and its failure probability;
+    // top: how many of the most frequent identifiers to track
+    public SymbolSketch(double cardinalityError, double epsilon, double delta, int top) {
+        this(precisionFor(cardinalityError), (int) Math.ceil(Math.E / checkFraction(epsilon, "epsilon")),
+            (int) Math.ceil(Math.log(1 / checkFraction(delta, "delta"))), top);
+    }
+
+    private SymbolSketch(int precision, int width, int depth, int top) {
+        if (top < 1) {
+            throw new IllegalArgumentException("Top must be at least 1: " + top);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+        this.width = width;
+        this.depth = Math.max(1, depth);
+        this.counters = new long[Math.multiplyExact(width, this.depth)];
+        this.top = top;
+        this.heapHashes = new long[top];
+        this.heapNames = new String[top];
+        this.heapCounts = new long[top];
+    }
+
+    private static int precisionFor(double error) {
+        double registers = Math.pow(1.04 / checkFraction(error, "cardinality error"), 2);
+        int precision = 64 - Long.numberOfLeadingZeros((long) Math.ceil(registers) - 1);
+        return Math.max(MIN_PRECISION, Math.min(MAX_PRECISION, precision));
+    }
+
+    private static double checkFraction(double value, String name) {
+        if (!(value > 0 && value < 1)) {
+            throw new IllegalArgumentException("The " + name + " must be between 0 and 1: " + value);
+        }
+        return value;
+    }
+
+    // Adds the identifier input[start, end)
+    public void addIdentifier(String input, int start, int end) {
+        long hash = hash(input, start, end);
+        identifierCount++;
+
+        int register = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[register]) {
+            registers[register] = (byte) rank;
+        }
+
+        long estimate = Long.MAX_VALUE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            int cell = row * width + Math.floorMod(h1 + row * h2, width);
+            long count = ++counters[cell];
+            estimate = Math.min(estimate, count);
+        }
+
+        // Only an identifier estimated at least as high as the heap's
+        // minimum can be in it or enter it
+        if (heapSize == top && estimate <= heapCounts[0]) {
+            return;
+        }
+        for (int i = 0; i < heapSize; i++) {
+            if (heapHashes[i] == hash) {
+                heapCounts[i] = estimate;
+                siftDown(i);
+                return;
+            }
+        }
+        offer(hash, input.substring(start, end), estimate);
+    }
+
+    // Identifiers from a scan; other tokens are counted by addFile()
+    @Override
+    public void token(TokenType type, String lexeme, String input, int offset, int length, int line, int column) {
+        if (type == TokenType.IDENTIFIER) {
+            addIdentifier(input, offset, offset + length);
+        }
+    }
+
+    // Adds a file's token and comment counts after scanner.scan()
+    public void addFile(ManualScanner scanner) {
+        fileCount++;
+        commentCount += scanner.getCommentCount();
+        for (TokenType type : TokenType.values()) {
+            tokenCounts[type.ordinal()] += scanner.getTokenCount(type);
+        }
+    }
+
+    private void offer(long hash, String name, long estimate) {
+        if (heapSize < top) {
+            int i = heapSize++;
+            heapHashes[i] = hash;
+            heapNames[i] = name;
+            heapCounts[i] = estimate;
+            siftUp(i);
+        } else if (estimate > heapCounts[0]) {
+            heapHashes[0] = hash;
+            heapNames[0] = name;
+            heapCounts[0] = estimate;
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heapCounts[parent] <= heapCounts[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < heapSize && heapCounts[left] < heapCounts[smallest]) {
+                smallest = left;
+            }
+            if (right < heapSize && heapCounts[right] < heapCounts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long hash = heapHashes[a];
+        heapHashes[a] = heapHashes[b];
+        heapHashes[b] = hash;
+        String name = heapNames[a];
+        heapNames[a] = heapNames[b];
+        heapNames[b] = name;
+        long count = heapCounts[a];
+        heapCounts[a] = heapCounts[b];
+        heapCounts[b] = count;
+    }
+
+    // FNV-1a over the characters, then a 64-bit finalizer so every bit
+    // depends on every character
+    static long hash(String input, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ input.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    // Estimates
+
+    public long estimateDistinct() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : m == 32 ? 0.697 : m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros); // linear counting for small sets
+        }
+        return Math.round(estimate);
+    }
+
+    // Never below the true count; above it by at most epsilon times the
+    // identifier count, with probability 1 - delta
+    public long estimateFrequency(String name) {
+        return estimate(hash(name, 0, name.length()));
+    }
+
+    private long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + Math.floorMod(h1 + row * h2, width)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * An identifier among the most frequent, with its estimated frequency.
+     */
+    public static class HeavyHitter {
+        private final String name;
+        private final long estimate;
+
+        HeavyHitter(String name, long estimate) {
+            this.name = name;
+            this.estimate = estimate;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getEstimate() {
+            return estimate;
+        }
+    }
+
+    // The tracked identifiers, most frequent first
+    public List<HeavyHitter> getTop() {
+        List<HeavyHitter> hitters = new ArrayList<>();
+        for (int i = 0; i < heapSize; i++) {
+            hitters.add(new HeavyHitter(heapNames[i], heapCounts[i]));
+        }
+        hitters.sort(Comparator.comparingLong(HeavyHitter::getEstimate).reversed()
+            .thenComparing(HeavyHitter::getName));
+        return hitters;
+    }
+
+    public long getIdentifierCount() {
+        return identifierCount;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getCommentCount() {
+        return commentCount;
+    }
+
+    public long getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public long getTotalTokenCount() {
+        return Arrays.stream(tokenCounts).sum();
+    }
+
+    // Bytes held by the sketches, independent of the input
+    public long getMemoryBytes() {
+        return registers.length + 8L * counters.length + 16L * top;
+    }
+
+    // Merging
+
+    // Folds other, which must have the same bounds, into this sketch and
+    // returns this
+    public SymbolSketch merge(SymbolSketch other) {
+        if (other.precision != precision || other.width != width || other.depth != depth || other.top != top) {
+            throw new IllegalArgumentException("Sketches with different error bounds cannot be merged");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] += other.counters[i];
+        }
+        identifierCount += other.identifierCount;
+        fileCount += other.fileCount;
+        commentCount += other.commentCount;
+        for (int i = 0; i < tokenCounts.length; i++) {
+            tokenCounts[i] += other.tokenCounts[i];
+        }
+
+        // Both candidate lists, re-estimated from the merged counters
+        Map<Long, String> candidates = new HashMap<>();
+        for (int i = 0; i < heapSize; i++) {
+            candidates.put(heapHashes[i], heapNames[i]);
+        }
+        for (int i = 0; i < other.heapSize; i++) {
+            candidates.put(other.heapHashes[i], other.heapNames[i]);
+        }
+        heapSize = 0;
+        for (Map.Entry<Long, String> candidate : candidates.entrySet()) {
+            offer(candidate.getKey(), candidate.getValue(), estimate(candidate.getKey()));
+        }
+        return this;
+    }
+
+    // Binary format: bounds, counts, registers, counters and the heap, with
+    // counts as varints
+
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeVarLong(out, precision);
+        writeVarLong(out, width);
+        writeVarLong(out, depth);
+        writeVarLong(out, top);
+        writeVarLong(out, identifierCount);
+        writeVarLong(out, fileCount);
+        writeVarLong(out, commentCount);
+        writeVarLong(out, tokenCounts.length);
+        for (long count : tokenCounts) {
+            writeVarLong(out, count);
+        }
+        out.write(registers);
+        for (long counter : counters) {
+            writeVarLong(out, counter);
+        }
+        writeVarLong(out, heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            out.writeLong(heapHashes[i]);
+            out.writeUTF(heapNames[i]);
+            writeVarLong(out, heapCounts[i]);
+        }
+        out.flush();
+    }
+
+    public static SymbolSketch read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a symbol sketch");
+        }
+        int precision = (int) readVarLong(in);
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Bad symbol sketch precision: " + precision);
+        }
+        SymbolSketch sketch = new SymbolSketch(precision, (int) readVarLong(in), (int) readVarLong(in),
+            (int) readVarLong(in));
+        sketch.identifierCount = readVarLong(in);
+        sketch.fileCount = readVarLong(in);
+        sketch.commentCount = readVarLong(in);
+        long types = readVarLong(in);
+        if (types > sketch.tokenCounts.length) {
+            throw new IOException("Symbol sketch has unknown token types");
+        }
+        for (int i = 0; i < types; i++) {
+            sketch.tokenCounts[i] = readVarLong(in);
+        }
+        in.readFully(sketch.registers);
+        for (int i = 0; i < sketch.counters.length; i++) {
+            sketch.counters[i] = readVarLong(in);
+        }
+        long entries = readVarLong(in);
+        for (long i = 0; i < entries; i++) {
+            sketch.offer(in.readLong(), in.readUTF(), readVarLong(in));
+        }
+        return sketch;
+    }
+
+    // Written to a temporary file first, like ScanSummary.save()
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            write(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static SymbolSketch load(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    // Unsigned LEB128
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public void print() {
+        System.out.println("\n=== Symbol Sketch ===");
+        System.out.println("Files scanned: " + fileCount);
+        System.out.println("Total tokens: " + getTotalTokenCount());
+        System.out.println("Comments removed: " + commentCount);
+        System.out.println("\nToken counts by type:");
+        Arrays.stream(TokenType.values())
+            .filter(type -> tokenCounts[type.ordinal()] > 0)
+            .sorted(Comparator.comparingLong((TokenType type) -> tokenCounts[type.ordinal()]).reversed())
+            .forEach(type ->
+                System.out.println("  " + type + ": " + tokenCounts[type.ordinal()]));
+
+        System.out.println(String.format("%nIdentifiers: %d, distinct (estimated): %d", identifierCount,
+            estimateDistinct()));
+        for (HeavyHitter hitter : getTop()) {
+            System.out.println(String.format("  %-30s ~%d", hitter.getName(), hitter.getEstimate()));
+        }
+        System.out.println(String.format("%nSketch memory: %,d bytes (%d registers, %d x %d counters, top %d)",
+            getMemoryBytes(), registers.length, depth, width, top));
+    }
+
+    // Scans files on threads threads, one sketch per thread, then merges
+    // them; exact, if not null, receives every identifier's true count
+    static SymbolSketch scan(List<Path> files, int threads, SymbolSketch prototype, Map<String, Long> exact)
+            throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SymbolSketch>> shards = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                shards.add(pool.submit(() -> {
+                    SymbolSketch sketch = new SymbolSketch(prototype.precision, prototype.width, prototype.depth,
+                        prototype.top);
+                    ManualScanner scanner = null;
+                    for (int i = first; i < files.size(); i += threads) {
+                        String content = CompressedSource.read(files.get(i));
+                        ScanOptions options = exact == null
+                            ? ScanOptions.validateOnly().addTokenListener(sketch)
+                            : ScanOptions.defaults().addTokenListener(sketch);
+                        if (scanner == null) {
+                            scanner = new ManualScanner(content, options);
+                            scanner.getErrorHandler().setEcho(false);
+                        } else {
+                            scanner.reset(content, options);
+                        }
+                        scanner.scan();
+                        sketch.addFile(scanner);
+                        if (exact != null) {
+                            synchronized (exact) {
+                                for (SymbolTable.SymbolEntry entry : scanner.getSymbolTable().getEntries()) {
+                                    exact.merge(entry.getName(), (long) entry.getFrequency(), Long::sum);
+                                }
+                            }
+                        }
+                    }
+                    return sketch;
+                }));
+            }
+            SymbolSketch merged = new SymbolSketch(prototype.precision, prototype.width, prototype.depth,
+                prototype.top);
+            for (Future<SymbolSketch> shard : shards) {
+                merged.merge(shard.get());
+            }
+            return merged;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static double option(String arg, String name, double fallback) {
+        return arg.startsWith(name + "=") ? Double.parseDouble(arg.substring(name.length() + 1)) : fallback;
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        double error = DEFAULT_CARDINALITY_ERROR;
+        double epsilon = DEFAULT_EPSILON;
+        double delta = DEFAULT_DELTA;
+        int top = DEFAULT_TOP;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean exact = false;
+        Path save = null;
+        List<Path> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--error=")) {
+                error = option(arg, "--error", error);
+            } else if (arg.startsWith("--epsilon=")) {
+                epsilon = option(arg, "--epsilon", epsilon);
+            } else if (arg.startsWith("--delta=")) {
+                delta = option(arg, "--delta", delta);
+            } else if (arg.startsWith("--top=")) {
+                top = (int) option(arg, "--top", top);
+            } else if (arg.startsWith("--threads=")) {
+                threads = Math.max(1, (int) option(arg, "--threads", threads));
+            } else if (arg.startsWith("--save=")) {
+                save = Paths.get(arg.substring("--save=".length()));
+            } else if (arg.equals("--exact")) {
+                exact = true;
+            } else {
+                inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Usage: java SymbolSketch [--error=E] [--epsilon=E] [--delta=D] [--top=K] "
+                + "[--threads=N] [--save=FILE] [--exact] <file-or-directory>...");
+            return;
+        }
+
+        try {
+            List<Path> files = new ArrayList<>();
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    try (Stream<Path> walk = Files.walk(input)) {
+                        files.addAll(walk.filter(p -> p.toString().endsWith(".lang")).sorted()
+                            .collect(Collectors.toList()));
+                    }
+                } else {
+                    files.add(input);
+                }
+            }
+
+            SymbolSketch prototype = new SymbolSketch(error, epsilon, delta, top);
+            Map<String, Long> counts = exact ? new HashMap<>() : null;
+            long start = System.nanoTime();
+            SymbolSketch sketch = scan(files, Math.min(threads, Math.max(1, files.size())), prototype, counts);
+            long elapsed = System.nanoTime() - start;
+            sketch.print();
+            System.out.printf("Scanned %d files in %.1f ms%n", files.size(), elapsed / 1e6);
+            if (save != null) {
+                sketch.save(save);
+            }
+
+            if (counts != null) {
+                System.out.println(String.format("%nExact distinct: %d (estimate off by %.2f%%)", counts.size(),
+                    100.0 * (sketch.estimateDistinct() - counts.size()) / Math.max(1, counts.size())));
+                long bound = (long) Math.ceil(epsilon * sketch.getIdentifierCount());
+                for (HeavyHitter hitter : sketch.getTop()) {
+                    long actual = counts.getOrDefault(hitter.getName(), 0L);
+                    System.out.println(String.format("  %-30s ~%d exact %d (bound +%d)", hitter.getName(),
+                        hitter.getEstimate(), actual, bound));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
@@ -10,15 +10,17 @@ public class SymbolTable {
         this.symbols = new HashMap<>();
     }
 
-    public void addIdentifier(String name, int line, int column) {
-        if (symbols.containsKey(name)) {
+    // Returns the table's own instance of the name so callers can drop theirs
+    public String addIdentifier(String name, int line, int column) {
+        SymbolEntry entry = symbols.get(name);
+        if (entry != null) {
             // Update frequency
-            SymbolEntry entry = symbols.get(name);
             entry.incrementFrequency();
-        } else {
-            // Add new entry
-            symbols.put(name, new SymbolEntry(name, line, column));
+            return entry.name;
         }
+        // Add new entry
+        symbols.put(name, new SymbolEntry(name, line, column));
+        return name;
     }
 
     public boolean contains(String name) {
@@ -29,6 +31,10 @@ public class SymbolTable {
         return symbols.get(name);
     }
 
+    public List<SymbolEntry> getEntries() {
+        return new ArrayList<>(symbols.values());
+    }
+
     public int getSize() {
         return symbols.size();
     }
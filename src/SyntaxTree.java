@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Abstract syntax tree stored as parallel int arrays instead of one
+ * object per node. A node is an index; its kind, first child, next
+ * sibling and token index live at that index in the respective arrays,
+ * and -1 stands for "none".
+ */
+public class SyntaxTree {
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private int[] kind;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] tokenIndex;
+    // Only needed while building, so appending a child is O(1)
+    private int[] lastChild;
+    private int nodeCount;
+    private int root;
+
+    private List<Token> tokens;
+
+    public SyntaxTree() {
+        this.kind = new int[INITIAL_CAPACITY];
+        this.firstChild = new int[INITIAL_CAPACITY];
+        this.nextSibling = new int[INITIAL_CAPACITY];
+        this.tokenIndex = new int[INITIAL_CAPACITY];
+        this.lastChild = new int[INITIAL_CAPACITY];
+        this.nodeCount = 0;
+        this.root = NONE;
+        this.tokens = new ArrayList<>();
+    }
+
+    public int addNode(NodeKind nodeKind, int token) {
+        if (nodeCount == kind.length) {
+            int capacity = kind.length * 2;
+            kind = Arrays.copyOf(kind, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            tokenIndex = Arrays.copyOf(tokenIndex, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+        }
+        int node = nodeCount++;
+        kind[node] = nodeKind.ordinal();
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        lastChild[node] = NONE;
+        tokenIndex[node] = token;
+        return node;
+    }
+
+    public void appendChild(int parent, int child) {
+        if (child == NONE) {
+            return;
+        }
+        if (lastChild[parent] == NONE) {
+            firstChild[parent] = child;
+        } else {
+            nextSibling[lastChild[parent]] = child;
+        }
+        lastChild[parent] = child;
+    }
+
+    int addToken(Token token) {
+        tokens.add(token);
+        return tokens.size() - 1;
+    }
+
+    void setRoot(int node) {
+        this.root = node;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public NodeKind getKind(int node) {
+        return KINDS[kind[node]];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getTokenIndex(int node) {
+        return tokenIndex[node];
+    }
+
+    // The token a node was built from, or null for nodes without one
+    public Token getToken(int node) {
+        int index = tokenIndex[node];
+        return index == NONE ? null : tokens.get(index);
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    // Returns the n-th child of a node, or NONE
+    public int getChild(int node, int n) {
+        int child = firstChild[node];
+        while (child != NONE && n-- > 0) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
+    public int getTokenCount() {
+        return tokens.size();
+    }
+
+    public Token getTokenAt(int index) {
+        return tokens.get(index);
+    }
+
+    // Releases the build-only array once the parser is done
+    void trim() {
+        kind = Arrays.copyOf(kind, nodeCount);
+        firstChild = Arrays.copyOf(firstChild, nodeCount);
+        nextSibling = Arrays.copyOf(nextSibling, nodeCount);
+        tokenIndex = Arrays.copyOf(tokenIndex, nodeCount);
+        lastChild = null;
+    }
+
+    public void print() {
+        if (root == NONE) {
+            System.out.println("Syntax tree is empty.");
+            return;
+        }
+
+        System.out.println("\n=== Syntax Tree ===");
+        print(root, 0);
+        System.out.println("Total nodes: " + nodeCount);
+    }
+
+    private void print(int node, int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("  ".repeat(depth)).append(getKind(node));
+        Token token = getToken(node);
+        if (token != null) {
+            sb.append(" \"").append(token.getLexeme()).append("\" (Line: ")
+              .append(token.getLine()).append(')');
+        }
+        System.out.println(sb);
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            print(child, depth + 1);
+        }
+    }
+
+    public enum NodeKind {
+        PROGRAM,
+        BLOCK,
+        DECLARE,        // token: name; child: initializer
+        DECLARE_ARRAY,  // token: name; child: size literal
+        ASSIGN,         // token: operator; children: target, value
+        INPUT,          // child: target
+        OUTPUT,         // child: value
+        CONDITION,      // children: test, then-block, optional else-block
+        LOOP,           // children: test, body
+        FUNCTION,       // token: name; children: PARAMETERS, body
+        PARAMETERS,     // children: IDENTIFIER nodes
+        RETURN,         // optional child: value
+        BREAK,
+        CONTINUE,
+        EXPRESSION_STATEMENT,
+        BINARY,         // token: operator; children: left, right
+        UNARY,          // token: operator; child: operand
+        PREFIX,         // token: ++ or --; child: target
+        POSTFIX,        // token: ++ or --; child: target
+        SUBSCRIPT,      // token: name; children: arguments (function call or array access)
+        IDENTIFIER,
+        LITERAL,
+        ERROR
+    }
+}
@@ -1,12 +1,42 @@
+import java.nio.CharBuffer;
+
 public class Token {
     private TokenType type;
     private String lexeme;
+    private CharSequence source;
+    private int offset;
+    private int length;
     private int line;
     private int column;
 
+    // Decoded literal value, filled in by the scanner
+    private long longValue;
+    private double doubleValue;
+    private String stringValue;
+    private boolean valueOverflow;
+
     public Token(TokenType type, String lexeme, int line, int column) {
+        this(type, lexeme, -1, line, column);
+    }
+
+    // Token with a known source offset, typically holding a canonical lexeme from Lexemes.
+    // A null lexeme is accepted, as before, and is treated as empty.
+    public Token(TokenType type, String lexeme, int offset, int line, int column) {
         this.type = type;
         this.lexeme = lexeme;
+        this.offset = offset;
+        this.length = lexeme == null ? 0 : lexeme.length();
+        this.line = line;
+        this.column = column;
+    }
+
+    // Token whose lexeme stays a view over source[offset, offset + length)
+    // until getLexeme() is first called
+    public Token(TokenType type, CharSequence source, int offset, int length, int line, int column) {
+        this.type = type;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
         this.line = line;
         this.column = column;
     }
@@ -16,9 +46,34 @@ public class Token {
     }
 
     public String getLexeme() {
+        if (lexeme == null && source != null) {
+            lexeme = source.subSequence(offset, offset + length).toString();
+            source = null;
+        }
         return lexeme;
     }
 
+    // Returns the lexeme without materializing a String for it
+    public CharSequence getLexemeView() {
+        if (lexeme != null || source == null) {
+            return lexeme;
+        }
+        return CharBuffer.wrap(source, offset, offset + length);
+    }
+
+    public boolean isMaterialized() {
+        return lexeme != null || source == null;
+    }
+
+    // Offset of the lexeme in the scanned input, or -1 if unknown
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
     public int getLine() {
         return line;
     }
@@ -27,10 +82,74 @@ public class Token {
         return column;
     }
 
+    // INTEGER_LITERAL value; see isValueOverflow() for literals outside the long range
+    public long getIntValue() {
+        return longValue;
+    }
+
+    public boolean isValueOverflow() {
+        return valueOverflow;
+    }
+
+    public double getFloatValue() {
+        return doubleValue;
+    }
+
+    // STRING_LITERAL content with quotes removed and escapes resolved
+    public String getStringValue() {
+        if (stringValue == null && type == TokenType.STRING_LITERAL && length >= 2) {
+            // No escapes were found while scanning, so the content is the raw text
+            stringValue = getLexemeView().subSequence(1, length - 1).toString();
+        }
+        return stringValue;
+    }
+
+    public char getCharValue() {
+        return (char) longValue;
+    }
+
+    public boolean getBooleanValue() {
+        return longValue != 0;
+    }
+
+    void setIntValue(long value, boolean overflow) {
+        this.longValue = value;
+        this.valueOverflow = overflow;
+    }
+
+    void setFloatValue(double value) {
+        this.doubleValue = value;
+    }
+
+    void setStringValue(String value) {
+        this.stringValue = value;
+    }
+
+    void setCharValue(char value) {
+        this.longValue = value;
+    }
+
+    void setBooleanValue(boolean value) {
+        this.longValue = value ? 1 : 0;
+    }
+
+    // Moves the offset by delta for input scanned in pieces; the lexeme is
+    // materialized first, since the piece it was a view of goes away
+    void relocate(int delta) {
+        getLexeme();
+        if (offset >= 0) {
+            offset += delta;
+        }
+    }
+
+    private char lexemeCharAt(int index) {
+        return lexeme != null ? lexeme.charAt(index) : source.charAt(offset + index);
+    }
+
     @Override
     public String toString() {
-        return String.format("<%s, \"%s\", Line: %d, Col: %d>", 
-            type, lexeme, line, column);
+        return String.format("<%s, \"%s\", Line: %d, Col: %d>",
+            type, getLexeme(), line, column);
     }
 
     @Override
@@ -38,16 +157,24 @@ public class Token {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Token token = (Token) obj;
-        return line == token.line && 
-               column == token.column && 
-               type == token.type && 
-               lexeme.equals(token.lexeme);
+        if (line != token.line || column != token.column ||
+            type != token.type || length != token.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (lexemeCharAt(i) != token.lexemeCharAt(i)) return false;
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
+        int lexemeHash = 0;
+        for (int i = 0; i < length; i++) {
+            lexemeHash = 31 * lexemeHash + lexemeCharAt(i);
+        }
         int result = type.hashCode();
-        result = 31 * result + lexeme.hashCode();
+        result = 31 * result + lexemeHash;
         result = 31 * result + line;
         result = 31 * result + column;
         return result;
@@ -0,0 +1,368 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token-level diff of two scans: what was inserted, deleted or replaced,
+ * ignoring layout and comments since neither scanner produces tokens for
+ * them.
+ *
+ * Each token is interned to an int by type and lexeme, so the comparison
+ * itself only compares ints. The common prefix and suffix are skipped
+ * first; what remains goes through Myers' O(ND) algorithm in its linear
+ * space form, which finds the middle snake of the edit path by searching
+ * from both ends and recurses on the halves. The result is two bit sets of
+ * deleted and inserted tokens, which are then read off as edits; a
+ * deletion directly followed by an insertion is a substitution. Every
+ * edit carries the line and column where it starts on both sides.
+ */
+public class TokenDiff {
+
+    /**
+     * One change: tokens [oldStart, oldEnd) of the old scan became tokens
+     * [newStart, newEnd) of the new one. An empty range is reported at the
+     * position of the token after it.
+     */
+    public static class Edit {
+        public enum Kind { INSERT, DELETE, SUBSTITUTE }
+
+        private final Kind kind;
+        private final int oldStart;
+        private final int oldEnd;
+        private final int newStart;
+        private final int newEnd;
+        private final int oldLine;
+        private final int oldColumn;
+        private final int newLine;
+        private final int newColumn;
+
+        Edit(int oldStart, int oldEnd, int newStart, int newEnd, List<Token> before, List<Token> after) {
+            this.kind = oldStart == oldEnd ? Kind.INSERT : newStart == newEnd ? Kind.DELETE : Kind.SUBSTITUTE;
+            this.oldStart = oldStart;
+            this.oldEnd = oldEnd;
+            this.newStart = newStart;
+            this.newEnd = newEnd;
+            int[] oldPosition = position(before, oldStart);
+            int[] newPosition = position(after, newStart);
+            this.oldLine = oldPosition[0];
+            this.oldColumn = oldPosition[1];
+            this.newLine = newPosition[0];
+            this.newColumn = newPosition[1];
+        }
+
+        // Where token index starts, or where the last token ends
+        private static int[] position(List<Token> tokens, int index) {
+            if (index < tokens.size()) {
+                Token token = tokens.get(index);
+                return new int[] {token.getLine(), token.getColumn()};
+            }
+            if (tokens.isEmpty()) {
+                return new int[] {1, 1};
+            }
+            Token last = tokens.get(tokens.size() - 1);
+            return new int[] {last.getLine(), last.getColumn() + last.getLength()};
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getOldStart() {
+            return oldStart;
+        }
+
+        public int getOldEnd() {
+            return oldEnd;
+        }
+
+        public int getNewStart() {
+            return newStart;
+        }
+
+        public int getNewEnd() {
+            return newEnd;
+        }
+
+        public int getOldLine() {
+            return oldLine;
+        }
+
+        public int getOldColumn() {
+            return oldColumn;
+        }
+
+        public int getNewLine() {
+            return newLine;
+        }
+
+        public int getNewColumn() {
+            return newColumn;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s old %d:%d [%d, %d) new %d:%d [%d, %d)", kind, oldLine, oldColumn,
+                oldStart, oldEnd, newLine, newColumn, newStart, newEnd);
+        }
+    }
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+    // Furthest reaching x per diagonal, forwards and backwards, shared by
+    // every level of the recursion
+    private final int[] forward;
+    private final int[] backward;
+
+    private TokenDiff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.deleted = new boolean[a.length];
+        this.inserted = new boolean[b.length];
+        int size = 2 * ((a.length + b.length + 1) / 2) + 2;
+        this.forward = new int[size];
+        this.backward = new int[size];
+    }
+
+    public static List<Edit> diff(LexicalScanner before, LexicalScanner after) {
+        return diff(before.getTokens(), after.getTokens());
+    }
+
+    public static List<Edit> diff(List<Token> before, List<Token> after) {
+        Map<String, Integer>[] interned = newInternTable();
+        int[] a = intern(before, interned);
+        int[] b = intern(after, interned);
+        TokenDiff diff = new TokenDiff(a, b);
+        diff.compare(0, a.length, 0, b.length);
+        return diff.edits(before, after);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, Integer>[] newInternTable() {
+        Map<String, Integer>[] table = new Map[TokenType.values().length];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = new HashMap<>();
+        }
+        return table;
+    }
+
+    // Equal ids for equal type and lexeme; the ids of the two scans come
+    // from one table, so ids compare exactly, without collisions
+    private static int[] intern(List<Token> tokens, Map<String, Integer>[] table) {
+        int[] ids = new int[tokens.size()];
+        int next = 0;
+        for (Map<String, Integer> map : table) {
+            next += map.size();
+        }
+        for (int i = 0; i < ids.length; i++) {
+            Token token = tokens.get(i);
+            Map<String, Integer> map = table[token.getType().ordinal()];
+            Integer id = map.get(token.getLexeme());
+            if (id == null) {
+                id = next++;
+                map.put(token.getLexeme(), id);
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    // Marks the deletions and insertions that turn a[aLo, aHi) into b[bLo, bHi)
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(inserted, bLo, bHi, true);
+        } else if (bLo == bHi) {
+            Arrays.fill(deleted, aLo, aHi, true);
+        } else {
+            long split = middleSnake(aLo, aHi, bLo, bHi);
+            if (split < 0) {
+                Arrays.fill(deleted, aLo, aHi, true);
+                Arrays.fill(inserted, bLo, bHi, true);
+                return;
+            }
+            int x = aLo + (int) (split >>> 32);
+            int y = bLo + (int) split;
+            compare(aLo, x, bLo, y);
+            compare(x, aHi, y, bHi);
+        }
+    }
+
+    // The split point (x << 32 | y, relative to aLo and bLo) where the
+    // forward and backward searches meet, or -1 if nothing is in common
+    private long middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD;
+        Arrays.fill(forward, 0, length + 2, -1);
+        Arrays.fill(backward, 0, length + 2, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        // Diagonals that ran off the grid are trimmed from either end
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+        for (int d = 0; d < maxD; d++) {
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int i = offset + k;
+                int x = k == -d || (k != d && forward[i - 1] < forward[i + 1]) ? forward[i + 1] : forward[i - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[i] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (odd) {
+                    int j = offset + delta - k;
+                    if (j >= 0 && j < length && backward[j] != -1 && x >= n - backward[j]) {
+                        return (long) x << 32 | y;
+                    }
+                }
+            }
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int j = offset + k;
+                int x = k == -d || (k != d && backward[j - 1] < backward[j + 1])
+                    ? backward[j + 1] : backward[j - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - x - 1] == b[bHi - y - 1]) {
+                    x++;
+                    y++;
+                }
+                backward[j] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!odd) {
+                    int i = offset + delta - k;
+                    if (i >= 0 && i < length && forward[i] != -1) {
+                        int forwardX = forward[i];
+                        int forwardY = offset + forwardX - i;
+                        if (forwardX >= n - x) {
+                            return (long) forwardX << 32 | forwardY;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    // Reads runs of deleted and inserted tokens off the marks
+    private List<Edit> edits(List<Token> before, List<Token> after) {
+        List<Edit> edits = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !deleted[i] && !inserted[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int oldStart = i;
+            int newStart = j;
+            while (i < a.length && deleted[i]) {
+                i++;
+            }
+            while (j < b.length && inserted[j]) {
+                j++;
+            }
+            edits.add(new Edit(oldStart, i, newStart, j, before, after));
+        }
+        return edits;
+    }
+
+    private static String text(List<Token> tokens, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end && sb.length() < 60; i++) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(tokens.get(i).getLexeme());
+        }
+        if (sb.length() >= 60) {
+            sb.setLength(57);
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+
+    private static LexicalScanner scan(String content, boolean jflex) throws IOException {
+        if (jflex) {
+            Yylex scanner = new Yylex(new StringReader(content), ScanOptions.defaults());
+            scanner.getErrorHandler().setEcho(false);
+            scanner.scan();
+            return scanner;
+        }
+        ManualScanner scanner = new ManualScanner(content);
+        scanner.getErrorHandler().setEcho(false);
+        scanner.scan();
+        return scanner;
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        boolean jflex = args.length > 0 && args[0].equals("--yylex");
+        int first = jflex ? 1 : 0;
+        if (args.length - first != 2) {
+            System.out.println("Usage: java TokenDiff [--yylex] <old-file> <new-file>");
+            return;
+        }
+
+        try {
+            LexicalScanner before = scan(CompressedSource.read(Paths.get(args[first])), jflex);
+            LexicalScanner after = scan(CompressedSource.read(Paths.get(args[first + 1])), jflex);
+            List<Token> oldTokens = before.getTokens();
+            List<Token> newTokens = after.getTokens();
+
+            long start = System.nanoTime();
+            List<Edit> edits = diff(oldTokens, newTokens);
+            long elapsed = System.nanoTime() - start;
+
+            for (Edit edit : edits) {
+                switch (edit.getKind()) {
+                    case INSERT:
+                        System.out.printf("+ %d:%d  %s%n", edit.getNewLine(), edit.getNewColumn(),
+                            text(newTokens, edit.getNewStart(), edit.getNewEnd()));
+                        break;
+                    case DELETE:
+                        System.out.printf("- %d:%d  %s%n", edit.getOldLine(), edit.getOldColumn(),
+                            text(oldTokens, edit.getOldStart(), edit.getOldEnd()));
+                        break;
+                    default:
+                        System.out.printf("~ %d:%d -> %d:%d  %s  =>  %s%n", edit.getOldLine(), edit.getOldColumn(),
+                            edit.getNewLine(), edit.getNewColumn(),
+                            text(oldTokens, edit.getOldStart(), edit.getOldEnd()),
+                            text(newTokens, edit.getNewStart(), edit.getNewEnd()));
+                        break;
+                }
+            }
+            System.out.printf("%n%d edits between %d and %d tokens in %.2f ms%n", edits.size(), oldTokens.size(),
+                newTokens.size(), elapsed / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error reading file: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Is told about every token ManualScanner recognizes, whether or not it
+ * becomes a Token object, and about comments. Listeners are added to
+ * ScanOptions and called in the order they were added; Yylex ignores them.
+ */
+public interface TokenListener {
+    // A recognized token, or a single-line comment, at input[offset,
+    // offset + length). Line and column are 1-based; lexeme is the token's
+    // text when the scanner already holds it as a String, otherwise null.
+    void token(TokenType type, String lexeme, String input, int offset, int length, int line, int column);
+
+    // A multi-line comment at input[start, end), which may span lines
+    default void comment(String input, int start, int end, int line, int column) {
+    }
+}
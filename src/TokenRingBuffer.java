@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer queue of tokens.
+ *
+ * The scanner thread writes through accept() and the parser thread reads
+ * through next(). Each side only ever writes its own cursor and publishes
+ * it with a lazySet, and caches the other side's cursor so the shared
+ * cache line is touched only when the buffer looks full or empty.
+ */
+public class TokenRingBuffer implements TokenSink, TokenSource {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 200;
+    private static final long PARK_NANOS = 10_000;
+
+    private final Token[] slots;
+    private final int mask;
+
+    // Next slot the consumer reads / the producer writes. Each cursor also
+    // carries its owner's cached copy of the other cursor.
+    private final PaddedCursor head = new PaddedCursor();
+    private final PaddedCursor tail = new PaddedCursor();
+
+    // Consumer-side: the EOF token once it has been read
+    private Token eof;
+
+    public TokenRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TokenRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Token[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Producer side
+
+    @Override
+    public void accept(Token token) {
+        long t = tail.get();
+        int idle = 0;
+        while (t - tail.cached >= slots.length) {
+            tail.cached = head.get();
+            if (t - tail.cached >= slots.length) {
+                idle = backOff(idle);
+            }
+        }
+        slots[(int) t & mask] = token;
+        tail.lazySet(t + 1);
+    }
+
+    // Publishes the end-of-stream marker; must be the producer's last call
+    public void close(int line, int column) {
+        accept(new Token(TokenType.EOF, "", line, column));
+    }
+
+    // Consumer side
+
+    @Override
+    public Token next() {
+        if (eof != null) {
+            return eof;
+        }
+        long h = head.get();
+        int idle = 0;
+        while (h >= head.cached) {
+            head.cached = tail.get();
+            if (h >= head.cached) {
+                idle = backOff(idle);
+            }
+        }
+        int index = (int) h & mask;
+        Token token = slots[index];
+        slots[index] = null;
+        head.lazySet(h + 1);
+        if (token.getType() == TokenType.EOF) {
+            eof = token;
+        }
+        return token;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    // Spin briefly, then yield, then park so a stalled peer does not burn a core
+    private static int backOff(int idle) {
+        if (idle < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (idle < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    // Pads the cursor value so head and tail never share a cache line
+    @SuppressWarnings("unused")
+    private static final class PaddedCursor extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        long cached;
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * Receives tokens as a scanner materializes them, instead of the scanner
+ * collecting them into its token list.
+ */
+public interface TokenSink {
+    void accept(Token token);
+}
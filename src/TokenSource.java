@@ -0,0 +1,7 @@
+/**
+ * Supplies tokens one at a time to a consumer such as the Parser. After
+ * the last token a source keeps returning an EOF token.
+ */
+public interface TokenSource {
+    Token next();
+}
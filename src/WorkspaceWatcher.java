@@ -0,0 +1,457 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Watch mode: keeps workspace-wide token, symbol and error totals up to
+ * date while .lang files under a directory are edited.
+ *
+ * Change events are debounced, only the changed files are rescanned on a
+ * worker pool, and each file's old summary is subtracted from the totals
+ * before its new one is added. The cost of a batch therefore depends on
+ * the files in it, not on the size of the workspace.
+ *
+ * Each rescan returns a Batch describing what changed; a file that cannot
+ * be read is listed there with its error and keeps its previous summary.
+ */
+public class WorkspaceWatcher implements AutoCloseable {
+    private static final String SOURCE_SUFFIX = ".lang";
+    // Quiet period before a batch of changes is rescanned
+    private static final long DEBOUNCE_MILLIS = 200;
+    // Upper bound on how long a change can wait while events keep arriving
+    private static final long MAX_DELAY_MILLIS = 2000;
+
+    private final Path root;
+    private final WatchService watchService;
+    private final ExecutorService workers;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final IdentifierIndex index;
+
+    // Per-file summaries and the totals derived from them; only touched by
+    // the watching thread
+    private final Map<Path, FileSummary> files = new HashMap<>();
+    private final Map<String, int[]> symbols = new HashMap<>(); // name -> {frequency, files}
+    private final int[] tokenCounts = new int[TokenType.values().length];
+    private final int[] errorCounts = new int[ErrorHandler.ErrorType.values().length];
+
+    public WorkspaceWatcher(Path root) throws IOException {
+        this(root, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    // When index is given, it is updated with every batch as well
+    public WorkspaceWatcher(Path root, IdentifierIndex index, int threads) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        this.index = index;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * Summary of one scanned file: what it contributes to the totals.
+     */
+    public static class FileSummary {
+        private final Path file;
+        private final int[] tokenCounts;
+        private final int[] errorCounts;
+        private final Map<String, Integer> identifiers;
+
+        FileSummary(Path file, ManualScanner scanner) {
+            this.file = file;
+            this.tokenCounts = new int[TokenType.values().length];
+            for (TokenType type : TokenType.values()) {
+                tokenCounts[type.ordinal()] = scanner.getTokenCount(type);
+            }
+            this.errorCounts = new int[ErrorHandler.ErrorType.values().length];
+            for (ErrorHandler.LexicalError error : scanner.getErrorHandler().getErrors()) {
+                errorCounts[error.type.ordinal()]++;
+            }
+            this.identifiers = new HashMap<>();
+            for (SymbolTable.SymbolEntry entry : scanner.getSymbolTable().getEntries()) {
+                identifiers.put(entry.getName(), entry.getFrequency());
+            }
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public int getTokenCount() {
+            int total = 0;
+            for (int count : tokenCounts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public int getErrorCount() {
+            int total = 0;
+            for (int count : errorCounts) {
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Outcome of one rescan: the files scanned again, the files removed
+     * from the totals, and the files that could not be read.
+     */
+    public static class Batch {
+        private final List<FileSummary> updated = new ArrayList<>();
+        private final List<Path> removed = new ArrayList<>();
+        private final Map<Path, IOException> failed = new LinkedHashMap<>();
+
+        public List<FileSummary> getUpdated() {
+            return updated;
+        }
+
+        public List<Path> getRemoved() {
+            return removed;
+        }
+
+        public Map<Path, IOException> getFailed() {
+            return failed;
+        }
+    }
+
+    // Scans every file once and starts from those totals; the index, if
+    // any, is expected to be brought up to date with refresh()
+    public Batch scanAll() throws IOException {
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(root)) {
+            sources = walk.filter(this::isSource).collect(Collectors.toList());
+        }
+        return rescan(sources, false);
+    }
+
+    /**
+     * Watches until close() is called or the thread is interrupted,
+     * rescanning each debounced batch of changed files and passing the
+     * result to onBatch.
+     */
+    public void watch(Consumer<Batch> onBatch) throws IOException {
+        registerTree(root);
+        Set<Path> pending = new LinkedHashSet<>();
+        long firstPending = 0;
+
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long waited = System.currentTimeMillis() - firstPending;
+                    key = waited >= MAX_DELAY_MILLIS
+                        ? null
+                        : watchService.poll(Math.min(DEBOUNCE_MILLIS, MAX_DELAY_MILLIS - waited), TimeUnit.MILLISECONDS);
+                }
+
+                if (key == null) {
+                    onBatch.accept(rescan(new ArrayList<>(pending), true));
+                    pending.clear();
+                    continue;
+                }
+
+                if (pending.isEmpty()) {
+                    firstPending = System.currentTimeMillis();
+                }
+                collectChanges(key, pending);
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // close() was called
+        }
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> pending) {
+        Path directory = directories.get(key);
+        if (directory == null) {
+            return;
+        }
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost; fall back to checking every known file and directory
+                pending.addAll(files.keySet());
+                try {
+                    registerTree(root);
+                    addSources(root, pending);
+                } catch (IOException | UncheckedIOException e) {
+                    // Part of the tree went away during the walk; its files
+                    // are already pending and will be found missing
+                }
+                continue;
+            }
+            Path child = directory.resolve((Path) event.context());
+            try {
+                collectChange(event.kind(), child, pending);
+            } catch (IOException | UncheckedIOException e) {
+                // A directory removed before or while it was walked, as
+                // temporary and build directories often are
+                collectRemoved(child, pending);
+            }
+        }
+    }
+
+    private void collectChange(WatchEvent.Kind<?> kind, Path child, Set<Path> pending) throws IOException {
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+            // A new or moved-in directory: watch it and pick up the files already in it
+            registerTree(child);
+            addSources(child, pending);
+        } else if (child.getFileName().toString().endsWith(SOURCE_SUFFIX)) {
+            pending.add(child);
+        } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            collectRemoved(child, pending);
+        }
+    }
+
+    // A removed directory takes its files with it
+    private void collectRemoved(Path child, Set<Path> pending) {
+        for (Path file : files.keySet()) {
+            if (file.startsWith(child)) {
+                pending.add(file);
+            }
+        }
+    }
+
+    private void addSources(Path start, Set<Path> pending) throws IOException {
+        try (Stream<Path> walk = Files.walk(start)) {
+            walk.filter(this::isSource).forEach(pending::add);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        List<Path> tree;
+        try (Stream<Path> walk = Files.walk(start)) {
+            tree = walk.filter(Files::isDirectory)
+                       .filter(d -> !d.endsWith(IdentifierIndex.INDEX_DIRECTORY))
+                       .collect(Collectors.toList());
+        }
+        for (Path directory : tree) {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            directories.put(key, directory);
+        }
+    }
+
+    /**
+     * Rescans the given files on the worker pool and applies the per-file
+     * deltas. Files that no longer exist are removed from the totals;
+     * files that cannot be read are left as they were.
+     */
+    public Batch rescan(List<Path> changed) throws IOException {
+        return rescan(changed, true);
+    }
+
+    private Batch rescan(List<Path> changed, boolean updateIndex) throws IOException {
+        List<Path> normalized = new ArrayList<>();
+        List<Future<FileSummary>> scans = new ArrayList<>();
+        for (Path file : changed) {
+            Path path = file.toAbsolutePath().normalize();
+            normalized.add(path);
+            scans.add(Files.isRegularFile(path) ? workers.submit(() -> scanFile(path)) : null);
+        }
+
+        Batch batch = new Batch();
+        List<Path> indexed = new ArrayList<>();
+        for (int i = 0; i < normalized.size(); i++) {
+            Path path = normalized.get(i);
+            FileSummary summary = null;
+            if (scans.get(i) != null) {
+                try {
+                    summary = await(scans.get(i));
+                } catch (NoSuchFileException e) {
+                    // Deleted between the event and the scan
+                } catch (IOException e) {
+                    batch.failed.put(path, e);
+                    continue;
+                }
+            }
+            FileSummary previous = summary == null ? files.remove(path) : files.put(summary.file, summary);
+            apply(previous, -1);
+            apply(summary, 1);
+            indexed.add(path);
+            if (summary != null) {
+                batch.updated.add(summary);
+            } else if (previous != null) {
+                batch.removed.add(path);
+            }
+        }
+
+        if (index != null && updateIndex) {
+            index.update(indexed);
+        }
+        return batch;
+    }
+
+    private FileSummary scanFile(Path file) throws IOException {
+        String content = new String(Files.readAllBytes(file));
+        // Only identifiers become tokens; everything else is just counted
+        ManualScanner scanner = new ManualScanner(content, ScanOptions.projection(TokenType.IDENTIFIER));
+        scanner.getErrorHandler().setEcho(false);
+        scanner.scan();
+        return new FileSummary(file, scanner);
+    }
+
+    // Rethrows a failed scan's own IOException
+    private static FileSummary await(Future<FileSummary> scan) throws IOException {
+        try {
+            return scan.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Rescan interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to scan file", e.getCause());
+        }
+    }
+
+    // Adds (sign 1) or subtracts (sign -1) one file's contribution to the totals
+    private void apply(FileSummary summary, int sign) {
+        if (summary == null) {
+            return;
+        }
+        for (int i = 0; i < tokenCounts.length; i++) {
+            tokenCounts[i] += sign * summary.tokenCounts[i];
+        }
+        for (int i = 0; i < errorCounts.length; i++) {
+            errorCounts[i] += sign * summary.errorCounts[i];
+        }
+        for (Map.Entry<String, Integer> entry : summary.identifiers.entrySet()) {
+            int[] totals = symbols.computeIfAbsent(entry.getKey(), k -> new int[2]);
+            totals[0] += sign * entry.getValue();
+            totals[1] += sign;
+            if (totals[1] == 0) {
+                symbols.remove(entry.getKey());
+            }
+        }
+    }
+
+    public int getFileCount() {
+        return files.size();
+    }
+
+    public int getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public int getTotalTokenCount() {
+        int total = 0;
+        for (int count : tokenCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getErrorCount(ErrorHandler.ErrorType type) {
+        return errorCounts[type.ordinal()];
+    }
+
+    public int getTotalErrorCount() {
+        int total = 0;
+        for (int count : errorCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    // Total uses of an identifier across the workspace, or 0
+    public int getIdentifierFrequency(String name) {
+        int[] totals = symbols.get(name);
+        return totals == null ? 0 : totals[0];
+    }
+
+    // Number of files using an identifier
+    public int getIdentifierFileCount(String name) {
+        int[] totals = symbols.get(name);
+        return totals == null ? 0 : totals[1];
+    }
+
+    public int getUniqueIdentifierCount() {
+        return symbols.size();
+    }
+
+    private boolean isSource(Path path) {
+        return path.getFileName().toString().endsWith(SOURCE_SUFFIX) && Files.isRegularFile(path) &&
+               !path.toAbsolutePath().normalize().startsWith(root.resolve(IdentifierIndex.INDEX_DIRECTORY));
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        workers.shutdownNow();
+    }
+
+    // Main method for testing
+    public static void main(String[] args) {
+        boolean withIndex = args.length > 1 && args[0].equals("--index");
+        if (args.length == 0 || (args.length > 1 && !withIndex)) {
+            System.out.println("Usage: java WorkspaceWatcher [--index] <directory>");
+            return;
+        }
+
+        Path root = Paths.get(args[args.length - 1]);
+        try {
+            IdentifierIndex index = null;
+            if (withIndex) {
+                index = IdentifierIndex.open(root);
+                index.refresh();
+            }
+            try (WorkspaceWatcher watcher = new WorkspaceWatcher(root, index,
+                    Runtime.getRuntime().availableProcessors())) {
+                report(watcher, watcher.scanAll());
+                System.out.println("Watching " + watcher.root + " (Ctrl+C to stop)");
+                watcher.watch(batch -> report(watcher, batch));
+            }
+        } catch (IOException e) {
+            System.err.println("Watch error: " + e.getMessage());
+        }
+    }
+
+    private static void report(WorkspaceWatcher watcher, Batch batch) {
+        for (FileSummary summary : batch.getUpdated()) {
+            System.out.println(String.format("Rescanned %s: %d tokens, %d errors",
+                watcher.root.relativize(summary.file), summary.getTokenCount(), summary.getErrorCount()));
+        }
+        for (Path file : batch.getRemoved()) {
+            System.out.println("Removed " + watcher.root.relativize(file));
+        }
+        for (Map.Entry<Path, IOException> failure : batch.getFailed().entrySet()) {
+            System.err.println("Skipped " + watcher.root.relativize(failure.getKey()) + ": " + failure.getValue());
+        }
+        System.out.println(String.format("Workspace: %d files, %d tokens, %d unique identifiers, %d errors",
+            watcher.getFileCount(), watcher.getTotalTokenCount(), watcher.getUniqueIdentifierCount(),
+            watcher.getTotalErrorCount()));
+    }
+}
@@ -5,11 +5,12 @@
 /* JFlex Scanner Specification */
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
 
 
 @SuppressWarnings("fallthrough")
-public class Yylex {
+public class Yylex implements LexicalScanner {
 
   /** This character denotes the end of file. */
   public static final int YYEOF = -1;
@@ -19,6 +20,8 @@ public class Yylex {
 
   // Lexical states.
   public static final int YYINITIAL = 0;
+  public static final int COMMENT = 2;
+  public static final int LINE_COMMENT = 4;
 
   /**
    * ZZ_LEXSTATE[l] is the state in the DFA for the lexical state l
@@ -27,7 +30,7 @@ public class Yylex {
    * l is of the form l = 2*k, k a non negative integer
    */
   private static final int ZZ_LEXSTATE[] = {
-     0, 0
+     0,  0,  1,  1,  2, 2
   };
 
   /**
@@ -67,11 +70,11 @@ public class Yylex {
     "\11\0\1\1\1\2\2\3\1\1\22\0\1\1\1\4"+
     "\1\5\1\6\1\0\1\7\1\10\1\11\2\12\1\13"+
     "\1\14\1\12\1\15\1\16\1\17\12\20\2\12\1\21"+
-    "\1\22\1\21\2\0\4\23\1\24\25\23\1\12\1\25"+
-    "\1\12\1\0\1\26\1\0\1\27\1\30\1\31\1\32"+
-    "\1\33\1\34\1\26\1\35\1\36\1\26\1\37\1\40"+
-    "\1\26\1\41\1\42\1\43\1\26\1\44\1\45\1\46"+
-    "\1\47\5\26\1\12\1\50\1\12\7\0\1\3\u01a2\0"+
+    "\1\22\1\23\2\0\4\24\1\25\25\24\1\12\1\26"+
+    "\1\12\1\0\1\27\1\0\1\30\1\31\1\32\1\33"+
+    "\1\34\1\35\1\27\1\36\1\37\1\27\1\40\1\41"+
+    "\1\27\1\42\1\43\1\44\1\27\1\45\1\46\1\47"+
+    "\1\50\5\27\1\12\1\51\1\12\7\0\1\3\u01a2\0"+
     "\2\3\326\0\u0100\3";
 
   private static int [] zzUnpackcmap_blocks() {
@@ -99,17 +102,28 @@ public class Yylex {
   private static final int [] ZZ_ACTION = zzUnpackAction();
 
   private static final String ZZ_ACTION_PACKED_0 =
-    "\1\0\1\1\1\2\1\3\1\4\1\1\1\5\2\1"+
-    "\1\6\4\5\1\7\1\10\1\11\1\12\14\1\1\10"+
-    "\1\13\1\0\1\14\1\15\1\3\1\16\1\0\1\11"+
-    "\1\17\1\20\1\0\1\12\16\0\1\21\1\22\1\12"+
-    "\14\0\1\14\1\22\1\0\1\12\4\0\1\23\4\0"+
-    "\1\24\1\22\1\0\1\22\1\12\5\0\1\22\1\12"+
-    "\2\0\1\22\1\12\1\22\1\12\1\0\1\12\1\25"+
-    "\1\12\1\0\1\12\1\0\1\25\24\12\1\0\1\26";
+    "\3\0\1\1\1\2\1\3\1\4\1\1\1\5\2\1"+
+    "\1\6\1\7\1\10\1\11\1\12\1\13\1\14\1\15"+
+    "\1\14\1\16\14\1\3\2\1\17\1\20\1\21\1\0"+
+    "\1\22\1\23\1\24\1\25\1\0\1\26\1\27\1\30"+
+    "\1\31\1\32\1\33\1\34\1\0\1\35\1\36\1\37"+
+    "\1\16\15\0\1\40\1\2\1\41\1\2\1\42\1\43"+
+    "\1\16\15\0\2\2\1\43\1\0\1\16\4\0\1\44"+
+    "\4\0\1\45\3\0\1\46\2\2\1\43\1\0\1\43"+
+    "\1\16\1\47\3\0\1\50\2\0\1\51\2\0\1\52"+
+    "\2\2\1\43\1\16\3\0\1\53\1\0\1\54\1\55"+
+    "\2\2\1\43\1\16\2\0\1\56\1\0\2\2\1\43"+
+    "\1\16\1\0\1\57\1\60\2\2\1\0\1\16\1\61"+
+    "\2\2\1\62\1\16\2\2\1\0\1\16\2\2\1\0"+
+    "\1\62\1\16\2\2\1\16\2\2\1\16\2\2\1\16"+
+    "\2\2\1\16\2\2\1\16\2\2\1\16\2\2\1\16"+
+    "\2\2\1\16\2\2\1\16\2\2\1\16\2\2\1\16"+
+    "\2\2\1\16\2\2\1\16\2\2\1\16\2\2\1\16"+
+    "\2\2\1\16\2\2\1\16\2\2\1\16\2\2\1\16"+
+    "\2\2\1\0\2\2\1\63\76\2";
 
   private static int [] zzUnpackAction() {
-    int [] result = new int[133];
+    int [] result = new int[295];
     int offset = 0;
     offset = zzUnpackAction(ZZ_ACTION_PACKED_0, offset, result);
     return result;
@@ -134,26 +148,46 @@ public class Yylex {
   private static final int [] ZZ_ROWMAP = zzUnpackRowMap();
 
   private static final String ZZ_ROWMAP_PACKED_0 =
-    "\0\0\0\51\0\51\0\122\0\173\0\244\0\51\0\315"+
-    "\0\366\0\51\0\u011f\0\u0148\0\u0171\0\u019a\0\u01c3\0\122"+
-    "\0\122\0\u01ec\0\u0215\0\u023e\0\u0267\0\u0290\0\u02b9\0\u02e2"+
-    "\0\u030b\0\u0334\0\u035d\0\u0386\0\u03af\0\u03d8\0\51\0\51"+
-    "\0\u0401\0\u042a\0\u0453\0\51\0\u047c\0\u04a5\0\51\0\51"+
-    "\0\51\0\u04ce\0\u04f7\0\u0520\0\u0549\0\u0572\0\u059b\0\u05c4"+
-    "\0\u05ed\0\u0616\0\u063f\0\u0668\0\u0691\0\u06ba\0\u06e3\0\u070c"+
-    "\0\u0735\0\51\0\u075e\0\u0787\0\u07b0\0\u07d9\0\u0802\0\u082b"+
-    "\0\u0854\0\u087d\0\u08a6\0\u08cf\0\u08f8\0\u0921\0\u094a\0\u0973"+
-    "\0\51\0\u099c\0\u09c5\0\u09ee\0\u0a17\0\u0a40\0\u0a69\0\u0a92"+
-    "\0\51\0\u0abb\0\u0ae4\0\u0b0d\0\u0b36\0\51\0\u0b5f\0\u0b88"+
-    "\0\u0b88\0\u0bb1\0\u0bda\0\u0c03\0\u0c2c\0\u0c55\0\u0c7e\0\u0ca7"+
-    "\0\u0cd0\0\u0cf9\0\u0d22\0\u0d4b\0\u0d74\0\u0d9d\0\u0dc6\0\u0def"+
-    "\0\u0e18\0\u0e41\0\u0e6a\0\u0e93\0\u0ebc\0\u0ee5\0\u0ee5\0\u0f0e"+
-    "\0\u0f37\0\u0f60\0\u0f89\0\u0fb2\0\u0fdb\0\u1004\0\u102d\0\u1056"+
-    "\0\u107f\0\u10a8\0\u10d1\0\u10fa\0\u1123\0\u114c\0\u1175\0\u119e"+
-    "\0\u11c7\0\u11f0\0\u1219\0\u1242\0\u1242";
+    "\0\0\0\52\0\124\0\176\0\176\0\250\0\322\0\374"+
+    "\0\176\0\u0126\0\u0150\0\176\0\u017a\0\u01a4\0\u01ce\0\u01f8"+
+    "\0\u0222\0\u024c\0\u0276\0\u02a0\0\u02ca\0\u02f4\0\u031e\0\u0348"+
+    "\0\u0372\0\u039c\0\u03c6\0\u03f0\0\u041a\0\u0444\0\u046e\0\u0498"+
+    "\0\u04c2\0\u04ec\0\u0516\0\u0540\0\176\0\176\0\176\0\u056a"+
+    "\0\176\0\176\0\176\0\u0594\0\u05be\0\176\0\176\0\176"+
+    "\0\176\0\176\0\176\0\176\0\u05e8\0\176\0\176\0\176"+
+    "\0\u0612\0\u063c\0\u0666\0\u0690\0\u06ba\0\u06e4\0\u070e\0\u0738"+
+    "\0\u0762\0\u078c\0\u07b6\0\u07e0\0\u080a\0\u0834\0\176\0\u085e"+
+    "\0\176\0\u0888\0\176\0\u08b2\0\u08dc\0\u0906\0\u0930\0\u095a"+
+    "\0\u0984\0\u09ae\0\u09d8\0\u0a02\0\u0a2c\0\u0a56\0\u0a80\0\u0aaa"+
+    "\0\u0ad4\0\u0afe\0\u0b28\0\u0b52\0\u0b7c\0\u0ba6\0\u0bd0\0\u0bfa"+
+    "\0\u0c24\0\u0c4e\0\u0c78\0\176\0\u0ca2\0\u0ccc\0\u0cf6\0\u0d20"+
+    "\0\176\0\u0d4a\0\u0d74\0\u0d9e\0\176\0\u0dc8\0\u0df2\0\u0e1c"+
+    "\0\u0e46\0\u0e46\0\u0e70\0\176\0\u0e9a\0\u0ec4\0\u0eee\0\176"+
+    "\0\u0f18\0\u0f42\0\176\0\u0f6c\0\u0f96\0\176\0\u0fc0\0\u0fea"+
+    "\0\u1014\0\u103e\0\u1068\0\u1092\0\u10bc\0\176\0\u10e6\0\176"+
+    "\0\176\0\u1110\0\u113a\0\u1164\0\u118e\0\u11b8\0\u11e2\0\176"+
+    "\0\u120c\0\u1236\0\u1260\0\u128a\0\u12b4\0\u12de\0\176\0\176"+
+    "\0\u1308\0\u1332\0\u135c\0\u1386\0\176\0\u13b0\0\u13da\0\u1404"+
+    "\0\u142e\0\u1458\0\u1482\0\u14ac\0\u14d6\0\u1500\0\u152a\0\u1554"+
+    "\0\u1554\0\u157e\0\u15a8\0\u15d2\0\u15fc\0\u1626\0\u1650\0\u167a"+
+    "\0\u16a4\0\u16ce\0\u16f8\0\u1722\0\u174c\0\u1776\0\u17a0\0\u17ca"+
+    "\0\u17f4\0\u181e\0\u1848\0\u1872\0\u189c\0\u18c6\0\u18f0\0\u191a"+
+    "\0\u1944\0\u196e\0\u1998\0\u19c2\0\u19ec\0\u1a16\0\u1a40\0\u1a6a"+
+    "\0\u1a94\0\u1abe\0\u1ae8\0\u1b12\0\u1b3c\0\u1b66\0\u1b90\0\u1bba"+
+    "\0\u1be4\0\u1c0e\0\u1c38\0\u1c62\0\u1c8c\0\u1cb6\0\u1ce0\0\u1d0a"+
+    "\0\u1d34\0\u1d5e\0\u1d88\0\u1db2\0\u1ddc\0\u1e06\0\u1e30\0\u1e5a"+
+    "\0\u1e84\0\u1eae\0\u1ed8\0\u1f02\0\u1f2c\0\u1f56\0\u1f80\0\u1faa"+
+    "\0\u1f56\0\u1fd4\0\u1ffe\0\u2028\0\u2052\0\u207c\0\u20a6\0\u20d0"+
+    "\0\u20fa\0\u2124\0\u214e\0\u2178\0\u21a2\0\u21cc\0\u21f6\0\u2220"+
+    "\0\u224a\0\u2274\0\u229e\0\u22c8\0\u22f2\0\u231c\0\u2346\0\u2370"+
+    "\0\u239a\0\u23c4\0\u23ee\0\u2418\0\u2442\0\u246c\0\u2496\0\u24c0"+
+    "\0\u24ea\0\u2514\0\u253e\0\u2568\0\u2592\0\u25bc\0\u25e6\0\u2610"+
+    "\0\u263a\0\u2664\0\u268e\0\u26b8\0\u26e2\0\u270c\0\u2736\0\u2760"+
+    "\0\u278a\0\u27b4\0\u27de\0\u2808\0\u2832\0\u285c\0\u2886\0\u28b0"+
+    "\0\u28da\0\u2904\0\u292e\0\u2958\0\u2982\0\u29ac\0\u29d6";
 
   private static int [] zzUnpackRowMap() {
-    int [] result = new int[133];
+    int [] result = new int[295];
     int offset = 0;
     offset = zzUnpackRowMap(ZZ_ROWMAP_PACKED_0, offset, result);
     return result;
@@ -176,61 +210,116 @@ public class Yylex {
   private static final int [] ZZ_TRANS = zzUnpacktrans();
 
   private static final String ZZ_TRANS_PACKED_0 =
-    "\1\2\2\3\1\0\1\4\1\5\1\6\1\7\1\10"+
-    "\1\11\1\12\1\13\1\14\1\15\1\2\1\16\1\17"+
-    "\1\20\1\21\2\22\3\2\1\23\1\24\1\25\1\26"+
-    "\1\27\1\2\1\30\1\2\1\31\1\2\1\32\1\2"+
-    "\1\33\1\34\1\35\1\2\1\36\73\0\1\37\26\0"+
-    "\2\5\1\0\2\5\1\40\17\5\1\41\23\5\6\0"+
-    "\1\42\4\0\1\43\45\0\1\44\40\0\2\45\1\0"+
-    "\6\45\1\0\13\45\1\46\23\45\13\0\1\7\6\0"+
-    "\1\47\42\0\1\50\3\0\1\17\1\0\1\47\43\0"+
-    "\1\51\2\0\1\17\1\0\1\47\50\0\1\47\44\0"+
-    "\1\52\1\0\1\17\50\0\1\53\5\0\22\53\45\0"+
-    "\1\54\46\0\1\55\41\0\1\56\55\0\1\57\37\0"+
-    "\1\60\6\0\1\61\10\0\1\62\42\0\1\63\51\0"+
-    "\1\64\55\0\1\65\34\0\1\66\63\0\1\67\46\0"+
-    "\1\70\54\0\1\44\5\0\1\5\17\0\1\5\13\0"+
-    "\1\5\2\0\1\5\1\0\1\5\2\0\2\42\1\0"+
-    "\46\42\13\43\1\71\35\43\11\0\1\72\50\0\1\45"+
-    "\13\0\1\45\13\0\1\45\2\0\1\45\1\0\1\45"+
-    "\22\0\1\73\50\0\1\74\5\0\22\74\34\0\1\75"+
-    "\56\0\1\76\40\0\1\77\64\0\1\100\43\0\1\101"+
-    "\51\0\1\102\50\0\1\103\52\0\1\104\47\0\1\105"+
-    "\54\0\1\63\50\0\1\106\31\0\1\107\70\0\1\110"+
-    "\1\0\6\43\1\111\4\43\1\71\35\43\20\0\1\112"+
-    "\3\0\1\113\6\0\1\113\35\0\1\114\5\0\22\114"+
-    "\30\0\1\115\53\0\1\116\13\0\1\117\42\0\1\120"+
-    "\43\0\1\121\62\0\1\110\41\0\1\122\43\0\1\123"+
-    "\66\0\1\124\44\0\1\121\54\0\1\125\45\0\1\124"+
-    "\37\0\1\126\35\0\1\127\3\0\1\113\6\0\1\113"+
-    "\31\0\2\130\2\0\1\131\50\0\1\132\5\0\22\132"+
-    "\40\0\1\121\47\0\1\123\50\0\1\133\41\0\1\134"+
-    "\66\0\1\135\51\0\1\136\50\0\1\121\46\0\1\137"+
-    "\24\0\1\140\3\0\1\113\6\0\1\113\35\0\1\131"+
-    "\50\0\1\141\5\0\22\141\42\0\1\142\53\0\1\100"+
-    "\41\0\1\121\51\0\1\143\53\0\1\121\27\0\1\144"+
-    "\3\0\1\113\6\0\1\113\35\0\1\145\5\0\22\145"+
-    "\50\0\1\100\43\0\1\137\26\0\1\146\3\0\1\113"+
-    "\6\0\1\113\35\0\1\147\5\0\22\147\21\0\1\150"+
-    "\3\0\1\113\6\0\1\113\35\0\1\151\5\0\22\151"+
-    "\21\0\1\152\50\0\1\153\5\0\22\153\21\0\1\152"+
-    "\3\0\1\154\6\0\1\154\35\0\1\155\5\0\22\155"+
-    "\15\0\2\156\2\0\1\157\50\0\1\160\5\0\22\160"+
-    "\21\0\1\157\50\0\1\161\5\0\22\161\21\0\1\162"+
-    "\5\0\22\162\21\0\1\163\5\0\22\163\21\0\1\164"+
-    "\5\0\22\164\21\0\1\165\5\0\22\165\21\0\1\166"+
-    "\5\0\22\166\21\0\1\167\5\0\22\167\21\0\1\170"+
-    "\5\0\22\170\21\0\1\171\5\0\22\171\21\0\1\172"+
-    "\5\0\22\172\21\0\1\173\5\0\22\173\21\0\1\174"+
-    "\5\0\22\174\21\0\1\175\5\0\22\175\21\0\1\176"+
-    "\5\0\22\176\21\0\1\177\5\0\22\177\21\0\1\200"+
-    "\5\0\22\200\21\0\1\201\5\0\22\201\21\0\1\202"+
-    "\5\0\22\202\21\0\1\203\5\0\22\203\21\0\1\204"+
-    "\5\0\22\204\21\0\1\205\5\0\22\205\1\0";
+    "\1\4\2\5\1\0\1\6\1\7\1\10\1\11\1\12"+
+    "\1\13\1\14\1\15\1\16\1\17\1\4\1\20\1\21"+
+    "\1\22\1\23\1\24\2\25\3\4\1\26\1\27\1\30"+
+    "\1\31\1\32\1\4\1\33\1\4\1\34\1\4\1\35"+
+    "\1\4\1\36\1\37\1\40\1\4\1\41\13\42\1\43"+
+    "\36\42\2\44\1\45\47\44\74\0\1\46\27\0\2\7"+
+    "\1\0\2\7\1\47\20\7\1\50\23\7\6\0\1\51"+
+    "\4\0\1\52\46\0\1\53\41\0\2\54\1\0\6\54"+
+    "\1\0\14\54\1\55\23\54\13\0\1\56\6\0\1\57"+
+    "\43\0\1\60\3\0\1\21\1\0\1\61\44\0\1\62"+
+    "\2\0\1\21\1\0\1\63\51\0\1\64\45\0\1\65"+
+    "\1\0\1\21\53\0\1\66\51\0\1\67\51\0\1\70"+
+    "\47\0\1\71\6\0\22\71\46\0\1\72\47\0\1\73"+
+    "\42\0\1\74\56\0\1\75\40\0\1\76\6\0\1\77"+
+    "\10\0\1\100\43\0\1\101\52\0\1\102\56\0\1\103"+
+    "\35\0\1\104\64\0\1\105\47\0\1\106\55\0\1\107"+
+    "\13\110\1\0\36\110\6\0\1\111\43\0\2\112\1\0"+
+    "\47\112\5\0\1\7\20\0\1\7\13\0\1\7\2\0"+
+    "\1\7\1\0\1\7\13\0\1\113\51\0\1\54\14\0"+
+    "\1\54\13\0\1\54\2\0\1\54\1\0\1\54\22\0"+
+    "\1\114\51\0\1\115\6\0\22\115\35\0\1\116\57\0"+
+    "\1\117\41\0\1\120\65\0\1\121\44\0\1\122\52\0"+
+    "\1\123\51\0\1\124\53\0\1\125\50\0\1\126\55\0"+
+    "\1\127\51\0\1\130\32\0\1\131\71\0\1\132\1\0"+
+    "\13\133\1\0\36\133\2\134\1\0\47\134\20\0\1\135"+
+    "\4\0\1\136\6\0\1\136\35\0\1\137\6\0\22\137"+
+    "\31\0\1\140\54\0\1\141\13\0\1\142\43\0\1\143"+
+    "\44\0\1\144\63\0\1\145\42\0\1\146\44\0\1\147"+
+    "\67\0\1\150\45\0\1\151\51\0\1\152\55\0\1\153"+
+    "\46\0\1\154\40\0\1\155\15\0\13\156\1\0\36\156"+
+    "\2\157\1\0\47\157\20\0\1\160\4\0\1\136\6\0"+
+    "\1\136\31\0\2\161\2\0\1\162\51\0\1\163\6\0"+
+    "\22\163\41\0\1\164\50\0\1\165\51\0\1\166\42\0"+
+    "\1\167\55\0\1\170\63\0\1\171\52\0\1\172\51\0"+
+    "\1\173\52\0\1\174\46\0\1\175\53\0\1\176\2\0"+
+    "\13\177\1\0\36\177\2\200\1\0\47\200\20\0\1\201"+
+    "\4\0\1\136\6\0\1\136\35\0\1\162\51\0\1\202"+
+    "\6\0\22\202\50\0\1\203\44\0\1\204\54\0\1\205"+
+    "\42\0\1\206\52\0\1\207\61\0\1\210\44\0\1\211"+
+    "\7\0\13\212\1\0\36\212\2\213\1\0\47\213\20\0"+
+    "\1\214\4\0\1\136\6\0\1\136\35\0\1\215\6\0"+
+    "\22\215\40\0\1\216\62\0\1\217\35\0\1\220\60\0"+
+    "\1\221\6\0\13\222\1\0\36\222\2\223\1\0\47\223"+
+    "\20\0\1\224\4\0\1\136\6\0\1\136\35\0\1\225"+
+    "\6\0\22\225\44\0\1\226\42\0\1\227\57\0\1\230"+
+    "\7\0\13\231\1\0\36\231\2\232\1\0\47\232\20\0"+
+    "\1\233\4\0\1\136\6\0\1\136\35\0\1\234\6\0"+
+    "\22\234\43\0\1\235\7\0\13\236\1\0\36\236\2\237"+
+    "\1\0\47\237\20\0\1\240\51\0\1\241\6\0\22\241"+
+    "\1\0\13\242\1\0\36\242\2\243\1\0\47\243\20\0"+
+    "\1\240\4\0\1\244\6\0\1\244\35\0\1\245\6\0"+
+    "\22\245\1\0\13\246\1\0\36\246\2\247\1\0\47\247"+
+    "\14\0\2\250\2\0\1\251\51\0\1\252\6\0\22\252"+
+    "\1\0\13\253\1\0\36\253\2\254\1\0\47\254\20\0"+
+    "\1\251\51\0\1\255\6\0\22\255\1\0\13\256\1\0"+
+    "\36\256\2\257\1\0\47\257\20\0\1\260\6\0\22\260"+
+    "\1\0\13\261\1\0\36\261\2\262\1\0\47\262\20\0"+
+    "\1\263\6\0\22\263\1\0\13\264\1\0\36\264\2\265"+
+    "\1\0\47\265\20\0\1\266\6\0\22\266\1\0\13\267"+
+    "\1\0\36\267\2\270\1\0\47\270\20\0\1\271\6\0"+
+    "\22\271\1\0\13\272\1\0\36\272\2\273\1\0\47\273"+
+    "\20\0\1\274\6\0\22\274\1\0\13\275\1\0\36\275"+
+    "\2\276\1\0\47\276\20\0\1\277\6\0\22\277\1\0"+
+    "\13\300\1\0\36\300\2\301\1\0\47\301\20\0\1\302"+
+    "\6\0\22\302\1\0\13\303\1\0\36\303\2\304\1\0"+
+    "\47\304\20\0\1\305\6\0\22\305\1\0\13\306\1\0"+
+    "\36\306\2\307\1\0\47\307\20\0\1\310\6\0\22\310"+
+    "\1\0\13\311\1\0\36\311\2\312\1\0\47\312\20\0"+
+    "\1\313\6\0\22\313\1\0\13\314\1\0\36\314\2\315"+
+    "\1\0\47\315\20\0\1\316\6\0\22\316\1\0\13\317"+
+    "\1\0\36\317\2\320\1\0\47\320\20\0\1\321\6\0"+
+    "\22\321\1\0\13\322\1\0\36\322\2\323\1\0\47\323"+
+    "\20\0\1\324\6\0\22\324\1\0\13\325\1\0\36\325"+
+    "\2\326\1\0\47\326\20\0\1\327\6\0\22\327\1\0"+
+    "\13\330\1\0\36\330\2\331\1\0\47\331\20\0\1\332"+
+    "\6\0\22\332\1\0\13\333\1\0\36\333\2\334\1\0"+
+    "\47\334\20\0\1\335\6\0\22\335\1\0\13\336\1\0"+
+    "\36\336\2\337\1\0\47\337\20\0\1\340\6\0\22\340"+
+    "\1\0\13\341\1\0\36\341\2\342\1\0\47\342\20\0"+
+    "\1\343\6\0\22\343\1\0\13\344\1\0\36\344\2\345"+
+    "\1\0\47\345\20\0\1\346\6\0\22\346\1\0\13\347"+
+    "\1\0\36\347\2\350\1\0\47\350\20\0\1\351\6\0"+
+    "\22\351\1\0\13\352\1\0\36\352\2\353\1\0\47\353"+
+    "\13\354\1\0\36\354\2\355\1\0\47\355\13\356\1\0"+
+    "\36\356\2\357\1\0\47\357\13\360\1\0\36\360\2\361"+
+    "\1\0\47\361\13\362\1\0\36\362\2\363\1\0\47\363"+
+    "\13\364\1\0\36\364\2\365\1\0\47\365\13\366\1\0"+
+    "\36\366\2\367\1\0\47\367\13\370\1\0\36\370\2\371"+
+    "\1\0\47\371\13\372\1\0\36\372\2\373\1\0\47\373"+
+    "\13\374\1\0\36\374\2\375\1\0\47\375\13\376\1\0"+
+    "\36\376\2\377\1\0\47\377\13\u0100\1\0\36\u0100\2\u0101"+
+    "\1\0\47\u0101\13\u0102\1\0\36\u0102\2\u0103\1\0\47\u0103"+
+    "\13\u0104\1\0\36\u0104\2\u0105\1\0\47\u0105\13\u0106\1\0"+
+    "\36\u0106\2\u0107\1\0\47\u0107\13\u0108\1\0\36\u0108\2\u0109"+
+    "\1\0\47\u0109\13\u010a\1\0\36\u010a\2\u010b\1\0\47\u010b"+
+    "\13\u010c\1\0\36\u010c\2\u010d\1\0\47\u010d\13\u010e\1\0"+
+    "\36\u010e\2\u010f\1\0\47\u010f\13\u0110\1\0\36\u0110\2\u0111"+
+    "\1\0\47\u0111\13\u0112\1\0\36\u0112\2\u0113\1\0\47\u0113"+
+    "\13\u0114\1\0\36\u0114\2\u0115\1\0\47\u0115\13\u0116\1\0"+
+    "\36\u0116\2\u0117\1\0\47\u0117\13\u0118\1\0\36\u0118\2\u0119"+
+    "\1\0\47\u0119\13\u011a\1\0\36\u011a\2\u011b\1\0\47\u011b"+
+    "\13\u011c\1\0\36\u011c\2\u011d\1\0\47\u011d\13\u011e\1\0"+
+    "\36\u011e\2\u011f\1\0\47\u011f\13\u0120\1\0\36\u0120\2\u0121"+
+    "\1\0\47\u0121\13\u0122\1\0\36\u0122\2\u0123\1\0\47\u0123"+
+    "\13\u0124\1\0\36\u0124\2\u0125\1\0\47\u0125\13\u0126\1\0"+
+    "\36\u0126\2\u0127\1\0\47\u0127\13\5\1\0\40\5\1\0"+
+    "\47\5";
 
   private static int [] zzUnpacktrans() {
-    int [] result = new int[4715];
+    int [] result = new int[10752];
     int offset = 0;
     offset = zzUnpacktrans(ZZ_TRANS_PACKED_0, offset, result);
     return result;
@@ -273,15 +362,18 @@ public class Yylex {
   private static final int [] ZZ_ATTRIBUTE = zzUnpackAttribute();
 
   private static final String ZZ_ATTRIBUTE_PACKED_0 =
-    "\1\0\2\11\3\1\1\11\2\1\1\11\24\1\2\11"+
-    "\1\0\2\1\1\11\1\1\1\0\3\11\1\0\1\1"+
-    "\16\0\1\11\2\1\14\0\1\11\1\1\1\0\1\1"+
-    "\4\0\1\11\4\0\1\11\1\1\1\0\2\1\5\0"+
-    "\2\1\2\0\4\1\1\0\3\1\1\0\1\1\1\0"+
-    "\25\1\1\0\1\1";
+    "\3\0\2\11\3\1\1\11\2\1\1\11\30\1\3\11"+
+    "\1\0\3\11\1\1\1\0\7\11\1\0\3\11\1\1"+
+    "\15\0\1\11\1\1\1\11\1\1\1\11\2\1\15\0"+
+    "\3\1\1\0\1\1\4\0\1\11\4\0\1\11\3\0"+
+    "\1\11\3\1\1\0\2\1\1\11\3\0\1\11\2\0"+
+    "\1\11\2\0\1\11\4\1\3\0\1\11\1\0\2\11"+
+    "\4\1\2\0\1\11\1\0\4\1\1\0\2\11\2\1"+
+    "\1\0\1\1\1\11\6\1\1\0\3\1\1\0\75\1"+
+    "\1\0\101\1";
 
   private static int [] zzUnpackAttribute() {
-    int [] result = new int[133];
+    int [] result = new int[295];
     int offset = 0;
     offset = zzUnpackAttribute(ZZ_ATTRIBUTE_PACKED_0, offset, result);
     return result;
@@ -362,23 +454,303 @@ public class Yylex {
     private List<Token> tokens = new ArrayList<>();
     private ErrorHandler errorHandler = new ErrorHandler();
     private SymbolTable symbolTable = new SymbolTable();
-    private Map<TokenType, Integer> tokenCounts = new HashMap<>();
+    private LiteralDecoder literals = new LiteralDecoder();
+    private ScanOptions options = ScanOptions.defaults();
+    private boolean[] materialize = options.materializeMask();
+    private TokenSink sink;
+    private int[] tokenCounts = new int[TokenType.values().length];
     private int commentCount = 0;
+    private int maxTokenLength = ScanOptions.DEFAULT_MAX_TOKEN_LENGTH;
+    private int commentStartLine;
+    private int commentStartColumn;
 
+    // Over-long tokens are reported with at most this many characters
+    private static final int TRUNCATED_LEXEME_LENGTH = 64;
+
+    public Yylex(java.io.Reader in, ScanOptions options) {
+        this(in);
+        setOptions(options);
+    }
+
+    public void setOptions(ScanOptions options) {
+        this.options = options;
+        this.materialize = options.materializeMask();
+        this.sink = options.getTokenSink();
+        // Only takes effect before scanning starts
+        this.maxTokenLength = options.getMaxTokenLength();
+        if (zzBuffer.length > maxTokenLength) {
+            zzBuffer = new char[maxTokenLength];
+        }
+    }
+
+    /**
+     * Prepares this scanner for another input. The match buffer, token
+     * list, symbol table and error list are kept for reuse; results of the
+     * previous scan are cleared, so copy out anything still needed.
+     */
+    public void reset(Reader in) {
+        reset(in, options);
+    }
+
+    public void reset(Reader in, ScanOptions options) {
+        // yyreset() keeps zzBuffer unless an earlier token grew it
+        yyreset(in);
+        tokens.clear();
+        errorHandler.clear();
+        symbolTable.clear();
+        Arrays.fill(tokenCounts, 0);
+        commentCount = 0;
+        if (options != this.options) {
+            setOptions(options);
+        }
+    }
+
+    /**
+     * Scans the whole input. Unlike a bare yylex() call, a token longer
+     * than the options' maximum token length does not fail the scan: it is
+     * reported with a truncated lexeme and the rest of it is skipped.
+     */
+    public void scan() throws IOException {
+        while (true) {
+            try {
+                yylex();
+                return;
+            } catch (EOFException e) {
+                // Thrown by zzRefill() when a match would outgrow the buffer cap
+                if (zzBuffer.length < maxTokenLength) {
+                    throw e;
+                }
+                skipLongToken();
+                if (options.isStopAtFirstError()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /*
+     * The buffer holds the start of the token that hit the cap. Reads the
+     * rest of it straight from the reader without storing it, then restarts
+     * the scanner just after it at the right line and column.
+     *
+     * The token ends where the longest match of the rules below would end,
+     * so scanning resumes at the same point it would without the cap.
+     * Characters read past that point are handed back to the scanner.
+     */
+    private void skipLongToken() throws IOException {
+        int line = yyline;
+        int column = yycolumn;
+        char first = zzBuffer[zzStartRead];
+        String lexeme = new String(zzBuffer, zzStartRead,
+            Math.min(zzEndRead - zzStartRead, TRUNCATED_LEXEME_LENGTH)) + "...";
+
+        long length = 0;
+        StringBuilder pending = new StringBuilder();
+        int state = SKIP_START;
+        int fractionDigits = 0;
+        int i = zzStartRead;
+        while (state != SKIP_CLOSED) {
+            int ch = i < zzEndRead ? zzBuffer[i++] : zzReader.read();
+            if (ch == -1) {
+                break;
+            }
+            pending.append((char) ch);
+            state = skipStep(state, (char) ch);
+            if (state == SKIP_FRACTION) {
+                fractionDigits++;
+            }
+            if (state < 0) {
+                break;
+            }
+            if (skipAccepts(state, fractionDigits)) {
+                length += pending.length();
+                pending.setLength(0);
+            }
+        }
+
+        // Anything after the token, including buffered input not looked at
+        pending.append(zzBuffer, i, zzEndRead - i);
+        Reader rest = zzReader;
+        if (pending.length() > 0) {
+            PushbackReader pushback = new PushbackReader(zzReader, pending.length());
+            pushback.unread(pending.toString().toCharArray());
+            rest = pushback;
+        }
+        yyreset(rest);
+        yyline = line;
+        yycolumn = (int) Math.min(column + length, Integer.MAX_VALUE);
+
+        String reason = "Token exceeds maximum length of " + maxTokenLength + " characters";
+        if (Character.isLetter(first)) {
+            errorHandler.reportInvalidIdentifier(line + 1, column + 1, lexeme, reason);
+        } else {
+            errorHandler.reportMalformedLiteral(line + 1, column + 1, lexeme, reason);
+        }
+    }
+
+    // States of skipLongToken(), following the IDENTIFIER and INVALID_ID,
+    // INTEGER, FLOAT and INVALID_FLOAT, and STRING and UNTERM_STRING macros
+    private static final int SKIP_START = 0;
+    private static final int SKIP_IDENTIFIER = 1;
+    private static final int SKIP_SIGN = 2;
+    private static final int SKIP_INTEGER = 3;
+    private static final int SKIP_DOT = 4;
+    private static final int SKIP_FRACTION = 5;
+    private static final int SKIP_EXPONENT = 6;
+    private static final int SKIP_EXPONENT_SIGN = 7;
+    private static final int SKIP_EXPONENT_DIGITS = 8;
+    private static final int SKIP_STRING = 9;
+    private static final int SKIP_ESCAPE = 10;
+    private static final int SKIP_CLOSED = 11;
+
+    // Next state after ch, or -1 when no rule can match it
+    private static int skipStep(int state, char ch) {
+        boolean digit = ch >= '0' && ch <= '9';
+        switch (state) {
+            case SKIP_START:
+                if (ch == '"') return SKIP_STRING;
+                if (ch >= 'A' && ch <= 'Z') return SKIP_IDENTIFIER;
+                if (ch == '+' || ch == '-') return SKIP_SIGN;
+                return digit ? SKIP_INTEGER : -1;
+            case SKIP_IDENTIFIER:
+                return (ch >= 'a' && ch <= 'z') || digit || ch == '_' ? SKIP_IDENTIFIER : -1;
+            case SKIP_SIGN:
+                return digit ? SKIP_INTEGER : -1;
+            case SKIP_INTEGER:
+                if (ch == '.') return SKIP_DOT;
+                return digit ? SKIP_INTEGER : -1;
+            case SKIP_DOT:
+                return digit ? SKIP_FRACTION : -1;
+            case SKIP_FRACTION:
+                if (ch == 'e' || ch == 'E') return SKIP_EXPONENT;
+                return digit ? SKIP_FRACTION : -1;
+            case SKIP_EXPONENT:
+                if (ch == '+' || ch == '-') return SKIP_EXPONENT_SIGN;
+                return digit ? SKIP_EXPONENT_DIGITS : -1;
+            case SKIP_EXPONENT_SIGN:
+            case SKIP_EXPONENT_DIGITS:
+                return digit ? SKIP_EXPONENT_DIGITS : -1;
+            case SKIP_STRING:
+                if (ch == '"') return SKIP_CLOSED;
+                if (ch == '\\') return SKIP_ESCAPE;
+                return ch == '\n' ? -1 : SKIP_STRING;
+            case SKIP_ESCAPE:
+                return ch == '"' || ch == '\\' || ch == 'n' || ch == 't' || ch == 'r' ? SKIP_STRING : -1;
+            default:
+                return -1;
+        }
+    }
+
+    // FLOAT allows 1-6 fraction digits and INVALID_FLOAT 8 or more
+    private static boolean skipAccepts(int state, int fractionDigits) {
+        switch (state) {
+            case SKIP_IDENTIFIER:
+            case SKIP_INTEGER:
+            case SKIP_STRING:
+            case SKIP_CLOSED:
+                return true;
+            case SKIP_FRACTION:
+            case SKIP_EXPONENT_DIGITS:
+                return fractionDigits != 7;
+            default:
+                return false;
+        }
+    }
+
+    // Fixed-spelling rules pass their canonical lexeme (see Lexemes), so only
+    // identifiers and literals allocate a String via yytext().
     private void addToken(TokenType type, String lexeme) {
-        Token token = new Token(type, lexeme, yyline + 1, yycolumn + 1);
-        tokens.add(token);
-        tokenCounts.put(type, tokenCounts.getOrDefault(type, 0) + 1);
-        
-        if (type == TokenType.IDENTIFIER) {
-            symbolTable.addIdentifier(lexeme, yyline + 1, yycolumn + 1);
+        Token token = createToken(type, lexeme);
+        if (token != null) {
+            emit(token);
+        }
+    }
+
+    // Counts the token and returns it unpublished, so a decoded value can
+    // be set before emit() hands it to another thread.
+    // Returns null when the token type is outside the options' projection.
+    private Token createToken(TokenType type, String lexeme) {
+        tokenCounts[type.ordinal()]++;
+        if (!materialize[type.ordinal()]) {
+            return null;
+        }
+        return new Token(type, lexeme, yyline + 1, yycolumn + 1);
+    }
+
+    private void emit(Token token) {
+        if (sink != null) {
+            sink.accept(token);
+        } else {
+            tokens.add(token);
         }
     }
 
+    private void addIdentifier() {
+        if (!materialize[TokenType.IDENTIFIER.ordinal()]) {
+            tokenCounts[TokenType.IDENTIFIER.ordinal()]++;
+            return;
+        }
+        // Identifier tokens share the symbol table's instance of the name
+        addToken(TokenType.IDENTIFIER, symbolTable.addIdentifier(yytext(), yyline + 1, yycolumn + 1));
+    }
+
+    private void addBoolean(boolean value) {
+        Token token = createToken(TokenType.BOOLEAN_LITERAL, value ? "true" : "false");
+        if (token != null) {
+            token.setBooleanValue(value);
+            emit(token);
+        }
+    }
+
+    // Literal rules decode their value straight from the match buffer
+    private void addLiteral(TokenType type) {
+        if (!materialize[type.ordinal()]) {
+            tokenCounts[type.ordinal()]++;
+            return;
+        }
+        Token token = createToken(type, yytext());
+        switch (type) {
+            case INTEGER_LITERAL:
+                literals.decodeInteger(token, zzBuffer, zzStartRead, zzMarkedPos);
+                break;
+            case FLOAT_LITERAL:
+                literals.decodeFloat(token, zzBuffer, zzStartRead, zzMarkedPos);
+                break;
+            case STRING_LITERAL:
+                literals.decodeString(token, zzBuffer, zzStartRead, zzMarkedPos);
+                break;
+            case CHAR_LITERAL:
+                literals.decodeChar(token, zzBuffer, zzStartRead, zzMarkedPos);
+                break;
+            default:
+                break;
+        }
+        emit(token);
+    }
+
+    // Only token types selected by the scan options are returned here,
+    // and nothing when the tokens went to a TokenSink
     public List<Token> getTokens() {
         return tokens;
     }
 
+    // Counts cover every recognized token, whether materialized or not
+    public int getTokenCount(TokenType type) {
+        return tokenCounts[type.ordinal()];
+    }
+
+    public int getTotalTokenCount() {
+        int total = 0;
+        for (int count : tokenCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getCommentCount() {
+        return commentCount;
+    }
+
     public ErrorHandler getErrorHandler() {
         return errorHandler;
     }
@@ -396,27 +768,37 @@ public class Yylex {
 
     public void printStatistics() {
         System.out.println("\n=== Statistics (JFlex) ===");
-        System.out.println("Total tokens: " + tokens.size());
+        System.out.println("Total tokens: " + getTotalTokenCount());
         System.out.println("Lines processed: " + (yyline + 1));
         System.out.println("Comments removed: " + commentCount);
         System.out.println("\nToken counts by type:");
         
-        tokenCounts.entrySet().stream()
-            .sorted(Map.Entry.<TokenType, Integer>comparingByValue().reversed())
-            .forEach(entry -> 
-                System.out.println("  " + entry.getKey() + ": " + entry.getValue()));
+        Arrays.stream(TokenType.values())
+            .filter(type -> tokenCounts[type.ordinal()] > 0)
+            .sorted(Comparator.comparingInt((TokenType type) -> tokenCounts[type.ordinal()]).reversed())
+            .forEach(type -> 
+                System.out.println("  " + type + ": " + tokenCounts[type.ordinal()]));
     }
 
     public static void main(String[] args) {
         if (args.length == 0) {
-            System.out.println("Usage: java Yylex <input-file>");
+            System.out.println("Usage: java Yylex [--validate] [--fail-fast] [--only=TYPE,...] [--max-token=N] <input-file>");
             return;
         }
 
         try {
-            Yylex scanner = new Yylex(new FileReader(args[0]));
-            scanner.yylex();
+            ScanOptions options = ScanOptions.fromArgs(args);
+            Yylex scanner = new Yylex(CompressedSource.open(Paths.get(args[args.length - 1])), options);
+            scanner.scan();
             
+            if (options.isValidateOnly()) {
+                scanner.printStatistics();
+                scanner.getErrorHandler().printErrorSummary();
+                if (scanner.getErrorHandler().hasErrors()) {
+                    System.exit(1);
+                }
+                return;
+            }
             scanner.printTokens();
             scanner.printStatistics();
             scanner.getSymbolTable().print();
@@ -435,18 +817,20 @@ public class Yylex {
    * @param   in  the java.io.Reader to read input from.
    */
   public Yylex(java.io.Reader in) {
+      // Field initializers run after the generated buffer is allocated
+    zzBuffer = new char[Math.min(ZZ_BUFFERSIZE, zzMaxBufferLen())];
     this.zzReader = in;
   }
 
 
   /** Returns the maximum size of the scanner buffer, which limits the size of tokens. */
   private int zzMaxBufferLen() {
-    return Integer.MAX_VALUE;
+    return maxTokenLength;
   }
 
   /**  Whether the scanner buffer can grow to accommodate a larger token. */
   private boolean zzCanGrow() {
-    return true;
+    return zzBuffer.length < maxTokenLength;
   }
 
   /**
@@ -835,123 +1219,282 @@ public class Yylex {
 
       if (zzInput == YYEOF && zzStartRead == zzCurrentPos) {
         zzAtEOF = true;
+            switch (zzLexicalState) {
+            case COMMENT: {
+              errorHandler.reportUnclosedComment(commentStartLine + 1, commentStartColumn + 1);
+                      yybegin(YYINITIAL);
+                      return;
+            }  // fall though
+            case 296: break;
+            default:
           {     return;
  }
+        }
       }
       else {
         switch (zzAction < 0 ? zzAction : ZZ_ACTION[zzAction]) {
           case 1:
-            { errorHandler.reportInvalidCharacter(yyline + 1, yycolumn + 1, yytext().charAt(0));
+            { errorHandler.reportInvalidCharacter(yyline + 1, yycolumn + 1, yycharat(0));
+                      if (options.isStopAtFirstError()) return;
             }
           // fall through
-          case 23: break;
+          case 52: break;
           case 2:
             { /* skip */
             }
           // fall through
-          case 24: break;
+          case 53: break;
           case 3:
-            { addToken(TokenType.LOGICAL_OP, yytext());
+            { addToken(TokenType.LOGICAL_OP, "!");
             }
           // fall through
-          case 25: break;
+          case 54: break;
           case 4:
             { errorHandler.reportUnterminatedString(yyline + 1, yycolumn + 1, yytext());
+                      if (options.isStopAtFirstError()) return;
             }
           // fall through
-          case 26: break;
+          case 55: break;
           case 5:
-            { addToken(TokenType.ARITHMETIC_OP, yytext());
+            { addToken(TokenType.ARITHMETIC_OP, Lexemes.canonical(yycharat(0)));
             }
           // fall through
-          case 27: break;
+          case 56: break;
           case 6:
-            { addToken(TokenType.PUNCTUATOR, yytext());
+            { addToken(TokenType.PUNCTUATOR, Lexemes.canonical(yycharat(0)));
             }
           // fall through
-          case 28: break;
+          case 57: break;
           case 7:
-            { addToken(TokenType.INTEGER_LITERAL, yytext());
+            { addToken(TokenType.ARITHMETIC_OP, "*");
             }
           // fall through
-          case 29: break;
+          case 58: break;
           case 8:
-            { addToken(TokenType.RELATIONAL_OP, yytext());
+            { addToken(TokenType.ARITHMETIC_OP, "+");
             }
           // fall through
-          case 30: break;
+          case 59: break;
           case 9:
-            { addToken(TokenType.ASSIGNMENT_OP, yytext());
+            { addToken(TokenType.ARITHMETIC_OP, "-");
             }
           // fall through
-          case 31: break;
+          case 60: break;
           case 10:
-            { addToken(TokenType.IDENTIFIER, yytext());
+            { addToken(TokenType.ARITHMETIC_OP, "/");
             }
           // fall through
-          case 32: break;
+          case 61: break;
           case 11:
-            { addToken(TokenType.STRING_LITERAL, yytext());
+            { addLiteral(TokenType.INTEGER_LITERAL);
             }
           // fall through
-          case 33: break;
+          case 62: break;
           case 12:
-            { commentCount++;
+            { addToken(TokenType.RELATIONAL_OP, Lexemes.canonical(yycharat(0)));
             }
           // fall through
-          case 34: break;
+          case 63: break;
           case 13:
-            { errorHandler.reportUnclosedComment(yyline + 1, yycolumn + 1);
+            { addToken(TokenType.ASSIGNMENT_OP, "=");
             }
           // fall through
-          case 35: break;
+          case 64: break;
           case 14:
-            { errorHandler.reportUnterminatedChar(yyline + 1, yycolumn + 1, yytext());
+            { addIdentifier();
             }
           // fall through
-          case 36: break;
+          case 65: break;
           case 15:
-            { addToken(TokenType.INCREMENT_OP, yytext());
+            { yybegin(YYINITIAL);
             }
           // fall through
-          case 37: break;
+          case 66: break;
           case 16:
-            { addToken(TokenType.DECREMENT_OP, yytext());
+            { addToken(TokenType.RELATIONAL_OP, "!=");
             }
           // fall through
-          case 38: break;
+          case 67: break;
           case 17:
-            { addToken(TokenType.CHAR_LITERAL, yytext());
+            { addLiteral(TokenType.STRING_LITERAL);
             }
           // fall through
-          case 39: break;
+          case 68: break;
           case 18:
-            { addToken(TokenType.FLOAT_LITERAL, yytext());
+            { commentCount++; yybegin(LINE_COMMENT);
             }
           // fall through
-          case 40: break;
+          case 69: break;
           case 19:
-            { addToken(TokenType.KEYWORD, yytext());
+            { commentStartLine = yyline; commentStartColumn = yycolumn; yybegin(COMMENT);
             }
           // fall through
-          case 41: break;
+          case 70: break;
           case 20:
-            { addToken(TokenType.BOOLEAN_LITERAL, yytext());
+            { addToken(TokenType.LOGICAL_OP, "&&");
             }
           // fall through
-          case 42: break;
+          case 71: break;
           case 21:
+            { errorHandler.reportUnterminatedChar(yyline + 1, yycolumn + 1, yytext());
+                      if (options.isStopAtFirstError()) return;
+            }
+          // fall through
+          case 72: break;
+          case 22:
+            { addToken(TokenType.ARITHMETIC_OP, "**");
+            }
+          // fall through
+          case 73: break;
+          case 23:
+            { addToken(TokenType.ASSIGNMENT_OP, "*=");
+            }
+          // fall through
+          case 74: break;
+          case 24:
+            { addToken(TokenType.INCREMENT_OP, "++");
+            }
+          // fall through
+          case 75: break;
+          case 25:
+            { addToken(TokenType.ASSIGNMENT_OP, "+=");
+            }
+          // fall through
+          case 76: break;
+          case 26:
+            { addToken(TokenType.DECREMENT_OP, "--");
+            }
+          // fall through
+          case 77: break;
+          case 27:
+            { addToken(TokenType.ASSIGNMENT_OP, "-=");
+            }
+          // fall through
+          case 78: break;
+          case 28:
+            { addToken(TokenType.ASSIGNMENT_OP, "/=");
+            }
+          // fall through
+          case 79: break;
+          case 29:
+            { addToken(TokenType.RELATIONAL_OP, "<=");
+            }
+          // fall through
+          case 80: break;
+          case 30:
+            { addToken(TokenType.RELATIONAL_OP, "==");
+            }
+          // fall through
+          case 81: break;
+          case 31:
+            { addToken(TokenType.RELATIONAL_OP, ">=");
+            }
+          // fall through
+          case 82: break;
+          case 32:
+            { addToken(TokenType.LOGICAL_OP, "||");
+            }
+          // fall through
+          case 83: break;
+          case 33:
+            { commentCount++; yybegin(YYINITIAL);
+            }
+          // fall through
+          case 84: break;
+          case 34:
+            { addLiteral(TokenType.CHAR_LITERAL);
+            }
+          // fall through
+          case 85: break;
+          case 35:
+            { addLiteral(TokenType.FLOAT_LITERAL);
+            }
+          // fall through
+          case 86: break;
+          case 36:
+            { addToken(TokenType.KEYWORD, "else");
+            }
+          // fall through
+          case 87: break;
+          case 37:
+            { addToken(TokenType.KEYWORD, "loop");
+            }
+          // fall through
+          case 88: break;
+          case 38:
+            { addBoolean(true);
+            }
+          // fall through
+          case 89: break;
+          case 39:
+            { addToken(TokenType.KEYWORD, "break");
+            }
+          // fall through
+          case 90: break;
+          case 40:
+            { addBoolean(false);
+            }
+          // fall through
+          case 91: break;
+          case 41:
+            { addToken(TokenType.KEYWORD, "input");
+            }
+          // fall through
+          case 92: break;
+          case 42:
+            { addToken(TokenType.KEYWORD, "start");
+            }
+          // fall through
+          case 93: break;
+          case 43:
+            { addToken(TokenType.KEYWORD, "finish");
+            }
+          // fall through
+          case 94: break;
+          case 44:
+            { addToken(TokenType.KEYWORD, "output");
+            }
+          // fall through
+          case 95: break;
+          case 45:
+            { addToken(TokenType.KEYWORD, "return");
+            }
+          // fall through
+          case 96: break;
+          case 46:
+            { addToken(TokenType.KEYWORD, "declare");
+            }
+          // fall through
+          case 97: break;
+          case 47:
+            { addToken(TokenType.KEYWORD, "continue");
+            }
+          // fall through
+          case 98: break;
+          case 48:
+            { addToken(TokenType.KEYWORD, "function");
+            }
+          // fall through
+          case 99: break;
+          case 49:
+            { addToken(TokenType.KEYWORD, "condition");
+            }
+          // fall through
+          case 100: break;
+          case 50:
             { errorHandler.reportMalformedLiteral(yyline + 1, yycolumn + 1, yytext(), 
                         "More than 6 decimal digits");
+                      if (options.isStopAtFirstError()) return;
             }
           // fall through
-          case 43: break;
-          case 22:
+          case 101: break;
+          case 51:
             { errorHandler.reportInvalidIdentifier(yyline + 1, yycolumn + 1, yytext(), 
                         "Identifier exceeds 31 characters");
+                      if (options.isStopAtFirstError()) return;
             }
           // fall through
-          case 44: break;
+          case 102: break;
           default:
             zzScanError(ZZ_NO_MATCH);
         }